@@ -0,0 +1,55 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+/**
+ * Run every benchmark, one after the other, in one VM.  Each one gets the
+ * same loop count except the universe, which does real file I/O and gets a
+ * tenth of it.
+ * <p>
+ * Usage: BenchAll [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Calls - 17Oct26</code> 
+ * 
+ */
+public class BenchAll {
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+		String[] pass = new String[] { Integer.toString(loops) };
+		String[] io = new String[] { Integer.toString(Math.max(1, loops / 10)) };
+
+		DispatchBench.main(pass);
+		ScopeBench.main(pass);
+		SubrBench.main(pass);
+		EvalBench.main(pass);
+		CallBench.main(pass);
+		LogBench.main(pass);
+		UniverseBench.main(io);
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+/**
+ * A tiny benchmark harness.  JMH isn't something we can drag into this build,
+ * so this does the minimum: warm up, then time a number of rounds and report
+ * the best and average nanoseconds per operation.  Run with a quiet machine
+ * and a server VM or the numbers are not worth much.
+ * <p>
+ * It can also count the bytes a case allocates, where the VM will tell us.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Allocation rate - 17Oct26</code> 
+ * 
+ */
+public class BenchHarness {
+
+	/**
+	 * A single benchmark case.
+	 */
+	public interface Case {
+
+		/**
+		 * Run the case once.
+		 * @return the number of operations done, for per-op reporting.
+		 * @throws Exception anything.  It will stop the benchmark.
+		 */
+		public long run() throws Exception;
+	}
+
+	/**
+	 * Default number of warmup rounds.
+	 */
+	public final static int DEFAULT_WARMUP = 5;
+
+	/**
+	 * Default number of measured rounds.
+	 */
+	public final static int DEFAULT_ROUNDS = 10;
+
+	/**
+	 * Used to keep the JIT from throwing away results.
+	 */
+	public static volatile Object sink;
+
+	/**
+	 *  Measure a case with the default rounds.
+	 * @param label what to call it in the report
+	 * @param c the case
+	 * @return best nanoseconds per operation
+	 * @throws Exception if the case failed
+	 */
+	public static double measure(String label, Case c) throws Exception {
+		return measure(label, c, DEFAULT_WARMUP, DEFAULT_ROUNDS);
+	}
+
+	/**
+	 *  Measure a case.
+	 * @param label what to call it in the report
+	 * @param c the case
+	 * @param warmup number of rounds to throw away
+	 * @param rounds number of rounds to time
+	 * @return best nanoseconds per operation
+	 * @throws Exception if the case failed
+	 */
+	public static double measure(String label, Case c, int warmup, int rounds)
+		throws Exception {
+
+		for (int index = 0; index < warmup; index++) {
+			c.run();
+		}
+
+		double best = Double.MAX_VALUE;
+		double total = 0;
+		for (int index = 0; index < rounds; index++) {
+			long start = System.nanoTime();
+			long ops = c.run();
+			long elapsed = System.nanoTime() - start;
+			double perOp = ((double) elapsed) / ((ops < 1) ? 1 : ops);
+			total += perOp;
+			if (perOp < best)
+				best = perOp;
+		}
+
+		report(label, best, total / rounds);
+		return best;
+	}
+
+	/**
+	 *  Measure how much a case allocates.  It is warmed up first, then run
+	 *  once with the allocation counter around it.
+	 * @param label what to call it in the report
+	 * @param c the case
+	 * @return bytes allocated per operation, or -1 if the VM can't say
+	 * @throws Exception if the case failed
+	 */
+	public static double allocation(String label, Case c) throws Exception {
+
+		for (int index = 0; index < DEFAULT_WARMUP; index++) {
+			c.run();
+		}
+
+		long before = allocated();
+		long ops = c.run();
+		long after = allocated();
+		if ((before < 0) || (after < 0)) {
+			System.out.println(pad(label, 40) + " alloc=unavailable");
+			return -1;
+		}
+		double perOp = ((double) (after - before)) / ((ops < 1) ? 1 : ops);
+		System.out.println(pad(label, 40) + " alloc=" + format(perOp) + " bytes/op");
+		return perOp;
+	}
+
+	/**
+	 *  Bytes allocated by this thread so far.  Only HotSpot style VMs
+	 *  count this, so it goes through reflection.
+	 * @return the count or -1 if the VM can't say
+	 */
+	public static long allocated() {
+		try {
+			Object bean = ManagementFactory.getThreadMXBean();
+			Class type = Class.forName("com.sun.management.ThreadMXBean");
+			Method m = type.getMethod("getThreadAllocatedBytes", new Class[] { long.class });
+			Long bytes =
+				(Long) m.invoke(bean, new Object[] { new Long(Thread.currentThread().getId())});
+			return bytes.longValue();
+		} catch (Throwable t) {
+			return -1;
+		}
+	}
+
+	/**
+	 *  Report a result line.
+	 * @param label what it is
+	 * @param best best ns/op
+	 * @param avg average ns/op
+	 */
+	public static void report(String label, double best, double avg) {
+		System.out.println(
+			pad(label, 40)
+				+ " best="
+				+ format(best)
+				+ " ns/op  avg="
+				+ format(avg)
+				+ " ns/op");
+	}
+
+	/**
+	 *  Format a double to two places.
+	 */
+	public static String format(double d) {
+		long hundredths = Math.round(d * 100);
+		String frac = Long.toString(hundredths % 100);
+		if (frac.length() < 2)
+			frac = "0" + frac;
+		return Long.toString(hundredths / 100) + "." + frac;
+	}
+
+	/**
+	 *  Pad a label.
+	 */
+	public static String pad(String s, int width) {
+		StringBuffer b = new StringBuffer(s);
+		while (b.length() < width) {
+			b.append(' ');
+		}
+		return b.toString();
+	}
+}
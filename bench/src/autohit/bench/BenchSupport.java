@@ -0,0 +1,258 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+import org.apache.commons.collections.ExtendedProperties;
+
+import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.channels.Atom;
+import autohit.common.channels.Channel;
+import autohit.common.channels.ChannelException;
+import autohit.common.channels.Drain;
+import autohit.common.channels.Injector;
+import autohit.common.channels.Receipt;
+import autohit.server.SystemContext;
+import autohit.universe.Universe;
+import autohit.universe.UniverseProperties;
+import autohit.universe.service.UniverseLocal;
+import autohit.vm.SimVM;
+import autohit.vm.VMCore;
+import autohit.vm.VMException;
+import autohit.vm.VMExecutable;
+import autohit.vm.VMLoader;
+
+/**
+ * Plumbing for running synthetic sims inside the benchmark process.  There is
+ * no system context, no universe and no kernel.  Programs are built in memory
+ * and handed to the SimVM through a loader that never touches the cache.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Counting drain, scratch universe and context - 17Oct26</code> 
+ * 
+ */
+public class BenchSupport {
+
+	/**
+	 * Injector that drops everything on the floor, but counts it.
+	 */
+	public static class NullInjector implements Injector {
+
+		public int posted;
+
+		public Receipt post(Atom a) throws ChannelException {
+			posted++;
+			return null;
+		}
+		public Receipt defaultPost(int numeric, Object o)
+			throws ChannelException {
+			posted++;
+			return null;
+		}
+		public Atom defaultAtom() {
+			return new Atom();
+		}
+		public void setChannel(Channel c) throws ChannelException {
+		}
+	}
+
+	/**
+	 * Drain that drops everything on the floor, but counts it.
+	 */
+	public static class CountingDrain implements Drain {
+
+		public int posted;
+
+		public Receipt post(Atom a) throws ChannelException {
+			posted++;
+			return null;
+		}
+	}
+
+	/**
+	 * Loader that serves in-memory programs.
+	 */
+	public static class BenchLoader extends VMLoader {
+
+		private Hashtable programs;
+
+		public BenchLoader() {
+			super();
+			programs = new Hashtable();
+		}
+
+		/**
+		 * Add a program.  It will be served by its name.
+		 * @param exec the program
+		 */
+		public void add(VMExecutable exec) {
+			programs.put(exec.name, exec);
+		}
+
+		/**
+		 * Load a program out of the in-memory set.
+		 */
+		public VMExecutable load(String name) throws VMException {
+			VMExecutable exec = (VMExecutable) programs.get(name);
+			if (exec == null) {
+				throw new VMException(
+					"Bench loader: no such program " + name,
+					VMException.CODE_VM_EXEC_DOES_NOT_EXIST_FAULT);
+			}
+			return exec;
+		}
+	}
+
+	/**
+	 *  Build an executable from a list of instructions.
+	 * @param name program name
+	 * @param code the instructions
+	 * @return the executable.  It is not linked.
+	 */
+	public static VMExecutable program(String name, ArrayList code) {
+		VMExecutable exec = new VMExecutable();
+		exec.init();
+		exec.name = name;
+		exec.core.addAll(code);
+		exec.core.trimToSize();
+		return exec;
+	}
+
+	/**
+	 *  Build a SimVM ready to start() on a program.
+	 * @param loader where it will get programs
+	 * @param name the root program
+	 * @param inj where logging goes
+	 * @return the vm
+	 * @throws Exception if it couldn't be built
+	 */
+	public static SimVM sim(VMLoader loader, String name, Injector inj)
+		throws Exception {
+		SimVM vm = new SimVM();
+		vm.init(inj, name);
+		vm.loader = loader;
+		vm.core = new VMCore();
+		vm.myLog = new AutohitLogInjectorWrapper();
+		vm.myLog.init("bench", inj);
+		return vm;
+	}
+
+	/**
+	 *  Make a new scratch directory.  Remove it with delete() when done.
+	 * @return the directory
+	 * @throws Exception if it couldn't be made
+	 */
+	public static File scratchDir() throws Exception {
+		File root = File.createTempFile("autohit-bench", "");
+		root.delete();
+		root.mkdirs();
+		return root;
+	}
+
+	/**
+	 *  Build a local universe rooted in a directory.
+	 * @param root the directory.  It must be absolute.
+	 * @return the universe
+	 * @throws Exception if it couldn't be built
+	 */
+	public static UniverseLocal universe(File root) throws Exception {
+		String props =
+			"type=local\nname=bench\nroot=" + root.getAbsolutePath() + "\n";
+		UniverseLocal u = new UniverseLocal();
+		u.genesis(
+			new UniverseProperties(new ByteArrayInputStream(props.getBytes())));
+		return u;
+	}
+
+	/**
+	 *  Build a system context that only knows a universe and a root logger.
+	 *  Anything else it is asked for comes back null.
+	 * @param u the universe
+	 * @param log the root logger
+	 * @return the context
+	 */
+	public static SystemContext context(
+		final Universe u,
+		final AutohitLogInjectorWrapper log) {
+		final ExtendedProperties props = new ExtendedProperties();
+		return (SystemContext) Proxy.newProxyInstance(
+			SystemContext.class.getClassLoader(),
+			new Class[] { SystemContext.class },
+			new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				String name = m.getName();
+				if (name.equals("getUniverse"))
+					return u;
+				if (name.equals("getRootLogger"))
+					return log;
+				if (name.equals("getPropertiesSet")
+					|| name.equals("getInvokerProperties"))
+					return props;
+				return null;
+			}
+		});
+	}
+
+	/**
+	 *  Delete a directory tree.  Used to clean up scratch universes.
+	 * @param f the top of the tree
+	 */
+	public static void delete(File f) {
+		File[] kids = f.listFiles();
+		if (kids != null) {
+			for (int index = 0; index < kids.length; index++) {
+				delete(kids[index]);
+			}
+		}
+		f.delete();
+	}
+
+	/**
+	 *  Start a vm and run it to completion.
+	 * @param vm the vm
+	 * @return the number of execute() calls made
+	 * @throws Exception if the vm ended with anything but DONE
+	 */
+	public static long run(SimVM vm) throws Exception {
+		long steps = 1;
+		try {
+			vm.start();
+			while (true) {
+				vm.execute();
+				steps++;
+			}
+		} catch (VMException e) {
+			if (e.numeric != VMException.CODE_VM_DONE)
+				throw e;
+		}
+		return steps;
+	}
+}
@@ -0,0 +1,249 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.io.File;
+
+import autohit.call.CallException;
+import autohit.call.CallRegistry;
+import autohit.call.Call_METHOD;
+import autohit.call.modules.Module;
+import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.Constants;
+import autohit.universe.service.UniverseLocal;
+import autohit.vm.SimLinker;
+import autohit.vm.VMCore;
+import autohit.vm.VMExecutable;
+import autohit.vm.VMLoader;
+
+/**
+ * Getting a CALL from the loader.  First, what a new core pays the first
+ * time it uses LOG, DATE and METHOD.  Then a core that already has LOG,
+ * looked up by name the way an unlinked CALL does, and by the factory a
+ * linked CALL holds.
+ * <p>
+ * Then METHOD into a module with twenty methods, calling the last one.  Once
+ * by name into a module that picks the method with an if chain, and once
+ * through a call site into the same module with a method table.  Then the
+ * same site from two cores taking turns, the way processes running one
+ * cached routine share it.
+ * <p>
+ * Last, a sim loop that makes a LOG call with two arguments every time
+ * around.  Once with the arguments stored in a scope around the call, and
+ * once with them in an argument frame.  The report is per call, so it
+ * includes the loop overhead.
+ * <p>
+ * Usage: CallBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Module methods - 17Oct26<br>
+ * EPG - Argument frames - 17Oct26<br>
+ * EPG - One site, two cores - 17Oct26</code> 
+ * 
+ */
+public class CallBench {
+
+	/**
+	 * Twenty methods that do nothing, picked by name.
+	 */
+	public static class ChainModule extends Module {
+
+		static final String[] NAMES = new String[20];
+		static {
+			for (int index = 0; index < NAMES.length; index++) {
+				NAMES[index] = "method" + index;
+			}
+		}
+
+		public Object execute_chain(String name) throws CallException {
+			for (int index = 0; index < NAMES.length; index++) {
+				if (name.equals(NAMES[index]))
+					return Constants.EMPTY_LEFT;
+			}
+			return Constants.EMPTY_LEFT;
+		}
+
+		protected String instantiation_chain() throws CallException {
+			return "Chain";
+		}
+
+		protected void free_chain() throws CallException {
+		}
+	}
+
+	/**
+	 * The same twenty methods, in a table.
+	 */
+	public static class TableModule extends ChainModule {
+
+		public String[] methods() {
+			return NAMES;
+		}
+
+		public Object execute_chain(int id, String name) throws CallException {
+			switch (id) {
+				case 19 :
+					return Constants.EMPTY_LEFT;
+				default :
+					return Constants.EMPTY_LEFT;
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		File root = null;
+		try {
+			root = BenchSupport.scratchDir();
+			UniverseLocal u = BenchSupport.universe(root);
+			final AutohitLogInjectorWrapper log =
+				new AutohitLogInjectorWrapper();
+			log.init("bench", new BenchSupport.NullInjector());
+			final VMLoader loader = new VMLoader();
+			loader.init(BenchSupport.context(u, log));
+			final int passes = loops;
+			final String[] names = new String[] { "LOG", "DATE", "METHOD" };
+			final VMCore warm = new VMCore();
+			final CallRegistry.Factory factory = CallRegistry.find("LOG");
+			loader.get(factory, warm, log);
+
+			System.out.println("CALL lookup, " + loops + " gets");
+			BenchHarness.measure("call.first", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						VMCore core = new VMCore();
+						for (int n = 0; n < names.length; n++) {
+							BenchHarness.sink = loader.get(names[n], core, log);
+						}
+					}
+					return passes * names.length;
+				}
+			});
+			double n = BenchHarness.measure("call.byname", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = loader.get("LOG", warm, log);
+					}
+					return passes;
+				}
+			});
+			double b = BenchHarness.measure("call.bound", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = loader.get(factory, warm, log);
+					}
+					return passes;
+				}
+			});
+			System.out.println("bound/byname = " + BenchHarness.format(b / n));
+
+			Module chain = new ChainModule();
+			chain.instance(warm, u, log, null);
+			warm.persist("chain", chain);
+			Module table = new TableModule();
+			table.instance(warm, u, log, null);
+			warm.persist("table", table);
+			final Call_METHOD method =
+				(Call_METHOD) loader.get("METHOD", warm, log);
+			final String last = ChainModule.NAMES[ChainModule.NAMES.length - 1];
+			final Call_METHOD.Site site = new Call_METHOD.Site(last);
+
+			System.out.println("METHOD, " + loops + " calls to the 20th method");
+			double c = BenchHarness.measure("method.chain", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = method.do_call("chain", last);
+					}
+					return passes;
+				}
+			});
+			double s = BenchHarness.measure("method.site", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = method.do_call("table", site);
+					}
+					return passes;
+				}
+			});
+			System.out.println("site/chain = " + BenchHarness.format(s / c));
+
+			final VMCore second = new VMCore();
+			Module table2 = new TableModule();
+			table2.instance(second, u, log, null);
+			second.persist("table", table2);
+			final Call_METHOD method2 =
+				(Call_METHOD) loader.get("METHOD", second, log);
+			double t = BenchHarness.measure("method.twocores", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = method.do_call("table", site);
+						BenchHarness.sink = method2.do_call("table", site);
+					}
+					return passes * 2;
+				}
+			});
+			System.out.println("twocores/site = " + BenchHarness.format(t / s));
+
+			final BenchSupport.BenchLoader sims = new BenchSupport.BenchLoader();
+			sims.init(BenchSupport.context(u, log));
+			String[] argNames = new String[] { "entry", "numeric" };
+			String[] argValues = new String[] { "bench", "150" };
+			VMExecutable scoped =
+				SyntheticPrograms.callLoop("scoped", loops, "LOG", argNames, argValues, false);
+			VMExecutable framed =
+				SyntheticPrograms.callLoop("framed", loops, "LOG", argNames, argValues, true);
+			SimLinker.link(scoped);
+			SimLinker.link(framed);
+			sims.add(scoped);
+			sims.add(framed);
+			final BenchSupport.NullInjector inj = new BenchSupport.NullInjector();
+
+			System.out.println("CALL arguments, " + loops + " LOG calls with two");
+			double scope = BenchHarness.measure("args.scope", new BenchHarness.Case() {
+				public long run() throws Exception {
+					BenchSupport.run(BenchSupport.sim(sims, "scoped", inj));
+					return passes;
+				}
+			});
+			double frame = BenchHarness.measure("args.frame", new BenchHarness.Case() {
+				public long run() throws Exception {
+					BenchSupport.run(BenchSupport.sim(sims, "framed", inj));
+					return passes;
+				}
+			});
+			System.out.println("frame/scope = " + BenchHarness.format(frame / scope));
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		} finally {
+			if (root != null)
+				BenchSupport.delete(root);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import autohit.vm.SimLinker;
+import autohit.vm.SimVM;
+import autohit.vm.SimVerifier;
+import autohit.vm.VMExecutable;
+
+/**
+ * Compares the SimVM dispatch paths: the old switch over the instruction
+ * token against the pre-linked handler array.  Same program, same VM; the
+ * only difference is whether the executable was linked.  Then a linked one
+ * that passed the verifier, and the linked one again with the profiler on,
+ * to see what it costs.
+ * <p>
+ * Usage: DispatchBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Profiler overhead - 17Oct26<br>
+ * EPG - Verified case - 17Oct26</code> 
+ * 
+ */
+public class DispatchBench {
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		try {
+			final VMExecutable switched =
+				SyntheticPrograms.countingLoop("switched", loops);
+			final VMExecutable linked =
+				SyntheticPrograms.countingLoop("linked", loops);
+			SimLinker.link(linked);
+			final VMExecutable verified =
+				SyntheticPrograms.countingLoop("verified", loops);
+			SimLinker.link(verified);
+			SimVerifier.verify(verified, null);
+
+			final BenchSupport.BenchLoader loader =
+				new BenchSupport.BenchLoader();
+			loader.add(switched);
+			loader.add(linked);
+			loader.add(verified);
+			final BenchSupport.NullInjector inj =
+				new BenchSupport.NullInjector();
+
+			System.out.println("SimVM dispatch, counting loop of " + loops);
+			double s =
+				BenchHarness.measure("dispatch.switch", new BenchHarness.Case() {
+				public long run() throws Exception {
+					return BenchSupport.run(
+						BenchSupport.sim(loader, "switched", inj));
+				}
+			});
+			double l =
+				BenchHarness.measure("dispatch.linked", new BenchHarness.Case() {
+				public long run() throws Exception {
+					return BenchSupport.run(
+						BenchSupport.sim(loader, "linked", inj));
+				}
+			});
+			double v =
+				BenchHarness.measure("dispatch.verified", new BenchHarness.Case() {
+				public long run() throws Exception {
+					return BenchSupport.run(
+						BenchSupport.sim(loader, "verified", inj));
+				}
+			});
+			double p =
+				BenchHarness.measure("dispatch.profiled", new BenchHarness.Case() {
+				public long run() throws Exception {
+					SimVM vm = BenchSupport.sim(loader, "linked", inj);
+					vm.profileOn();
+					return BenchSupport.run(vm);
+				}
+			});
+			System.out.println(
+				"linked/switch = " + BenchHarness.format(l / s));
+			System.out.println(
+				"verified/linked = " + BenchHarness.format(v / l));
+			System.out.println(
+				"profiled/linked = " + BenchHarness.format(p / l));
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import autohit.vm.SimLinker;
+import autohit.vm.VMCore;
+import autohit.vm.VMExecutable;
+import autohit.vm.process.EvalTemplate;
+import autohit.vm.process.StringProcessors;
+
+/**
+ * Eval rendering.  The same mail-merge style string is rendered by the
+ * StringProcessors state machine and by a precompiled template, and then
+ * inside a running sim.
+ * <p>
+ * Usage: EvalBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public class EvalBench {
+
+	/**
+	 * What gets evaluated.
+	 */
+	public final static String EVAL =
+		"Dear $a$, your order from $b$ has shipped.  Cost: $$10.  Thanks, $a$!";
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		try {
+			final VMCore core = new VMCore();
+			core.store("a", "Alice");
+			core.store("b", "Springfield");
+			final EvalTemplate template = EvalTemplate.compile(EVAL);
+			final StringBuffer working = new StringBuffer();
+			final int passes = loops;
+
+			System.out.println("Eval rendering, " + loops + " evals");
+			double p = BenchHarness.measure("eval.processor", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = StringProcessors.evalString2Core(EVAL, core);
+					}
+					return passes;
+				}
+			});
+			double t = BenchHarness.measure("eval.template", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = template.render(core, working);
+					}
+					return passes;
+				}
+			});
+			System.out.println("template/processor = " + BenchHarness.format(t / p));
+
+			VMExecutable exec = SyntheticPrograms.evalLoop("evals", loops, EVAL, true);
+			SimLinker.link(exec);
+			final BenchSupport.BenchLoader loader = new BenchSupport.BenchLoader();
+			loader.add(exec);
+			final BenchSupport.NullInjector inj = new BenchSupport.NullInjector();
+			BenchHarness.measure("eval.vm", new BenchHarness.Case() {
+				public long run() throws Exception {
+					return BenchSupport.run(BenchSupport.sim(loader, "evals", inj));
+				}
+			});
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import autohit.common.AutohitErrorCodes;
+import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.channels.Atom;
+import autohit.common.channels.SimpleChannel;
+import autohit.common.channels.SimpleInjector;
+import autohit.vm.SimLinker;
+import autohit.vm.VMExecutable;
+
+/**
+ * Log injection.  A logger wrapper posts through a SimpleInjector into a
+ * SimpleChannel with a drain that just counts.  Also times a debug call
+ * with debugging off, which should cost next to nothing, and a bare
+ * SimpleChannel.inject().
+ * <p>
+ * With debugging off, it also counts bytes allocated per debug call, the
+ * concatenated way and the parameterized way, and per instruction for a
+ * MATH loop and a subroutine loop in the VM.  Parameterized debug and the
+ * VM loops should allocate nothing.
+ * <p>
+ * Usage: LogBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Allocation with debugging off - 17Oct26</code> 
+ * 
+ */
+public class LogBench {
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		try {
+			final SimpleChannel channel = new SimpleChannel();
+			final BenchSupport.CountingDrain drain = new BenchSupport.CountingDrain();
+			channel.register("drain", drain);
+			channel.requestLevel("drain", Atom.P_TOP);
+			SimpleInjector injector = new SimpleInjector();
+			injector.setDefaultSenderID("bench");
+			channel.register("bench", injector);
+
+			final AutohitLogInjectorWrapper log = new AutohitLogInjectorWrapper();
+			log.init("bench", injector);
+			final int passes = loops;
+
+			System.out.println("Log injection, " + loops + " messages");
+			BenchHarness.measure("log.info", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						log.info("Bench message " + index, AutohitErrorCodes.CODE_INFORMATIONAL_OK);
+					}
+					return passes;
+				}
+			});
+			BenchHarness.measure("log.debug.off", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						log.debug("Bench message " + index, AutohitErrorCodes.CODE_DEBUGGING);
+					}
+					return passes;
+				}
+			});
+			final String item = "item";
+			BenchHarness.measure("log.debug.off.param", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						log.debug(AutohitErrorCodes.CODE_DEBUGGING, "Bench message {}", item);
+					}
+					return passes;
+				}
+			});
+			BenchHarness.allocation("log.debug.off.concat", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						log.debug("Bench message " + item + index, AutohitErrorCodes.CODE_DEBUGGING);
+					}
+					return passes;
+				}
+			});
+			BenchHarness.allocation("log.debug.off.param", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						log.debug(AutohitErrorCodes.CODE_DEBUGGING, "Bench message {}", item);
+					}
+					return passes;
+				}
+			});
+
+			final BenchSupport.BenchLoader loader =
+				new BenchSupport.BenchLoader();
+			final BenchSupport.NullInjector inj =
+				new BenchSupport.NullInjector();
+			VMExecutable counting = SyntheticPrograms.countingLoop("counting", loops);
+			VMExecutable caller = SyntheticPrograms.subrLoop("caller", loops, "callee");
+			VMExecutable callee = SyntheticPrograms.subroutine("callee");
+			SimLinker.link(counting);
+			SimLinker.link(caller);
+			SimLinker.link(callee);
+			loader.add(counting);
+			loader.add(caller);
+			loader.add(callee);
+			BenchHarness.allocation("vm.math.debug.off", new BenchHarness.Case() {
+				public long run() throws Exception {
+					return BenchSupport.run(BenchSupport.sim(loader, "counting", inj));
+				}
+			});
+			BenchHarness.allocation("vm.subr.debug.off", new BenchHarness.Case() {
+				public long run() throws Exception {
+					return BenchSupport.run(BenchSupport.sim(loader, "caller", inj));
+				}
+			});
+
+			final Atom atom =
+				new Atom(Atom.TYPE_LOG, Atom.ROUTINE, AutohitErrorCodes.CODE_INFORMATIONAL_OK, "Bench message");
+			BenchHarness.measure("channel.inject", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = channel.inject(atom);
+					}
+					return passes;
+				}
+			});
+			System.out.println("drained=" + drain.posted);
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.util.Iterator;
+
+import autohit.vm.SimLinker;
+import autohit.vm.VMCore;
+import autohit.vm.VMExecutable;
+import autohit.vm.VMSymbol;
+
+/**
+ * Variable churn in deep scopes.  The VM cases run a loop that opens a
+ * stack of scopes, shadowing one variable in each, then unwinds them.  The
+ * core case does the same thing straight against a VMCore.  The goto cases
+ * close a loop with a GOTO over bodies of different sizes; the time per
+ * pass should not grow with the body.  The spawn cases start a child core
+ * from a parent holding more and more variables, first by copying them the
+ * way RUN used to and then by standing the child on a snapshot.
+ * <p>
+ * Usage: ScopeBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - GOTO over growing bodies - 17Oct26<br>
+ * EPG - Child core spawn - 17Oct26</code> 
+ * 
+ */
+public class ScopeBench {
+
+	/**
+	 * Scope depths to try.
+	 */
+	public final static int[] DEPTHS = { 1, 8, 32 };
+
+	/**
+	 * Loop body sizes for the goto cases.
+	 */
+	public final static int[] BODIES = { 8, 64, 512 };
+
+	/**
+	 * Parent core sizes for the spawn cases.
+	 */
+	public final static int[] PARENTS = { 16, 256, 4096 };
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		try {
+			final BenchSupport.BenchLoader loader =
+				new BenchSupport.BenchLoader();
+			final BenchSupport.NullInjector inj =
+				new BenchSupport.NullInjector();
+
+			System.out.println("Variable churn in nested scopes, " + loops + " passes");
+			for (int index = 0; index < DEPTHS.length; index++) {
+				final String name = "scope" + DEPTHS[index];
+				VMExecutable exec =
+					SyntheticPrograms.scopeChurn(name, loops, DEPTHS[index]);
+				SimLinker.link(exec);
+				loader.add(exec);
+				BenchHarness.measure("scope.vm.depth" + DEPTHS[index], new BenchHarness.Case() {
+					public long run() throws Exception {
+						return BenchSupport.run(BenchSupport.sim(loader, name, inj));
+					}
+				});
+			}
+
+			for (int index = 0; index < BODIES.length; index++) {
+				final String name = "goto" + BODIES[index];
+				VMExecutable exec =
+					SyntheticPrograms.gotoLoop(name, loops, BODIES[index]);
+				SimLinker.link(exec);
+				loader.add(exec);
+				final int passes = loops;
+				BenchHarness.measure("scope.goto.body" + BODIES[index], new BenchHarness.Case() {
+					public long run() throws Exception {
+						BenchSupport.run(BenchSupport.sim(loader, name, inj));
+						return passes;
+					}
+				});
+			}
+
+			final int passes = loops;
+			final VMSymbol x = VMSymbol.intern("x");
+			for (int index = 0; index < DEPTHS.length; index++) {
+				final int depth = DEPTHS[index];
+				BenchHarness.measure("scope.core.depth" + depth, new BenchHarness.Case() {
+					public long run() throws Exception {
+						VMCore core = new VMCore();
+						String value = "v";
+						for (int pass = 0; pass < passes; pass++) {
+							for (int d = 0; d < depth; d++) {
+								core.markScope();
+								core.store(x, value);
+							}
+							BenchHarness.sink = core.fetch(x);
+							core.replace(x, value);
+							for (int d = 0; d < depth; d++) {
+								core.discardScopeFrame();
+							}
+						}
+						return ((long) passes) * depth;
+					}
+				});
+			}
+
+			final int spawns = loops / 10;
+			for (int index = 0; index < PARENTS.length; index++) {
+				final VMCore parent = new VMCore();
+				for (int v = 0; v < PARENTS[index]; v++) {
+					parent.store("var" + v, "value" + v);
+				}
+				BenchHarness.measure("scope.spawn.copy.vars" + PARENTS[index], new BenchHarness.Case() {
+					public long run() throws Exception {
+						for (int pass = 0; pass < spawns; pass++) {
+							VMCore child = new VMCore();
+							Iterator names = parent.getStorageNameSet().iterator();
+							String name;
+							while (names.hasNext()) {
+								name = (String) names.next();
+								child.store(name, parent.fetch(name));
+							}
+							parent.replace("var0", "value0");
+							BenchHarness.sink = child;
+						}
+						return spawns;
+					}
+				});
+				BenchHarness.measure("scope.spawn.layer.vars" + PARENTS[index], new BenchHarness.Case() {
+					public long run() throws Exception {
+						for (int pass = 0; pass < spawns; pass++) {
+							VMCore child = new VMCore();
+							child.inherit(parent.snapshot());
+							parent.replace("var0", "value0");
+							BenchHarness.sink = child;
+						}
+						return spawns;
+					}
+				});
+			}
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.util.ArrayList;
+
+import autohit.common.AutohitProperties;
+import autohit.vm.SimInliner;
+import autohit.vm.SimLinker;
+import autohit.vm.VMException;
+import autohit.vm.VMExecutable;
+import autohit.vm.i.VMIRight;
+
+/**
+ * Subroutine entry and exit.  A loop calls a small subroutine every time
+ * around; the report is per call, so it includes the loop overhead.  Run
+ * DispatchBench for the bare loop cost.  Then the same loop with the
+ * subroutine inlined, the way the loader would hand it out.  The short
+ * case runs the subroutine as a whole program, start to DONE, the way a
+ * batch of short child processes would.  The error case steps past an
+ * instruction error every time around a loop.
+ * <p>
+ * Usage: SubrBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Inlined case - 17Oct26<br>
+ * EPG - Short runs and instruction errors - 17Oct26</code> 
+ * 
+ */
+public class SubrBench {
+
+	public static void main(String[] args) {
+
+		int loops = 20000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		try {
+			VMExecutable caller = SyntheticPrograms.subrLoop("caller", loops, "callee");
+			VMExecutable callee = SyntheticPrograms.subroutine("callee");
+			SimLinker.link(caller);
+			SimLinker.link(callee);
+
+			final BenchSupport.BenchLoader loader =
+				new BenchSupport.BenchLoader();
+			loader.add(caller);
+			loader.add(callee);
+
+			VMExecutable inlined =
+				SimInliner.inline("caller", caller, new SimInliner.Routines() {
+				public VMExecutable routine(String name) throws VMException {
+					return loader.load(name);
+				}
+			}, AutohitProperties.VM_INLINE_SIZE_DEFAULT).exec;
+			inlined.name = "inlined";
+			loader.add(inlined);
+
+			ArrayList body = new ArrayList();
+			body.add(SyntheticPrograms.load("1"));
+			body.add(new VMIRight());
+			body.add(SyntheticPrograms.load("2"));
+			body.add(SyntheticPrograms.math("?"));
+			VMExecutable errors =
+				SyntheticPrograms.loop("errors", loops, new ArrayList(), body);
+			SimLinker.link(errors);
+			loader.add(errors);
+			final BenchSupport.NullInjector inj =
+				new BenchSupport.NullInjector();
+			final int calls = loops;
+
+			System.out.println("Subroutine entry and exit, " + loops + " calls");
+			BenchHarness.measure("subr.call", new BenchHarness.Case() {
+				public long run() throws Exception {
+					BenchSupport.run(BenchSupport.sim(loader, "caller", inj));
+					return calls;
+				}
+			});
+			BenchHarness.measure("subr.inlined", new BenchHarness.Case() {
+				public long run() throws Exception {
+					BenchSupport.run(BenchSupport.sim(loader, "inlined", inj));
+					return calls;
+				}
+			});
+			final int runs = loops / 10;
+			BenchHarness.measure("subr.short.run", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int run = 0; run < runs; run++) {
+						BenchSupport.run(BenchSupport.sim(loader, "callee", inj));
+					}
+					return runs;
+				}
+			});
+			BenchHarness.measure("subr.error", new BenchHarness.Case() {
+				public long run() throws Exception {
+					BenchSupport.run(BenchSupport.sim(loader, "errors", inj));
+					return calls;
+				}
+			});
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,394 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.util.ArrayList;
+
+import autohit.creator.SimLanguage;
+import autohit.vm.VMExecutable;
+import autohit.vm.i.VMIArg;
+import autohit.vm.i.VMICall;
+import autohit.vm.i.VMIEval;
+import autohit.vm.i.VMIFetch;
+import autohit.vm.i.VMIGoto;
+import autohit.vm.i.VMIIf;
+import autohit.vm.i.VMIJump;
+import autohit.vm.i.VMILoad;
+import autohit.vm.i.VMIMath;
+import autohit.vm.i.VMINew;
+import autohit.vm.i.VMINop;
+import autohit.vm.i.VMIRScope;
+import autohit.vm.i.VMIRight;
+import autohit.vm.i.VMIScope;
+import autohit.vm.i.VMIStore;
+import autohit.vm.i.VMISubr;
+import autohit.vm.process.EvalTemplate;
+
+/**
+ * Synthetic sims for the benchmarks.  These are built instruction by
+ * instruction, the way the SimCompiler would emit them, so they can run
+ * without a universe.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Scope, subroutine and eval programs - 17Oct26<br>
+ * EPG - GOTO loop - 17Oct26<br>
+ * EPG - CALL loop - 17Oct26</code> 
+ * 
+ */
+public class SyntheticPrograms {
+
+	/**
+	 *  A tight counting loop.  The same thing a WHILE over a MATH would
+	 *  compile to.  Good for measuring raw dispatch.
+	 * <pre>
+	 * 0  load 0
+	 * 1  new i
+	 * 2  fetch i          top
+	 * 3  right
+	 * 4  load 1
+	 * 5  math +
+	 * 6  store i
+	 * 7  right
+	 * 8  load N
+	 * 9  math =
+	 * 10 if eq 2          not there yet, go to top
+	 * 11 nop
+	 * </pre>
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable countingLoop(String name, int n) {
+		return loop(name, n, new ArrayList(), new ArrayList());
+	}
+
+	/**
+	 *  Variable churn in nested scopes.  Each time around the loop it opens
+	 *  depth scopes, shadowing the same variable in every one, then works
+	 *  the innermost copy and unwinds them all.
+	 * <pre>
+	 *    scope, load d, new x       (depth times)
+	 *    fetch x, right, load 1, math +, store x
+	 *    rscope                     (depth times)
+	 * </pre>
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @param depth scopes per pass
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable scopeChurn(String name, int n, int depth) {
+		ArrayList body = new ArrayList();
+		for (int d = 0; d < depth; d++) {
+			body.add(new VMIScope());
+			body.add(load(Integer.toString(d)));
+			body.add(newVar("x"));
+		}
+		body.add(fetch("x"));
+		body.add(new VMIRight());
+		body.add(load("1"));
+		body.add(math("+"));
+		body.add(store("x"));
+		for (int d = 0; d < depth; d++) {
+			body.add(new VMIRScope());
+		}
+		return loop(name, n, new ArrayList(), body);
+	}
+
+	/**
+	 *  A loop closed by a GOTO, the way a label and goto compile.  A block
+	 *  of size NOPs sits between the test and the GOTO but is skipped, so the
+	 *  GOTO jumps back over a scope pair and the whole block every time
+	 *  around while the work done per pass stays the same.
+	 * <pre>
+	 *    load 0
+	 *    new i
+	 *    fetch i             top
+	 *    right, load 1, math +, store i
+	 *    right, load N, math =
+	 *    if eq back          not there yet
+	 *    jump out
+	 *    scope               never run
+	 *    nop                 (size times)
+	 *    rscope
+	 *    goto top            back
+	 *    nop                 out
+	 * </pre>
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @param size NOPs in the body
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable gotoLoop(String name, int n, int size) {
+		ArrayList code = new ArrayList();
+		code.add(load("0"));
+		code.add(newVar("i"));
+		int top = code.size();
+		code.add(fetch("i"));
+		code.add(new VMIRight());
+		code.add(load("1"));
+		code.add(math("+"));
+		code.add(store("i"));
+		code.add(new VMIRight());
+		code.add(load(Integer.toString(n)));
+		code.add(math("="));
+		int back = code.size() + 4 + size;
+		code.add(ifJump(SimLanguage.EQ, back));
+		code.add(jump(back + 1));
+		code.add(new VMIScope());
+		for (int index = 0; index < size; index++) {
+			code.add(new VMINop());
+		}
+		code.add(new VMIRScope());
+		code.add(goTo(top));
+		code.add(new VMINop());
+		return BenchSupport.program(name, code);
+	}
+
+	/**
+	 *  A loop that calls a subroutine every time around.  Use subroutine()
+	 *  to build the target.
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @param target subroutine program name
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable subrLoop(String name, int n, String target) {
+		ArrayList body = new ArrayList();
+		body.add(subr(target));
+		return loop(name, n, new ArrayList(), body);
+	}
+
+	/**
+	 *  A small subroutine.  It makes a local, touches it and falls off the
+	 *  end, which is how a compiled sim returns.
+	 * @param name program name
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable subroutine(String name) {
+		ArrayList code = new ArrayList();
+		code.add(load("1"));
+		code.add(newVar("local"));
+		code.add(fetch("local"));
+		code.add(new VMIRight());
+		code.add(load("1"));
+		code.add(math("+"));
+		code.add(store("local"));
+		return BenchSupport.program(name, code);
+	}
+
+	/**
+	 *  A loop that evaluates the same string every time around.  Variables
+	 *  a and b are set before the loop.
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @param e the string to evaluate
+	 * @param template true to precompile it, the way the compiler does
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable evalLoop(
+		String name,
+		int n,
+		String e,
+		boolean template) {
+		ArrayList setup = new ArrayList();
+		setup.add(load("Alice"));
+		setup.add(newVar("a"));
+		setup.add(load("Springfield"));
+		setup.add(newVar("b"));
+		ArrayList body = new ArrayList();
+		body.add(eval(e, template));
+		return loop(name, n, setup, body);
+	}
+
+	/**
+	 *  A loop that makes the same CALL every time around, with literal
+	 *  arguments.  They go in a scope, or in an argument frame.
+	 * <pre>
+	 *    scope                       (scope only)
+	 *    load value, store name      (per argument, scope)
+	 *    load value, arg position    (per argument, frame)
+	 *    call target
+	 *    rscope                      (scope only)
+	 * </pre>
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @param target the call
+	 * @param names argument names
+	 * @param values argument values
+	 * @param frame true for an argument frame, false for a scope
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable callLoop(
+		String name,
+		int n,
+		String target,
+		String[] names,
+		String[] values,
+		boolean frame) {
+		ArrayList body = new ArrayList();
+		if (!frame) {
+			body.add(new VMIScope());
+		}
+		for (int index = 0; index < names.length; index++) {
+			body.add(load(values[index]));
+			if (frame) {
+				body.add(arg(index));
+			} else {
+				body.add(store(names[index]));
+			}
+		}
+		body.add(call(target, frame ? names : null));
+		if (!frame) {
+			body.add(new VMIRScope());
+		}
+		return loop(name, n, new ArrayList(), body);
+	}
+
+	/**
+	 *  Wrap a body in the counting loop.
+	 * <pre>
+	 *    setup
+	 *    load 0
+	 *    new i
+	 *    body                top
+	 *    fetch i
+	 *    right
+	 *    load 1
+	 *    math +
+	 *    store i
+	 *    right
+	 *    load N
+	 *    math =
+	 *    if eq top           not there yet, go to top
+	 *    nop
+	 * </pre>
+	 * @param name program name
+	 * @param n number of times around the loop
+	 * @param setup instructions before the loop
+	 * @param body instructions in the loop
+	 * @return the executable, not linked
+	 */
+	public static VMExecutable loop(
+		String name,
+		int n,
+		ArrayList setup,
+		ArrayList body) {
+		ArrayList code = new ArrayList();
+		code.addAll(setup);
+		code.add(load("0"));
+		code.add(newVar("i"));
+		int top = code.size();
+		code.addAll(body);
+		code.add(fetch("i"));
+		code.add(new VMIRight());
+		code.add(load("1"));
+		code.add(math("+"));
+		code.add(store("i"));
+		code.add(new VMIRight());
+		code.add(load(Integer.toString(n)));
+		code.add(math("="));
+		code.add(ifJump(SimLanguage.EQ, top));
+		code.add(new VMINop());
+		return BenchSupport.program(name, code);
+	}
+
+	// --- INSTRUCTION HELPERS -----------------------------------------------
+
+	public static VMILoad load(String literal) {
+		VMILoad i = new VMILoad();
+		i.l = literal;
+		return i;
+	}
+
+	public static VMINew newVar(String name) {
+		VMINew i = new VMINew();
+		i.v = name;
+		return i;
+	}
+
+	public static VMIFetch fetch(String name) {
+		VMIFetch i = new VMIFetch();
+		i.v = name;
+		return i;
+	}
+
+	public static VMIStore store(String name) {
+		VMIStore i = new VMIStore();
+		i.v = name;
+		return i;
+	}
+
+	public static VMIArg arg(int position) {
+		VMIArg i = new VMIArg();
+		i.p = position;
+		return i;
+	}
+
+	public static VMICall call(String target, String[] names) {
+		VMICall i = new VMICall();
+		i.t = target;
+		i.a = names;
+		return i;
+	}
+
+	public static VMIMath math(String oper) {
+		VMIMath i = new VMIMath();
+		i.o = oper;
+		return i;
+	}
+
+	public static VMISubr subr(String target) {
+		VMISubr i = new VMISubr();
+		i.t = target;
+		return i;
+	}
+
+	public static VMIEval eval(String e, boolean template) {
+		VMIEval i = new VMIEval();
+		i.e = e;
+		if (template) {
+			i.t = EvalTemplate.compile(e);
+		}
+		return i;
+	}
+
+	public static VMIJump jump(int target) {
+		VMIJump i = new VMIJump();
+		i.t = target;
+		return i;
+	}
+
+	public static VMIGoto goTo(int target) {
+		VMIGoto i = new VMIGoto();
+		i.t = target;
+		return i;
+	}
+
+	public static VMIIf ifJump(int oper, int target) {
+		VMIIf i = new VMIIf();
+		i.operFlag = oper;
+		i.t = target;
+		return i;
+	}
+}
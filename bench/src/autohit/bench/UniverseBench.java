@@ -0,0 +1,169 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.bench;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.AutohitProperties;
+import autohit.universe.service.UniverseLocal;
+import autohit.vm.VMExecutableWrapper;
+import autohit.vm.VMLoader;
+
+/**
+ * Universe get and put, and the loader that sits on top of it.  Everything
+ * happens in a scratch universe that is removed at the end.
+ * <p>
+ * Usage: UniverseBench [loops]
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Binary against serialized executables - 17Oct26</code> 
+ * 
+ */
+public class UniverseBench {
+
+	/**
+	 * Size of the streamed object.
+	 */
+	public final static int STREAM_SIZE = 64 * 1024;
+
+	public static void main(String[] args) {
+
+		int loops = 2000;
+		if (args.length > 0)
+			loops = Integer.parseInt(args[0]);
+
+		File root = null;
+		try {
+			root = BenchSupport.scratchDir();
+			final UniverseLocal u = BenchSupport.universe(root);
+			final int passes = loops;
+
+			StringBuffer text = new StringBuffer();
+			while (text.length() < 1024) {
+				text.append("The quick brown fox jumps over the lazy dog.  ");
+			}
+			final String small = text.toString();
+			final byte[] big = new byte[STREAM_SIZE];
+			final byte[] chunk = new byte[8192];
+
+			System.out.println("Universe get/put, " + loops + " objects");
+			BenchHarness.measure("universe.put", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						u.put("bench/obj" + (index % 64), small);
+					}
+					return passes;
+				}
+			});
+			BenchHarness.measure("universe.get", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = u.get("bench/obj" + (index % 64));
+					}
+					return passes;
+				}
+			});
+			BenchHarness.measure("universe.stream.64k", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						OutputStream os = u.putStream("bench/stream");
+						os.write(big);
+						os.close();
+						InputStream is = u.getStream("bench/stream");
+						while (is.read(chunk) >= 0) {
+						}
+						is.close();
+					}
+					return passes;
+				}
+			});
+
+			// The loader reads compiled programs out of the universe cache.
+			AutohitLogInjectorWrapper log = new AutohitLogInjectorWrapper();
+			log.init("bench", new BenchSupport.NullInjector());
+			final VMLoader loader = new VMLoader();
+			loader.init(BenchSupport.context(u, log));
+
+			final String program = "bench/loaded" + System.currentTimeMillis();
+			final String object =
+				AutohitProperties.literal_UNIVERSE_CACHE
+					+ AutohitProperties.literal_NAME_SEPERATOR
+					+ program;
+			VMExecutableWrapper saver = new VMExecutableWrapper();
+			saver.exec = SyntheticPrograms.scopeChurn(program, 10, 32);
+			saver.save(u.putStream(object));
+
+			// The same program the way it was cached before VMBinary
+			final String serialized = object + ".ser";
+			ObjectOutputStream sobj = new ObjectOutputStream(u.putStream(serialized));
+			sobj.writeObject(saver.exec);
+			sobj.close();
+
+			BenchHarness.measure("loader.read.binary", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						VMExecutableWrapper reader = new VMExecutableWrapper();
+						reader.load(u.getStream(object));
+						BenchHarness.sink = reader.exec;
+					}
+					return passes;
+				}
+			});
+			BenchHarness.measure("loader.read.serialized", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						VMExecutableWrapper reader = new VMExecutableWrapper();
+						reader.load(u.getStream(serialized));
+						BenchHarness.sink = reader.exec;
+					}
+					return passes;
+				}
+			});
+			System.out.println(
+				"size binary="
+					+ u.size(object)
+					+ " serialized="
+					+ u.size(serialized));
+			BenchHarness.measure("loader.load.cached", new BenchHarness.Case() {
+				public long run() throws Exception {
+					for (int index = 0; index < passes; index++) {
+						BenchHarness.sink = loader.load(program);
+					}
+					return passes;
+				}
+			});
+
+		} catch (Exception e) {
+			System.out.println("Benchmark failed: " + e.getMessage());
+			e.printStackTrace();
+		} finally {
+			if (root != null)
+				BenchSupport.delete(root);
+		}
+	}
+}
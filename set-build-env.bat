@@ -1,3 +1,3 @@
 set ANT_HOME=d:\bin\apache-ant-1.6.2
-set JAVA_HOME=C:\j2sdk1.4.2_06
+set JAVA_HOME=C:\jdk1.5.0
 
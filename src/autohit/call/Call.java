@@ -35,7 +35,8 @@ import autohit.common.AutohitLogInjectorWrapper;
  * 
  * @author Erich P. Gatejen
  * @version 1.1 <i>Version History</i><code>EPG - Initial - 14May03<br>
- * EPG - reorganize to make Call the base class - 10Sep03</code>
+ * EPG - reorganize to make Call the base class - 10Sep03<br>
+ * EPG - Parameterized debug - 17Oct26</code>
  */
 public abstract class Call {
 
@@ -124,6 +125,36 @@ public abstract class Call {
 			log.debug(CALL_TEXT_HEADER + this.name() + ':' + text, CallException.CODE_DEBUGGING_CALLS);
 	}
 
+	/**
+	 * Log a debugging statement.  Nothing is formatted unless debugging is
+	 * on.
+	 * 
+	 * @param pattern
+	 *           The text of the statement, with a {} for the argument.
+	 * @param a
+	 *           The argument.
+	 */
+	public void debug(String pattern, Object a) {
+		if (log.debugState())
+			this.debug(AutohitLogInjectorWrapper.format(pattern, new Object[] { a }));
+	}
+
+	/**
+	 * Log a debugging statement.  Nothing is formatted unless debugging is
+	 * on.
+	 * 
+	 * @param pattern
+	 *           The text of the statement, with a {} for each argument.
+	 * @param a
+	 *           The first argument.
+	 * @param b
+	 *           The second argument.
+	 */
+	public void debug(String pattern, Object a, Object b) {
+		if (log.debugState())
+			this.debug(AutohitLogInjectorWrapper.format(pattern, new Object[] { a, b }));
+	}
+
 	/**
 	 * Log an error statement.
 	 * 
@@ -170,7 +201,7 @@ public abstract class Call {
 			// dont care. null will cause error
 		}
 		if (thang == null) {
-			this.debug("Parameter " + item + " not given.");
+			this.debug("Parameter {} not given.", item);
 		}
 		return thang;
 	}
@@ -289,7 +320,7 @@ public abstract class Call {
 
 		try {
 			thing = (Object) vmc.get(item);
-			this.debug("Persist object named " + item + "found.");
+			this.debug("Persist object named {}found.", item);
 		} catch (Exception iii) {
 			// the null will express this.
 		}
@@ -0,0 +1,196 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.call;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+
+/**
+ * Global registry of CALL implementations.  Every call gets a Factory with a
+ * small id, so a core can keep its call instances in an array and a linked
+ * CALL instruction can hold its Factory instead of looking the name up.
+ * <p>
+ * The calls are found when this class loads, from the index resource
+ * autohit/call/calls.index that the build writes next to the classes.  It is
+ * just the call names, one per line, for every Call_ class in this package.
+ * A call that isn't in the index, or a missing index, isn't a problem.  A
+ * name is looked for as a Call_ class the first time anybody asks for it,
+ * and registered if it is there.
+ * <p>
+ * It is thread-safe.  Factories are never removed, so an id is good for the
+ * life of the JVM.
+ *
+ * @see autohit.call.Call
+ * @see autohit.vm.VMLoader
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public class CallRegistry {
+
+	/**
+	 * The index resource.
+	 */
+	public final static String INDEX = "autohit/call/calls.index";
+
+	/**
+	 * Class name prefix for calls.
+	 */
+	public final static String PREFIX = "autohit.call.Call_";
+
+	/**
+	 * Makes one kind of call.
+	 */
+	public static final class Factory {
+
+		/**
+		 * Index into a core's call array.
+		 */
+		public final int id;
+
+		/**
+		 * Call name, as in the class name.
+		 */
+		public final String name;
+
+		private final Class type;
+
+		Factory(int i, String n, Class t) {
+			id = i;
+			name = n;
+			type = t;
+		}
+
+		/**
+		 * Make a new, unloaded instance.
+		 * @return the call
+		 * @throws Exception if it can't be instantiated
+		 */
+		public Call make() throws Exception {
+			return (Call) type.newInstance();
+		}
+
+		public String toString() {
+			return "CallRegistry.Factory " + name + " id=" + id;
+		}
+	}
+
+	// by name, as asked for and in upper case
+	private static HashMap byName = new HashMap();
+
+	// how many.  the next id.
+	private static int count = 0;
+
+	static {
+		boot();
+	}
+
+	/**
+	 * Find the factory for a call.
+	 * @param name call name.  Case doesn't matter.
+	 * @return the factory or null if there is no such call
+	 */
+	public static synchronized Factory find(String name) {
+		Factory f = (Factory) byName.get(name);
+		if ((f == null) && (name != null)) {
+			String upper = name.toUpperCase();
+			f = (Factory) byName.get(upper);
+			if (f == null) {
+				f = register(upper);
+			}
+			if (f != null) {
+				byName.put(name, f);
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * How many calls are registered.  Every id is less than this.
+	 * @return the count
+	 */
+	public static synchronized int size() {
+		return count;
+	}
+
+	// --- PRIVATE METHODS ---------------------------------------------------	
+
+	/**
+	 * Register everything in the index.
+	 */
+	private static void boot() {
+		InputStream is = null;
+		try {
+			is = CallRegistry.class.getClassLoader().getResourceAsStream(INDEX);
+			if (is == null) {
+				return;
+			}
+			BufferedReader in = new BufferedReader(new InputStreamReader(is));
+			String line = in.readLine();
+			while (line != null) {
+				line = line.trim();
+				if ((line.length() > 0) && (!line.startsWith("#"))) {
+					register(line.toUpperCase());
+				}
+				line = in.readLine();
+			}
+		} catch (Exception e) {
+			// What we got is fine.  The rest will be found by name.
+		} finally {
+			try {
+				if (is != null) {
+					is.close();
+				}
+			} catch (Exception e) {
+			}
+		}
+	}
+
+	/**
+	 * Register a call.
+	 * @param upper name in upper case
+	 * @return its factory or null if there is no such call
+	 */
+	private static Factory register(String upper) {
+		Factory f = (Factory) byName.get(upper);
+		if (f != null) {
+			return f;
+		}
+		try {
+			Class t = Class.forName(PREFIX + upper);
+			if (!Call.class.isAssignableFrom(t)) {
+				return null;
+			}
+			f = new Factory(count, upper, t);
+			count++;
+			byName.put(upper, f);
+		} catch (Throwable e) {
+			// Not a call
+			f = null;
+		}
+		return f;
+	}
+}
@@ -86,7 +86,7 @@ public class Call_CHECK_PROCESS extends Call {
 			// Get the process and see if it is there
 			VMProcess pcb = sc.getKernel().getProcess(pid);
 			if (pcb == null)  result = Constants.FALSE;
-			else if (pcb.getState() >= VM.STATE_ACTIVE_THRESHOLD) {
+			else if (pcb.getProcessState() >= VM.STATE_ACTIVE_THRESHOLD) {
 				result = Constants.TRUE;
 			}
 			
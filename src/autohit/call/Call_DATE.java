@@ -66,7 +66,7 @@ public class Call_DATE extends Call {
 	 */
 	public String call() throws CallException {
 		Date d = new Date();
-		this.debug("returned=" + d.toString());
+		this.debug("returned={}", d);
 		return d.toString();
 	}
 
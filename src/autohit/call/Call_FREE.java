@@ -72,7 +72,7 @@ public class Call_FREE extends Call {
 		try {
 
 			name = this.requiredString("name");
-			log.debug("call:FREE.: Going to free= " + name);
+			log.debug("call:FREE.: Going to free= {}", name);
 
 			// Even if the Module.free() causes an exception, at least remove it
 			// from the persist
@@ -64,7 +64,7 @@ public class Call_GLOBAL_UNIQUE_INT extends Call {
 	 */
 	public String call() throws CallException {
 		String val = Integer.toString(sc.uniqueInteger() + this.numberGenerator());
-		this.debug("returned=" + val);
+		this.debug("returned={}", val);
 		return val;
 	}
 
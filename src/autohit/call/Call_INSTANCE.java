@@ -82,9 +82,9 @@ public class Call_INSTANCE extends Call {
 
 			// Create it
 			this.debug(
-				"Creating an instance of type=" + type + " and name=" + name);
+				"Creating an instance of type={} and name={}", type, name);
 			if (vmc.has(name)) {
-				this.debug("Instance of " + name + " exists and is usable.");
+				this.debug("Instance of {} exists and is usable.", name);
 			} else {
 
 				try {
@@ -96,7 +96,7 @@ public class Call_INSTANCE extends Call {
 					// persist it
 					vmc.persist(name, mod);
 
-					this.debug("Instantiated a [" + name + "].");
+					this.debug("Instantiated a [{}].", name);
 
 				} catch (ClassNotFoundException ef) {
 					throw new CallException(
@@ -0,0 +1,140 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.call;
+
+import autohit.common.Constants;
+import autohit.universe.Universe;
+import autohit.vm.VM;
+import autohit.vm.VMProcess;
+import autohit.vm.VMProcessPooled;
+
+/**
+ * JOIN call.  It will wait until the VM in a process is finished.  Use it on
+ * the pid an EXEC or RUN handed back.  A process on a pooled carrier gives up
+ * the carrier while it waits, and a threaded one just blocks, so nobody has to
+ * loop on CHECK_PROCESS and WAIT.  A pid that doesn't exist, or whose VM is
+ * already done, returns right away.
+ * <pre>
+ * REQURIES: logger, sc
+ * IGNORES: uni
+ * PARAMETERS (INPUT):
+ * pid= PID for the process to wait on.
+ * </pre>
+ * RETURNS: Nothing.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public class Call_JOIN extends Call {
+
+	/**
+	 * Implement this to handle load time initialization.  The 
+	 * four main fields will already be set--vmc, sc, log, and u.
+	 * You must implement this, but you don't have to do anything.
+	 * Remember that calls are cached per VM and reused as often
+	 * as possible.  There will be no thread-safety issues with the
+	 * VMCore or log, but the SystemContecxt and Universe may be shared.
+	 * @throws CallException
+	 */
+	public void load_chain() throws CallException {
+		// Nothing to do.
+	}
+
+	/**
+	 * Implement this to return the name of the CALL
+	 * @return name of the CALL
+	 */
+	public String name() {
+		return "JOIN";
+	}
+
+	/**
+	 * Execute it.
+	 * @return the result or null if there is no result
+	 */
+	public String call() throws CallException {
+
+		String name = null;
+
+		try {
+
+			// see if the parameter is passed
+			name = this.requiredString("pid");
+			int pid = Integer.parseInt(name);
+
+			// Get the VM, if there still is one
+			VMProcess pcb = sc.getKernel().getProcess(pid);
+			if (pcb == null)
+				return Constants.EMPTY_LEFT;
+			Object o = pcb.processAttribute(VMProcess.ATTRIBUTE_VM);
+			if (!(o instanceof VM))
+				return Constants.EMPTY_LEFT;
+			VM other = (VM) o;
+
+			if (other.core == vmc) {
+				throw new CallException(
+					this.format("A VM can't join itself.  pid=" + name),
+					CallException.CODE_CALL_PROGRAM_ERROR);
+			}
+
+			// If we are on a pooled carrier, give it up instead of
+			// blocking it.
+			VMProcessPooled carrier = VMProcessPooled.current();
+			if ((carrier != null) && (carrier.yieldUntil(other))) {
+				this.debug("Yielding carrier until pid={} is done", name);
+				return Constants.EMPTY_LEFT;
+			}
+
+			this.debug("Joining pid={}", name);
+			other.join();
+
+		} catch (NumberFormatException ne) {
+			// Ignore this.  This means the pid passed is bad.  There is nothing to wait for.
+
+		} catch (InterruptedException ie) {
+			this.info("Join interrupted!  Resuming.");
+
+		} catch (CallException e) {
+			throw e;
+
+		} catch (Exception ex) {
+			//any other is REAL bad
+			throw new CallException(
+				this.format("Serious fault.  error=" + ex.getMessage()),
+				CallException.CODE_CALL_UNRECOVERABLE_FAULT,
+				ex);
+		}
+		return Constants.EMPTY_LEFT;
+	}
+
+	/**
+	 * Execute using the passed universe, rather than the loaded.
+	 * @param uni a universe
+	 * @return the result or null if there is no result
+	 * @see autohit.universe.Universe
+	 */
+	public String call(Universe uni) throws CallException {
+		return this.call();
+	}
+}
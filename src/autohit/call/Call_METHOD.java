@@ -20,9 +20,12 @@
  */
 package autohit.call;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import autohit.call.modules.Module;
 import autohit.common.Constants;
 import autohit.universe.Universe;
+import autohit.vm.VMCore;
 
 /**
  * METHOD call.  Executes a method call into a Module instance.
@@ -34,11 +37,21 @@ import autohit.universe.Universe;
  * method= method name
  * </pre>
  * RETURNS: defined by the method, but will always be a String.
+ * <p>
+ * A linked i.method instruction keeps a Site.  Sites are shared by every VM
+ * running the routine, so a site holds nothing but its method name and an
+ * index.  What a call found, the module instance and the method's id, is
+ * kept by the core in VMCore.methods at the site's index.  It is used again
+ * as long as it is for the same site and instance name, and nothing has been
+ * persisted or freed since.  Site indexes past SITES_MAX share entries, so
+ * a core's table never gets bigger than that.
  *
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 16Jun03 
+ * <code>EPG - Initial - 16Jun03<br>
+ * EPG - Call sites with the method id - 17Oct26<br>
+ * EPG - Bindings kept per core - 17Oct26</code>
  * 
  */
 public class Call_METHOD extends Call {
@@ -46,6 +59,47 @@ public class Call_METHOD extends Call {
 	// Trim the size of result logging in debug mode
 	final static private int TRIM_SIZE = 500;
 
+	/**
+	 * Most entries in a core's binding table.  A power of two.
+	 */
+	public final static int SITES_MAX = 1024;
+
+	// Next site index
+	private final static AtomicInteger nextSite = new AtomicInteger(0);
+
+	/**
+	 * One i.method instruction.  It may be shared by any number of VMs.
+	 */
+	public static final class Site {
+
+		/**
+		 * Method name.
+		 */
+		public final String method;
+
+		/**
+		 * Index of this site's binding in a core.  Given out at link time.
+		 */
+		public final int index;
+
+		/**
+		 * @param m method name
+		 */
+		public Site(String m) {
+			method = m;
+			index = nextSite.getAndIncrement();
+		}
+	}
+
+	// What one core found for a site.  Only that core touches it.
+	private static final class Bound {
+		Site site;
+		int stamp;
+		String name;
+		Module mod;
+		int id;
+	}
+
 	/**
 	 * Implement this to handle load time initialization.  The 
 	 * four main fields will already be set--vmc, sc, log, and u.
@@ -118,21 +172,7 @@ public class Call_METHOD extends Call {
 			if (vmc.has(name)) {
 				Module mod = (Module) vmc.get(name);
 				result = mod.execute(method);
-
-				// To cut back on excessive logging, we'll trim the result.
-				if (log.debugState()) {
-					String trimresult;
-					if (result.length() > TRIM_SIZE) {
-						trimresult = result.substring(0, TRIM_SIZE);
-					} else {
-						trimresult = result;
-					}
-					this.debug(
-						"DONE calling method= "
-							+ method
-							+ ".  Result="
-							+ trimresult);
-				}
+				this.done(method, result);
 
 			} else {
 				// if it doesn't exist, that's a problem
@@ -155,6 +195,113 @@ public class Call_METHOD extends Call {
 		return result;
 	}
 
+	/**
+	 * Same as do_call(name, method), but for a call site.  If the core
+	 * still has the instance and the method's id for the site, there are
+	 * no lookups at all.
+	 * @param name Name of module
+	 * @param site the call site
+	 * @return the result or null if there is no result
+	 */
+	public String do_call(String name, Site site) throws CallException {
+
+		String result = Constants.EMPTY_LEFT;
+
+		try {
+
+			Object[] table = vmc.methods;
+			if ((table == null) || (site.index >= table.length)) {
+				table = this.grow(site.index);
+			}
+			int slot = site.index & (table.length - 1);
+			Bound b = (Bound) table[slot];
+			if ((b == null)
+				|| (b.site != site)
+				|| (b.stamp != vmc.persistStamp)
+				|| ((b.name != name) && (!b.name.equals(name)))) {
+
+				if (!vmc.has(name)) {
+					// if it doesn't exist, that's a problem
+					throw new CallException(
+						this.format("Instance of " + name + " doesn't exist."),
+						CallException.CODE_CALL_FAULT);
+				}
+				if (b == null) {
+					b = new Bound();
+					table[slot] = b;
+				}
+				b.mod = (Module) vmc.get(name);
+				b.id = b.mod.methodId(site.method);
+				b.site = site;
+				b.stamp = vmc.persistStamp;
+				b.name = name;
+			}
+			result = b.mod.execute(b.id, site.method);
+			this.done(site.method, result);
+
+		} catch (CallException e) {
+
+			throw e;
+
+		} catch (Exception ex) {
+			//any other is REAL bad
+			throw new CallException(
+				this.format("Serious fault.  error=" + ex.getMessage()),
+				CallException.CODE_CALL_UNRECOVERABLE_FAULT,
+				ex);
+		}
+		return result;
+	}
+
+	/**
+	 * Grow the core's binding table so it covers a site index, up to
+	 * SITES_MAX.  Sizes are powers of two, so a slot is index & (length-1).
+	 * Bindings move to their slot in the new table.
+	 * @param index the site index
+	 * @return the new table
+	 */
+	private Object[] grow(int index) {
+		Object[] old = vmc.methods;
+		if (old == null) {
+			old = new Object[0];
+		}
+		int size = (old.length == 0) ? 16 : old.length;
+		while ((size <= index) && (size < SITES_MAX)) {
+			size = size * 2;
+		}
+		if (size == old.length) {
+			return old;
+		}
+		Object[] table = new Object[size];
+		Bound b;
+		for (int slot = 0; slot < old.length; slot++) {
+			b = (Bound) old[slot];
+			if (b != null) {
+				table[b.site.index & (size - 1)] = b;
+			}
+		}
+		vmc.methods = table;
+		return table;
+	}
+
+	/**
+	 * Log the result, if debugging.
+	 */
+	private void done(String method, String result) {
+
+		// To cut back on excessive logging, we'll trim the result.
+		if (log.debugState()) {
+			String trimresult;
+			if (result.length() > TRIM_SIZE) {
+				trimresult = result.substring(0, TRIM_SIZE);
+			} else {
+				trimresult = result;
+			}
+			this.debug(
+				"DONE calling method= " + method + ".  Result=" + trimresult);
+		}
+	}
+
 	/**
 	 * Execute using the passed universe, rather than the loaded.
 	 * @param uni a universe
@@ -80,13 +80,12 @@ public class Call_NEW_TABLE extends Call {
 			name = (String) vmc.fetch("name");
 			if (vmc.has(name)) {
 				this.debug(
-					"Table named "
-						+ name
-						+ " already exists in persist.  New instance NOT created.");
+					"Table named {} already exists in persist.  New instance NOT created.",
+					name);
 			} else {
 				table = new Hashtable();
 				vmc.persist(name, table);
-				this.debug("Created a table named=" + name);
+				this.debug("Created a table named={}", name);
 			}
 
 		} catch (CallException ce) {
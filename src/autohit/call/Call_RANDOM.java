@@ -96,7 +96,8 @@ public class Call_RANDOM extends Call {
 				e);
 		}
 
-		this.debug("Random number selected = " + value);
+		if (log.debugState())
+			this.debug("Random number selected = " + value);
 
 		return Integer.toString(value);
 	}
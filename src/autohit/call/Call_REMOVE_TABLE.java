@@ -76,12 +76,11 @@ public class Call_REMOVE_TABLE extends Call {
 
 			if (vmc.has(name)) {
 				vmc.free(name);
-				this.debug("Removed a table named=" + name);
+				this.debug("Removed a table named={}", name);
 			} else {
 				this.debug(
-					"Table "
-						+ name
-						+ " not in persist.  Obviously, I cannot remove it.");
+					"Table {} not in persist.  Obviously, I cannot remove it.",
+					name);
 			}
 
 		} catch (CallException ce) {
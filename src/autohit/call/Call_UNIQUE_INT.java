@@ -65,7 +65,7 @@ public class Call_UNIQUE_INT extends Call {
 	 */
 	public String call() throws CallException {
 		String val = Integer.toString(sc.uniqueInteger());
-		this.debug("returned=" + val);
+		this.debug("returned={}", val);
 		return val;
 	}
 
@@ -22,6 +22,7 @@ package autohit.call;
 
 import autohit.common.Constants;
 import autohit.universe.Universe;
+import autohit.vm.VMProcessPooled;
 
 /**
  * WAIT call.  Waits for the specified milliseconds.
@@ -31,11 +32,14 @@ import autohit.universe.Universe;
  * PARAMETERS (INPUT):
  *	millis= time in milliseconds.  must be a long.
  * </pre>
+ * If the sim is running on a pooled process, it gives up its carrier for
+ * the time instead of sleeping on it.
  *
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 25Apr03</code>
+ * <code>EPG - Initial - 25Apr03<br>
+ * EPG - Yield pooled carriers - 17Oct26</code>
  */
 public class Call_WAIT extends Call {
 
@@ -72,7 +76,16 @@ public class Call_WAIT extends Call {
 
 			try {
 				long val = Long.parseLong(millis);
-				this.debug("Sleeping for milliseconds=" + millis);
+
+				// If we are on a pooled carrier, give it up instead of
+				// sleeping on it.
+				VMProcessPooled carrier = VMProcessPooled.current();
+				if ((carrier != null) && (carrier.yieldFor(val))) {
+					this.debug("Yielding carrier for milliseconds={}", millis);
+					return Constants.EMPTY_LEFT;
+				}
+
+				this.debug("Sleeping for milliseconds={}", millis);
 				Thread.sleep(val);
 
 			} catch (InterruptedException ie) {
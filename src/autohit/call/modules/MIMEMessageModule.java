@@ -75,7 +75,8 @@ import autohit.universe.UniverseException;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 7Aug03</code>
+ * <code>EPG - Initial - 7Aug03<br>
+ * EPG - Method table - 17Oct26</code>
  */
 public class MIMEMessageModule extends Module {
 
@@ -140,6 +141,34 @@ public class MIMEMessageModule extends Module {
 	private final static String method_TOUNI = "touni";
 	private final static String method_TOUNI_1_UNIOBJ = "uniobj";
 
+	/**
+	 * Method table.  A method's id is its index.
+	 */
+	private final static String[] METHODS =
+		{ method_START, method_MULTIPART, method_SETENCODING,
+			method_RESETENCODING, method_FROM, method_TO, method_CC,
+			method_BCC, method_SUBJECT, method_HEADER, method_ADDCONTENT,
+			method_ADDPART, method_ADDPARTENC, method_ADDPARTUNI,
+			method_ADDPARTUNIENC, method_SAVE, method_TOSTRING, method_TOUNI };
+	private final static int id_START = 0;
+	private final static int id_MULTIPART = 1;
+	private final static int id_SETENCODING = 2;
+	private final static int id_RESETENCODING = 3;
+	private final static int id_FROM = 4;
+	private final static int id_TO = 5;
+	private final static int id_CC = 6;
+	private final static int id_BCC = 7;
+	private final static int id_SUBJECT = 8;
+	private final static int id_HEADER = 9;
+	private final static int id_ADDCONTENT = 10;
+	private final static int id_ADDPART = 11;
+	private final static int id_ADDPARTENC = 12;
+	private final static int id_ADDPARTUNI = 13;
+	private final static int id_ADDPARTUNIENC = 14;
+	private final static int id_SAVE = 15;
+	private final static int id_TOSTRING = 16;
+	private final static int id_TOUNI = 17;
+
 	private MimeMessage msg;
 	private Multipart mp;
 	private Session defaultSession;
@@ -158,112 +187,168 @@ public class MIMEMessageModule extends Module {
 	// IMPLEMENTORS
 
 	/**
-	 * Execute a named method.  You must implement this method.
+	 * Execute a named method.  It finds the id and runs it by id.
+	 * @param name name of the method
+	 * @throws CallException
+	 */
+	public Object execute_chain(String name) throws CallException {
+		return this.execute_chain(this.methodId(name), name);
+	}
+
+	/**
+	 * The method table.
+	 * @return method names, by id
+	 */
+	public String[] methods() {
+		return METHODS;
+	}
+
+	/**
+	 * Execute a method by id.  You must implement this method.
 	 * You can call any of the helpers for data and services.
 	 * The returned object better be a string (for now).
+	 * @param id the method's id, or NO_METHOD
 	 * @param name name of the method
 	 * @see autohit.common.NOPair
 	 * @throws CallException
 	 */
-	public Object execute_chain(String name) throws CallException {
+	public Object execute_chain(int id, String name) throws CallException {
 
 		Object response = Constants.EMPTY_LEFT;
 		Object thingie;
 
-		if (name.equals(method_START)) {
-			this.start();
-
-		} else if (name.equals(method_MULTIPART)) {
-			this.multipart();
-
-		} else if (name.equals(method_SETENCODING)) {
-			this.setencoding(this.required(method_SETENCODING_1_ENC, name));
-
-		} else if (name.equals(method_RESETENCODING)) {
-			this.resetencoding();
-
-		} else if (name.equals(method_FROM)) {
-			String param1 = this.required(method_FROM_1_ADDR, name);
-			String param2 = this.optional(method_FROM_2_PERSONAL);
-			if (param2 == null)
-				param2 = param1;
-			this.from(param1, param2);
-
-		} else if (name.equals(method_TO)) {
-			String param1 = this.required(method_TO_1_ADDR, name);
-			String param2 = this.optional(method_TO_2_PERSONAL);
-			if (param2 == null)
-				param2 = param1;
-			this.recipient(param1, param2, Message.RecipientType.TO);
-
-		} else if (name.equals(method_CC)) {
-			String param1 = this.required(method_CC_1_ADDR, name);
-			String param2 = this.optional(method_CC_2_PERSONAL);
-			if (param2 == null)
-				param2 = param1;
-			this.recipient(param1, param2, Message.RecipientType.CC);
-
-		} else if (name.equals(method_BCC)) {
-			String param1 = this.required(method_BCC_1_ADDR, name);
-			String param2 = this.optional(method_BCC_2_PERSONAL);
-			if (param2 == null)
-				param2 = param1;
-			this.recipient(param1, param2, Message.RecipientType.BCC);
-
-		} else if (name.equals(method_SUBJECT)) {
-			this.subject(this.required(method_SUBJECT_1_STRING, name));
-
-		} else if (name.equals(method_HEADER)) {
-			this.header(
-				this.required(method_HEADER_1_NAME, name),
-				this.required(method_HEADER_2_VALUE, name));
-
-		} else if (name.equals(method_ADDCONTENT)) {
-			this.addcontent(this.required(method_ADDCONTENT_1_TEXT, name));
-
-		} else if (name.equals(method_ADDPART)) {
-			this.addpart(
-				this.required(method_ADDPART_1_TEXT, name),
-				this.required(method_ADDPART_2_CONTENTID, name),
-				this.required(method_ADDPART_3_DESCRIPTION, name));
-
-		} else if (name.equals(method_ADDPARTENC)) {
-			this.addpartenc(
-				this.required(method_ADDPARTENC_1_TEXT, name),
-				this.required(method_ADDPARTENC_2_TENC, name),
-				this.required(method_ADDPARTENC_3_CONTENTID, name),
-				this.required(method_ADDPARTENC_4_CENC, name),
-				this.required(method_ADDPARTENC_5_DESCRIPTION, name),
-				this.required(method_ADDPARTENC_6_DENC, name));
-
-		} else if (name.equals(method_ADDPARTUNI)) {
-			this.addpartuni(
-				this.required(method_ADDPARTUNI_1_UNIOBJ, name),
-				this.required(method_ADDPARTUNI_2_CONTENTID, name),
-				this.required(method_ADDPARTUNI_3_DESCRIPTION, name),
-				this.required(method_ADDPARTUNI_4_TYPE, name));
-
-		} else if (name.equals(method_ADDPARTUNIENC)) {
-			this.addpartunienc(
-				this.required(method_ADDPARTUNIENC_1_UNIOBJ, name),
-				this.required(method_ADDPARTUNIENC_2_TENC, name),
-				this.required(method_ADDPARTUNIENC_3_CONTENTID, name),
-				this.required(method_ADDPARTUNIENC_4_CENC, name),
-				this.required(method_ADDPARTUNIENC_5_DESCRIPTION, name),
-				this.required(method_ADDPARTUNIENC_6_DENC, name),
-				this.required(method_ADDPARTUNIENC_7_TYPE, name));
-
-		} else if (name.equals(method_SAVE)) {
-			this.save();
-
-		} else if (name.equals(method_TOSTRING)) {
-			response = this.mtostring();
-
-		} else if (name.equals(method_TOUNI)) {
-			this.touni(this.required(method_TOUNI_1_UNIOBJ, name));
+		switch (id) {
+			case id_START : {
+				this.start();
+				break;
+			}
 
-		} else {
-			error("Not a provided method.  method=" + name);
+			case id_MULTIPART : {
+				this.multipart();
+				break;
+			}
+
+			case id_SETENCODING : {
+				this.setencoding(this.required(method_SETENCODING_1_ENC, name));
+				break;
+			}
+
+			case id_RESETENCODING : {
+				this.resetencoding();
+				break;
+			}
+
+			case id_FROM : {
+				String param1 = this.required(method_FROM_1_ADDR, name);
+				String param2 = this.optional(method_FROM_2_PERSONAL);
+				if (param2 == null)
+					param2 = param1;
+				this.from(param1, param2);
+				break;
+			}
+
+			case id_TO : {
+				String param1 = this.required(method_TO_1_ADDR, name);
+				String param2 = this.optional(method_TO_2_PERSONAL);
+				if (param2 == null)
+					param2 = param1;
+				this.recipient(param1, param2, Message.RecipientType.TO);
+				break;
+			}
+
+			case id_CC : {
+				String param1 = this.required(method_CC_1_ADDR, name);
+				String param2 = this.optional(method_CC_2_PERSONAL);
+				if (param2 == null)
+					param2 = param1;
+				this.recipient(param1, param2, Message.RecipientType.CC);
+				break;
+			}
+
+			case id_BCC : {
+				String param1 = this.required(method_BCC_1_ADDR, name);
+				String param2 = this.optional(method_BCC_2_PERSONAL);
+				if (param2 == null)
+					param2 = param1;
+				this.recipient(param1, param2, Message.RecipientType.BCC);
+				break;
+			}
+
+			case id_SUBJECT : {
+				this.subject(this.required(method_SUBJECT_1_STRING, name));
+				break;
+			}
+
+			case id_HEADER : {
+				this.header(
+					this.required(method_HEADER_1_NAME, name),
+					this.required(method_HEADER_2_VALUE, name));
+				break;
+			}
+
+			case id_ADDCONTENT : {
+				this.addcontent(this.required(method_ADDCONTENT_1_TEXT, name));
+				break;
+			}
+
+			case id_ADDPART : {
+				this.addpart(
+					this.required(method_ADDPART_1_TEXT, name),
+					this.required(method_ADDPART_2_CONTENTID, name),
+					this.required(method_ADDPART_3_DESCRIPTION, name));
+				break;
+			}
+
+			case id_ADDPARTENC : {
+				this.addpartenc(
+					this.required(method_ADDPARTENC_1_TEXT, name),
+					this.required(method_ADDPARTENC_2_TENC, name),
+					this.required(method_ADDPARTENC_3_CONTENTID, name),
+					this.required(method_ADDPARTENC_4_CENC, name),
+					this.required(method_ADDPARTENC_5_DESCRIPTION, name),
+					this.required(method_ADDPARTENC_6_DENC, name));
+				break;
+			}
+
+			case id_ADDPARTUNI : {
+				this.addpartuni(
+					this.required(method_ADDPARTUNI_1_UNIOBJ, name),
+					this.required(method_ADDPARTUNI_2_CONTENTID, name),
+					this.required(method_ADDPARTUNI_3_DESCRIPTION, name),
+					this.required(method_ADDPARTUNI_4_TYPE, name));
+				break;
+			}
+
+			case id_ADDPARTUNIENC : {
+				this.addpartunienc(
+					this.required(method_ADDPARTUNIENC_1_UNIOBJ, name),
+					this.required(method_ADDPARTUNIENC_2_TENC, name),
+					this.required(method_ADDPARTUNIENC_3_CONTENTID, name),
+					this.required(method_ADDPARTUNIENC_4_CENC, name),
+					this.required(method_ADDPARTUNIENC_5_DESCRIPTION, name),
+					this.required(method_ADDPARTUNIENC_6_DENC, name),
+					this.required(method_ADDPARTUNIENC_7_TYPE, name));
+				break;
+			}
+
+			case id_SAVE : {
+				this.save();
+				break;
+			}
+
+			case id_TOSTRING : {
+				response = this.mtostring();
+				break;
+			}
+
+			case id_TOUNI : {
+				this.touni(this.required(method_TOUNI_1_UNIOBJ, name));
+				break;
+			}
+
+			default : {
+				error("Not a provided method.  method=" + name);
+			}
 		}
 		return response;
 	}
@@ -37,17 +37,32 @@ import autohit.server.SystemContext;
  * <p>
  * All protected methods are helpers for the execute.
  * <p>
+ * A module may also declare a method table by overriding methods().  A
+ * method's id is its index in the table.  The METHOD call works out the id
+ * once per call site and calls execute(id, name), which lands in
+ * execute_chain(id, name).  A module with a table should override that and
+ * switch on the id.  One without a table doesn't have to do anything; its
+ * methods all get NO_METHOD and go to execute_chain(name).
+ * <p>
  * Modules are not allowed to have methods called "name"
  *
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
  * <code>EPG - Initial - 14Jun03<br>
- * EPG - make SC visible - 3 Sep03</code>
+ * EPG - make SC visible - 3 Sep03<br>
+ * EPG - Parameterized debug - 17Oct26<br>
+ * EPG - Method table and dispatch by id - 17Oct26</code>
  * 
  */
 public abstract class Module {
 
+	/**
+	 * Id for a method that isn't in the table, or any method of a module
+	 * without one.
+	 */
+	public final static int NO_METHOD = -1;
+
 	// Services visible to the implementor
 	protected VMCore visCore;
 	protected Universe visUniverse;
@@ -116,12 +131,23 @@ public abstract class Module {
 	 * @throws CallException
 	 */
 	public String execute(String methodName) throws CallException {
+		return this.execute(this.methodId(methodName), methodName);
+	}
+
+	/**
+	 * Execute a method by id
+	 * @param id the method's id from methodId()
+	 * @param methodName the name of the method
+	 * @return any resultant object String
+	 * @throws CallException
+	 */
+	public String execute(int id, String methodName) throws CallException {
 
 		Object thang = null;
 
 		// Abstracting for future use.
 		try {
-			thang = this.execute_chain(methodName);
+			thang = this.execute_chain(id, methodName);
 		} catch (CallException e) {
 			throw e;
 		} catch (Exception ex) {
@@ -140,6 +166,23 @@ public abstract class Module {
 		return (String) thang;
 	}
 
+	/**
+	 * Find a method's id.  This searches the table, so do it once and keep
+	 * the id.  Ids never change for a module class.
+	 * @param methodName the name of the method
+	 * @return the id or NO_METHOD
+	 */
+	public int methodId(String methodName) {
+		String[] table = this.methods();
+		if (table != null) {
+			for (int index = 0; index < table.length; index++) {
+				if (table[index].equals(methodName))
+					return index;
+			}
+		}
+		return NO_METHOD;
+	}
+
 	// HELPERS TO THE SUBCLASS
 
 	/**
@@ -236,9 +279,33 @@ public abstract class Module {
 	 * @param msg event message
 	 */
 	protected void debug(String msg) {
-		visLogger.debug(
-			"module:" + myName + ":DEBUG " + msg,
-			AutohitErrorCodes.CODE_DEBUGGING_MODULES);
+		if (visLogger.debugState())
+			visLogger.debug(
+				"module:" + myName + ":DEBUG " + msg,
+				AutohitErrorCodes.CODE_DEBUGGING_MODULES);
+	}
+
+	/**
+	 * Local method for logging debug information.  Nothing is formatted
+	 * unless debugging is on.
+	 * @param pattern event message with a {} for the argument
+	 * @param a the argument
+	 */
+	protected void debug(String pattern, Object a) {
+		if (visLogger.debugState())
+			this.debug(AutohitLogInjectorWrapper.format(pattern, new Object[] { a }));
+	}
+
+	/**
+	 * Local method for logging debug information.  Nothing is formatted
+	 * unless debugging is on.
+	 * @param pattern event message with a {} for each argument
+	 * @param a the first argument
+	 * @param b the second argument
+	 */
+	protected void debug(String pattern, Object a, Object b) {
+		if (visLogger.debugState())
+			this.debug(AutohitLogInjectorWrapper.format(pattern, new Object[] { a, b }));
 	}
 
 	/**
@@ -411,6 +478,26 @@ public abstract class Module {
 	 */
 	public abstract Object execute_chain(String name) throws CallException;
 
+	/**
+	 * Execute a method by id.  Override this if the module has a method table.
+	 * Unless it is overridden, it runs the method by name.
+	 * @param id the method's id, or NO_METHOD
+	 * @param name name of the method
+	 * @throws CallException
+	 */
+	public Object execute_chain(int id, String name) throws CallException {
+		return this.execute_chain(name);
+	}
+
+	/**
+	 * The method table.  Override this to give the module one.  It should
+	 * return the same array every time.
+	 * @return method names by id, or null if there isn't a table
+	 */
+	public String[] methods() {
+		return null;
+	}
+
 	/**
 	 * Allow the subclass a chance to initialize.  At a minium, an 
 	 * implementor should create an empty method.
@@ -21,15 +21,20 @@
 package autohit.call.modules;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.cookie.CookiePolicy;
 import org.apache.commons.httpclient.methods.GetMethod;
@@ -40,16 +45,37 @@ import autohit.call.CallException;
 import autohit.common.AutohitProperties;
 import autohit.common.Constants;
 import autohit.common.EasySSLProtocolSocketFactory;
+import autohit.server.HttpBatchPool;
+import autohit.server.HttpPool;
 
 /**
  * Simple http module. There is a client/per session at this time. The property
  * "wire" sets if the very noisy HttpClient wire logging is turned on or not.
  * the most recent instantiation of this module will set the HttpClient property
  * for all instances.
+ * <p>
+ * Sessions borrow their connections from the context's shared pool, so
+ * kept-alive connections outlive a session and are reused by the next one
+ * to the same host.
+ * <p>
+ * The batch method fetches a whole TABLE of urls at once, with help from the
+ * context's shared batch workers.  The batch width bounds how many are in
+ * flight for that batch, the workers bound how many batch threads there are
+ * across the whole jvm, and the pool bounds how many connections are open to
+ * the host.
+ * Each result goes in the result TABLE under the url's name, and its status
+ * code under the name plus ".status".  A request that fails gets an empty
+ * result and status 0.  The latency method reports on the last batch.
  * 
  * @author Erich P. Gatejen
  * @version 1.0 <i>Version History </i> <code>EPG - Initial - 22Jun03<br>
- * EPG - Set wire property - 2Sep03</code>
+ * EPG - Set wire property - 2Sep03<br>
+ * EPG - Parameterized debug - 17Oct26<br>
+ * EPG - Method table - 17Oct26<br>
+ * EPG - Connections from the shared pool - 17Oct26<br>
+ * EPG - Parallel batch method - 17Oct26<br>
+ * EPG - Batches run on the shared batch workers - 17Oct26<br>
+ * EPG - Every batch request is counted, batch waits can be interrupted - 17Oct26</code>
  *  
  */
 public class SimpleHttpModule extends Module {
@@ -76,13 +102,40 @@ public class SimpleHttpModule extends Module {
     private final static String method_POST_2_TABLE = "table";
     private final static String method_TIMEOUT = "timeout";
     private final static String method_TIMEOUT_1_MILLIS = "millis";
+    private final static String method_BATCH = "batch";
+    private final static String method_BATCH_1_TABLE = "table";
+    private final static String method_BATCH_2_RESULT = "result";
+    private final static String method_BATCH_3_FORM = "form";
+    private final static String method_BATCH_4_WIDTH = "width";
+    private final static String method_BATCH_5_TIMEOUT = "timeout";
+    private final static String method_LATENCY = "latency";
+
+    /**
+     * Method table.  A method's id is its index.
+     */
+    private final static String[] METHODS =
+        { method_SESSION, method_SESSIONHTTPS, method_TIMEOUT, method_GET,
+            method_POST, method_DONE, method_CREDENTIALS, method_BATCH,
+            method_LATENCY };
+    private final static int id_SESSION = 0;
+    private final static int id_SESSIONHTTPS = 1;
+    private final static int id_TIMEOUT = 2;
+    private final static int id_GET = 3;
+    private final static int id_POST = 4;
+    private final static int id_DONE = 5;
+    private final static int id_CREDENTIALS = 6;
+    private final static int id_BATCH = 7;
+    private final static int id_LATENCY = 8;
 
     private final static int DEFAULT_TIMEOUT = 10000; // 10 seconds
     private final static int DEFAULT_HTTP = 80;
     private final static int DEFAULT_HTTPS = 443;    
+    private final static int DEFAULT_BATCH_WIDTH = 8;
+    private final static String STATUS_SUFFIX = ".status";
     
     private HttpClient httpClient;
     private Credentials creds;
+    private Batch lastBatch;
     boolean started;
 
     /**
@@ -95,16 +148,34 @@ public class SimpleHttpModule extends Module {
     // IMPLEMENTORS
 
     /**
-     * Execute a named method. You must implement this method. You can call any
+     * Execute a named method.  It finds the id and runs it by id.
+     * @param name name of the method
+     * @throws CallException
+     */
+    public Object execute_chain(String name) throws CallException {
+        return this.execute_chain(this.methodId(name), name);
+    }
+
+    /**
+     * The method table.
+     * @return method names, by id
+     */
+    public String[] methods() {
+        return METHODS;
+    }
+
+    /**
+     * Execute a method by id. You must implement this method. You can call any
      * of the helpers for data and services. The returned object better be a
      * string (for now).
      * 
+     * @param id the method's id, or NO_METHOD
      * @param name
      *            name of the method
      * @see autohit.common.NOPair
      * @throws CallException
      */
-    public Object execute_chain(String name) throws CallException {
+    public Object execute_chain(int id, String name) throws CallException {
 
         Object response = null;
         String param1;
@@ -112,101 +183,146 @@ public class SimpleHttpModule extends Module {
         Object thingie;
         int port = DEFAULT_HTTP;
 
-        if (name.equals(method_SESSION)) {
-
-            param1 = (String) getParam(method_SESSION_1_ADDRESS);
-            if (param1 == null) { throw buildException("Serious FAULT while creating session with start method.  Required 'address' parameter not provided",
-                    CallException.CODE_MODULE_FAULT); }
-
-            // port is optional
-            param2 = (String) getParam(method_SESSION_2_PORT);
-            if (param2 != null) {
-                try {
-                    port = Integer.parseInt(param2);
-                } catch (Exception e) {
-                    error("Bad port parameter for start method.  Defaulting to " + DEFAULT_HTTP + "  Errored parameter=" + param2);
-                    port = DEFAULT_HTTP;
+        switch (id) {
+            case id_SESSION : {
+                param1 = (String) getParam(method_SESSION_1_ADDRESS);
+                if (param1 == null) { throw buildException("Serious FAULT while creating session with start method.  Required 'address' parameter not provided",
+                        CallException.CODE_MODULE_FAULT); }
+
+                // port is optional
+                param2 = (String) getParam(method_SESSION_2_PORT);
+                if (param2 != null) {
+                    try {
+                        port = Integer.parseInt(param2);
+                    } catch (Exception e) {
+                        error("Bad port parameter for start method.  Defaulting to " + DEFAULT_HTTP + "  Errored parameter=" + param2);
+                        port = DEFAULT_HTTP;
+                    }
                 }
+
+                // Do it
+                this.start(param1, port);
+                response = Constants.EMPTY_LEFT;
+                break;
             }
 
-            // Do it
-            this.start(param1, port);
-            response = Constants.EMPTY_LEFT;
+            case id_SESSIONHTTPS : {
+                param1 = (String) getParam(method_SESSIONHTTPS_1_ADDRESS);
+                if (param1 == null) { throw buildException("Serious FAULT while creating session with start method.  Required 'address' parameter not provided",
+                        CallException.CODE_MODULE_FAULT); }
+
+                // port is optional
+                param2 = (String) getParam(method_SESSIONHTTPS_2_PORT);
+                if (param2 != null) {
+                    try {
+                        port = Integer.parseInt(param2);
+                    } catch (Exception e) {
+                        error("Bad port parameter for start method.  Defaulting to " + DEFAULT_HTTPS + "  Errored parameter=" + param2);
+                        port = DEFAULT_HTTP;
+                    }
+                }
 
-        } else if (name.equals(method_SESSIONHTTPS)) {
+                // Do it
+                this.starthttps(param1, port);
+                response = Constants.EMPTY_LEFT;
+                break;
+            }
 
-            param1 = (String) getParam(method_SESSIONHTTPS_1_ADDRESS);
-            if (param1 == null) { throw buildException("Serious FAULT while creating session with start method.  Required 'address' parameter not provided",
-                    CallException.CODE_MODULE_FAULT); }
+            case id_TIMEOUT : {
+                if (started == false) { throw buildException("module:SimpleHttp:Tried to set timeout when a session wasn't started.",
+                        CallException.CODE_MODULE_FAULT); }
+                param1 = (String) getParam(method_TIMEOUT_1_MILLIS);
+                if (param1 == null) {
+                    error("Missing 'millis' parameter for timeout method.");
+                } else {
+                    try {
+                        httpClient.setConnectionTimeout(Integer.parseInt(param1));
+                    } catch (Exception e) {
+                        error("Paramater 'millis' for timeout method is malformed.");
+                    }
+                }
+                break;
+            }
 
-            // port is optional
-            param2 = (String) getParam(method_SESSIONHTTPS_2_PORT);
-            if (param2 != null) {
-                try {
-                    port = Integer.parseInt(param2);
-                } catch (Exception e) {
-                    error("Bad port parameter for start method.  Defaulting to " + DEFAULT_HTTPS + "  Errored parameter=" + param2);
-                    port = DEFAULT_HTTP;
+            case id_GET : {
+                param1 = (String) getParam(method_GET_1_URL);
+                if (param1 == null) {
+                    error("Missing 'url' parameter for get method.  Aborting get.");
+                } else {
+                    response = this.get(param1);
                 }
+                break;
             }
 
-            // Do it
-            this.starthttps(param1, port);
-            response = Constants.EMPTY_LEFT;
-
-        } else if (name.equals(method_TIMEOUT)) {
-            if (started == false) { throw buildException("module:SimpleHttp:Tried to set timeout when a session wasn't started.",
-                    CallException.CODE_MODULE_FAULT); }
-            param1 = (String) getParam(method_TIMEOUT_1_MILLIS);
-            if (param1 == null) {
-                error("Missing 'millis' parameter for timeout method.");
-            } else {
-                try {
-                    httpClient.setConnectionTimeout(Integer.parseInt(param1));
-                } catch (Exception e) {
-                    error("Paramater 'millis' for timeout method is malformed.");
+            case id_POST : {
+                param1 = (String) getParam(method_POST_1_URL);
+                param2 = (String) getParam(method_POST_2_TABLE);
+                if ((param1 == null) || (param2 == null)) {
+                    error("Missing parameter for post method.  Aborting post.");
+                } else {
+                    thingie = this.getPersist(param2);
+                    if (thingie instanceof Hashtable) {
+                        response = this.post(param1, (Hashtable) thingie);
+                    } else {
+                        throw buildException("Serious FAULT in method POST.  Expected " + param2
+                                + " to be a TABLE, but it isn't.  Faulting to prevent runaway execution.", CallException.CODE_MODULE_FAULT);
+                    }
                 }
+                break;
             }
 
-        } else if (name.equals(method_GET)) {
-            param1 = (String) getParam(method_GET_1_URL);
-            if (param1 == null) {
-                error("Missing 'url' parameter for get method.  Aborting get.");
-            } else {
-                response = this.get(param1);
+            case id_DONE : {
+                this.done();
+                response = Constants.EMPTY_LEFT;
+                break;
             }
 
-        } else if (name.equals(method_POST)) {
-            param1 = (String) getParam(method_POST_1_URL);
-            param2 = (String) getParam(method_POST_2_TABLE);
-            if ((param1 == null) || (param2 == null)) {
-                error("Missing parameter for post method.  Aborting post.");
-            } else {
-                thingie = this.getPersist(param2);
-                if (thingie instanceof Hashtable) {
-                    response = this.post(param1, (Hashtable) thingie);
+            case id_CREDENTIALS : {
+                param1 = (String) getParam(method_CREDENTIALS_1_UID);
+                param2 = (String) getParam(method_CREDENTIALS_2_PASS);
+
+                if ((param1 == null) || (param2 == null)) { throw buildException(
+                        "Serious FAULT while setting credentials.  One or both of the required 'uid' and 'password' not provided", CallException.CODE_MODULE_FAULT); }
+                this.set_credentials(param1, param2);
+                response = Constants.EMPTY_LEFT;
+                break;
+            }
+
+            case id_BATCH : {
+                param1 = (String) getParam(method_BATCH_1_TABLE);
+                param2 = (String) getParam(method_BATCH_2_RESULT);
+                if ((param1 == null) || (param2 == null)) {
+                    error("Missing parameter for batch method.  Aborting batch.");
                 } else {
-                    throw buildException("Serious FAULT in method POST.  Expected " + param2
-                            + " to be a TABLE, but it isn't.  Faulting to prevent runaway execution.", CallException.CODE_MODULE_FAULT);
+                    thingie = this.getPersist(param1);
+                    if (!(thingie instanceof Hashtable)) { throw buildException("Serious FAULT in method BATCH.  Expected " + param1
+                            + " to be a TABLE, but it isn't.  Faulting to prevent runaway execution.", CallException.CODE_MODULE_FAULT); }
+
+                    // form is optional.  with one, it posts.
+                    Hashtable form = null;
+                    String param3 = (String) getParam(method_BATCH_3_FORM);
+                    if (param3 != null) {
+                        Object f = this.getPersist(param3);
+                        if (!(f instanceof Hashtable)) { throw buildException("Serious FAULT in method BATCH.  Expected " + param3
+                                + " to be a TABLE, but it isn't.  Faulting to prevent runaway execution.", CallException.CODE_MODULE_FAULT); }
+                        form = (Hashtable) f;
+                    }
+
+                    response = this.batch((Hashtable) thingie, this.table(param2), form, this.intParam(method_BATCH_4_WIDTH,
+                            DEFAULT_BATCH_WIDTH), this.intParam(method_BATCH_5_TIMEOUT, DEFAULT_TIMEOUT));
                 }
+                break;
             }
 
-        } else if (name.equals(method_DONE)) {
-            this.done();
-            response = Constants.EMPTY_LEFT;
-
-        } else if (name.equals(method_CREDENTIALS)) {
-            param1 = (String) getParam(method_CREDENTIALS_1_UID);
-            param2 = (String) getParam(method_CREDENTIALS_2_PASS);
-
-            if ((param1 == null) || (param2 == null)) { throw buildException(
-                    "Serious FAULT while setting credentials.  One or both of the required 'uid' and 'password' not provided", CallException.CODE_MODULE_FAULT); }
-            this.set_credentials(param1, param2);
-            response = Constants.EMPTY_LEFT;
+            case id_LATENCY : {
+                response = this.latency();
+                break;
+            }
 
-        } else {
-            error("Not a provided method.  method=" + name);
-            response = Constants.EMPTY_LEFT;
+            default : {
+                error("Not a provided method.  method=" + name);
+                response = Constants.EMPTY_LEFT;
+            }
         }
         return response;
     }
@@ -262,7 +378,7 @@ public class SimpleHttpModule extends Module {
     private void start(String addr, int port) throws CallException {
 
         try {
-            httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
+            httpClient = new HttpClient(this.manager());
             creds = null;
             HttpState initialState = new HttpState();
             initialState.setCookiePolicy(CookiePolicy.COMPATIBILITY);
@@ -291,10 +407,16 @@ public class SimpleHttpModule extends Module {
     private void starthttps(String addr, int port) throws CallException {
 
         try {
-            // buidl protocol
-            Protocol myhttps = new Protocol("https", new EasySSLProtocolSocketFactory(), port);
+            // buidl protocol.  The pool's is shared, so connections and ssl sessions are too.
+            Protocol myhttps;
+            HttpPool pool = visSC.getHttpPool();
+            if (pool != null) {
+                myhttps = pool.https(port);
+            } else {
+                myhttps = new Protocol("https", new EasySSLProtocolSocketFactory(), port);
+            }
 
-            httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
+            httpClient = new HttpClient(this.manager());
             creds = null;
             HttpState initialState = new HttpState();
             initialState.setCookiePolicy(CookiePolicy.COMPATIBILITY);
@@ -311,9 +433,21 @@ public class SimpleHttpModule extends Module {
         started = true;
     }
 
-    
     /**
-     * Done method. Dispose of state and everything.
+     * Connection manager for a new session. It is the context's shared pool
+     * if it has one, otherwise one just for this session.
+     * 
+     * @return the manager
+     */
+    private HttpConnectionManager manager() {
+        HttpPool pool = visSC.getHttpPool();
+        if (pool != null) { return pool; }
+        return new MultiThreadedHttpConnectionManager();
+    }
+
+    /**
+     * Done method. Dispose of state and everything.  The connections stay
+     * in the pool.
      * 
      * @throws CallException
      */
@@ -324,6 +458,117 @@ public class SimpleHttpModule extends Module {
         httpClient = null;
     }
 
+    /**
+     * Batch method. Fetch every url in the table at once, at most width at a
+     * time. The calling thread works the batch too, so it only asks the
+     * shared batch workers for width-1 helpers. It doesn't wait for helpers
+     * that haven't started, so if the workers are all busy, the calling
+     * thread does the whole batch itself. Without shared workers it always
+     * does. The batch gets a client of its own for the timeout, but it shares
+     * the session's connections, host and cookies.
+     * 
+     * @param urls
+     *            names to Url paths, not to include protocol, address, and
+     *            port (ie. "/goats/index.html").
+     * @param out
+     *            table for the results and status codes
+     * @param form
+     *            name/value pairs to post to each url, or null to get them
+     * @param width
+     *            most requests in flight
+     * @param timeout
+     *            milliseconds each request may take to connect or to read
+     * @return the number of requests that got a response
+     * @throws CallException
+     */
+    private String batch(Hashtable urls, Hashtable out, Hashtable form, int width, int timeout) throws CallException {
+
+        if (started == false) { throw buildException("module:SimpleHttp:Tried to batch when a session wasn't started.", CallException.CODE_MODULE_FAULT); }
+
+        HttpClient client = new HttpClient(httpClient.getHttpConnectionManager());
+        client.setState(httpClient.getState());
+        client.setHostConfiguration(httpClient.getHostConfiguration());
+        client.setConnectionTimeout(timeout);
+        client.setTimeout(timeout);
+        client.setHttpConnectionFactoryTimeout(timeout);
+
+        Batch b = new Batch(client, urls, out, form, timeout);
+        if (width < 1) {
+            width = 1;
+        }
+        if (width > b.size()) {
+            width = b.size();
+        }
+        debug("(batch)requests={} width={}", new Integer(b.size()), new Integer(width));
+
+        HttpBatchPool workers = visSC.getHttpBatchPool();
+        if (workers != null) {
+            int helpers = Math.min(width - 1, workers.size());
+            for (int index = 0; index < helpers; index++) {
+                workers.execute(b);
+            }
+        }
+        b.run();
+        b.await();
+
+        lastBatch = b;
+        log("(batch)" + b.report());
+        return Integer.toString(b.good);
+    }
+
+    /**
+     * Latency method. Report on the last batch.
+     * 
+     * @return the report, or empty if there hasn't been a batch
+     */
+    private String latency() {
+        if (lastBatch == null) { return Constants.EMPTY_LEFT; }
+        return lastBatch.report();
+    }
+
+    /**
+     * Find a persisted table. Make it if it isn't there.
+     * 
+     * @param name
+     *            the table's name
+     * @return the table
+     * @throws CallException
+     */
+    private Hashtable table(String name) throws CallException {
+        Object thingie = this.getPersist(name);
+        if (thingie == null) {
+            thingie = new Hashtable();
+            try {
+                visCore.persist(name, thingie);
+            } catch (Exception e) {
+                throw buildException("Could not create TABLE " + name + ".  message=" + e.getMessage(), CallException.CODE_MODULE_FAULT, e);
+            }
+        }
+        if (!(thingie instanceof Hashtable)) { throw buildException("Serious FAULT.  Expected " + name
+                + " to be a TABLE, but it isn't.  Faulting to prevent runaway execution.", CallException.CODE_MODULE_FAULT); }
+        return (Hashtable) thingie;
+    }
+
+    /**
+     * Get an optional integer parameter.
+     * 
+     * @param name
+     *            the parameter
+     * @param def
+     *            value if it isn't set or is malformed
+     * @return the value
+     */
+    private int intParam(String name, int def) {
+        String param = (String) getParam(name);
+        if (param == null) { return def; }
+        try {
+            return Integer.parseInt(param.trim());
+        } catch (Exception e) {
+            error("Paramater '" + name + "' is malformed.  Using " + def);
+            return def;
+        }
+    }
+
     /**
      * Start method. It will set the target address for the client, as well as
      * clearing any state.
@@ -348,7 +593,7 @@ public class SimpleHttpModule extends Module {
         //execute the method
         try {
             // Do it
-            debug("(get)get=" + url);
+            debug("(get)get={}", url);
             httpClient.executeMethod(method);
 
             // Process result
@@ -407,16 +652,18 @@ public class SimpleHttpModule extends Module {
                 if (value instanceof String) {
                     // Only take it if it is a string
                     method.addParameter(name, (String) value);
-                    debug("ADD POST - name=" + name + " value=" + (String) value);
+                    debug("ADD POST - name={} value={}", name, value);
                 }
             }
             //DEBUG
-            debug("DUMP POST-------------------------------");
-            debug(method.toString());
-            debug("DUMP POST-------------------------------");
+            if (isDebugging()) {
+                debug("DUMP POST-------------------------------");
+                debug(method.toString());
+                debug("DUMP POST-------------------------------");
+            }
 
             // Do it
-            debug("(post)post=" + url);
+            debug("(post)post={}", url);
             httpClient.executeMethod(method);
 
             // Process result
@@ -465,4 +712,215 @@ public class SimpleHttpModule extends Module {
         }
     }
 
+    /**
+     * One batch. Every worker runs it, taking the next request until there
+     * are none left. A worker that starts after that has nothing to do.
+     * Results go straight into the result table, which is synchronized.
+     */
+    private static class Batch implements Runnable {
+
+        private final HttpClient client;
+        private final String[] names;
+        private final String[] urls;
+        private final Hashtable out;
+        private final NameValuePair[] form;
+        private final int timeout;
+
+        /**
+         * Milliseconds each request took, by index. -1 if it failed.
+         */
+        private final long[] latency;
+        private int next;
+        int good;
+        int failed;
+        int timeouts;
+
+        Batch(HttpClient client, Hashtable table, Hashtable out, Hashtable nv, int timeout) {
+            this.client = client;
+            this.out = out;
+            this.timeout = timeout;
+
+            // Only take strings
+            Hashtable t = new Hashtable();
+            Enumeration e = table.keys();
+            Object key;
+            Object value;
+            while (e.hasMoreElements()) {
+                key = e.nextElement();
+                value = table.get(key);
+                if ((key instanceof String) && (value instanceof String)) {
+                    t.put(key, value);
+                }
+            }
+            names = new String[t.size()];
+            urls = new String[t.size()];
+            e = t.keys();
+            for (int index = 0; index < names.length; index++) {
+                names[index] = (String) e.nextElement();
+                urls[index] = (String) t.get(names[index]);
+            }
+            latency = new long[names.length];
+
+            if (nv == null) {
+                form = null;
+            } else {
+                t = new Hashtable();
+                e = nv.keys();
+                while (e.hasMoreElements()) {
+                    key = e.nextElement();
+                    value = nv.get(key);
+                    if ((key instanceof String) && (value instanceof String)) {
+                        t.put(key, new NameValuePair((String) key, (String) value));
+                    }
+                }
+                form = (NameValuePair[]) t.values().toArray(new NameValuePair[t.size()]);
+            }
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        public void run() {
+            int index;
+            while ((index = take()) >= 0) {
+                fetch(index);
+            }
+        }
+
+        private synchronized int take() {
+            if (next >= names.length) { return -1; }
+            return next++;
+        }
+
+        private synchronized void count(boolean ok, boolean timedout) {
+            if (ok) {
+                good++;
+            } else {
+                failed++;
+                if (timedout) {
+                    timeouts++;
+                }
+            }
+            if (good + failed == names.length) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for every request to be done, whoever took it. If the waiting
+         * thread is interrupted, nobody takes another request and it stops
+         * waiting with its interrupt flag set. Requests already in flight
+         * still finish on their own.
+         */
+        synchronized void await() {
+            while (good + failed < names.length) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    for (int index = next; index < names.length; index++) {
+                        latency[index] = -1;
+                    }
+                    next = names.length;
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void fetch(int index) {
+            HttpMethod method = null;
+            boolean ok = false;
+            boolean timedout = false;
+            long start = System.currentTimeMillis();
+            try {
+                if (form == null) {
+                    method = new GetMethod(urls[index]);
+                } else {
+                    PostMethod post = new PostMethod(urls[index]);
+                    post.addParameters(form);
+                    method = post;
+                }
+                method.setFollowRedirects(true);
+                method.setStrictMode(false);
+
+                client.executeMethod(method);
+                String result = method.getResponseBodyAsString();
+                latency[index] = System.currentTimeMillis() - start;
+                out.put(names[index], (result == null) ? Constants.EMPTY_LEFT : result);
+                out.put(names[index] + STATUS_SUFFIX, Integer.toString(method.getStatusCode()));
+                ok = true;
+            } catch (Exception e) {
+                // HttpClient wraps a read timeout in a recoverable exception, so go by the clock too.
+                // A timeout of 0 means there isn't one.
+                timedout = (e instanceof InterruptedIOException) || (e instanceof HttpConnection.ConnectionTimeoutException)
+                        || ((timeout > 0) && ((System.currentTimeMillis() - start) >= timeout));
+            } finally {
+                try {
+                    if (method != null) {
+                        method.releaseConnection();
+                        method.recycle();
+                    }
+                } catch (Exception e) {
+                    // Already FUBAR
+                }
+                // Count it no matter what was thrown, or the batch never finishes.
+                if (!ok) {
+                    latency[index] = -1;
+                    out.put(names[index], Constants.EMPTY_LEFT);
+                    out.put(names[index] + STATUS_SUFFIX, "0");
+                }
+                count(ok, timedout);
+            }
+        }
+
+        /**
+         * Counts, latency percentiles and a histogram in milliseconds. Each
+         * histogram bucket is a power of two and counts the requests that
+         * took no longer than it and longer than the one before.
+         */
+        synchronized String report() {
+            StringBuffer sb = new StringBuffer();
+            sb.append("requests=").append(names.length);
+            sb.append(" good=").append(good);
+            sb.append(" failed=").append(failed);
+            sb.append(" timeouts=").append(timeouts);
+            if (good == 0) { return sb.toString(); }
+
+            long[] sorted = new long[good];
+            long total = 0;
+            int n = 0;
+            for (int index = 0; index < latency.length; index++) {
+                if (latency[index] >= 0) {
+                    sorted[n++] = latency[index];
+                    total += latency[index];
+                }
+            }
+            Arrays.sort(sorted);
+            sb.append(" min=").append(sorted[0]);
+            sb.append(" mean=").append(total / n);
+            sb.append(" p50=").append(sorted[(n - 1) / 2]);
+            sb.append(" p90=").append(sorted[((n - 1) * 90) / 100]);
+            sb.append(" p99=").append(sorted[((n - 1) * 99) / 100]);
+            sb.append(" max=").append(sorted[n - 1]);
+
+            sb.append(" histogram");
+            long bucket = 1;
+            int index = 0;
+            int count;
+            while (index < n) {
+                count = 0;
+                while ((index < n) && (sorted[index] <= bucket)) {
+                    count++;
+                    index++;
+                }
+                if (count > 0) {
+                    sb.append(" <=").append(bucket).append(':').append(count);
+                }
+                bucket <<= 1;
+            }
+            return sb.toString();
+        }
+    }
+
 }
\ No newline at end of file
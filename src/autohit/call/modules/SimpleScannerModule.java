@@ -44,7 +44,8 @@ import autohit.common.Constants;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 3Jul03 
+ * <code>EPG - Initial - 3Jul03<br>
+ * EPG - Method table - 17Oct26</code>
  * 
  */
 public class SimpleScannerModule extends Module {
@@ -91,6 +92,24 @@ public class SimpleScannerModule extends Module {
 	private final static String method_MOVE = "move";
 	private final static String method_MOVE_1_ADD = "add";
 
+	/**
+	 * Method table.  A method's id is its index.
+	 */
+	private final static String[] METHODS =
+		{ method_START, method_ADDPATTERN, method_RESET, method_FIND,
+			method_SEEK, method_SEEK_CI, method_SET, method_MOVE, method_GET,
+			method_SUBSTRING };
+	private final static int id_START = 0;
+	private final static int id_ADDPATTERN = 1;
+	private final static int id_RESET = 2;
+	private final static int id_FIND = 3;
+	private final static int id_SEEK = 4;
+	private final static int id_SEEK_CI = 5;
+	private final static int id_SET = 6;
+	private final static int id_MOVE = 7;
+	private final static int id_GET = 8;
+	private final static int id_SUBSTRING = 9;
+
 	/**
 	 * Constructor
 	 */
@@ -101,63 +120,103 @@ public class SimpleScannerModule extends Module {
 	// IMPLEMENTORS
 
 	/**
-	 * Execute a named method.  You must implement this method.
+	 * Execute a named method.  It finds the id and runs it by id.
+	 * @param name name of the method
+	 * @throws CallException
+	 */
+	public Object execute_chain(String name) throws CallException {
+		return this.execute_chain(this.methodId(name), name);
+	}
+
+	/**
+	 * The method table.
+	 * @return method names, by id
+	 */
+	public String[] methods() {
+		return METHODS;
+	}
+
+	/**
+	 * Execute a method by id.  You must implement this method.
 	 * You can call any of the helpers for data and services.
 	 * The returned object better be a string (for now).
+	 * @param id the method's id, or NO_METHOD
 	 * @param name name of the method
 	 * @see autohit.common.NOPair
 	 * @throws CallException
 	 */
-	public Object execute_chain(String name) throws CallException {
+	public Object execute_chain(int id, String name) throws CallException {
 
 		Object response = Constants.EMPTY_LEFT;
 		String param1;
 		String param2;
 		Object thingie;
 
-		if (name.equals(method_START)) {
-			param1 = this.required(method_START_1_TARGET,name);
-			this.start(param1);
+		switch (id) {
+			case id_START : {
+				param1 = this.required(method_START_1_TARGET,name);
+				this.start(param1);
+				break;
+			}
 
-		} else if (name.equals(method_ADDPATTERN)) {
-			param1 = this.desired(method_ADDPATTERN_1_NAME,name);
-			param2 = this.desired(method_ADDPATTERN_2_PATTERN,name);
-			this.addpattern(param1, param2);
+			case id_ADDPATTERN : {
+				param1 = this.desired(method_ADDPATTERN_1_NAME,name);
+				param2 = this.desired(method_ADDPATTERN_2_PATTERN,name);
+				this.addpattern(param1, param2);
+				break;
+			}
 
-		} else if (name.equals(method_RESET)) {
-			this.reset();
+			case id_RESET : {
+				this.reset();
+				break;
+			}
 
-		} else if (name.equals(method_FIND)) {
-			param1 = this.required(method_FIND_1_NAME,name);
-			response = this.find(param1);
+			case id_FIND : {
+				param1 = this.required(method_FIND_1_NAME,name);
+				response = this.find(param1);
+				break;
+			}
+
+			case id_SEEK : {
+				param1 = this.required(method_SEEK_1_STRING,name);
+				response = this.seek(param1);
+				break;
+			}
 
-		} else if (name.equals(method_SEEK)) {
-			param1 = this.required(method_SEEK_1_STRING,name);
-			response = this.seek(param1);
-			
-		} else if (name.equals(method_SEEK_CI)) {
-			param1 = this.required(method_SEEK_CI_1_STRING,name);
-			response = this.seekinsensitive(param1);
+			case id_SEEK_CI : {
+				param1 = this.required(method_SEEK_CI_1_STRING,name);
+				response = this.seekinsensitive(param1);
+				break;
+			}
 
-		} else if (name.equals(method_SET)) {
-			param1 = this.required(method_SET_1_SPOT,name);
-			this.set(param1);
+			case id_SET : {
+				param1 = this.required(method_SET_1_SPOT,name);
+				this.set(param1);
+				break;
+			}
 
-		} else if (name.equals(method_MOVE)) {
-			param1 = this.required(method_MOVE_1_ADD,name);
-			this.move(param1);
+			case id_MOVE : {
+				param1 = this.required(method_MOVE_1_ADD,name);
+				this.move(param1);
+				break;
+			}
 
-		} else if (name.equals(method_GET)) {
-			response = this.get();
+			case id_GET : {
+				response = this.get();
+				break;
+			}
 
-		} else if (name.equals(method_SUBSTRING)) {
-			param1 = this.desired(method_SUBSTRING_1_START,name);
-			param2 = this.desired(method_SUBSTRING_2_END,name);
-			response = this.substring(param1, param2);
+			case id_SUBSTRING : {
+				param1 = this.desired(method_SUBSTRING_1_START,name);
+				param2 = this.desired(method_SUBSTRING_2_END,name);
+				response = this.substring(param1, param2);
+				break;
+			}
 
-		} else {
-			error("Not a provided method.  method=" + name);
-			response = Constants.EMPTY_LEFT;
+			default : {
+				error("Not a provided method.  method=" + name);
+				response = Constants.EMPTY_LEFT;
+			}
 		}
 		return response;
 	}
@@ -254,7 +313,8 @@ public class SimpleScannerModule extends Module {
 				local = m.start();
 				result = Integer.toString(m.end() - local);
 				cursor = cursor + local;
-				debug("matched.  Cursor=" + cursor + "  result=" + result);
+				if (isDebugging())
+					debug("matched.  Cursor=" + cursor + "  result=" + result);
 			}
 
 		} catch (Exception e) {
@@ -287,7 +347,8 @@ public class SimpleScannerModule extends Module {
 			if (idx >= 0) {
 				cursor = idx + cursor; // Add to the original cursor
 				result = Constants.TRUE;
-				debug("Seek found.  Cursor=" + cursor);
+				if (isDebugging())
+					debug("Seek found.  Cursor=" + cursor);
 			}
 
 		} catch (Exception e) {
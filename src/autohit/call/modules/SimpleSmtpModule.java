@@ -24,7 +24,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.Writer;
 
 import org.apache.commons.net.io.Util;
@@ -35,7 +34,7 @@ import org.apache.commons.net.smtp.SMTPConnectionClosedException;
 import autohit.call.CallException;
 import autohit.common.Constants;
 import autohit.universe.UniverseException;
-import autohit.universe.UniverseUtils;
+import autohit.vm.VMException;
 import autohit.vm.process.StringProcessors;
 
 /**
@@ -59,12 +58,13 @@ import autohit.vm.process.StringProcessors;
  * </code>
  * 
  * @author Erich P. Gatejen
- * @version 1.0 <i>Version History</i><code>EPG - Initial - 11Aug03</code>
+ * @version 1.0 <i>Version History</i><code>EPG - Initial - 11Aug03<br>
+ * EPG - senduniscrub streams into the message, no tempfile - 17Oct26<br>
+ * EPG - Method table - 17Oct26</code>
  */
 public class SimpleSmtpModule extends Module {
 
 	private final static String myNAME = "SimpleSmtp";
-	private final static String TEMPFILE = "temp/smtpscrub";
 
 	private final static String ERROR_STRING_FOR_FAILURE = "451";
 	private final static int SMTP_ERROR_THRESHOLD = 300;
@@ -109,6 +109,32 @@ public class SimpleSmtpModule extends Module {
 	private final static String method_MAILITUNI_4_HOSTNAME = "host";
 	private final static String method_MAILITUNI_5_PORT = "port";
 
+	/**
+	 * Method table.  A method's id is its index.
+	 */
+	private final static String[] METHODS =
+		{ method_START, method_LOGIN, method_SENDER, method_ADDSENDERRELAY,
+			method_SENDERRELAY, method_RECIPIENT, method_ADDRECIPIENTRELAY,
+			method_NEWRECIPIENTRELAY, method_RECIPIENTRELAY, method_SEND,
+			method_SENDUNI, method_SENDUNISCRUB, method_RESET, method_DONE,
+			method_MAILIT, method_MAILITUNI };
+	private final static int id_START = 0;
+	private final static int id_LOGIN = 1;
+	private final static int id_SENDER = 2;
+	private final static int id_ADDSENDERRELAY = 3;
+	private final static int id_SENDERRELAY = 4;
+	private final static int id_RECIPIENT = 5;
+	private final static int id_ADDRECIPIENTRELAY = 6;
+	private final static int id_NEWRECIPIENTRELAY = 7;
+	private final static int id_RECIPIENTRELAY = 8;
+	private final static int id_SEND = 9;
+	private final static int id_SENDUNI = 10;
+	private final static int id_SENDUNISCRUB = 11;
+	private final static int id_RESET = 12;
+	private final static int id_DONE = 13;
+	private final static int id_MAILIT = 14;
+	private final static int id_MAILITUNI = 15;
+
 	SMTPClient client;
 	RelayPath senderrelay;
 	RelayPath recipientrelay;
@@ -122,90 +148,142 @@ public class SimpleSmtpModule extends Module {
 	// IMPLEMENTORS
 
 	/**
-	 * Execute a named method. You must implement this method. You can call any
+	 * Execute a named method.  It finds the id and runs it by id.
+	 * @param name name of the method
+	 * @throws CallException
+	 */
+	public Object execute_chain(String name) throws CallException {
+		return this.execute_chain(this.methodId(name), name);
+	}
+
+	/**
+	 * The method table.
+	 * @return method names, by id
+	 */
+	public String[] methods() {
+		return METHODS;
+	}
+
+	/**
+	 * Execute a method by id. You must implement this method. You can call any
 	 * of the helpers for data and services. The returned object better be a
 	 * string (for now).
 	 * 
+	 * @param id the method's id, or NO_METHOD
 	 * @param name
 	 *           name of the method
 	 * @see autohit.common.NOPair
 	 * @throws CallException
 	 */
-	public Object execute_chain(String name) throws CallException {
+	public Object execute_chain(int id, String name) throws CallException {
 
 		Object response = Constants.EMPTY_LEFT;
 		Object thingie;
 
-		if (name.equals(method_START)) {
-			String param1 = this.required(method_START_1_ADDRESS, name);
-			String param2 = this.optional(method_START_2_PORT);
-			this.start(param1, param2);
+		switch (id) {
+			case id_START : {
+				String param1 = this.required(method_START_1_ADDRESS, name);
+				String param2 = this.optional(method_START_2_PORT);
+				this.start(param1, param2);
+				break;
+			}
 
-		} else if (name.equals(method_LOGIN)) {
-			String param1 = this.optional(method_LOGIN_1_HOSTNAME);
-			this.login(param1);
+			case id_LOGIN : {
+				String param1 = this.optional(method_LOGIN_1_HOSTNAME);
+				this.login(param1);
+				break;
+			}
 
-		} else if (name.equals(method_SENDER)) {
-			String param1 = this.required(method_SENDER_1_ADDRESS, name);
-			this.sender(param1);
+			case id_SENDER : {
+				String param1 = this.required(method_SENDER_1_ADDRESS, name);
+				this.sender(param1);
+				break;
+			}
 
-		} else if (name.equals(method_ADDSENDERRELAY)) {
-			String param1 = this.required(method_ADDSENDERRELAY_1_ADDRESS, name);
-			this.addsenderrelay(param1);
+			case id_ADDSENDERRELAY : {
+				String param1 = this.required(method_ADDSENDERRELAY_1_ADDRESS, name);
+				this.addsenderrelay(param1);
+				break;
+			}
 
-		} else if (name.equals(method_SENDERRELAY)) {
-			this.senderrelay();
+			case id_SENDERRELAY : {
+				this.senderrelay();
+				break;
+			}
 
-		} else if (name.equals(method_RECIPIENT)) {
-			String param1 = this.required(method_RECIPIENT_1_ADDRESS, name);
-			this.recipient(param1);
+			case id_RECIPIENT : {
+				String param1 = this.required(method_RECIPIENT_1_ADDRESS, name);
+				this.recipient(param1);
+				break;
+			}
 
-		} else if (name.equals(method_ADDRECIPIENTRELAY)) {
-			String param1 = this.required(method_ADDRECIPIENTRELAY_1_ADDRESS, name);
-			this.addrecipientrelay(param1);
+			case id_ADDRECIPIENTRELAY : {
+				String param1 = this.required(method_ADDRECIPIENTRELAY_1_ADDRESS, name);
+				this.addrecipientrelay(param1);
+				break;
+			}
 
-		} else if (name.equals(method_NEWRECIPIENTRELAY)) {
-			this.newrecipientrelay();
+			case id_NEWRECIPIENTRELAY : {
+				this.newrecipientrelay();
+				break;
+			}
 
-		} else if (name.equals(method_RECIPIENTRELAY)) {
-			this.recipientrelay();
+			case id_RECIPIENTRELAY : {
+				this.recipientrelay();
+				break;
+			}
 
-		} else if (name.equals(method_SEND)) {
-			String param1 = this.required(method_SEND_1_TEXT, name);
-			response = this.send(param1);
+			case id_SEND : {
+				String param1 = this.required(method_SEND_1_TEXT, name);
+				response = this.send(param1);
+				break;
+			}
 
-		} else if (name.equals(method_SENDUNI)) {
-			String param1 = this.required(method_SENDUNI_1_TEXT, name);
-			response = this.senduni(param1);
+			case id_SENDUNI : {
+				String param1 = this.required(method_SENDUNI_1_TEXT, name);
+				response = this.senduni(param1);
+				break;
+			}
 
-		} else if (name.equals(method_SENDUNISCRUB)) {
-			String param1 = this.required(method_SENDUNISCRUB_1_TEXT, name);
-			response = this.senduniscrub(param1);			
-			
-		} else if (name.equals(method_RESET)) {
-			this.reset();
+			case id_SENDUNISCRUB : {
+				String param1 = this.required(method_SENDUNISCRUB_1_TEXT, name);
+				response = this.senduniscrub(param1);
+				break;
+			}
 
-		} else if (name.equals(method_DONE)) {
-			this.done();
+			case id_RESET : {
+				this.reset();
+				break;
+			}
+
+			case id_DONE : {
+				this.done();
+				break;
+			}
+
+			case id_MAILIT : {
+				String param1 = this.required(method_MAILIT_1_TO, name);
+				String param2 = this.required(method_MAILIT_2_FROM, name);
+				String param3 = this.required(method_MAILIT_3_TEXT, name);
+				String param4 = this.required(method_MAILIT_4_HOSTNAME, name);
+				String param5 = this.optional(method_MAILIT_5_PORT);
+				response = this.mailit(param1, param2, param3, param4, param5);
+				break;
+			}
 
-		} else if (name.equals(method_MAILIT)) {
-			String param1 = this.required(method_MAILIT_1_TO, name);
-			String param2 = this.required(method_MAILIT_2_FROM, name);
-			String param3 = this.required(method_MAILIT_3_TEXT, name);
-			String param4 = this.required(method_MAILIT_4_HOSTNAME, name);
-			String param5 = this.optional(method_MAILIT_5_PORT);
-			response = this.mailit(param1, param2, param3, param4, param5);
-
-		} else if (name.equals(method_MAILITUNI)) {
-			String param1 = this.required(method_MAILITUNI_1_TO, name);
-			String param2 = this.required(method_MAILITUNI_2_FROM, name);
-			String param3 = this.required(method_MAILITUNI_3_UNIOBJ, name);
-			String param4 = this.required(method_MAILITUNI_4_HOSTNAME, name);
-			String param5 = this.optional(method_MAILITUNI_5_PORT);
-			response = this.mailituni(param1, param2, param3, param4, param5);
-
-		} else {
-			error("Not a provided method.  method=" + name);
+			case id_MAILITUNI : {
+				String param1 = this.required(method_MAILITUNI_1_TO, name);
+				String param2 = this.required(method_MAILITUNI_2_FROM, name);
+				String param3 = this.required(method_MAILITUNI_3_UNIOBJ, name);
+				String param4 = this.required(method_MAILITUNI_4_HOSTNAME, name);
+				String param5 = this.optional(method_MAILITUNI_5_PORT);
+				response = this.mailituni(param1, param2, param3, param4, param5);
+				break;
+			}
+
+			default : {
+				error("Not a provided method.  method=" + name);
+			}
 		}
 		return response;
 	}
@@ -711,7 +789,6 @@ public class SimpleSmtpModule extends Module {
 	private String senduniscrub(String uniobject) throws CallException {
 
 		String result = ERROR_STRING_FOR_FAILURE;
-		String tempObj = null;
 
 		// Is it started?
 		if (client == null) {
@@ -720,28 +797,22 @@ public class SimpleSmtpModule extends Module {
 
 		try {
 
-			// Process it
-			try {
-				tempObj = visUniverse.reserveUnique(TEMPFILE);
-				String thing = UniverseUtils.load2String(visUniverse.getStream(uniobject));
-				String thang = StringProcessors.evalString2Core(thing, visCore);
-				OutputStream os = visUniverse.putStream(tempObj);
-				UniverseUtils.saveString(os, thang);
-
-			} catch (UniverseException ue) {
-				throw ue;
-			} catch (Exception e) {
-				this.fault("Send failed (from Universe).  Could not create scrubbed intermediary tempfile.  message=" + e.getMessage());
-			}
-
-			// get the hoses
-			InputStream unio = visUniverse.getStream(tempObj);
-			BufferedReader bin = new BufferedReader(new InputStreamReader(unio));
+			// get the hoses.  The object is scrubbed on its way into the
+			// message, so there is no intermediary tempfile.
+			InputStream unio = visUniverse.getStream(uniobject);
 			Writer mwriter = client.sendMessageData();
 
 			// and pipe them together
 			if (mwriter != null) {
-				Util.copyReader(bin, mwriter);
+				try {
+					StringProcessors.evalStream2Writer(unio, mwriter, visCore);
+				} catch (VMException vme) {
+					// Part of the message is already out.  Never finish it;
+					// drop the connection instead.
+					unio.close();
+					this.done();
+					this.fault("Send failed (from Universe).  Could not scrub the message.  message=" + vme.getMessage());
+				}
 				mwriter.close();
 				unio.close();
 				client.completePendingCommand(); // don't care if it was ok.
@@ -757,6 +828,7 @@ public class SimpleSmtpModule extends Module {
 				result = Integer.toString(code);
 
 			} else {
+				unio.close();
 				this.log(
 					"Message send FAILED (from Universe) because SMTP connection was completely ready.  reply="
 						+ client.getReplyString());
@@ -777,14 +849,6 @@ public class SimpleSmtpModule extends Module {
 		} catch (Exception ex) {
 			this.done();
 			this.fault("Send failed (from Universe) due to exception.  message=" + ex.getMessage());
-		} finally {
-			if ((!this.isDebugging())&&(tempObj != null)) {
-				try {
-					visUniverse.remove(tempObj);
-				} catch (Exception ee) { 
-					// Don't care
-				}
-			}
 		}
 		return result;
 	}
@@ -33,7 +33,8 @@ import autohit.common.Constants;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 28Jul03</code>
+ * <code>EPG - Initial - 28Jul03<br>
+ * EPG - Method table - 17Oct26</code>
  */
 public class StopwatchModule extends Module {
 
@@ -51,6 +52,15 @@ public class StopwatchModule extends Module {
 	private final static String method_TIME = "time";
 	private final static String method_MILLIS = "millis";
 
+	/**
+	 * Method table.  A method's id is its index.
+	 */
+	private final static String[] METHODS =
+		{ method_START, method_TIME, method_MILLIS };
+	private final static int id_START = 0;
+	private final static int id_TIME = 1;
+	private final static int id_MILLIS = 2;
+
 	/**
 	 * Constructor
 	 */
@@ -61,29 +71,55 @@ public class StopwatchModule extends Module {
 	// IMPLEMENTORS
 
 	/**
-	 * Execute a named method.  You must implement this method.
+	 * Execute a named method.  It finds the id and runs it by id.
+	 * @param name name of the method
+	 * @throws CallException
+	 */
+	public Object execute_chain(String name) throws CallException {
+		return this.execute_chain(this.methodId(name), name);
+	}
+
+	/**
+	 * The method table.
+	 * @return method names, by id
+	 */
+	public String[] methods() {
+		return METHODS;
+	}
+
+	/**
+	 * Execute a method by id.  You must implement this method.
 	 * You can call any of the helpers for data and services.
 	 * The returned object better be a string (for now).
+	 * @param id the method's id, or NO_METHOD
 	 * @param name name of the method
 	 * @see autohit.common.NOPair
 	 * @throws CallException
 	 */
-	public Object execute_chain(String name) throws CallException {
+	public Object execute_chain(int id, String name) throws CallException {
 
 		Object response = Constants.EMPTY_LEFT;
 
-		if (name.equals(method_START)) {
-			this.start();
-
-		} else if (name.equals(method_TIME)) {
-			response = this.time();
-
-		} else if (name.equals(method_MILLIS)) {
-			response = this.millis();
-
-		} else {
-			error("Not a provided method.  method=" + name);
-			response = Constants.EMPTY_LEFT;
+		switch (id) {
+			case id_START : {
+				this.start();
+				break;
+			}
+
+			case id_TIME : {
+				response = this.time();
+				break;
+			}
+
+			case id_MILLIS : {
+				response = this.millis();
+				break;
+			}
+
+			default : {
+				error("Not a provided method.  method=" + name);
+				response = Constants.EMPTY_LEFT;
+			}
 		}
 		return response;
 	}
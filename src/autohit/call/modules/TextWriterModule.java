@@ -42,7 +42,8 @@ import autohit.universe.UniverseException;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 7Jul03 
+ * <code>EPG - Initial - 7Jul03<br>
+ * EPG - Method table - 17Oct26</code>
  */
 public class TextWriterModule extends Module {
 
@@ -86,6 +87,18 @@ public class TextWriterModule extends Module {
 	private final static String method_WRITELINE_1_STRING = "string";
 	private final static String method_DONE = "done";
 
+	/**
+	 * Method table.  A method's id is its index.
+	 */
+	private final static String[] METHODS =
+		{ method_STARTSTR, method_STARTUNI, method_WRITE, method_WRITELINE,
+			method_DONE };
+	private final static int id_STARTSTR = 0;
+	private final static int id_STARTUNI = 1;
+	private final static int id_WRITE = 2;
+	private final static int id_WRITELINE = 3;
+	private final static int id_DONE = 4;
+
 	/**
 	 * Constructor
 	 */
@@ -96,43 +109,73 @@ public class TextWriterModule extends Module {
 	// IMPLEMENTORS
 
 	/**
-	 * Execute a named method.  You must implement this method.
+	 * Execute a named method.  It finds the id and runs it by id.
+	 * @param name name of the method
+	 * @throws CallException
+	 */
+	public Object execute_chain(String name) throws CallException {
+		return this.execute_chain(this.methodId(name), name);
+	}
+
+	/**
+	 * The method table.
+	 * @return method names, by id
+	 */
+	public String[] methods() {
+		return METHODS;
+	}
+
+	/**
+	 * Execute a method by id.  You must implement this method.
 	 * You can call any of the helpers for data and services.
 	 * The returned object better be a string (for now).
+	 * @param id the method's id, or NO_METHOD
 	 * @param name name of the method
 	 * @see autohit.common.NOPair
 	 * @throws CallException
 	 */
-	public Object execute_chain(String name) throws CallException {
+	public Object execute_chain(int id, String name) throws CallException {
 
 		Object response = Constants.EMPTY_LEFT;
 		String param1;
 
-		if (name.equals(method_STARTSTR)) {
-			Object paramb =
-				this.requiredType(
-					method_STARTSTR_1_BUFFERNAME,
-					StringBuffer.class, name);
-			this.startbuffer((StringBuffer) paramb);
+		switch (id) {
+			case id_STARTSTR : {
+				Object paramb =
+					this.requiredType(
+						method_STARTSTR_1_BUFFERNAME,
+						StringBuffer.class, name);
+				this.startbuffer((StringBuffer) paramb);
+				break;
+			}
 
-		} else if (name.equals(method_STARTUNI)) {
-			param1 = this.required(method_STARTUNI_1_OBJNAME, name);
-			this.startuni(param1);
+			case id_STARTUNI : {
+				param1 = this.required(method_STARTUNI_1_OBJNAME, name);
+				this.startuni(param1);
+				break;
+			}
 
-		} else if (name.equals(method_WRITE)) {
-			param1 = this.required(method_WRITE_1_STRING, name);
-			this.writestring(param1);
+			case id_WRITE : {
+				param1 = this.required(method_WRITE_1_STRING, name);
+				this.writestring(param1);
+				break;
+			}
 
-		} else if (name.equals(method_WRITELINE)) {
-			param1 = this.required(method_WRITELINE_1_STRING, name);
-			this.writelnstring(param1);
+			case id_WRITELINE : {
+				param1 = this.required(method_WRITELINE_1_STRING, name);
+				this.writelnstring(param1);
+				break;
+			}
 
-		} else if (name.equals(method_DONE)) {
-			this.done();
+			case id_DONE : {
+				this.done();
+				break;
+			}
 
-		} else {
-			error("Not a provided method.  method=" + name);
-			response = Constants.EMPTY_LEFT;
+			default : {
+				error("Not a provided method.  method=" + name);
+				response = Constants.EMPTY_LEFT;
+			}
 		}
 		return response;
 	}
@@ -152,6 +152,7 @@ public interface AutohitErrorCodes {
 	public static final int CODE_VM_VARIABLE_NOT_DEFINED_FAULT = 5020;
 	public static final int CODE_VM_PREPARE_FAULT = 5100;
 	public static final int CODE_VM_EXEC_DOES_NOT_EXIST_FAULT = 5200;
+	public static final int CODE_VM_EXEC_FORMAT_FAULT = 5210;
 	public static final int CODE_VM_SUBSYSTEM_FAULT = 5500;
 	public static final int CODE_VM_CORE_GENERAL_FAULT = 5510;
 	public static final int CODE_VM_CORE_DOESNT_EXIST_FAULT = 5512;
@@ -24,11 +24,18 @@ import autohit.common.channels.Injector;
 
 /**
  * This is a helper for using channels for logging.
+ * <p>
+ * The debug helpers that take arguments fill each {} in the pattern with
+ * the next argument, and only when debugging is on.  Use them anywhere
+ * the message would otherwise be built by concatenation; with debugging
+ * off they do no formatting and allocate nothing.  An int argument is
+ * boxed before the call, so guard those with debugState() instead.
  *
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Rewrite - 9Apr03</code> 
+ * <code>EPG - Rewrite - 9Apr03<br>
+ * EPG - Parameterized debug - 17Oct26</code> 
  * 
  */
 public class AutohitLogInjectorWrapper {
@@ -79,6 +86,95 @@ public class AutohitLogInjectorWrapper {
 		}
 	}
 
+	/**
+	 *  Log helper - debug, formatted only if debugging
+	 * @param pattern Log message with a {} for the argument
+	 * @param a argument
+	 */
+	public void debug(String pattern, Object a) {
+		if (debugging) {
+			this.log(format(pattern, new Object[] { a }), AutohitErrorCodes.INFORMATIONAL, Atom.DEBUG);
+		}
+	}
+
+	/**
+	 *  Log helper - debug, formatted only if debugging
+	 * @param pattern Log message with a {} for each argument
+	 * @param a first argument
+	 * @param b second argument
+	 */
+	public void debug(String pattern, Object a, Object b) {
+		if (debugging) {
+			this.log(format(pattern, new Object[] { a, b }), AutohitErrorCodes.INFORMATIONAL, Atom.DEBUG);
+		}
+	}
+
+	/**
+	 *  Log helper - debug, formatted only if debugging
+	 * @param num numeric value
+	 * @param pattern Log message with a {} for the argument
+	 * @param a argument
+	 */
+	public void debug(int num, String pattern, Object a) {
+		if (debugging) {
+			this.log(format(pattern, new Object[] { a }), num, Atom.DEBUG);
+		}
+	}
+
+	/**
+	 *  Log helper - debug, formatted only if debugging
+	 * @param num numeric value
+	 * @param pattern Log message with a {} for each argument
+	 * @param a first argument
+	 * @param b second argument
+	 */
+	public void debug(int num, String pattern, Object a, Object b) {
+		if (debugging) {
+			this.log(format(pattern, new Object[] { a, b }), num, Atom.DEBUG);
+		}
+	}
+
+	/**
+	 *  Log helper - debug, formatted only if debugging
+	 * @param num numeric value
+	 * @param pattern Log message with a {} for each argument
+	 * @param a first argument
+	 * @param b second argument
+	 * @param c third argument
+	 */
+	public void debug(int num, String pattern, Object a, Object b, Object c) {
+		if (debugging) {
+			this.log(format(pattern, new Object[] { a, b, c }), num, Atom.DEBUG);
+		}
+	}
+
+	/**
+	 *  Fill a pattern.  Each {} takes the next argument.  Placeholders
+	 *  beyond the last argument are left alone, as are arguments beyond
+	 *  the last placeholder.
+	 * @param pattern the pattern
+	 * @param args the arguments.  null ones come out as "null".
+	 * @return the message
+	 */
+	public static String format(String pattern, Object[] args) {
+		if (pattern == null) {
+			return null;
+		}
+		StringBuffer b = new StringBuffer(pattern.length() + 16 * args.length);
+		int arg = 0;
+		int from = 0;
+		int at = pattern.indexOf("{}");
+		while ((at >= 0) && (arg < args.length)) {
+			b.append(pattern.substring(from, at));
+			b.append(String.valueOf(args[arg]));
+			arg++;
+			from = at + 2;
+			at = pattern.indexOf("{}", from);
+		}
+		b.append(pattern.substring(from));
+		return b.toString();
+	}
+
 	/**
 	 *  Log helper - debug
 	 * @param msg Log message
@@ -48,6 +48,83 @@ public interface AutohitProperties {
 	public final static char literal_PATH_SEPERATOR = '/';
 	public final static char literal_NAME_SEPERATOR = Constants.ANAMESPACE_SEPERATOR;	
 
+	/**
+	 * VM
+	 * quantum = instructions a process runs between checks for pause/stop/kill
+	 */
+	public final static String VM_QUANTUM = "vm.quantum";
+	public final static int VM_QUANTUM_DEFAULT = 64;
+
+	/**
+	 * VM
+	 * carriers = carrier threads shared by pooled processes.  Default is per cpu.
+	 */
+	public final static String VM_CARRIERS = "vm.carriers";
+	public final static int VM_CARRIERS_PER_CPU = 4;
+
+	/**
+	 * VM
+	 * cache.size = compiled programs the loader keeps before evicting the least recently used
+	 * cache.recheck = milliseconds between checks of a cached program's universe object.  0 checks every load, -1 never.
+	 */
+	public final static String VM_CACHE_SIZE = "vm.cache.size";
+	public final static int VM_CACHE_SIZE_DEFAULT = 256;
+	public final static String VM_CACHE_RECHECK = "vm.cache.recheck";
+	public final static int VM_CACHE_RECHECK_DEFAULT = 1000;
+
+	/**
+	 * VM
+	 * inline.size = biggest subroutine, in instructions, the loader inlines into its callers.  0 turns it off.
+	 */
+	public final static String VM_INLINE_SIZE = "vm.inline.size";
+	public final static int VM_INLINE_SIZE_DEFAULT = 32;
+
+	/**
+	 * VM
+	 * profile = start every sim with the instruction profiler on.  Default is false.
+	 */
+	public final static String VM_PROFILE = "vm.profile";
+
+	/**
+	 * COMPILER
+	 * optimize = run the optimizer on compiled sims.  Default is true.
+	 */
+	public final static String COMPILER_OPTIMIZE = "compiler.optimize";
+
+	/**
+	 * KERNEL
+	 * process.impl = VMProcess class the kernel uses when none is named
+	 */
+	public final static String KERNEL_PROCESS_IMPL = "kernel.process.impl";
+	public final static String KERNEL_PROCESS_IMPL_DEFAULT = "autohit.vm.VMProcessAutomat";
+
+	/**
+	 * KERNEL
+	 * reap.interval = milliseconds between background sweeps for defunct processes
+	 */
+	public final static String KERNEL_REAP_INTERVAL = "kernel.reap.interval";
+	public final static int KERNEL_REAP_INTERVAL_DEFAULT = 2000;
+
+	/**
+	 * HTTP POOL
+	 * pool.host = most connections open to one host at a time
+	 * pool.total = most connections open at a time
+	 * pool.idle = milliseconds a kept-alive connection may sit idle before it is closed
+	 */
+	public final static String HTTP_POOL_HOST = "http.pool.host";
+	public final static int HTTP_POOL_HOST_DEFAULT = 8;
+	public final static String HTTP_POOL_TOTAL = "http.pool.total";
+	public final static int HTTP_POOL_TOTAL_DEFAULT = 64;
+	public final static String HTTP_POOL_IDLE = "http.pool.idle";
+	public final static int HTTP_POOL_IDLE_DEFAULT = 30000;
+
+	/**
+	 * HTTP BATCH
+	 * batch.workers = most threads working http batches at a time, across the whole jvm
+	 */
+	public final static String HTTP_BATCH_WORKERS = "http.batch.workers";
+	public final static int HTTP_BATCH_WORKERS_DEFAULT = 32;
+
 	/**
 	 * LOG FILES
 	 * type = the type of handler
@@ -104,7 +104,9 @@ public class EasySSLProtocolSocketFactory implements SecureProtocolSocketFactory
         return null;
     }
 
-    private static SSLSocketFactory getEasySSLSocketFactory() {
+    // Synchronized so concurrent sessions cannot each build a context.  One
+    // context means one session cache, so pooled https connections resume.
+    private static synchronized SSLSocketFactory getEasySSLSocketFactory() {
         if (SSL_CONTEXT_SINGLETON == null) {
             SSL_CONTEXT_SINGLETON = createEasySSLContext();
         }
@@ -118,6 +118,28 @@ public class Utils {
 		return thing;
 	}
 
+	/**
+	 *  Test and get property as an integer.  Return the default if not found
+	 *  or it won't parse.
+	 *  Traps all exceptions
+	 * @param key key for the property
+	 * @param props the property set
+	 * @param def the default value
+	 * @return the value
+	 */
+	public static int testGetPropertyInt(
+		String key,
+		ExtendedProperties props,
+		int def) {
+		int thing = def;
+		try {
+			thing = Integer.parseInt(((String) props.getProperty(key)).trim());
+		} catch (Exception e) {
+			thing = def;
+		}
+		return thing;
+	}
+
 	/**
 	 *  Test and get property for truth.  If will return true if the property
 	 *  containts 'true', otherwise it will return false;
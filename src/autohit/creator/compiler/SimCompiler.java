@@ -21,6 +21,7 @@
 package autohit.creator.compiler;
 
 //import org.apache.commons.collections.ExtendedProperties;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.ListIterator;
 import java.util.Stack;
@@ -41,6 +42,8 @@ import autohit.vm.i.VMICall;
 import autohit.vm.i.VMIMethod;
 import autohit.vm.i.VMIClear;
 import autohit.vm.i.VMIEval;
+import autohit.vm.process.EvalTemplate;
+import autohit.vm.i.VMIArg;
 import autohit.vm.i.VMIExec;
 import autohit.vm.i.VMIFault;
 import autohit.vm.i.VMIFetch;
@@ -59,6 +62,7 @@ import autohit.vm.i.VMIScope;
 import autohit.vm.i.VMIStore;
 import autohit.vm.i.VMISubr;
 import autohit.vm.i.VMIAssert;
+import autohit.vm.i.VMInstruction;
 
 /**
  * This is the a Sim compiler.  It will compile xml documents that conform
@@ -87,7 +91,12 @@ import autohit.vm.i.VMIAssert;
  * @version 1.1
  * <i>Version History</i>
  * <code>EPG - Initial - 14Apr03<br>
- * EPG - Update to add goto and references - 13Jul03</code> 
+ * EPG - Update to add goto and references - 13Jul03<br>
+ * EPG - Variable slots - 17Oct26<br>
+ * EPG - Precompile eval templates - 17Oct26<br>
+ * EPG - Optimizer pass - 17Oct26<br>
+ * EPG - Source lines - 17Oct26<br>
+ * EPG - Argument frames for call and method - 17Oct26</code> 
  * 
  */
 public class SimCompiler extends XmlCompiler implements SimLanguage {
@@ -116,6 +125,12 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 	 */
 	protected Stack fixupstack;
 
+	/**
+	 *  Variable slots.  Name to Integer slot, and the names in slot order.
+	 */
+	protected HashMap slottable;
+	protected ArrayList slotnames;
+
 	/**
 	 *  Local name - UID
 	 */
@@ -171,6 +186,8 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 			// Create our symbol table and fixup stack
 			symboltable = new HashMap();
 			fixupstack = new Stack();
+			slottable = new HashMap();
+			slotnames = new ArrayList();
 
 			// set defaults attributes
 			ob.exec.major = 0;
@@ -229,7 +246,8 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 
 				// Put a NOP on the end of the executable
 				ob.emit(new VMINop());
-				ob.clean();
+				ob.exec.symbols =
+					(String[]) slotnames.toArray(new String[slotnames.size()]);
 
 				// fixup goto symbols
 				ListIterator li = fixupstack.listIterator();
@@ -255,6 +273,14 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 					}
 				}
 
+				// optimize it, unless it is already broken
+				if (optimize && (numberErrors() == 0)) {
+					SimOptimizer optimizer = new SimOptimizer();
+					optimizer.optimize(ob.exec);
+					runtimeDebug("Optimized " + localname + ": " + optimizer);
+				}
+				ob.clean();
+
 			} catch (Exception e) {
 				// an otherwise uncaught exception.  A runaway compiler...
 				runtimeError("FATAL ERROR.  Runaway compilation errors.  Stopping compile.");
@@ -273,6 +299,8 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		// ditch data as it falls out of scope
 		symboltable = null;
 		fixupstack = null;
+		slottable = null;
+		slotnames = null;
 
 		// clean up logs
 		int err = numberErrors();
@@ -381,6 +409,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		Element child;
 		String name;
 		int idx;
+		int first;
 		Node scratchNode;
 		NodeList itemTreeChildren = en.getChildNodes();
 
@@ -398,6 +427,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 			// Clean it
 			child = (Element) scratchNode;
 			name = child.getTagName().toLowerCase();
+			first = ob.nextIP();
 
 			// Parse the token and call a handler
 			// Just not enough tokens to justify a state translation
@@ -449,6 +479,9 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 				throw (
 					new Exception("Software Detected Fault in creator.compiler.SimCompiler.processItem()."));
 			}
+
+			// Anything the handler emitted that a nested element didn't claim is ours.
+			stampLines(first, lineOf(child));
 		}
 		//DEBUG
 		//runtimeDebug("EXIT --- " + en.getTagName());
@@ -549,7 +582,11 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 
 	/**
 	 *  handle call.
-	 *  MICROCODE
+	 *  MICROCODE, if the SETs can be an argument frame (see arguments())
+	 * 1- (SET source, i.arg(position))*
+	 * 2- i.call(name, arguments)
+	 * 3- if (result exist) i.store(result)
+	 *  MICROCODE, otherwise
 	 * 1- i.scope
 	 * 2- (SET)*
 	 * 3- i.call(name)
@@ -562,6 +599,22 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 
 		runtimeDebug("handleCall.  call=" + name);
 
+		String[] arguments = this.arguments(en);
+		if (arguments != null) {
+
+			// 1- (SET source, i.arg(position))*
+			this.emitArguments(en);
+
+			// 2- i.call(name, arguments)
+			this.emitCall(name, arguments);
+
+			// 3- if (result exist) i.store(result)
+			if (en.hasAttribute(ATTR_RESULT)) {
+				this.emitStore(en.getAttribute(ATTR_RESULT));
+			}
+			return;
+		}
+
 		// 1- i.scope
 		this.emitScope();
 
@@ -571,7 +624,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 			processCode(en);
 
 			// 3- i.call(name)
-			this.emitCall(name);
+			this.emitCall(name, null);
 
 		} catch (Exception e) {
 			//	Stop an error unravelling here.  Close the scope and move on
@@ -592,7 +645,12 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 	
 	/**
 	 *  handle call.
-	 *  MICROCODE
+	 *  MICROCODE, if the SETs can be an argument frame (see arguments())
+	 * 1- (SET source, i.arg(position))*
+	 * 2- i.eval(name)
+	 * 3- i.method(method, arguments)
+	 * 4- if (result exist) i.store(result)
+	 *  MICROCODE, otherwise
 	 * 1- i.scope
 	 * 2- (SET)*
 	 * 3- i.eval(name)
@@ -607,6 +665,25 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 
 		runtimeDebug("handleMethod.  name=" + name + " method=" + method);
 
+		String[] arguments = this.arguments(en);
+		if (arguments != null) {
+
+			// 1- (SET source, i.arg(position))*
+			this.emitArguments(en);
+
+			// 2- i.eval(name)
+			this.emitEval(name);
+
+			// 3- i.method(method, arguments)
+			this.emitMethod(method, arguments);
+
+			// 4- if (result exist) i.store(result)
+			if (en.hasAttribute(ATTR_RESULT)) {
+				this.emitStore(en.getAttribute(ATTR_RESULT));
+			}
+			return;
+		}
+
 		// 1- i.scope
 		this.emitScope();
 
@@ -619,7 +696,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 			this.emitEval(name);
 
 			// 4- i.call(name)
-			this.emitMethod(method);
+			this.emitMethod(method, null);
 
 		} catch (Exception e) {
 			//	Stop an error unravelling here.  Close the scope and move on
@@ -788,6 +865,34 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 
 		//runtimeDebug("handleSet  name=" + name);
 
+		// 1-5
+		if (!this.emitSetSource(en)) {
+			return;
+		}
+
+		// 6- if (new exists)			i.new(name)
+		if (en.hasAttribute(ATTR_NEW)) {
+			this.emitNew(name);
+
+			// 7-    else		i.store(name)
+		} else {
+			this.emitStore(name);
+		}
+	}
+
+	/**
+	 *  The source half of a Set.  It puts the value in LEFT.
+	 *  MICROCODE
+	 * 1- if (eval exists)			i.eval(eval)
+	 * 2- 	 else if (ref exists)	i.fetch(ref)
+	 * 3-    else if (value exists) i.load(value)
+	 * 4-    else (buffer exists)	i.reduce(buffer)
+	 * 5-    else 					!!ERROR	
+	 *
+	 *  @return false if there was no source
+	 */
+	private boolean emitSetSource(Element en) {
+
 		// 1- if (eval exists)			i.eval(eval)
 		if (en.hasAttribute(ATTR_EVALUATOR)) {
 			this.emitEval(en.getAttribute(ATTR_EVALUATOR));
@@ -807,16 +912,103 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 			// 5- else 					!!ERROR	
 		} else {
 			runtimeError("ERROR.  No source given for SET.");
-			return;
+			return false;
 		}
+		return true;
+	}
 
-		// 6- if (new exists)			i.new(name)
-		if (en.hasAttribute(ATTR_NEW)) {
-			this.emitNew(name);
+	/**
+	 *  Can the children of a call or method be an argument frame?  They can
+	 *  if every one is a named SET with a source, no name is given twice,
+	 *  and no SET reads an argument given before it.  Then nothing can tell
+	 *  the values never went into a scope, except that a SET no longer
+	 *  replaces a variable of the same name outside the call.
+	 *
+	 *  @return the argument names by position, or null if they can't
+	 */
+	private String[] arguments(Element en) {
 
-			// 7-    else		i.store(name)
-		} else {
-			this.emitStore(name);
+		ArrayList names = new ArrayList();
+		Element child;
+		String name;
+		Node scratchNode;
+		NodeList itemTreeChildren = en.getChildNodes();
+
+		for (int idx = 0; idx < itemTreeChildren.getLength(); idx++) {
+
+			scratchNode = itemTreeChildren.item(idx);
+			if (!(scratchNode instanceof Element))
+				continue;
+			child = (Element) scratchNode;
+
+			if (!child.getTagName().equalsIgnoreCase("set"))
+				return null;
+			name = child.getAttribute(ATTR_NAME);
+			if ((!isValid(name)) || (names.contains(name)))
+				return null;
+
+			if (child.hasAttribute(ATTR_EVALUATOR)) {
+				if (reads(child.getAttribute(ATTR_EVALUATOR), names))
+					return null;
+			} else if (child.hasAttribute(ATTR_REFERENCE)) {
+				if (names.contains(child.getAttribute(ATTR_REFERENCE)))
+					return null;
+			} else if (child.hasAttribute(ATTR_VALUE)) {
+				// a literal reads nothing
+			} else if (child.hasAttribute(ATTR_BUFFER)) {
+				if (names.contains(child.getAttribute(ATTR_BUFFER)))
+					return null;
+			} else {
+				return null;
+			}
+			names.add(name);
+		}
+		return (String[]) names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 *  Might an eval read any of these names?  If it won't precompile,
+	 *  assume it does if a name appears anywhere in it.
+	 */
+	private boolean reads(String eval, ArrayList names) {
+		EvalTemplate t = EvalTemplate.compile(eval);
+		if (t == null) {
+			for (int index = 0; index < names.size(); index++) {
+				if (eval.indexOf((String) names.get(index)) >= 0)
+					return true;
+			}
+			return false;
+		}
+		for (int index = 0; index < t.names.length; index++) {
+			if (names.contains(t.names[index]))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 *  Put the SETs of a call or method into its argument frame.  Each one
+	 *  is stamped with its own line.
+	 *  MICROCODE
+	 * 1- (SET source, i.arg(position))*
+	 */
+	private void emitArguments(Element en) {
+
+		int position = 0;
+		int first;
+		Node scratchNode;
+		NodeList itemTreeChildren = en.getChildNodes();
+
+		for (int idx = 0; idx < itemTreeChildren.getLength(); idx++) {
+
+			scratchNode = itemTreeChildren.item(idx);
+			if (!(scratchNode instanceof Element))
+				continue;
+
+			first = ob.nextIP();
+			this.emitSetSource((Element) scratchNode);
+			this.emitArg(position++);
+			stampLines(first, lineOf((Element) scratchNode));
 		}
 	}
 
@@ -1232,6 +1424,24 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 	// == =                             HELPERS                                         =
 	// == ===============================================================================
 
+	/**
+	 *  Set the source line on instructions emitted since first, if they don't have one.
+	 *
+	 *  @param first the first instruction to stamp.
+	 *  @param line the source line.
+	 */
+	private void stampLines(int first, int line) {
+		if (line == 0)
+			return;
+		VMInstruction ci;
+		int end = ob.nextIP();
+		for (int ip = first; ip < end; ip++) {
+			ci = (VMInstruction) ob.exec.core.get(ip);
+			if (ci.sourceline == 0)
+				ci.sourceline = line;
+		}
+	}
+
 	/**
 	 *  Valid string.
 	 * 
@@ -1284,6 +1494,20 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 				+ where);
 	}
 
+	/**
+	 *  Get the slot for a variable name.  The first time a name is seen, it
+	 *  gets the next slot.
+	 */
+	private int slot(String name) {
+		Integer s = (Integer) slottable.get(name);
+		if (s == null) {
+			s = new Integer(slotnames.size());
+			slottable.put(name, s);
+			slotnames.add(name);
+		}
+		return s.intValue();
+	}
+
 	/**
 	 *  emitClear
 	 */
@@ -1291,6 +1515,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMIClear ic;
 		ic = new VMIClear();
 		ic.t = name;
+		ic.s = slot(name);
 		ob.emit(ic);
 		//runtimeDebug("EMIT(" + (ob.nextIP() - 1) + ") i.clear name= " + name);
 	}
@@ -1302,6 +1527,12 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMIEval ic;
 		ic = new VMIEval();
 		ic.e = eval;
+		ic.t = EvalTemplate.compile(eval);
+		if (ic.t != null) {
+			for (int index = 0; index < ic.t.names.length; index++) {
+				ic.t.slots[index] = slot(ic.t.names[index]);
+			}
+		}
 		ob.emit(ic);
 		//runtimeDebug("EMIT(" + (ob.nextIP() - 1) + ") i.eval eval= " + eval);
 	}
@@ -1313,6 +1544,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMIReduce ic;
 		ic = new VMIReduce();
 		ic.b = buffer;
+		ic.s = slot(buffer);
 		ob.emit(ic);
 		//runtimeDebug(
 		//	"EMIT(" + (ob.nextIP() - 1) + ") i.reduce name= " + buffer);
@@ -1336,6 +1568,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMIMerge ic;
 		ic = new VMIMerge();
 		ic.b = buffer;
+		ic.s = slot(buffer);
 		ob.emit(ic);
 		//runtimeDebug(
 		//	"EMIT(" + (ob.nextIP() - 1) + ") i.merge buffer= " + buffer);
@@ -1344,10 +1577,11 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 	/**
 	 *  emitCall
 	 */
-	private void emitCall(String target) {
+	private void emitCall(String target, String[] arguments) {
 		VMICall ic;
 		ic = new VMICall();
 		ic.t = target;
+		ic.a = arguments;
 		ob.emit(ic);
 		//runtimeDebug(
 		//	"EMIT(" + (ob.nextIP() - 1) + ") i.call target= " + target);
@@ -1356,15 +1590,28 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 	/**
 	 *  emitMethod
 	 */
-	private void emitMethod(String m) {
+	private void emitMethod(String m, String[] arguments) {
 		VMIMethod ic;
 		ic = new VMIMethod();
 		ic.m = m;
+		ic.a = arguments;
 		ob.emit(ic);
 		//runtimeDebug(
 		//	"EMIT(" + (ob.nextIP() - 1) + ") i.method method=" + m);
 	}
 
+	/**
+	 *  emitArg
+	 */
+	private void emitArg(int position) {
+		VMIArg ic;
+		ic = new VMIArg();
+		ic.p = position;
+		ob.emit(ic);
+		//runtimeDebug(
+		//	"EMIT(" + (ob.nextIP() - 1) + ") i.arg position=" + position);
+	}
+
 	/**
 	 *  emitSubr
 	 */
@@ -1396,6 +1643,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMINew ic;
 		ic = new VMINew();
 		ic.v = var;
+		ic.s = slot(var);
 		ob.emit(ic);
 		//runtimeDebug("EMIT(" + (ob.nextIP() - 1) + ") i.new variable= " + var);
 	}
@@ -1415,6 +1663,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMIFetch ic;
 		ic = new VMIFetch();
 		ic.v = var;
+		ic.s = slot(var);
 		ob.emit(ic);
 		//runtimeDebug(
 		//	"EMIT(" + (ob.nextIP() - 1) + ") i.fetch variable= " + var);
@@ -1439,6 +1688,7 @@ public class SimCompiler extends XmlCompiler implements SimLanguage {
 		VMIStore ic;
 		ic = new VMIStore();
 		ic.v = var;
+		ic.s = slot(var);
 		ob.emit(ic);
 		//runtimeDebug(
 		//	"EMIT(" + (ob.nextIP() - 1) + ") i.store variable= " + var);
@@ -0,0 +1,589 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.creator.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import autohit.creator.SimLanguage;
+import autohit.common.Constants;
+import autohit.vm.VMExecutable;
+import autohit.vm.i.VMIAssert;
+import autohit.vm.i.VMIClear;
+import autohit.vm.i.VMIFetch;
+import autohit.vm.i.VMIGoto;
+import autohit.vm.i.VMIIf;
+import autohit.vm.i.VMIJump;
+import autohit.vm.i.VMILoad;
+import autohit.vm.i.VMIMath;
+import autohit.vm.i.VMINew;
+import autohit.vm.i.VMIStore;
+import autohit.vm.i.VMInstruction;
+
+/**
+ * Optimizer for SimCompiler output.  It runs on the finished core, after
+ * the GOTO fixups and before the core is cleaned.  The passes are:
+ * <pre>
+ * fold    - within a basic block, track literal LEFT, RIGHT and String variables.  A FETCH
+ *           of a known variable becomes a LOAD, and a MATH on known operands becomes a
+ *           LOAD of the answer the VM would have computed.
+ * thread  - JUMP and ASSERT targets that land on NOPs and JUMPs go straight to
+ *           the final destination.
+ * dead    - instructions that can't be reached from the entry are removed.
+ * stores  - a LOAD overwritten by the next LOAD or EVAL, and a STORE overwritten by
+ *           the next STORE of the same variable with only LOAD/RIGHT/NOP between.
+ * nops    - NOPs are removed.
+ * </pre>
+ * Removed instructions are compacted out and every branch target is remapped.
+ * <p>
+ * Some instructions have to stay where they are for the VM to behave the same.
+ * <pre>
+ * SCOPE/RSCOPE  - a GOTO counts them between itself and its target to unwind frames.
+ * IF targets    - an IF on a bad LEFT type resumes one past its target.
+ * GOTO targets  - the target bounds the GOTO's scope count.
+ * backward targets - removing them can turn a loop into a branch to itself, which
+ *                 the VM treats as a runaway.
+ * after a FETCH - a FETCH of a missing variable looks at the next instruction for an ASSERT.
+ * the last one  - the compiler always ends a core with a NOP.
+ * </pre>
+ * IF and GOTO targets are never threaded for the same reasons.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Fold through ARG - 17Oct26</code> 
+ * 
+ */
+public class SimOptimizer {
+
+	/**
+	 *  Statistics from the last run.
+	 */
+	public int before;
+	public int after;
+	public int folded;
+	public int threaded;
+	public int dead;
+	public int stores;
+	public int nops;
+
+	// Work
+	private VMInstruction[] code;
+	private boolean[] target;
+	private boolean[] pinned;
+	private boolean[] reached;
+	private boolean[] removed;
+
+	/**
+	 *  Default constructor.
+	 */
+	public SimOptimizer() {
+	}
+
+	/**
+	 *  Optimize an executable's core in place.
+	 *  @param exec the executable.  Branch targets must already be fixed up.
+	 */
+	public void optimize(VMExecutable exec) {
+
+		code =
+			(VMInstruction[]) exec.core.toArray(
+				new VMInstruction[exec.core.size()]);
+		before = code.length;
+		folded = 0;
+		threaded = 0;
+		dead = 0;
+		stores = 0;
+		nops = 0;
+
+		if (code.length > 0) {
+			mark();
+			fold();
+			thread();
+			mark();
+			reach();
+			stores();
+			nops();
+			compact(exec.core);
+		}
+		after = exec.core.size();
+
+		code = null;
+		target = null;
+		pinned = null;
+		reached = null;
+		removed = null;
+	}
+
+	/**
+	 *  Statistics summary.
+	 *  @return a one line report
+	 */
+	public String toString() {
+		return "instructions "
+			+ before
+			+ " -> "
+			+ after
+			+ " (folded="
+			+ folded
+			+ " threaded="
+			+ threaded
+			+ " dead="
+			+ dead
+			+ " stores="
+			+ stores
+			+ " nops="
+			+ nops
+			+ ")";
+	}
+
+	// == ===============================================================================
+	// == =                               PASSES                                        =
+	// == ===============================================================================
+
+	/**
+	 *  Find branch targets, and the instructions that can't move.
+	 */
+	private void mark() {
+
+		int t;
+		target = new boolean[code.length];
+		pinned = new boolean[code.length];
+		pinned[code.length - 1] = true;
+		for (int index = 0; index < code.length; index++) {
+			if (!isBranch(code[index])) {
+				if ((code[index].instruction == VMInstruction.FETCH)
+					&& (index + 1 < code.length)) {
+					pinned[index + 1] = true;
+				}
+				continue;
+			}
+			t = targetOf(code[index]);
+			if ((t < 0) || (t >= code.length)) {
+				continue;
+			}
+			target[t] = true;
+			if ((t <= index)
+				|| (code[index].instruction == VMInstruction.IF)
+				|| (code[index].instruction == VMInstruction.GOTO)) {
+				pinned[t] = true;
+			}
+		}
+	}
+
+	/**
+	 *  Constant folding within basic blocks.
+	 */
+	private void fold() {
+
+		HashMap vars = new HashMap();
+		String left = null;
+		String right = null;
+		String answer;
+		VMInstruction ci;
+
+		for (int index = 0; index < code.length; index++) {
+
+			if (target[index]) {
+				vars.clear();
+				left = null;
+				right = null;
+			}
+
+			ci = code[index];
+			switch (ci.instruction) {
+
+				case VMInstruction.NOP :
+					break;
+
+				case VMInstruction.LOAD :
+					left = ((VMILoad) ci).l;
+					break;
+
+				case VMInstruction.RIGHT :
+					right = left;
+					break;
+
+				case VMInstruction.NEW :
+					remember(vars, ((VMINew) ci).v, left);
+					break;
+
+				case VMInstruction.STORE :
+					remember(vars, ((VMIStore) ci).v, left);
+					break;
+
+				case VMInstruction.FETCH :
+					left = (String) vars.get(((VMIFetch) ci).v);
+					if (left != null) {
+						code[index] = load(ci, left);
+						folded++;
+					}
+					break;
+
+				case VMInstruction.EVAL :
+				case VMInstruction.REDUCE :
+					left = null;
+					break;
+
+				case VMInstruction.CLEAR :
+					vars.remove(((VMIClear) ci).t);
+					break;
+
+				case VMInstruction.MERGE :
+					// Only changes buffers, and the variables we know are Strings.
+					break;
+
+				case VMInstruction.ARG :
+					// Only reads LEFT.
+					break;
+
+				case VMInstruction.MATH :
+					answer = math(((VMIMath) ci).o, left, right);
+					if (answer != null) {
+						code[index] = load(ci, answer);
+						folded++;
+					}
+					left = answer;
+					break;
+
+				default :
+					vars.clear();
+					left = null;
+					right = null;
+					break;
+			}
+		}
+	}
+
+	/**
+	 *  Jump threading for JUMP and ASSERT.
+	 */
+	private void thread() {
+
+		int t;
+		int hops;
+		for (int index = 0; index < code.length; index++) {
+			if ((code[index].instruction != VMInstruction.JUMP)
+				&& (code[index].instruction != VMInstruction.ASSERT)) {
+				continue;
+			}
+
+			t = targetOf(code[index]);
+			hops = 0;
+			while ((t >= 0) && (t < code.length) && (hops < code.length)) {
+				if ((code[t].instruction == VMInstruction.NOP)
+					&& (t + 1 < code.length)) {
+					t++;
+				} else if (code[t].instruction == VMInstruction.JUMP) {
+					t = ((VMIJump) code[t]).t;
+				} else {
+					break;
+				}
+				hops++;
+			}
+
+			// Never make a branch to itself, or follow a loop of JUMPs.
+			if ((t != index) && (hops < code.length) && (t != targetOf(code[index]))) {
+				retarget(code[index], t);
+				threaded++;
+			}
+		}
+	}
+
+	/**
+	 *  Find what can be reached from the entry and remove the rest.  Scope
+	 *  markers stay, since a GOTO may count them.
+	 */
+	private void reach() {
+
+		int[] work = new int[code.length + 1];
+		int top = 0;
+		int index;
+		int t;
+		VMInstruction ci;
+
+		reached = new boolean[code.length];
+		removed = new boolean[code.length];
+		reached[0] = true;
+		work[top++] = 0;
+		while (top > 0) {
+			index = work[--top];
+			ci = code[index];
+			t = targetOf(ci);
+
+			switch (ci.instruction) {
+				case VMInstruction.FAULT :
+					break;
+
+				case VMInstruction.JUMP :
+				case VMInstruction.GOTO :
+					top = visit(work, top, t);
+					if (t == index) {
+						// The VM kicks a runaway on to the next instruction.
+						top = visit(work, top, index + 1);
+					}
+					break;
+
+				case VMInstruction.IF :
+					// A bad LEFT type sets the target and then the error advances it.
+					top = visit(work, top, t);
+					top = visit(work, top, t + 1);
+					top = visit(work, top, index + 1);
+					break;
+
+				case VMInstruction.ASSERT :
+					top = visit(work, top, t);
+					top = visit(work, top, index + 1);
+					break;
+
+				default :
+					top = visit(work, top, index + 1);
+					break;
+			}
+		}
+
+		for (index = 0; index < code.length - 1; index++) {
+			if ((!reached[index])
+				&& (code[index].instruction != VMInstruction.SCOPE)
+				&& (code[index].instruction != VMInstruction.RSCOPE)) {
+				removed[index] = true;
+				dead++;
+			}
+		}
+	}
+
+	/**
+	 *  Dead LEFT loads and overwritten stores.  Walks backward, so a chain of
+	 *  them goes in one pass.
+	 */
+	private void stores() {
+
+		int next;
+		String v;
+		for (int index = code.length - 1; index >= 0; index--) {
+			if (removed[index] || pinned[index]) {
+				continue;
+			}
+
+			if (code[index].instruction == VMInstruction.LOAD) {
+				next = index + 1;
+				while ((next < code.length)
+					&& (removed[next]
+						|| (code[next].instruction == VMInstruction.NOP))) {
+					next++;
+				}
+				if ((next < code.length)
+					&& ((code[next].instruction == VMInstruction.LOAD)
+						|| (code[next].instruction == VMInstruction.EVAL))) {
+					removed[index] = true;
+					stores++;
+				}
+
+			} else if (code[index].instruction == VMInstruction.STORE) {
+				v = ((VMIStore) code[index]).v;
+				next = index + 1;
+				while ((next < code.length)
+					&& (removed[next]
+						|| (code[next].instruction == VMInstruction.NOP)
+						|| (code[next].instruction == VMInstruction.LOAD)
+						|| (code[next].instruction == VMInstruction.RIGHT))) {
+					next++;
+				}
+				if ((next < code.length)
+					&& (code[next].instruction == VMInstruction.STORE)
+					&& (((VMIStore) code[next]).v.equals(v))) {
+					removed[index] = true;
+					stores++;
+				}
+			}
+		}
+	}
+
+	/**
+	 *  NOP removal.
+	 */
+	private void nops() {
+		for (int index = 0; index < code.length; index++) {
+			if ((code[index].instruction == VMInstruction.NOP)
+				&& (!removed[index])
+				&& (!pinned[index])) {
+				removed[index] = true;
+				nops++;
+			}
+		}
+	}
+
+	/**
+	 *  Squeeze out removed instructions and remap every branch target to
+	 *  the next instruction that stayed.
+	 */
+	private void compact(ArrayList core) {
+
+		int[] map = new int[code.length + 1];
+		int kept = 0;
+		int index;
+		for (index = 0; index < code.length; index++) {
+			if (!removed[index]) {
+				kept++;
+			}
+		}
+		map[code.length] = kept;
+		for (index = code.length - 1; index >= 0; index--) {
+			if (!removed[index]) {
+				kept--;
+			}
+			map[index] = kept;
+		}
+
+		int t;
+		core.clear();
+		for (index = 0; index < code.length; index++) {
+			if (removed[index]) {
+				continue;
+			}
+			if (isBranch(code[index])) {
+				t = targetOf(code[index]);
+				if (t >= code.length) {
+					// Off the end stays off the end.
+					retarget(code[index], map[code.length] + (t - code.length));
+				} else if (t >= 0) {
+					retarget(code[index], map[t]);
+				}
+			}
+			core.add(code[index]);
+		}
+	}
+
+	// == ===============================================================================
+	// == =                             HELPERS                                         =
+	// == ===============================================================================
+
+	private int visit(int[] work, int top, int index) {
+		if ((index >= 0) && (index < code.length) && (!reached[index])) {
+			reached[index] = true;
+			work[top++] = index;
+		}
+		return top;
+	}
+
+	private void remember(HashMap vars, String name, String value) {
+		if (value == null) {
+			vars.remove(name);
+		} else {
+			vars.put(name, value);
+		}
+	}
+
+	private VMILoad load(VMInstruction replacing, String value) {
+		VMILoad ic = new VMILoad();
+		ic.l = value;
+		ic.sourceline = replacing.sourceline;
+		return ic;
+	}
+
+	/**
+	 *  Do a MATH the way SimVM.handleMath does.
+	 *  @return the answer, or null if the VM would have raised an error
+	 */
+	private String math(String oper, String left, String right) {
+
+		if ((left == null) || (right == null) || (oper == null)) {
+			return null;
+		}
+
+		int l;
+		int r;
+		try {
+			l = Integer.parseInt(left);
+			r = Integer.parseInt(right);
+		} catch (NumberFormatException e) {
+			// String compare.  The operation doesn't matter.
+			return Integer.toString(right.compareTo(left));
+		}
+
+		if (oper.length() < 1) {
+			return null;
+		}
+		switch (oper.charAt(0)) {
+			case Constants.MATH_PLUS :
+				return Integer.toString(l + r);
+			case Constants.MATH_MINUS :
+				return Integer.toString(l - r);
+			case Constants.MATH_DIVIDE :
+				if (r == 0) {
+					return null;
+				}
+				return Integer.toString(l / r);
+			case Constants.MATH_MULTIPLY :
+				return Integer.toString(r * l);
+			case SimLanguage.cEQ_OPERATION :
+				return Integer.toString(r - l);
+			default :
+				return null;
+		}
+	}
+
+	private boolean isBranch(VMInstruction ci) {
+		switch (ci.instruction) {
+			case VMInstruction.JUMP :
+			case VMInstruction.GOTO :
+			case VMInstruction.IF :
+			case VMInstruction.ASSERT :
+				return true;
+			default :
+				return false;
+		}
+	}
+
+	private int targetOf(VMInstruction ci) {
+		switch (ci.instruction) {
+			case VMInstruction.JUMP :
+				return ((VMIJump) ci).t;
+			case VMInstruction.GOTO :
+				return ((VMIGoto) ci).t;
+			case VMInstruction.IF :
+				return ((VMIIf) ci).t;
+			case VMInstruction.ASSERT :
+				return ((VMIAssert) ci).t;
+			default :
+				return -1;
+		}
+	}
+
+	private void retarget(VMInstruction ci, int t) {
+		switch (ci.instruction) {
+			case VMInstruction.JUMP :
+				((VMIJump) ci).t = t;
+				break;
+			case VMInstruction.GOTO :
+				((VMIGoto) ci).t = t;
+				((VMIGoto) ci).resolved = false;
+				break;
+			case VMInstruction.IF :
+				((VMIIf) ci).t = t;
+				break;
+			case VMInstruction.ASSERT :
+				((VMIAssert) ci).t = t;
+				break;
+		}
+	}
+}
@@ -20,24 +20,37 @@
  */
 package autohit.creator.compiler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import autohit.common.AutohitErrorCodes;
 import autohit.common.AutohitException;
 import autohit.common.AutohitLogInjectorWrapper;
 import autohit.common.AutohitProperties;
+import autohit.common.Utils;
 import autohit.server.SystemContext;
 
 /**
@@ -57,7 +70,9 @@ import autohit.server.SystemContext;
  * @author Erich P. Gatejen
  * @version 1.1
  * <i>Version History</i>
- * <code>EPG - Initial - 14Apr03</code> 
+ * <code>EPG - Initial - 14Apr03<br>
+ * EPG - Optimize switch - 17Oct26<br>
+ * EPG - Source line table - 17Oct26</code> 
  * 
  */
 public abstract class XmlCompiler {
@@ -99,6 +114,18 @@ public abstract class XmlCompiler {
 	private DocumentBuilder builder;
 	private DocumentBuilderFactory factory;
 
+	/**
+	 *  Run the optimizer on this compile.  Set by compile() for each run, so
+	 *  build() can look at it.
+	 */
+	protected boolean optimize;
+
+	/**
+	 *  Source line of each element in the current document.  The DOM
+	 *  doesn't keep them, so a quick SAX pass over the same bytes does.
+	 */
+	private IdentityHashMap lines;
+
 	// --- PUBLIC METHODS ----------------------------------------------------	
 
 	/**
@@ -124,6 +151,7 @@ public abstract class XmlCompiler {
 		// TODO seperate the logs
 		runtimeLog = sc.getRootLogger();
 		myLog = runtimeLog;
+		this.sc = sc;
 
 		// Find the dtd
 		String location =
@@ -200,11 +228,32 @@ public abstract class XmlCompiler {
 	 *  and return a null instead of an object.  This base class does not
 	 *  specify the format of the object code.   Any compile errors or
 	 *  warnings can be found in the errors field.
+	 *  <p>
+	 *  The compiler.optimize property decides if the optimizer runs.  It
+	 *  is read for every compile and defaults to true.
 	 *
 	 *  @param is An input stream to the text that is to be compiled.
 	 *  @return a reference to the target object.
 	 */
 	synchronized public Object compile(InputStream is) {
+		boolean doit = true;
+		if ((sc != null)
+			&& (Utils.testGetProperty(AutohitProperties.COMPILER_OPTIMIZE, sc.getPropertiesSet()) != null)) {
+			doit = Utils.testGetPropertyTruth(AutohitProperties.COMPILER_OPTIMIZE, sc.getPropertiesSet());
+		}
+		return compile(is, doit);
+	}
+
+	/**
+	 *  Compile a stream into object code, deciding for this compile only
+	 *  whether the optimizer runs.
+	 *
+	 *  @param is An input stream to the text that is to be compiled.
+	 *  @param optimize true to run the optimizer
+	 *  @return a reference to the target object.
+	 */
+	synchronized public Object compile(InputStream is, boolean optimize) {
+		this.optimize = optimize;
 
 		Document myDocument;
 		Object objectCode = null;
@@ -216,9 +265,13 @@ public abstract class XmlCompiler {
 			// Setup the log for this run		
 			this.setRuntimeLog(myLog); // CHEAT
 
+			// Slurp it, so we can look at it twice.
+			byte[] text = slurp(is);
+			ArrayList elementLines = scanLines(text);
+
 			// Parse.  This needs to be a singleton, because I can't trust the stock parser.
 			synchronized (builder) {
-				isource = new InputSource(is);
+				isource = new InputSource(new ByteArrayInputStream(text));
 				isource.setSystemId("//");
 				myDocument = builder.parse(isource);
 			}
@@ -226,7 +279,9 @@ public abstract class XmlCompiler {
 				"XMLCompiler: parse successful.",
 				AutohitErrorCodes.CODE_INFORMATIONAL_OK);
 
+			mapLines(myDocument, elementLines);
 			objectCode = build(myDocument);
+			lines = null;
 
 			// Reset the log
 			this.resetRuntimeLog();
@@ -249,9 +304,25 @@ public abstract class XmlCompiler {
 			myLog.debug(":" + e.getMessage());
 		}
 		// this will return null unless it was set at the end of the try.
+		lines = null;
 		return objectCode;
 	}
 
+	/**
+	 *  Get the source line an element started on.
+	 *
+	 *  @param n the node, from the document passed to build()
+	 *  @return the line or 0 if it isn't known.
+	 */
+	protected int lineOf(Node n) {
+		if (lines == null)
+			return 0;
+		Integer line = (Integer) lines.get(n);
+		if (line == null)
+			return 0;
+		return line.intValue();
+	}
+
 	/**
 	 *  Posts a warning to the runtime log and increments the error count.  
 	 * @param t the warning message
@@ -326,4 +397,88 @@ public abstract class XmlCompiler {
 	 */
 	public abstract Object build(Document xd);
 
+	// --- PRIVATE METHODS ---------------------------------------------------	
+
+	/**
+	 *  Read the whole stream.
+	 */
+	private byte[] slurp(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[BUFFER_SIZE];
+		int len = is.read(buf, 0, BUFFER_SIZE);
+		while (len > 0) {
+			out.write(buf, 0, len);
+			len = is.read(buf, 0, BUFFER_SIZE);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 *  Find the starting line of every element, in document order.  This 
+	 *  is only a convenience; if anything goes wrong the lines are just lost.
+	 *  The real parse will report the errors.
+	 */
+	private ArrayList scanLines(byte[] text) {
+		final ArrayList result = new ArrayList();
+		try {
+			SAXParserFactory sf = SAXParserFactory.newInstance();
+			sf.setValidating(false);
+			SAXParser parser = sf.newSAXParser();
+			parser.parse(new ByteArrayInputStream(text), new DefaultHandler() {
+				private Locator locator;
+				public void setDocumentLocator(Locator l) {
+					locator = l;
+				}
+				public void startElement(
+					String uri,
+					String localName,
+					String qName,
+					Attributes attributes) {
+					if (locator == null) {
+						result.add(new Integer(0));
+					} else {
+						result.add(new Integer(locator.getLineNumber()));
+					}
+				}
+				public InputSource resolveEntity(String publicId, String systemId) {
+					// Nothing outside the document matters for lines.
+					return new InputSource(new StringReader(""));
+				}
+			});
+		} catch (Exception e) {
+			result.clear();
+		}
+		return result;
+	}
+
+	/**
+	 *  Pair the DOM elements with the scanned lines.  Both are in document order.
+	 */
+	private void mapLines(Document xd, ArrayList elementLines) {
+		lines = new IdentityHashMap();
+		if (elementLines.size() == 0)
+			return;
+		ArrayList elements = new ArrayList();
+		collect(xd.getDocumentElement(), elements);
+		if (elements.size() != elementLines.size()) {
+			myLog.debug("XMLCompiler: source lines do not line up.  Dropping them.");
+			return;
+		}
+		for (int i = 0; i < elements.size(); i++) {
+			lines.put(elements.get(i), elementLines.get(i));
+		}
+	}
+
+	/**
+	 *  Elements in pre-order.
+	 */
+	private void collect(Node n, ArrayList elements) {
+		if (n instanceof Element) {
+			elements.add(n);
+		}
+		for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+			collect(c, elements);
+		}
+	}
+
 }
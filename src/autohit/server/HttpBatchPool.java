@@ -0,0 +1,149 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import autohit.common.AutohitErrorCodes;
+import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.AutohitProperties;
+import autohit.common.Utils;
+
+/**
+ * Shared workers for http batches.  One per context, next to the HttpPool.
+ * A fixed number of daemon threads take batch work off a queue, so no
+ * matter how many processes run a batch at once, the jvm never has more
+ * than that many batch threads.  The size comes from the http.batch.workers
+ * property.
+ * <p>
+ * Whoever submits work should be able to finish it alone if no worker gets
+ * to it, since a busy pool may not start it for a while.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code>
+ * 
+ */
+public class HttpBatchPool {
+
+	/**
+	 *  Logger
+	 */
+	private AutohitLogInjectorWrapper logger;
+
+	/**
+	 *  Workers
+	 */
+	private ThreadPoolExecutor workers;
+
+	/**
+	 *  Number of workers
+	 */
+	private int size;
+
+	/**
+	 * Daemon thread maker.
+	 */
+	private static class WorkerFactory implements ThreadFactory {
+		private int count;
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "httpbatch-" + count++);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 *  Initialize.  The size comes from the http.batch.workers property.
+	 * @param c is an instance of SystemContext
+	 * @see autohit.server.SystemContext
+	 */
+	public void init(SystemContext c) {
+		logger = c.getRootLogger();
+
+		size = AutohitProperties.HTTP_BATCH_WORKERS_DEFAULT;
+		try {
+			size =
+				Utils.testGetPropertyInt(
+					AutohitProperties.HTTP_BATCH_WORKERS,
+					c.getPropertiesSet(),
+					AutohitProperties.HTTP_BATCH_WORKERS_DEFAULT);
+		} catch (Exception e) {
+			// no properties.  keep the default.
+		}
+		if (size < 1) {
+			size = 1;
+		}
+
+		// A second init lets the old workers finish what they have.
+		if (workers != null) {
+			workers.shutdown();
+		}
+		workers =
+			new ThreadPoolExecutor(
+				size,
+				size,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue(),
+				new WorkerFactory());
+
+		logger.debug("HttpBatchPool: Initialized.  workers=" + size, AutohitErrorCodes.CODE_DEBUGGING);
+	}
+
+	/**
+	 *  Queue some work.
+	 * @param r the work
+	 */
+	public void execute(Runnable r) {
+		workers.execute(r);
+	}
+
+	/**
+	 *  Number of worker threads.
+	 * @return the number
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *  Amount of work waiting for a worker.
+	 * @return the number
+	 */
+	public int waiting() {
+		return workers.getQueue().size();
+	}
+
+	/**
+	 *  Stop taking work.  Work already queued still runs.
+	 */
+	public void shutdown() {
+		if (workers != null) {
+			workers.shutdown();
+		}
+	}
+
+}
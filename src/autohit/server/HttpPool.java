@@ -0,0 +1,554 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.protocol.Protocol;
+
+import autohit.common.AutohitErrorCodes;
+import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.AutohitProperties;
+import autohit.common.EasySSLProtocolSocketFactory;
+import autohit.common.Utils;
+
+/**
+ * Shared HTTP connection pool.  One per context, so every http module in the
+ * jvm borrows kept-alive connections from the same place instead of opening
+ * its own.  It is an HttpConnectionManager, so a module just hands it to
+ * an HttpClient.
+ * <p>
+ * Connections are pooled by host configuration.  There is a limit per host
+ * and a limit overall.  A caller that hits a limit waits for a release.  Idle
+ * connections are handed out most recent first and are closed by a background
+ * daemon once they have been idle longer than the idle time.
+ * <p>
+ * HTTPS sessions should use the protocol from https(), so all of them share
+ * one socket factory.  That lets their connections pool together and lets the
+ * SSL context resume sessions rather than doing a full handshake every time.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code>
+ * 
+ */
+public class HttpPool implements HttpConnectionManager {
+
+	/**
+	 *  Logger
+	 */
+	private AutohitLogInjectorWrapper logger;
+
+	/**
+	 *  Pools by host.  Maps HostConfiguration to Host.
+	 */
+	private HashMap hosts;
+
+	/**
+	 *  Leased connections.  Maps HttpConnection to its Host.
+	 */
+	private HashMap leased;
+
+	/**
+	 *  HTTPS protocols by port.  Maps Integer(port) to Protocol.
+	 */
+	private HashMap https;
+
+	/**
+	 *  One socket factory for every https protocol.
+	 */
+	private EasySSLProtocolSocketFactory sslFactory;
+
+	/**
+	 *  Background idle reaper
+	 */
+	private Reaper reaper;
+
+	/**
+	 *  Limits
+	 */
+	private int perHost;
+	private int total;
+	private long idleTime;
+
+	/**
+	 *  Counts.  Only touched while holding the pool.
+	 */
+	private int inUse;
+	private int idle;
+	private long created;
+	private long reused;
+	private long evicted;
+	private long waits;
+
+	/**
+	 *  Default constructor
+	 */
+	public HttpPool() {
+		hosts = new HashMap();
+		leased = new HashMap();
+		https = new HashMap();
+		sslFactory = new EasySSLProtocolSocketFactory();
+	}
+
+	/**
+	 *  Initialize.  Limits come from the http.pool properties.
+	 * @param c is an instance of SystemContext
+	 * @see autohit.server.SystemContext
+	 */
+	public void init(SystemContext c) {
+		logger = c.getRootLogger();
+
+		perHost = AutohitProperties.HTTP_POOL_HOST_DEFAULT;
+		total = AutohitProperties.HTTP_POOL_TOTAL_DEFAULT;
+		idleTime = AutohitProperties.HTTP_POOL_IDLE_DEFAULT;
+		try {
+			perHost =
+				Utils.testGetPropertyInt(
+					AutohitProperties.HTTP_POOL_HOST,
+					c.getPropertiesSet(),
+					AutohitProperties.HTTP_POOL_HOST_DEFAULT);
+			total =
+				Utils.testGetPropertyInt(
+					AutohitProperties.HTTP_POOL_TOTAL,
+					c.getPropertiesSet(),
+					AutohitProperties.HTTP_POOL_TOTAL_DEFAULT);
+			idleTime =
+				Utils.testGetPropertyInt(
+					AutohitProperties.HTTP_POOL_IDLE,
+					c.getPropertiesSet(),
+					AutohitProperties.HTTP_POOL_IDLE_DEFAULT);
+		} catch (Exception e) {
+			// no properties.  keep the defaults.
+		}
+		if (perHost < 1) {
+			perHost = 1;
+		}
+		if (total < perHost) {
+			total = perHost;
+		}
+
+		// A second init keeps the connections but gets a new reaper.
+		if (reaper != null) {
+			reaper.quit();
+		}
+		reaper = new Reaper(this, idleTime);
+		reaper.start();
+
+		logger.debug(
+			"HttpPool: Initialized.  per host=" + perHost + " total=" + total + " idle=" + idleTime,
+			AutohitErrorCodes.CODE_DEBUGGING);
+	}
+
+	/**
+	 *  Get the shared https protocol for a port.
+	 * @param port the port
+	 * @return the protocol
+	 */
+	public synchronized Protocol https(int port) {
+		Integer key = new Integer(port);
+		Protocol p = (Protocol) https.get(key);
+		if (p == null) {
+			p = new Protocol("https", sslFactory, port);
+			https.put(key, p);
+		}
+		return p;
+	}
+
+	/**
+	 *  Get a connection, waiting as long as it takes.
+	 * @param hostConfiguration the host
+	 * @return a connection
+	 */
+	public HttpConnection getConnection(HostConfiguration hostConfiguration) {
+		try {
+			return getConnection(hostConfiguration, 0);
+		} catch (HttpException he) {
+			// Cannot happen without a timeout
+			throw new IllegalStateException(he.getMessage());
+		}
+	}
+
+	/**
+	 *  Get a connection.  Reuse an idle one for the host if there is one,
+	 *  otherwise make one if the limits allow, otherwise wait for a release.
+	 * @param hostConfiguration the host
+	 * @param timeout milliseconds to wait.  0 is forever.
+	 * @return a connection
+	 * @throws HttpException if the wait times out
+	 */
+	public synchronized HttpConnection getConnection(
+		HostConfiguration hostConfiguration,
+		long timeout)
+		throws HttpException {
+
+		Host host;
+		long deadline = System.currentTimeMillis() + timeout;
+		long now;
+		Idle entry;
+		HttpConnection conn;
+		boolean waited = false;
+
+		while (true) {
+
+			// Look it up every time around.  While we waited, closeIdle()
+			// may have dropped the Host we had.
+			host = host(hostConfiguration);
+
+			// Most recent idle connection first.
+			now = System.currentTimeMillis();
+			while (!host.free.isEmpty()) {
+				entry = (Idle) host.free.removeFirst();
+				idle--;
+				if ((now - entry.since) >= idleTime) {
+					evict(entry.conn);
+					continue;
+				}
+				reused++;
+				return lease(host, entry.conn);
+			}
+
+			// Room for a new one?  Give up someone else's idle one if that makes room.
+			if (host.leased < perHost) {
+				if ((inUse + idle >= total) && (idle > 0)) {
+					evictOldest();
+				}
+				if (inUse + idle < total) {
+					conn = new HttpConnection(host.config);
+					conn.setHttpConnectionManager(this);
+					conn.setStaleCheckingEnabled(true);
+					created++;
+					return lease(host, conn);
+				}
+			}
+
+			// Wait for a release
+			if (!waited) {
+				waits++;
+				waited = true;
+			}
+			try {
+				if (timeout > 0) {
+					now = deadline - System.currentTimeMillis();
+					if (now <= 0) {
+						throw new HttpException("Timeout waiting for a pooled connection to " + host.config.getHost());
+					}
+					wait(now);
+				} else {
+					wait();
+				}
+			} catch (InterruptedException ie) {
+				throw new HttpException("Interrupted waiting for a pooled connection to " + host.config.getHost());
+			}
+		}
+	}
+
+	/**
+	 *  Release a connection back to the pool.  A closed connection is just
+	 *  dropped.
+	 * @param conn the connection
+	 */
+	public synchronized void releaseConnection(HttpConnection conn) {
+		Host host = (Host) leased.remove(conn);
+		if (host == null) {
+			// Not ours or already released
+			return;
+		}
+		host.leased--;
+		inUse--;
+
+		finish(conn);
+		if (conn.isOpen()) {
+			host.free.addFirst(new Idle(conn, System.currentTimeMillis()));
+			idle++;
+		}
+		notifyAll();
+	}
+
+	/**
+	 *  Close every idle connection that has been idle at least the given time.
+	 * @param age milliseconds
+	 * @return how many it closed
+	 */
+	public synchronized int closeIdle(long age) {
+		long now = System.currentTimeMillis();
+		int count = 0;
+		Iterator hi = hosts.values().iterator();
+		Host host;
+		Idle entry;
+		while (hi.hasNext()) {
+			host = (Host) hi.next();
+
+			// Oldest are at the end
+			while (!host.free.isEmpty()) {
+				entry = (Idle) host.free.getLast();
+				if ((now - entry.since) < age) {
+					break;
+				}
+				host.free.removeLast();
+				idle--;
+				evict(entry.conn);
+				count++;
+			}
+			if ((host.leased == 0) && host.free.isEmpty()) {
+				hi.remove();
+			}
+		}
+		if (count > 0) {
+			notifyAll();
+		}
+		return count;
+	}
+
+	/**
+	 *  Stop the reaper and close every idle connection.  Leased connections
+	 *  are closed as they come back.
+	 */
+	public void shutdown() {
+		if (reaper != null) {
+			reaper.quit();
+			reaper = null;
+		}
+		closeIdle(0);
+		if (logger != null) {
+			logger.debug("HttpPool: Shutdown.  " + report(), AutohitErrorCodes.CODE_DEBUGGING);
+		}
+	}
+
+	// METRICS
+
+	/**
+	 *  Connections made.
+	 * @return count
+	 */
+	public synchronized long created() {
+		return created;
+	}
+
+	/**
+	 *  Times an idle connection was handed out again.
+	 * @return count
+	 */
+	public synchronized long reused() {
+		return reused;
+	}
+
+	/**
+	 *  Idle connections closed by the pool.
+	 * @return count
+	 */
+	public synchronized long evicted() {
+		return evicted;
+	}
+
+	/**
+	 *  Requests that had to wait for a connection.
+	 * @return count
+	 */
+	public synchronized long waits() {
+		return waits;
+	}
+
+	/**
+	 *  Connections leased right now.
+	 * @return count
+	 */
+	public synchronized int inUse() {
+		return inUse;
+	}
+
+	/**
+	 *  Connections idle in the pool right now.
+	 * @return count
+	 */
+	public synchronized int idle() {
+		return idle;
+	}
+
+	/**
+	 *  All the metrics as one line.
+	 * @return the report
+	 */
+	public synchronized String report() {
+		return "created=" + created
+			+ " reused=" + reused
+			+ " evicted=" + evicted
+			+ " waits=" + waits
+			+ " inuse=" + inUse
+			+ " idle=" + idle
+			+ " hosts=" + hosts.size();
+	}
+
+	// PRIVATE
+
+	/**
+	 *  Find or make the pool for a host.  The key is a copy, since the
+	 *  caller's configuration can change.
+	 */
+	private Host host(HostConfiguration hc) {
+		Host host = (Host) hosts.get(hc);
+		if (host == null) {
+			host = new Host(new HostConfiguration(hc));
+			hosts.put(host.config, host);
+		}
+		return host;
+	}
+
+	/**
+	 *  Mark a connection leased.
+	 */
+	private HttpConnection lease(Host host, HttpConnection conn) {
+		host.leased++;
+		inUse++;
+		leased.put(conn, host);
+		return conn;
+	}
+
+	/**
+	 *  Close the oldest idle connection of any host.
+	 */
+	private void evictOldest() {
+		Host oldest = null;
+		Host host;
+		Iterator hi = hosts.values().iterator();
+		while (hi.hasNext()) {
+			host = (Host) hi.next();
+			if (!host.free.isEmpty()) {
+				if ((oldest == null)
+					|| (((Idle) host.free.getLast()).since < ((Idle) oldest.free.getLast()).since)) {
+					oldest = host;
+				}
+			}
+		}
+		if (oldest != null) {
+			evict(((Idle) oldest.free.removeLast()).conn);
+			idle--;
+		}
+	}
+
+	/**
+	 *  Close a connection the pool is done with.
+	 */
+	private void evict(HttpConnection conn) {
+		evicted++;
+		try {
+			conn.close();
+		} catch (Exception e) {
+			// gone anyway
+		}
+	}
+
+	/**
+	 *  Drain whatever is left of the last response, so the connection can be
+	 *  used again.  If that fails, close it.
+	 */
+	private void finish(HttpConnection conn) {
+		InputStream last = conn.getLastResponseInputStream();
+		if (last != null) {
+			conn.setLastResponseInputStream(null);
+			try {
+				last.close();
+			} catch (IOException ioe) {
+				conn.close();
+			}
+		}
+	}
+
+	/**
+	 * Connections for one host.
+	 */
+	private static class Host {
+		final HostConfiguration config;
+		final LinkedList free = new LinkedList();
+		int leased;
+
+		Host(HostConfiguration config) {
+			this.config = config;
+		}
+	}
+
+	/**
+	 * An idle connection and when it went idle.
+	 */
+	private static class Idle {
+		final HttpConnection conn;
+		final long since;
+
+		Idle(HttpConnection conn, long since) {
+			this.conn = conn;
+			this.since = since;
+		}
+	}
+
+	/**
+	 * Background reaper.  Every half idle time it closes the connections
+	 * that have been idle for a full idle time.
+	 */
+	private static class Reaper extends Thread {
+
+		private final HttpPool pool;
+		private final long idleTime;
+		private volatile boolean quit;
+
+		Reaper(HttpPool pool, long idleTime) {
+			super("HttpPool reaper");
+			this.pool = pool;
+			this.idleTime = idleTime;
+			setDaemon(true);
+		}
+
+		/**
+		 * Stop the reaper.
+		 */
+		synchronized void quit() {
+			quit = true;
+			notify();
+		}
+
+		public void run() {
+			long interval = Math.max(idleTime / 2, 100);
+			while (!quit) {
+				try {
+					synchronized (this) {
+						wait(interval);
+					}
+					if (!quit) {
+						pool.closeIdle(idleTime);
+					}
+				} catch (InterruptedException ie) {
+					// just go around
+				} catch (Throwable t) {
+					// keep reaping
+				}
+			}
+		}
+	}
+
+}
@@ -20,29 +20,44 @@
  */
 package autohit.server;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import autohit.common.AutohitErrorCodes;
 import autohit.common.AutohitLogInjectorWrapper;
+import autohit.common.AutohitProperties;
+import autohit.common.Utils;
 import autohit.vm.VM;
 import autohit.vm.VMProcess;
-import autohit.common.ProcessMonitor;
 
 /**
  * Process kernel.  This is a basic kernel.  It does not run
  * in a monitor process.  It does not route commands or events.
+ * <p>
+ * The process table is a concurrent map, so lookups do not lock anything.
+ * Changes to the table share a read lock, and a listing takes the write
+ * lock just long enough to copy the table, so a listing is the table as it
+ * was at one moment.  Defunct processes are reaped by a background daemon
+ * a batch at a time rather than by the thread calling get().  get() only
+ * wakes the reaper when the table has doubled since its last full pass.
  *
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
  * <code>EPG - Initial - 17May03<br>
  * EPG - Support new VMProcess scheme - 25Jul03<br>
- * EPG - Switch PCB table to a Vector - 28Jul03
+ * EPG - Switch PCB table to a Vector - 28Jul03<br>
+ * EPG - Default process implementation from kernel.process.impl - 17Oct26<br>
+ * EPG - Concurrent process table, atomic pids and background reaper - 17Oct26<br>
+ * EPG - Consistent listings, reaper woken on growth - 17Oct26
  * </code>
  * 
  */
@@ -54,9 +69,15 @@ public class Kernel {
 	private SystemContext sc;
 
 	/**
-	 *  Process table.  Maps processes to Integer(pid).
+	 *  Process table.  Maps Integer(pid) to processes.
 	 */
-	private Hashtable ptable;
+	private ConcurrentHashMap ptable;
+
+	/**
+	 *  Changes to ptable hold the read lock, so they can happen at once.
+	 *  A listing holds the write lock while it copies the table.
+	 */
+	private ReadWriteLock plock;
 
 	/**
 	 *  Logger
@@ -64,26 +85,33 @@ public class Kernel {
 	private AutohitLogInjectorWrapper logger;
 
 	/**
-	 *  Write monitor
+	 *  Process implementation get() uses
 	 */
-	private ProcessMonitor wmonitor;
+	private String defaultProcessImpl;
+
+	/**
+	 *  Background reaper for the current table
+	 */
+	private Reaper reaper;
 
 	/**
 	 *  The next pid to get.  One instance per jvm.
 	 *  Leaving it public in care there needs to be some
 	 *  segmentation voodoo in the server.
 	 */
-	static public int nextpid = 1;
+	static public final AtomicInteger nextpid = new AtomicInteger(1);
 
-	// Number of processes before we bother sweaping the process table
+	// Number of processes before get() bothers waking the reaper
 	public final static int PROCESS_CLEAN_THRESHOLD = 10;
 
+	// Number of table entries the reaper looks at before it lets go of the cpu
+	public final static int PROCESS_REAP_BATCH = 64;
+
 	/**
 	 *  Default constructor
 	 */
 	public Kernel() {
 		sc = null;
-		wmonitor = new ProcessMonitor();
 	}
 
 	/**
@@ -94,18 +122,47 @@ public class Kernel {
 	 */
 	public void init(SystemContext c) {
 		sc = c;
-		ptable = new Hashtable();
+		ptable = new ConcurrentHashMap();
+		plock = new ReentrantReadWriteLock();
 		logger = c.getRootLogger();
-		logger.debug("Kernel: Initialized.", AutohitErrorCodes.CODE_DEBUGGING);
+
+		defaultProcessImpl = AutohitProperties.KERNEL_PROCESS_IMPL_DEFAULT;
+		int interval = AutohitProperties.KERNEL_REAP_INTERVAL_DEFAULT;
+		try {
+			String impl =
+				(String) Utils.testGetProperty(
+					AutohitProperties.KERNEL_PROCESS_IMPL,
+					c.getPropertiesSet());
+			if ((impl != null) && (impl.trim().length() > 0)) {
+				defaultProcessImpl = impl.trim();
+			}
+			interval =
+				Utils.testGetPropertyInt(
+					AutohitProperties.KERNEL_REAP_INTERVAL,
+					c.getPropertiesSet(),
+					AutohitProperties.KERNEL_REAP_INTERVAL_DEFAULT);
+		} catch (Exception e) {
+			// no properties.  keep the defaults.
+		}
+
+		// A second init orphans the old table.  Let its reaper go.
+		if (reaper != null) {
+			reaper.quit();
+		}
+		reaper = new Reaper(ptable, plock, logger, interval);
+		reaper.start();
+
+		logger.debug("Kernel: Initialized.  Process implementation=" + defaultProcessImpl, AutohitErrorCodes.CODE_DEBUGGING);
 	}
 
 	/**
 	 *  Get a usable process.  Create it if neccesssary.  It will
-	 * instantiate a default VMProcess implementation.
+	 * instantiate the default VMProcess implementation, which is set by the
+	 * kernel.process.impl property.
 	 * @return a VMProcess or null if failed
 	 */
 	public VMProcess get() {
-		return this.get("autohit.vm.VMProcessAutomat");
+		return this.get(defaultProcessImpl);
 	}
 
 	/**
@@ -117,17 +174,14 @@ public class Kernel {
 
 		VMProcess pcb;
 		VMProcess result = null;
-		Object key;
 
 		try {
 
-			// LOCK everything
-			wmonitor.waitlock();
-
-			// Scrub the PCB table
-			if (ptable.size() >= PROCESS_CLEAN_THRESHOLD) {
-				this.scrubTable();
-			} // end scrub table
+			// Let the reaper know the table is filling up.  It does the scan.
+			int size = ptable.size();
+			if ((size >= PROCESS_CLEAN_THRESHOLD) && (size >= reaper.swept() * 2)) {
+				reaper.nudge();
+			}
 
 			// Create the new process
 			int newpid = this.nextPid();
@@ -136,12 +190,14 @@ public class Kernel {
 
 			pcb.init(sc, newpid);
 			pcb.start();
-			ptable.put(new Integer(newpid), pcb);
+			plock.readLock().lock();
+			try {
+				ptable.put(new Integer(newpid), pcb);
+			} finally {
+				plock.readLock().unlock();
+			}
 			result = pcb;
 
-			// Unlock it
-			wmonitor.unlock();
-
 			logger.info("Kernel: Process requested by get().  PID=" + newpid, AutohitErrorCodes.CODE_INFORMATIONAL_OK);
 
 		} catch (Exception epc) {
@@ -155,7 +211,9 @@ public class Kernel {
 
 	/**
 	 * Get an list of active processes.  This will take a snapshot of the
-	 * process list as a List of VMProcesses.
+	 * process list as a List of VMProcesses.  Nothing is added to or reaped
+	 * from the table while it is copied, so it is the process list as it was
+	 * at one moment.  The list itself will not change.
 	 * BEWARE!  Processes are very volatile.  Their state can 
 	 * change at any time.  It is quite possible that the VMProcess can go bad
 	 * after you get the list.  Also, be extra sure not to keep any references to a
@@ -165,24 +223,25 @@ public class Kernel {
 	public List getProcessList() {
 
 		VMProcess pcb;
+		Object[] all;
 
-		// LOCK everything
-		wmonitor.waitlock();
+		plock.writeLock().lock();
+		try {
+			all = ptable.values().toArray();
+		} finally {
+			plock.writeLock().unlock();
+		}
 
-		// Is there any list?
-		Vector theList = new Vector();
-		for (Enumeration e = ptable.elements(); e.hasMoreElements();) {
-			pcb = (VMProcess) e.nextElement();
+		ArrayList theList = new ArrayList(all.length);
+		for (int index = 0; index < all.length; index++) {
+			pcb = (VMProcess) all[index];
 
 			// Add only active processes to the list
-			if ((pcb.getState() >= VM.STATE_ACTIVE_THRESHOLD)) {
+			if ((pcb.getProcessState() >= VM.STATE_ACTIVE_THRESHOLD)) {
 				theList.add(pcb);
 			}
 		}
-
-		wmonitor.unlock();
-
-		return theList;
+		return Collections.unmodifiableList(theList);
 	}
 
 	/**
@@ -191,41 +250,15 @@ public class Kernel {
 	 * @return A VMProcess or null if not found.
 	 */
 	public VMProcess getProcess(int pid) {
-
-		VMProcess pcb = null;
-
-		// Get the process
-		Integer ipid = new Integer(pid);
-		if (ptable.containsKey(ipid)) {
-			pcb = (VMProcess) ptable.get(ipid);
-		}
-		return pcb;
+		return (VMProcess) ptable.get(new Integer(pid));
 	}
 
 	/**
-	 * Force the PCB table to clean
+	 * Force the PCB table to clean.  This sweeps the whole table in the
+	 * calling thread and does not wait out the reaper's grace period.
 	 */
 	public void scrubTable() {
-
-		// LOCK everything
-		wmonitor.waitlock();
-
-		Integer ipid;
-		VMProcess pcb;
-		for (Enumeration e = ptable.keys(); e.hasMoreElements();) {
-			ipid = (Integer) e.nextElement();
-			pcb = (VMProcess) ptable.get(ipid);
-			if (pcb.getState() < VM.STATE_ACTIVE_THRESHOLD) {
-				logger.debug(
-					"Kernel:Defunct process removed from memory.  PID=" + ipid.toString(),
-					AutohitErrorCodes.CODE_INFORMATIONAL_OK);
-				pcb.kill();
-				ptable.remove(ipid);
-			} // end if
-
-		} //end for
-
-		wmonitor.unlock();
+		reaper.sweep(ptable.size(), 0);
 	}
 
 	/**
@@ -235,23 +268,22 @@ public class Kernel {
 	 * to the VMProcess, so will kill them here.
 	 */
 	protected void finalize() throws Throwable {
+		Map.Entry entry;
 		VMProcess pcb;
-		Object key;
 
 		super.finalize();
 
 		logger.info("Kernel: Exiting.  Killing managed processes.", AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE);
 
-		Set setOfPcbs = ptable.keySet();
-		if (!setOfPcbs.isEmpty()) {
-			Iterator i = setOfPcbs.iterator();
-			while (i.hasNext()) {
-				key = i.next();
-				pcb = (VMProcess) ptable.get(key);
-				logger.debug("Kernel: Killing process.  PID=" + pcb.getPID(), AutohitErrorCodes.CODE_DEBUGGING);
-				pcb.kill();
-				ptable.remove(key);
-			}
+		if (reaper != null) {
+			reaper.quit();
+		}
+		for (Iterator i = ptable.entrySet().iterator(); i.hasNext();) {
+			entry = (Map.Entry) i.next();
+			pcb = (VMProcess) entry.getValue();
+			logger.debug("Kernel: Killing process.  PID=" + pcb.getPID(), AutohitErrorCodes.CODE_DEBUGGING);
+			pcb.kill();
+			ptable.remove(entry.getKey(), pcb);
 		}
 	}
 
@@ -259,9 +291,153 @@ public class Kernel {
 	 * Next pid helper.
 	 */
 	private int nextPid() {
-		int candidate = nextpid;
-		nextpid++;
-		return candidate;
+		return nextpid.getAndIncrement();
+	}
+
+	/**
+	 * Background reaper.  It walks the table with a cursor that survives
+	 * between passes, looking at PROCESS_REAP_BATCH entries at a time, so no
+	 * single pass costs a full scan.  It does not hold a reference to the
+	 * kernel, so the kernel can still be finalized.
+	 * <p>
+	 * A process handed out by get() has no VM until the caller loads one, so
+	 * it looks defunct for a while.  The reaper only removes a process that
+	 * has looked defunct for at least one interval.
+	 */
+	private static class Reaper extends Thread {
+
+		private final ConcurrentHashMap table;
+		private final ReadWriteLock lock;
+		private final AutohitLogInjectorWrapper log;
+		private final long interval;
+		private final Object cursorLock = new Object();
+		private Iterator cursor;
+		private HashMap suspects = new HashMap();
+		private volatile boolean kicked;
+		private volatile boolean quit;
+		private volatile int swept;
+
+		Reaper(ConcurrentHashMap table, ReadWriteLock lock, AutohitLogInjectorWrapper log, long interval) {
+			super("Kernel reaper");
+			this.table = table;
+			this.lock = lock;
+			this.log = log;
+			this.interval = interval;
+			setDaemon(true);
+		}
+
+		/**
+		 * Ask for a pass now rather than at the next interval.
+		 */
+		void nudge() {
+			if (!kicked) {
+				synchronized (this) {
+					kicked = true;
+					notify();
+				}
+			}
+		}
+
+		/**
+		 * Size of the table after the last full pass.
+		 * @return the size
+		 */
+		int swept() {
+			return swept;
+		}
+
+		/**
+		 * Stop the reaper.
+		 */
+		synchronized void quit() {
+			quit = true;
+			notify();
+		}
+
+		public void run() {
+			while (!quit) {
+				try {
+					synchronized (this) {
+						if (!kicked) {
+							wait(interval);
+						}
+						kicked = false;
+					}
+
+					// Whole table in batches, giving up the cpu between them.
+					int total = table.size();
+					for (int seen = 0; (seen < total) && !quit; seen += PROCESS_REAP_BATCH) {
+						sweep(PROCESS_REAP_BATCH, interval);
+						Thread.yield();
+					}
+					swept = table.size();
+				} catch (InterruptedException ie) {
+					// just go around
+				} catch (Throwable t) {
+					log.error("Kernel: Reaper fault.  Message=" + t.getMessage(), AutohitErrorCodes.CODE_CATASTROPHIC_FRAMEWORK_FAULT);
+				}
+			}
+		}
+
+		/**
+		 * Look at up to count entries, removing the defunct ones.  The
+		 * cursor wraps at the end of the table.
+		 * @param count most entries to look at
+		 * @param grace milliseconds a process must look defunct before it goes
+		 */
+		void sweep(int count, long grace) {
+			Map.Entry entry;
+			VMProcess pcb;
+			Long since;
+			long now = System.currentTimeMillis();
+
+			synchronized (cursorLock) {
+				for (int seen = 0; seen < count; seen++) {
+					if ((cursor == null) || (!cursor.hasNext())) {
+						cursor = table.entrySet().iterator();
+						if (!cursor.hasNext()) {
+							return;
+						}
+					}
+					entry = (Map.Entry) cursor.next();
+					pcb = (VMProcess) entry.getValue();
+					if (pcb.getProcessState() >= VM.STATE_ACTIVE_THRESHOLD) {
+						suspects.remove(pcb);
+						continue;
+					}
+					since = (Long) suspects.get(pcb);
+					if (since == null) {
+						since = new Long(now);
+						suspects.put(pcb, since);
+					}
+					if ((now - since.longValue()) >= grace) {
+						suspects.remove(pcb);
+						if (remove(entry.getKey(), pcb)) {
+							log.debug(
+								"Kernel:Defunct process removed from memory.  PID=" + entry.getKey().toString(),
+								AutohitErrorCodes.CODE_INFORMATIONAL_OK);
+							pcb.kill();
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Remove an entry if it still maps to the same process.  It holds off
+		 * while a listing is being copied.
+		 * @param key the pid
+		 * @param pcb the process
+		 * @return true if it was removed
+		 */
+		private boolean remove(Object key, VMProcess pcb) {
+			lock.readLock().lock();
+			try {
+				return table.remove(key, pcb);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
 	}
 
 }
@@ -55,13 +55,16 @@ import autohit.vm.VMLoader;
  * a LOCAL universe server
  * a Kernel (uninitialized!)
  * a root loader (uninitialized!)
+ * a shared http connection pool
  * </pre><p>
  * It requires the root property be set.
  *
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 25Apr03 
+ * <code>EPG - Initial - 25Apr03<br>
+ * EPG - Shared http connection pool - 17Oct26<br>
+ * EPG - Shared http batch workers - 17Oct26</code>
  * 
  */
 public class SimpleSystemContext implements SystemContext {
@@ -116,6 +119,16 @@ public class SimpleSystemContext implements SystemContext {
 	 */
 	private VMLoader loader;
 
+	/**
+	 * Shared http connection pool
+	 */
+	private HttpPool httpPool;
+
+	/**
+	 * Shared http batch workers
+	 */
+	private HttpBatchPool httpBatchPool;
+
 	/**
 	 * Debugging flag
 	 */
@@ -360,6 +373,20 @@ public class SimpleSystemContext implements SystemContext {
 			loader = new VMLoader();
 			loader.init(this);
 
+			// BUILD THE HTTP POOL.  A second init lets the old one go.
+			if (httpPool != null) {
+				httpPool.shutdown();
+			}
+			httpPool = new HttpPool();
+			httpPool.init(this);
+
+			// BUILD THE HTTP BATCH WORKERS
+			if (httpBatchPool != null) {
+				httpBatchPool.shutdown();
+			}
+			httpBatchPool = new HttpBatchPool();
+			httpBatchPool.init(this);
+
 		} catch (Exception e) {
 			logger.error(
 				"ERROR during context instantiation.  Aborting.  Exception="
@@ -452,6 +479,22 @@ public class SimpleSystemContext implements SystemContext {
 		return loader;
 	}
 
+	/**
+	 *  Get the shared http connection pool
+	 * @return reference to the pool
+	 */
+	public HttpPool getHttpPool() {
+		return httpPool;
+	}
+
+	/**
+	 *  Get the shared http batch workers
+	 * @return reference to the workers
+	 */
+	public HttpBatchPool getHttpBatchPool() {
+		return httpBatchPool;
+	}
+
 	/**
 	 *  Get the command registry as a properties set.  It is not cached.  
 	 *  this implementation will always return the default set.
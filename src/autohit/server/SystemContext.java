@@ -43,6 +43,7 @@ import autohit.server.command.CommandRegistry;
  *  - A root logger and log manager
  *  - A uninitialized Kernel
  *  - A uninitialized root loader
+ *  - A shared http connection pool
  *  - An invoker properties set
  * </pre>
  *
@@ -50,7 +51,9 @@ import autohit.server.command.CommandRegistry;
  * @version 1.0
  * <i>Version History</i>
  * <code>EPG - Initial - 25Apr03 
- * EPG - Add the invoker properties - 30Jul03</code>
+ * EPG - Add the invoker properties - 30Jul03<br>
+ * EPG - Shared http connection pool - 17Oct26<br>
+ * EPG - Shared http batch workers - 17Oct26</code>
  */
 public interface SystemContext {
 
@@ -125,6 +128,18 @@ public interface SystemContext {
 	 */
 	public VMLoader getLoader();
 
+	/**
+	 *  Get the shared http connection pool.  Return null if not available.
+	 * @return reference to the pool
+	 */
+	public HttpPool getHttpPool();
+
+	/**
+	 *  Get the shared http batch workers.  Return null if not available.
+	 * @return reference to the workers
+	 */
+	public HttpBatchPool getHttpBatchPool();
+
 	/**
 	 *  Get the command registry.  It is up to the implimentor as how to do this.  It is not cached.
 	 * @return a command registry instance
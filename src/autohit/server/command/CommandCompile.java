@@ -49,7 +49,8 @@ import autohit.vm.VMExecutableWrapper;
  * @version 1.0
  * <i>Version History</i>
  * <code>EPG - Initial - 24Jul03
- * EPG - rewrite for new scheme - 31Jul03</code>
+ * EPG - rewrite for new scheme - 31Jul03<br>
+ * EPG - Flush again once saved, for inlined copies - 17Oct26</code>
  * 
  */
 public class CommandCompile extends Command {
@@ -104,6 +105,10 @@ public class CommandCompile extends Command {
 				// save it to the cache
 				os = uni.putStream(dest);
 				ob.save(os);
+
+				// flush again, now that it is there.  Anything that inlined
+				// the old one will see the new one when it checks.
+				sc.getLoader().flush(command);
 			}
 
 		} catch (ServerException sse) {
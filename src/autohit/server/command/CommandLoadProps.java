@@ -45,7 +45,8 @@ import autohit.universe.UniverseException;
  * </code>
  * 
  * @author Erich P. Gatejen
- * @version 1.0 <i>Version History</i><code>EPG - Initial - 4Dec03</code>
+ * @version 1.0 <i>Version History</i><code>EPG - Initial - 4Dec03<br>
+ * EPG - Tell the loader - 17Oct26</code>
  */
 public class CommandLoadProps extends Command {
 
@@ -76,6 +77,7 @@ public class CommandLoadProps extends Command {
 			InputStream is = uni.getStream(command);
 			iprops.load(is);
 			is.close();
+			sc.getLoader().propertiesChanged();
 			
 			// Ok, it's working
 			victory = "saved.";
@@ -46,7 +46,8 @@ import autohit.vm.VMProcess;
  * </code>
  * 
  * @author Erich P. Gatejen
- * @version 1.0 <i>Version History</i><code>EPG - Initial - 27Jul03<
+ * @version 1.0 <i>Version History</i><code>EPG - Initial - 27Jul03<br>
+ * EPG - List from a kernel snapshot, state read once per process - 17Oct26</code>
  */
 public class CommandPS extends Command {
 
@@ -69,13 +70,14 @@ public class CommandPS extends Command {
 
 		VMProcess currentProcess;
 		StringBuffer text;
+		int state;
 		boolean started = false;
 
 		// Trap all non-critical errors and just log them to the
 		// responseChannel
 		try {
 
-			// Get the process list and chug through it
+			// Get a snapshot of the process list and chug through it
 			// Send FINAL_RESULTS on the last item or if the list is empty;
 			List pcbList = (sc.getKernel()).getProcessList();
 			if ((pcbList == null) || (pcbList.size() <= 0)) {
@@ -102,7 +104,9 @@ public class CommandPS extends Command {
 					text.append(RESPONSE_ELEMENT_SEPERATOR);
 					text.append(currentProcess.getPID());
 					text.append(RESPONSE_ELEMENT_SEPERATOR);
-					switch (currentProcess.getState()) {
+					// Read the state once.  It can change under us.
+					state = currentProcess.getProcessState();
+					switch (state) {
 						case VM.STATE_NEW :
 							text.append("new");
 							break;
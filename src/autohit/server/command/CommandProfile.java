@@ -0,0 +1,219 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.server.command;
+
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+
+import autohit.common.AutohitErrorCodes;
+import autohit.server.ServerException;
+import autohit.vm.SimProfile;
+import autohit.vm.SimVM;
+import autohit.vm.VMProcess;
+
+/**
+ * The PROFILE command.  It turns the instruction profiler on and off for a
+ * running process, and reports what it has counted.  The command string is
+ * the PID, then optionally what to do, then optionally how many hot spots
+ * to report:
+ * <pre>
+ * pid [on|off|reset|report] [top]
+ * </pre>
+ * Report is the default.  Turning it off reports what it counted, since 
+ * that would otherwise be lost.  Report lines go to the target in the 
+ * form cmdid|line.
+ * <p>
+ * Only processes running a SimVM can be profiled.
+ * <p>
+ * <code>
+ * COMMAND LIST
+ * this.assert(false,false,false,false,true,false)
+ * 0-UNI 		- OPTIONAL
+ * 1-RESPONSE 	- OPTIONAL
+ * 2-TARGET		- OPTIONAL	- Where the report goes.
+ * 3-CLASS		- UNUSED
+ * 4-COMMAND	- REQUIRED	- PID of the process, then the action and hot spot count.
+ * 5-OBJECT		- UNUSED
+ * </code>
+ * 
+ * @see autohit.vm.SimProfile
+ * 
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code>
+ * 
+ */
+public class CommandProfile extends Command {
+
+	final static long serialVersionUID = 1;
+	
+	/**
+	 * My name
+	 */
+	public final static String MY_NAME = "profile";
+	public final static String LIST_HEADER = "PROFILE" + RESPONSE_ELEMENT_SEPERATOR;
+
+	/**
+	 * Actions
+	 */
+	public final static String ACTION_ON = "on";
+	public final static String ACTION_OFF = "off";
+	public final static String ACTION_RESET = "reset";
+	public final static String ACTION_REPORT = "report";
+
+	/**
+	 * Execute the command.
+	 * @throws ServerException
+	 * @return return the manreadable message for success.
+	 */
+	public String execute() throws ServerException {
+
+		String victory = " failed.";
+		int pid;
+		String action = ACTION_REPORT;
+		int top = SimProfile.TOP_DEFAULT;
+		SimProfile profile;
+
+		try {
+
+			// Pick apart the command
+			StringTokenizer tokens = new StringTokenizer(command);
+			pid = Integer.parseInt(tokens.nextToken());
+			if (tokens.hasMoreTokens()) {
+				action = tokens.nextToken().toLowerCase();
+			}
+			if (tokens.hasMoreTokens()) {
+				top = Integer.parseInt(tokens.nextToken());
+			}
+
+			// Find the VM
+			VMProcess currentProcess = (sc.getKernel()).getProcess(pid);
+			if (currentProcess == null) {
+				throw new ServerException(
+					"failed.  Process does not exist.  PID=" + pid,
+					AutohitErrorCodes.CODE_COMMAND_ERROR);
+			}
+			Object vm = currentProcess.processAttribute(VMProcess.ATTRIBUTE_VM);
+			if (!(vm instanceof SimVM)) {
+				throw new ServerException(
+					"failed.  Process is not running a SimVM.  PID=" + pid,
+					AutohitErrorCodes.CODE_COMMAND_ERROR);
+			}
+			SimVM sim = (SimVM) vm;
+
+			// Do it
+			if (action.equals(ACTION_ON)) {
+				sim.profileOn();
+				victory = "profile on.  PID=" + pid;
+
+			} else if (action.equals(ACTION_OFF)) {
+				profile = sim.profileOff();
+				if (profile != null) {
+					report(profile, top);
+				}
+				victory = "profile off.  PID=" + pid;
+
+			} else if (action.equals(ACTION_RESET)) {
+				profile = sim.getProfile();
+				if (profile == null) {
+					throw new ServerException(
+						"failed.  The profiler is not on.  PID=" + pid,
+						AutohitErrorCodes.CODE_COMMAND_ERROR);
+				}
+				profile.reset();
+				victory = "profile reset.  PID=" + pid;
+
+			} else if (action.equals(ACTION_REPORT)) {
+				profile = sim.getProfile();
+				if (profile == null) {
+					throw new ServerException(
+						"failed.  The profiler is not on.  PID=" + pid,
+						AutohitErrorCodes.CODE_COMMAND_ERROR);
+				}
+				report(profile, top);
+				victory = "profile reported.  PID=" + pid;
+
+			} else {
+				throw new ServerException(
+					"failed.  Unknown action [" + action + "].  Use on, off, reset or report.",
+					AutohitErrorCodes.CODE_COMMAND_ERROR);
+			}
+
+		} catch (ServerException se) {
+			throw se;
+		} catch (NumberFormatException nne) {
+			throw new ServerException(
+				"failed.  PID or hot spot count was not a valid number format.",
+				AutohitErrorCodes.CODE_COMMAND_ERROR);
+		} catch (Exception e) {
+			throw new ServerException(
+				"failed.  There was a general Exception.  message="
+					+ e.getMessage(),
+				AutohitErrorCodes.CODE_COMMAND_FAULT);
+		}
+
+		// return the receipt
+		return victory;
+	}
+
+	/**
+	 * Verify the Profile command. 
+	 * @throws ServerException
+	 * @return return the manreadable message for accepting the command.
+	 */
+	public String verify() throws ServerException {
+		this.assertparam(false, false, false, false, true, false);
+		return "parameters are good.";
+	}
+
+	/**
+	 * Get the textual name for the command.
+	 * @return return the manreadable name of this command.
+	 */
+	public String getName() {
+		return MY_NAME;
+	}
+
+	/**
+	 * Send a report to the target, a line at a time.  If there is no target, 
+	 * there is nobody to tell.
+	 */
+	private void report(SimProfile profile, int top) throws Exception {
+		if (target == null) {
+			return;
+		}
+		ArrayList lines = profile.report(top);
+		for (int index = 0; index < lines.size(); index++) {
+			if (index < (lines.size() - 1)) {
+				sendTarget(
+					LIST_HEADER + uniqueID + RESPONSE_ELEMENT_SEPERATOR + lines.get(index),
+					AutohitErrorCodes.EVENT_COMMAND_PARTIAL_RESULTS,
+					null);
+			} else {
+				sendTarget(
+					LIST_HEADER + uniqueID + RESPONSE_ELEMENT_SEPERATOR + lines.get(index),
+					AutohitErrorCodes.EVENT_COMMAND_FINAL_RESULTS,
+					null);
+			}
+		}
+	}
+}
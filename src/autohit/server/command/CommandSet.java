@@ -43,7 +43,8 @@ import autohit.server.ServerException;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 30Jul03</code>
+ * <code>EPG - Initial - 30Jul03<br>
+ * EPG - Tell the loader - 17Oct26</code>
  * 
  */
 public class CommandSet extends Command {
@@ -81,6 +82,7 @@ public class CommandSet extends Command {
 
 			// Add to invoker properties
 			sc.getInvokerProperties().put(name, value);
+			sc.getLoader().propertiesChanged();
 
 			// Report it
 			victory = "completed.  Property " + name + " added (or replaced).";
@@ -42,7 +42,8 @@ import autohit.vm.VMExecutableWrapper;
  * Only handles VMExecutable compiles now. Compiles to cache space.
  * 
  * @author Erich P. Gatejen
- * @version 1.0 <i>Version History</i><code>EPG - Initial - 25Apr03
+ * @version 1.0 <i>Version History</i><code>EPG - Initial - 25Apr03<br>
+ * EPG - Profile command - 17Oct26</code>
  */
 public class SimTextCommand {
 
@@ -78,6 +79,9 @@ public class SimTextCommand {
 	
 	public final static String COMMAND_SAVEPROPS = "saveprops";
 	public final static int COMMAND_SAVEPROPS_TOKEN = 9;
+
+	public final static String COMMAND_PROFILE = "profile";
+	public final static int COMMAND_PROFILE_TOKEN = 10;
 	
 	// Special case. Says we are done.
 	public final static String COMMAND_EXIT = "exit";
@@ -199,6 +203,8 @@ public class SimTextCommand {
 				a = ps(cl);
 			} else if (cmd.startsWith(COMMAND_KILL)) {
 				a = kill(cl);
+			} else if (cmd.startsWith(COMMAND_PROFILE)) {
+				a = profile(cl);
 			} else if (cmd.startsWith(COMMAND_PROPS)) {
 				a = props(cl);
 			} else if (cmd.startsWith(COMMAND_SAVEPROPS)) {
@@ -418,6 +424,39 @@ public class SimTextCommand {
 		return response;
 	}
 
+	/**
+	 * Profile helper */
+	private CommandAtom profile(CommandLine cli) throws ServerException {
+
+		CommandAtom response = null;
+		try {
+
+			// Check params
+			String source = cli.get();
+			if (source == null) {
+				error("profile", "Required parameter 'PID' missing.");
+				return null;
+			}
+
+			// Action and hot spot count are optional
+			String more = cli.get();
+			while (more != null) {
+				source = source + " " + more;
+				more = cli.get();
+			}
+
+			// Build it.
+			response =
+				new CommandAtom(
+					COMMAND_PROFILE_TOKEN,
+					Command.createCommand(null, controlInjector, clientInjector, null, source, null));
+
+		} catch (Exception e) {
+			error("profile", "Profile command creation failed.  " + e.getMessage());
+		}
+		return response;
+	}
+
 	/**
 	 * PS helper */
 	private CommandAtom props(CommandLine cli) throws ServerException {
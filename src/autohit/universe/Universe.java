@@ -33,7 +33,8 @@ import javax.activation.FileDataSource;
 * @author Erich P. Gatejen
 * @version 1.0
 * <i>Version History</i>
-* <code>EPG - New - 18Apr03</code> 
+* <code>EPG - New - 18Apr03<br>
+* EPG - Add lastModified - 17Oct26</code> 
 * 
 */
 public interface Universe {
@@ -197,4 +198,13 @@ public interface Universe {
 	 */
 	public long size(String name) throws UniverseException;	
 
+	/**
+	 *  Report when an object was last changed.  The value is only good for
+	 *  comparing against an earlier answer for the same object.
+	 * @param name universe name
+	 * @return the modification stamp or 0 if the universe can't tell
+	 * @throws autohit.universe.UniverseException
+	 */
+	public long lastModified(String name) throws UniverseException;
+
 }
@@ -55,7 +55,8 @@ import autohit.universe.UniverseProperties;
 * @author Erich P. Gatejen
 * @version 1.0
 * <i>Version History</i>
-* <code>EPG - New - 24Apr03</code> 
+* <code>EPG - New - 24Apr03<br>
+* EPG - Add lastModified - 17Oct26</code> 
 * 
 */
 public class UniverseLocal implements Universe {
@@ -466,5 +467,25 @@ public class UniverseLocal implements Universe {
 		return size;
 	}
 
+	/**
+	 *  Report when an object was last changed.  This is the file's modification time.
+	 * @param name universe name
+	 * @return the modification stamp or 0 if the universe can't tell
+	 * @throws autohit.universe.UniverseException
+	 */
+	public long lastModified(String name) throws UniverseException {
+
+		File target = new File(root + AutohitProperties.literal_PATH_SEPERATOR + name);
+		long stamp = target.lastModified();
+		if (stamp == 0) {
+			if (!target.exists()) {
+				throw new UniverseException(
+					"No object =" + name,
+					UniverseException.UE_OBJECT_DOESNT_EXIST);
+			}
+		}
+		return stamp;
+	}
+
 	
 }
@@ -0,0 +1,64 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import autohit.vm.i.VMInstruction;
+
+/**
+ * A pre-linked instruction handler for the SimVM.  The SimLinker turns each
+ * instruction in an executable into one of these, so the SimVM can run an
+ * instruction with a single virtual call instead of a switch and a downcast.
+ * <p>
+ * Handlers are built once per loaded executable and are shared by every VM
+ * running it, so they must not hold any state other than the instruction.
+ * Each handler is responsible for advancing the ip, just like the switch.
+ *
+ * @see autohit.vm.SimLinker
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public abstract class SimHandler {
+
+	/**
+	 * The instruction this handler was linked from.
+	 */
+	public final VMInstruction i;
+
+	/**
+	 *  Constructor.
+	 *  @param instr the linked instruction
+	 */
+	public SimHandler(VMInstruction instr) {
+		i = instr;
+	}
+
+	/**
+	 *  Execute the instruction against the VM.
+	 *  @param vm the running SimVM
+	 *  @throws Exception anything the instruction throws.  The SimVM sorts it out.
+	 */
+	public abstract void exec(SimVM vm) throws Exception;
+
+}
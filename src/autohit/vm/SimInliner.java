@@ -0,0 +1,446 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.util.ArrayList;
+
+import autohit.common.Constants;
+import autohit.vm.i.VMIAssert;
+import autohit.vm.i.VMIFetch;
+import autohit.vm.i.VMIGoto;
+import autohit.vm.i.VMIIf;
+import autohit.vm.i.VMIJump;
+import autohit.vm.i.VMILoad;
+import autohit.vm.i.VMINew;
+import autohit.vm.i.VMIRScope;
+import autohit.vm.i.VMIScope;
+import autohit.vm.i.VMISubr;
+import autohit.vm.i.VMInstruction;
+
+/**
+ * Inlines small subroutines into their callers.  A SUBR costs three pushes,
+ * three pops, a loader lookup and a context switch, which is more than the
+ * whole body of a little helper routine.
+ * <p>
+ * The caller is not changed.  The inliner builds a new, linked executable 
+ * with the same name, where each SUBR to a routine no bigger than the limit
+ * is replaced by a copy of that routine:
+ * <pre>
+ * i.load("") i.new(output)   - only if the routine has an output; what SUBR entry does
+ * i.scope                    - the routine's locals go in here
+ * (routine)                  - targets moved; i.fault becomes a GOTO to exit
+ * exit: i.rscope             - what leaving the routine does
+ * i.fetch(output)            - or i.load("") if there is no output; puts the return in LEFT
+ * </pre>
+ * Every jump in the caller is moved to match.  A returning i.fault becomes a
+ * GOTO, so it discards whatever scopes the routine had open, just like the 
+ * real exit would.  A fault inside the copy only busts the copy; the VM 
+ * finds the site for the instruction and unwinds to its exit.  
+ * <p>
+ * Only one level is inlined.  SUBRs inside the copied routine are left as 
+ * they are, and a routine is never inlined into itself.
+ * <p>
+ * The loader keeps the result on the cached executable and checks it again
+ * whenever the routine cache changes, so recompiling a routine drops every 
+ * copy of it.
+ *
+ * @see autohit.vm.VMLoader
+ * @see autohit.vm.SimVM
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public class SimInliner {
+
+	/**
+	 * Where the inliner finds routines.
+	 */
+	public interface Routines {
+
+		/**
+		 * Get a loaded and linked routine, as it was compiled.
+		 * @param name of routine
+		 * @return an executable
+		 * @throws VMException unable to load.
+		 */
+		public VMExecutable routine(String name) throws VMException;
+	}
+
+	/**
+	 * One inlined copy of a routine.
+	 */
+	public static class Site {
+
+		/**
+		 * Routine name, as the SUBR named it.
+		 */
+		public final String name;
+
+		/**
+		 * The routine that was copied.
+		 */
+		public final VMExecutable callee;
+
+		/**
+		 * Where the copy exits.  The i.rscope.
+		 */
+		public final int exit;
+
+		Site(String name, VMExecutable callee, int exit) {
+			this.name = name;
+			this.callee = callee;
+			this.exit = exit;
+		}
+	}
+
+	/**
+	 * The result of inlining an executable.
+	 */
+	public static class Inlined {
+
+		/**
+		 * The executable to run.  It is the original if there was nothing to inline.
+		 */
+		public final VMExecutable exec;
+
+		/**
+		 * Every copy that went into it.
+		 */
+		public final Site[] sites;
+
+		/**
+		 * Routine cache generation this was last known good for.  Kept by the loader.
+		 */
+		public volatile long generation;
+
+		Inlined(VMExecutable exec, Site[] sites) {
+			this.exec = exec;
+			this.sites = sites;
+		}
+
+		/**
+		 * Are all the copies still what the routines would load as?
+		 * @param routines where to look
+		 * @return true if they are
+		 */
+		public boolean current(Routines routines) {
+			for (int index = 0; index < sites.length; index++) {
+				try {
+					if (routines.routine(sites[index].name) != sites[index].callee) {
+						return false;
+					}
+				} catch (Exception e) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 *  Inline an executable.
+	 *  @param name the name the executable was loaded by.  It won't be inlined into itself.
+	 *  @param exec the executable
+	 *  @param routines where to find the routines it calls
+	 *  @param limit biggest routine to inline, in instructions
+	 *  @return the result
+	 */
+	public static Inlined inline(
+		String name,
+		VMExecutable exec,
+		Routines routines,
+		int limit) {
+
+		int size = exec.core.size();
+		VMInstruction ci;
+		VMISubr sub;
+		VMExecutable callee;
+
+		// Find what to inline.  Anything that won't load is left to fail at run time.
+		VMExecutable[] callees = new VMExecutable[size];
+		int found = 0;
+		for (int index = 0; index < size; index++) {
+			ci = (VMInstruction) exec.core.get(index);
+			if (!(ci instanceof VMISubr)) {
+				continue;
+			}
+			sub = (VMISubr) ci;
+			if ((sub.t == null) || sub.t.equals(name)) {
+				continue;
+			}
+			try {
+				callee = routines.routine(sub.t);
+			} catch (Exception e) {
+				continue;
+			}
+			if ((callee == exec)
+				|| (callee.core == null)
+				|| (callee.core.size() > limit)) {
+				continue;
+			}
+			callees[index] = callee;
+			found++;
+		}
+		if (found == 0) {
+			return new Inlined(exec, new Site[0]);
+		}
+
+		// Where each caller instruction lands.  A site lands on its first instruction.
+		int[] moved = new int[size];
+		int at = 0;
+		for (int index = 0; index < size; index++) {
+			moved[index] = at;
+			if (callees[index] == null) {
+				at++;
+			} else {
+				at += frame(callees[index]) + callees[index].core.size();
+			}
+		}
+		int newSize = at;
+
+		// Build it
+		VMSymbol[] callerSyms = SimLinker.symbols(exec);
+		ArrayList code = new ArrayList(newSize);
+		ArrayList syms = new ArrayList(newSize);
+		Site[] sites = new Site[found];
+		Site[] siteAt = new Site[newSize];
+		int nsites = 0;
+		int base;
+		int exit;
+		VMSymbol[] calleeSyms;
+		for (int index = 0; index < size; index++) {
+			ci = (VMInstruction) exec.core.get(index);
+			callee = callees[index];
+			if (callee == null) {
+				emit(code, syms, move(ci, size, moved, newSize), callerSyms);
+				continue;
+			}
+
+			// Entry
+			sub = (VMISubr) ci;
+			if ((callee.output != null) && (callee.output.name != null)) {
+				emit(code, syms, load(ci), callerSyms);
+				VMINew outNew = new VMINew();
+				outNew.v = callee.output.name;
+				outNew.s = -1;
+				outNew.sourceline = ci.sourceline;
+				emit(code, syms, outNew, callerSyms);
+			}
+			VMIScope scope = new VMIScope();
+			scope.sourceline = ci.sourceline;
+			emit(code, syms, scope, callerSyms);
+
+			// Body
+			base = code.size();
+			int calleeSize = callee.core.size();
+			exit = base + calleeSize;
+			Site site = new Site(sub.t, callee, exit);
+			sites[nsites++] = site;
+			calleeSyms = SimLinker.symbols(callee);
+			for (int cip = 0; cip < calleeSize; cip++) {
+				siteAt[base + cip] = site;
+				emit(
+					code,
+					syms,
+					relocate((VMInstruction) callee.core.get(cip), calleeSize, base, exit),
+					calleeSyms);
+			}
+
+			// Exit
+			VMIRScope rscope = new VMIRScope();
+			rscope.sourceline = ci.sourceline;
+			emit(code, syms, rscope, callerSyms);
+			if ((callee.output != null) && (callee.output.name != null)) {
+				VMIFetch outFetch = new VMIFetch();
+				outFetch.v = callee.output.name;
+				outFetch.s = -1;
+				outFetch.sourceline = ci.sourceline;
+				emit(code, syms, outFetch, callerSyms);
+			} else {
+				emit(code, syms, load(ci), callerSyms);
+			}
+		}
+
+		// Same executable, new code
+		VMExecutable result = new VMExecutable();
+		result.core = code;
+		result.name = exec.name;
+		result.uid = exec.uid;
+		result.type = exec.type;
+		result.note = exec.note;
+		result.major = exec.major;
+		result.minor = exec.minor;
+		result.output = exec.output;
+		result.symbols = exec.symbols;
+		result.sites = siteAt;
+
+		// Link it, each instruction with the symbols of the routine it came from.
+		SimHandler[] linked = new SimHandler[newSize];
+		for (int index = 0; index < newSize; index++) {
+			ci = (VMInstruction) code.get(index);
+			if (ci instanceof VMIGoto) {
+				((VMIGoto) ci).resolve(code, index);
+			}
+			linked[index] = SimLinker.handler(ci, (VMSymbol[]) syms.get(index));
+		}
+		result.linked = linked;
+
+		return new Inlined(result, sites);
+	}
+
+	// --- PRIVATE METHODS ---------------------------------------------------	
+
+	/**
+	 *  Instructions a site adds around the routine.
+	 */
+	private static int frame(VMExecutable callee) {
+		if ((callee.output != null) && (callee.output.name != null)) {
+			return 5;
+		}
+		return 3;
+	}
+
+	/**
+	 *  Add an instruction.
+	 */
+	private static void emit(
+		ArrayList code,
+		ArrayList syms,
+		VMInstruction ci,
+		VMSymbol[] with) {
+		code.add(ci);
+		syms.add(with);
+	}
+
+	/**
+	 *  Load an empty LEFT.
+	 */
+	private static VMILoad load(VMInstruction at) {
+		VMILoad empty = new VMILoad();
+		empty.l = Constants.EMPTY_LEFT;
+		empty.sourceline = at.sourceline;
+		return empty;
+	}
+
+	/**
+	 *  Move a caller instruction.  Jumps get a copy with the new target.
+	 *  Targets past the end stay past the end.
+	 */
+	private static VMInstruction move(
+		VMInstruction ci,
+		int size,
+		int[] moved,
+		int newSize) {
+		if (!jumps(ci)) {
+			return ci;
+		}
+		int t = target(ci);
+		if ((t >= 0) && (t < size)) {
+			t = moved[t];
+		} else if (t >= size) {
+			t = newSize + (t - size);
+		}
+		return retarget(ci, t);
+	}
+
+	/**
+	 *  Copy a routine instruction into a site.  Jumps move by base, and 
+	 *  anything leaving the routine goes to the exit.
+	 */
+	private static VMInstruction relocate(
+		VMInstruction ci,
+		int size,
+		int base,
+		int exit) {
+
+		if (ci.instruction == VMInstruction.FAULT) {
+			VMIGoto leave = new VMIGoto();
+			leave.t = exit;
+			leave.sourceline = ci.sourceline;
+			return leave;
+		}
+		if (!jumps(ci)) {
+			return ci;
+		}
+		int t = target(ci);
+		if ((t >= 0) && (t < size)) {
+			t = base + t;
+		} else if (t >= size) {
+			t = exit;
+		}
+		return retarget(ci, t);
+	}
+
+	/**
+	 *  Does it have a target?
+	 */
+	private static boolean jumps(VMInstruction ci) {
+		return (ci instanceof VMIIf)
+			|| (ci instanceof VMIAssert)
+			|| (ci instanceof VMIJump)
+			|| (ci instanceof VMIGoto);
+	}
+
+	/**
+	 *  Its target.
+	 */
+	private static int target(VMInstruction ci) {
+		if (ci instanceof VMIIf) {
+			return ((VMIIf) ci).t;
+		} else if (ci instanceof VMIAssert) {
+			return ((VMIAssert) ci).t;
+		} else if (ci instanceof VMIJump) {
+			return ((VMIJump) ci).t;
+		}
+		return ((VMIGoto) ci).t;
+	}
+
+	/**
+	 *  A copy with a new target.  The original still belongs to its executable.
+	 */
+	private static VMInstruction retarget(VMInstruction ci, int t) {
+		VMInstruction result;
+		if (ci instanceof VMIIf) {
+			VMIIf i = new VMIIf();
+			i.operFlag = ((VMIIf) ci).operFlag;
+			i.t = t;
+			result = i;
+		} else if (ci instanceof VMIAssert) {
+			VMIAssert i = new VMIAssert();
+			i.operFlag = ((VMIAssert) ci).operFlag;
+			i.t = t;
+			result = i;
+		} else if (ci instanceof VMIJump) {
+			VMIJump i = new VMIJump();
+			i.t = t;
+			result = i;
+		} else {
+			VMIGoto i = new VMIGoto();
+			i.t = t;
+			result = i;
+		}
+		result.sourceline = ci.sourceline;
+		return result;
+	}
+}
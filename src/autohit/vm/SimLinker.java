@@ -0,0 +1,644 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import autohit.call.CallRegistry;
+import autohit.call.Call_METHOD;
+import autohit.common.AutohitErrorCodes;
+import autohit.vm.i.VMIArg;
+import autohit.vm.i.VMIAssert;
+import autohit.vm.i.VMICall;
+import autohit.vm.i.VMIClear;
+import autohit.vm.i.VMIEval;
+import autohit.vm.i.VMIExec;
+import autohit.vm.i.VMIFetch;
+import autohit.vm.i.VMIGoto;
+import autohit.vm.i.VMIIf;
+import autohit.vm.i.VMIJump;
+import autohit.vm.i.VMILoad;
+import autohit.vm.i.VMIMath;
+import autohit.vm.i.VMIMerge;
+import autohit.vm.i.VMIMethod;
+import autohit.vm.i.VMINew;
+import autohit.vm.i.VMIReduce;
+import autohit.vm.i.VMIStore;
+import autohit.vm.i.VMISubr;
+import autohit.vm.i.VMInstruction;
+import autohit.vm.process.EvalTemplate;
+
+/**
+ * Links an executable into threaded code for the SimVM.  Every instruction
+ * is replaced by a handler that already knows its concrete instruction type,
+ * so the hot loop in SimVM.execute() does no switch and no casts.
+ * <p>
+ * Linking is done once, when the loader hands back an executable.  The
+ * result is stored in the transient VMExecutable.linked field, so it never
+ * goes into the universe cache.  An executable that was never linked will
+ * still run through the old switch in SimVM.
+ * <p>
+ * Variable instructions are bound to their VMSymbol here, using the
+ * executable's symbol table, so they index the core by slot at run time.
+ * Eval templates are bound the same way.
+ * <p>
+ * Every GOTO has its scope delta resolved here, so taking it costs nothing
+ * more than the frames it discards.
+ * <p>
+ * Every CALL is bound to its CallRegistry factory here.  A CALL to a name
+ * that isn't a call stays unbound and fails by name when it runs.  Every
+ * METHOD gets a call site, which keeps the module instance and method id.
+ * The argument names of both are interned, so the core finds the literal
+ * name a call asks for on the first compare.
+ * <p>
+ * Opcodes the SimVM does not support are linked to a handler that faults when
+ * it is executed, so the behavior is the same as the switch.
+ * <p>
+ * Executables that pass the SimVerifier get faster FETCH and GOTO handlers.
+ * Their FETCH knows at link time whether an ASSERT follows, and takes a
+ * String or number straight out of the core with one lookup.  Their GOTO
+ * has nothing left to check.
+ *
+ * @see autohit.vm.SimHandler
+ * @see autohit.vm.SimVM
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Resolve GOTO scope deltas - 17Oct26<br>
+ * EPG - Numeric literals load as VMInt - 17Oct26<br>
+ * EPG - Symbol tables for the inliner - 17Oct26<br>
+ * EPG - Handlers for verified executables - 17Oct26<br>
+ * EPG - Bind CALL to the call registry - 17Oct26<br>
+ * EPG - METHOD call sites - 17Oct26<br>
+ * EPG - Argument frames - 17Oct26</code> 
+ * 
+ */
+public class SimLinker {
+
+	/**
+	 *  Link an executable.  It is safe to call more than once; the last
+	 *  link wins.
+	 *  @param exec the executable to link
+	 */
+	public static void link(VMExecutable exec) {
+
+		VMSymbol[] syms = symbols(exec);
+
+		int size = exec.core.size();
+		SimHandler[] linked = new SimHandler[size];
+		VMInstruction ci;
+		for (int index = 0; index < size; index++) {
+			ci = (VMInstruction) exec.core.get(index);
+			if (ci instanceof VMIGoto) {
+				((VMIGoto) ci).resolve(exec.core, index);
+			}
+			linked[index] = handler(ci, syms);
+		}
+		exec.linked = linked;
+	}
+
+	/**
+	 *  Map the compiler's slots onto symbols.  One lookup per name,
+	 *  not one per instruction.
+	 *  @param exec the executable
+	 *  @return symbols by slot, or null if the executable has no symbol table
+	 */
+	public static VMSymbol[] symbols(VMExecutable exec) {
+		VMSymbol[] syms = null;
+		if (exec.symbols != null) {
+			syms = new VMSymbol[exec.symbols.length];
+			for (int index = 0; index < syms.length; index++) {
+				syms[index] = VMSymbol.intern(exec.symbols[index]);
+			}
+		}
+		return syms;
+	}
+
+	/**
+	 *  Give a verified executable the handlers that lean on it being
+	 *  verified, and mark it verified.  Only SimVerifier should call this.
+	 *  @param exec the executable.  If it isn't linked, it is only marked.
+	 */
+	static void verified(VMExecutable exec) {
+		SimHandler[] linked = exec.linked;
+		if (linked != null) {
+			int size = linked.length;
+			SimHandler[] fast = new SimHandler[size];
+			SimHandler h;
+			boolean forgive;
+			for (int index = 0; index < size; index++) {
+				h = linked[index];
+				if (h instanceof HFetch) {
+					forgive =
+						(index + 1 < size)
+							&& (linked[index + 1].i instanceof VMIAssert);
+					fast[index] = new HFetchVerified((HFetch) h, forgive);
+				} else if (h instanceof HGoto) {
+					fast[index] = new HGotoVerified((HGoto) h);
+				} else {
+					fast[index] = h;
+				}
+			}
+			exec.linked = fast;
+		}
+		exec.verified = true;
+	}
+
+	/**
+	 *  Unlink an executable.  It will go back to running through the switch.
+	 *  @param exec the executable to unlink
+	 */
+	public static void unlink(VMExecutable exec) {
+		exec.linked = null;
+	}
+
+	/**
+	 *  Build the handler for a single instruction.  Variables are resolved
+	 *  by name.
+	 *  @param ci the instruction
+	 *  @return the handler
+	 */
+	public static SimHandler handler(VMInstruction ci) {
+		return handler(ci, null);
+	}
+
+	/**
+	 *  Build the handler for a single instruction.
+	 *  @param ci the instruction
+	 *  @param syms symbols for the executable's slots, or null to go by name
+	 *  @return the handler
+	 */
+	public static SimHandler handler(VMInstruction ci, VMSymbol[] syms) {
+
+		switch (ci.instruction) {
+			case VMInstruction.CALL :
+				return new HCall((VMICall) ci);
+			case VMInstruction.METHOD :
+				return new HMethod((VMIMethod) ci);
+			case VMInstruction.ARG :
+				return new HArg((VMIArg) ci);
+			case VMInstruction.CLEAR :
+				return new HClear(
+					(VMIClear) ci,
+					symbol(syms, ((VMIClear) ci).s, ((VMIClear) ci).t));
+			case VMInstruction.EVAL :
+				return new HEval((VMIEval) ci, syms);
+			case VMInstruction.EXEC :
+				return new HExec((VMIExec) ci);
+			case VMInstruction.FAULT :
+				return new HFault(ci);
+			case VMInstruction.FETCH :
+				return new HFetch(
+					(VMIFetch) ci,
+					symbol(syms, ((VMIFetch) ci).s, ((VMIFetch) ci).v));
+			case VMInstruction.IF :
+				return new HIf((VMIIf) ci);
+			case VMInstruction.ASSERT :
+				return new HAssert((VMIAssert) ci);
+			case VMInstruction.JUMP :
+				return new HJump((VMIJump) ci);
+			case VMInstruction.GOTO :
+				return new HGoto((VMIGoto) ci);
+			case VMInstruction.LOAD :
+				return new HLoad((VMILoad) ci);
+			case VMInstruction.MATH :
+				return new HMath((VMIMath) ci);
+			case VMInstruction.MERGE :
+				return new HMerge(
+					(VMIMerge) ci,
+					symbol(syms, ((VMIMerge) ci).s, ((VMIMerge) ci).b));
+			case VMInstruction.NEW :
+				return new HNew(
+					(VMINew) ci,
+					symbol(syms, ((VMINew) ci).s, ((VMINew) ci).v));
+			case VMInstruction.NOP :
+				return new HNop(ci);
+			case VMInstruction.REDUCE :
+				return new HReduce(
+					(VMIReduce) ci,
+					symbol(syms, ((VMIReduce) ci).s, ((VMIReduce) ci).b));
+			case VMInstruction.RIGHT :
+				return new HRight(ci);
+			case VMInstruction.RSCOPE :
+				return new HRScope(ci);
+			case VMInstruction.SCOPE :
+				return new HScope(ci);
+			case VMInstruction.STORE :
+				return new HStore(
+					(VMIStore) ci,
+					symbol(syms, ((VMIStore) ci).s, ((VMIStore) ci).v));
+			case VMInstruction.SUBR :
+				return new HSubr((VMISubr) ci);
+			case VMInstruction.MASK :
+			default :
+				return new HInvalid(ci);
+		}
+	}
+
+	/**
+	 *  Resolve a variable.  Use the slot if there is a symbol table and the
+	 *  slot agrees with the name.  Otherwise, go by name.
+	 */
+	private static VMSymbol symbol(VMSymbol[] syms, int slot, String name) {
+		if ((syms != null)
+			&& (slot >= 0)
+			&& (slot < syms.length)
+			&& (syms[slot].name.equals(name))) {
+			return syms[slot];
+		}
+		return VMSymbol.intern(name);
+	}
+
+	/**
+	 *  Intern argument names.  The instruction keeps its own array.
+	 */
+	private static String[] names(String[] a) {
+		if (a == null) {
+			return null;
+		}
+		String[] names = new String[a.length];
+		for (int index = 0; index < a.length; index++) {
+			names[index] = a[index].intern();
+		}
+		return names;
+	}
+
+	// --- HANDLERS ----------------------------------------------------------
+
+	// i.call(target) : call TARGET, target put result in LEFT, store LEFT in result.
+	static final class HCall extends SimHandler {
+		private final VMICall instr;
+		private final CallRegistry.Factory factory;
+		private final String[] names;
+		HCall(VMICall ci) {
+			super(ci);
+			instr = ci;
+			factory = CallRegistry.find(ci.t);
+			names = names(ci.a);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleCall(instr, factory, names);
+			vm.ip++;
+		}
+	}
+
+	// i.method(n,m) : call METHOD, target put result in LEFT, store LEFT in result.
+	static final class HMethod extends SimHandler {
+		private final VMIMethod instr;
+		private final Call_METHOD.Site site;
+		private final String[] names;
+		HMethod(VMIMethod ci) {
+			super(ci);
+			instr = ci;
+			site = new Call_METHOD.Site(ci.m);
+			names = names(ci.a);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleMethod(instr, site, names);
+			vm.ip++;
+		}
+	}
+
+	// i.arg(position) : put LEFT in the argument frame
+	static final class HArg extends SimHandler {
+		private final VMIArg instr;
+		HArg(VMIArg ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleArg(instr);
+			vm.ip++;
+		}
+	}
+
+	// i.clear(buffer) : clear a buffer
+	static final class HClear extends SimHandler {
+		private final VMSymbol sym;
+		HClear(VMIClear ci, VMSymbol s) {
+			super(ci);
+			sym = s;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleClear(sym);
+			vm.ip++;
+		}
+	}
+
+	// i.eval(literal) : evaluate and store in LEFT(literal)
+	static final class HEval extends SimHandler {
+		private final VMIEval instr;
+		HEval(VMIEval ci, VMSymbol[] syms) {
+			super(ci);
+			instr = ci;
+
+			// Executables from before templates get theirs here.
+			if ((ci.t == null) && (ci.e != null)) {
+				ci.t = EvalTemplate.compile(ci.e);
+			}
+			if (ci.t != null) {
+				ci.t.bind(syms);
+			}
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleEval(instr);
+			vm.ip++;
+		}
+	}
+
+	// i.exec(class) : exec TARGET, target put result in LEFT, store LEFT in result.
+	static final class HExec extends SimHandler {
+		private final VMIExec instr;
+		HExec(VMIExec ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleExec(instr);
+			vm.ip++;
+		}
+	}
+
+	// i.fault : push the IP out of bounds.  this will bust us out of this routine.
+	static final class HFault extends SimHandler {
+		HFault(VMInstruction ci) {
+			super(ci);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.ip = vm.mySim.core.size() + 1;
+		}
+	}
+
+	// i.fetch(variable) : load LEFT from storage specified
+	static final class HFetch extends SimHandler {
+		private final VMSymbol sym;
+		HFetch(VMIFetch ci, VMSymbol s) {
+			super(ci);
+			sym = s;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleFetch(sym);
+			vm.ip++;
+		}
+	}
+
+	// i.fetch(variable) in a verified executable.  One lookup for a String
+	// or a number.  Anything else goes the long way.
+	static final class HFetchVerified extends SimHandler {
+		private final VMSymbol sym;
+		private final boolean forgive;
+		HFetchVerified(HFetch h, boolean assertNext) {
+			super(h.i);
+			sym = h.sym;
+			forgive = assertNext;
+		}
+		public void exec(SimVM vm) throws Exception {
+			Object o = vm.core.value(sym);
+			if ((o instanceof String) || (o instanceof VMInt)) {
+				vm.left = o;
+			} else if ((o == null) && (!vm.core.exists(sym))) {
+				vm.fetchMissing(sym, forgive);
+			} else {
+				vm.handleFetch(sym);
+			}
+			vm.ip++;
+		}
+	}
+
+	// i.if(literal,oper) : handler moves the ip
+	static final class HIf extends SimHandler {
+		private final VMIIf instr;
+		HIf(VMIIf ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleIf(instr);
+		}
+	}
+
+	// i.assert(literal,oper) : handler moves the ip
+	static final class HAssert extends SimHandler {
+		private final VMIAssert instr;
+		HAssert(VMIAssert ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleAssert(instr);
+		}
+	}
+
+	// literal jump
+	static final class HJump extends SimHandler {
+		private final int t;
+		HJump(VMIJump ci) {
+			super(ci);
+			t = ci.t;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.ip = t;
+		}
+	}
+
+	// scope sensitive jump
+	static final class HGoto extends SimHandler {
+		private final VMIGoto instr;
+		HGoto(VMIGoto ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleGoto(instr);
+		}
+	}
+
+	// scope sensitive jump in a verified executable.  It can't point at
+	// itself and its scope delta is resolved.
+	static final class HGotoVerified extends SimHandler {
+		private final int t;
+		private final int d;
+		HGotoVerified(HGoto h) {
+			super(h.i);
+			t = h.instr.t;
+			d = h.instr.d;
+		}
+		public void exec(SimVM vm) throws Exception {
+			for (int frames = d; frames > 0; frames--) {
+				vm.core.discardScopeFrame();
+			}
+			vm.ip = t;
+		}
+	}
+
+	// i.load(literal) : load literal into LEFT.  Numbers load as a VMInt.
+	static final class HLoad extends SimHandler {
+		private final Object l;
+		HLoad(VMILoad ci) {
+			super(ci);
+			VMInt num = VMInt.literal(ci.l);
+			if (num == null) {
+				l = ci.l;
+			} else {
+				l = num;
+			}
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.left = l;
+			vm.ip++;
+		}
+	}
+
+	// i.math(oper) : execute operation from RIGHT(literal) to LEFT(literal)
+	static final class HMath extends SimHandler {
+		private final VMIMath instr;
+		HMath(VMIMath ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleMath(instr);
+			vm.ip++;
+		}
+	}
+
+	// i.merge(buffer) : merge LEFT(literal) with named buffer
+	static final class HMerge extends SimHandler {
+		private final VMSymbol sym;
+		HMerge(VMIMerge ci, VMSymbol s) {
+			super(ci);
+			sym = s;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleMerge(sym);
+			vm.ip++;
+		}
+	}
+
+	// i.new(variable) : push LEFT(literal) on stack and mirror to storage
+	static final class HNew extends SimHandler {
+		private final VMSymbol sym;
+		HNew(VMINew ci, VMSymbol s) {
+			super(ci);
+			sym = s;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.core.store(sym, vm.left);
+			vm.ip++;
+		}
+	}
+
+	// Just burn the cycle
+	static final class HNop extends SimHandler {
+		HNop(VMInstruction ci) {
+			super(ci);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.ip++;
+		}
+	}
+
+	// i.reduce(buffer) : reduce a buffer and put in LEFT(literal)
+	static final class HReduce extends SimHandler {
+		private final VMSymbol sym;
+		HReduce(VMIReduce ci, VMSymbol s) {
+			super(ci);
+			sym = s;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleReduce(sym);
+			vm.ip++;
+		}
+	}
+
+	// move LEFT(literal) to RIGHT(literal)
+	static final class HRight extends SimHandler {
+		HRight(VMInstruction ci) {
+			super(ci);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.right = vm.left;
+			vm.ip++;
+		}
+	}
+
+	// pop the stack to the next i.scope.  remove all encounted vars
+	static final class HRScope extends SimHandler {
+		HRScope(VMInstruction ci) {
+			super(ci);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.core.discardScopeFrame();
+			vm.ip++;
+		}
+	}
+
+	// push to stack as a marker
+	static final class HScope extends SimHandler {
+		HScope(VMInstruction ci) {
+			super(ci);
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.core.markScope();
+			vm.ip++;
+		}
+	}
+
+	// i.store(variable) : update in scope variable.  if does not exist, do a i.new
+	static final class HStore extends SimHandler {
+		private final VMSymbol sym;
+		HStore(VMIStore ci, VMSymbol s) {
+			super(ci);
+			sym = s;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.handleStore(sym);
+			vm.ip++;
+		}
+	}
+
+	// i.subr(target) : fork to ROUTINE, store LEFT in result.
+	static final class HSubr extends SimHandler {
+		private final VMISubr instr;
+		HSubr(VMISubr ci) {
+			super(ci);
+			instr = ci;
+		}
+		public void exec(SimVM vm) throws Exception {
+			vm.entry_subr(instr);
+		}
+	}
+
+	// anything the SimVM does not support
+	static final class HInvalid extends SimHandler {
+		HInvalid(VMInstruction ci) {
+			super(ci);
+		}
+		public void exec(SimVM vm) throws Exception {
+			throw new VMException(
+				"Unsupported instruction encounted by autohit.SimVM.  nToken=["
+					+ i.instruction
+					+ "]",
+				AutohitErrorCodes.CODE_VM_INVALID_INSTRUCTION_FAULT);
+		}
+	}
+
+}
@@ -0,0 +1,466 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import autohit.vm.i.VMInstruction;
+
+/**
+ * An instruction profiler for a SimVM.  When it is attached, the VM tells it
+ * about every instruction it runs and every CALL and METHOD it makes.
+ * <p>
+ * Counts are exact.  Time is not; reading the clock around every instruction 
+ * would cost more than most instructions.  Instead, about one instruction in 
+ * SAMPLE is timed and the time is scaled up by SAMPLE.  The gap between 
+ * samples wanders, so a loop the same length as the interval doesn't always 
+ * land on the same instruction.  CALL and METHOD targets are always timed, 
+ * since they are slow enough that the clock doesn't matter.
+ * <p>
+ * Counts are kept per instruction per routine, so a hot spot can be tied
+ * back to its source line through the executable.  The VM charges an
+ * inlined copy of a routine to that routine, not to its caller.
+ * <p>
+ * Only the VM thread writes to it.  Anybody can ask for a report while it
+ * runs; the numbers may be a few instructions stale.
+ *
+ * @see autohit.vm.SimVM
+ * @see autohit.vm.VMExecutable#line(int)
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Inlined routines counted as themselves - 17Oct26</code> 
+ * 
+ */
+public class SimProfile {
+
+	/**
+	 * Average instructions between timed instructions.  Must be a power of 2.
+	 */
+	public final static int SAMPLE = 16;
+
+	/**
+	 * Hot spots to report if nobody says.
+	 */
+	public final static int TOP_DEFAULT = 10;
+
+	/**
+	 * Per opcode.
+	 */
+	private long[] opCount;
+	private long[] opNanos;
+
+	/**
+	 * Per routine, by executable name.
+	 */
+	private Hashtable routines;
+
+	/**
+	 * CALL targets and METHOD names.
+	 */
+	private Hashtable calls;
+	private Hashtable methods;
+
+	/**
+	 * Instructions until the next timed one, and the generator that picks the gap.
+	 */
+	private int countdown;
+	private int seed;
+
+	/**
+	 * When it started counting.
+	 */
+	private long since;
+
+	/**
+	 * The last routine.  It usually doesn't change between instructions.
+	 */
+	private VMExecutable lastExec;
+	private Routine lastRoutine;
+
+	/**
+	 * Counters for one executable.
+	 */
+	private static class Routine {
+		VMExecutable exec;
+		long[] count;
+		long[] nanos;
+		long total;
+
+		Routine(VMExecutable e) {
+			exec = e;
+			count = new long[e.core.size()];
+			nanos = new long[e.core.size()];
+		}
+	}
+
+	/**
+	 * Counters for a CALL or METHOD target.
+	 */
+	private static class Target {
+		String name;
+		long count;
+		long nanos;
+
+		Target(String n) {
+			name = n;
+		}
+	}
+
+	/**
+	 * One instruction, for the hot spot list.
+	 */
+	private static class Spot {
+		Routine r;
+		int ip;
+
+		Spot(Routine r, int ip) {
+			this.r = r;
+			this.ip = ip;
+		}
+	}
+
+	/**
+	 *  Constructor.  It starts empty.
+	 */
+	public SimProfile() {
+		seed = 0x2545F491;
+		reset();
+	}
+
+	/**
+	 *  Throw away everything counted so far.
+	 */
+	public synchronized void reset() {
+		opCount = new long[VMInstruction.NAMES.length];
+		opNanos = new long[VMInstruction.NAMES.length];
+		routines = new Hashtable();
+		calls = new Hashtable();
+		methods = new Hashtable();
+		lastExec = null;
+		lastRoutine = null;
+		countdown = SAMPLE;
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 *  An instruction is about to run.  
+	 *
+	 *  @param exec the executable it is in
+	 *  @param ip where it is
+	 *  @param opcode what it is
+	 *  @return a start time to pass to exit(), or -1 if this one isn't timed.
+	 */
+	public long enter(VMExecutable exec, int ip, int opcode) {
+		Routine r = routine(exec);
+		if (ip < r.count.length) {
+			r.count[ip]++;
+		}
+		r.total++;
+		if ((opcode >= 0) && (opcode < opCount.length)) {
+			opCount[opcode]++;
+		}
+		if (--countdown > 0) {
+			return -1;
+		}
+
+		// Next gap is 1 to 2*SAMPLE, so it averages about SAMPLE.
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		countdown = 1 + (seed & ((SAMPLE * 2) - 1));
+		return System.nanoTime();
+	}
+
+	/**
+	 *  An instruction is done.
+	 *
+	 *  @param exec the executable it was in when it started
+	 *  @param ip where it was
+	 *  @param opcode what it is
+	 *  @param start what enter() returned
+	 */
+	public void exit(VMExecutable exec, int ip, int opcode, long start) {
+		if (start < 0) {
+			return;
+		}
+		long scaled = (System.nanoTime() - start) * SAMPLE;
+		Routine r = routine(exec);
+		if (ip < r.nanos.length) {
+			r.nanos[ip] += scaled;
+		}
+		if ((opcode >= 0) && (opcode < opNanos.length)) {
+			opNanos[opcode] += scaled;
+		}
+	}
+
+	/**
+	 *  A CALL finished.
+	 *
+	 *  @param name the call
+	 *  @param nanos how long it took
+	 */
+	public void call(String name, long nanos) {
+		target(calls, name, nanos);
+	}
+
+	/**
+	 *  A METHOD finished.
+	 *
+	 *  @param name module and method
+	 *  @param nanos how long it took
+	 */
+	public void method(String name, long nanos) {
+		target(methods, name, nanos);
+	}
+
+	/**
+	 *  Total instructions counted.
+	 *
+	 *  @return the count
+	 */
+	public long instructions() {
+		long result = 0;
+		long[] counts = opCount;
+		for (int index = 0; index < counts.length; index++) {
+			result += counts[index];
+		}
+		return result;
+	}
+
+	/**
+	 *  Make a report.  Opcodes, routines, the hottest instructions
+	 *  by estimated time, then calls and methods.
+	 *
+	 *  @param top how many hot spots to list
+	 *  @return the report, a line per entry
+	 */
+	public synchronized ArrayList report(int top) {
+
+		ArrayList out = new ArrayList();
+		int index;
+
+		out.add(
+			"instructions="
+				+ instructions()
+				+ " elapsed="
+				+ (System.currentTimeMillis() - since)
+				+ "ms sample=1/"
+				+ SAMPLE
+				+ " (times are estimates)");
+
+		// Opcodes
+		out.add("OPCODE        COUNT        EST.US");
+		for (index = 0; index < opCount.length; index++) {
+			if (opCount[index] > 0) {
+				out.add(
+					pad(VMInstruction.name(index), 8)
+						+ lpad(opCount[index], 12)
+						+ lpad(opNanos[index] / 1000, 14));
+			}
+		}
+
+		// Routines
+		ArrayList rs = values(routines);
+		out.add("ROUTINE                           COUNT        EST.US");
+		Routine r;
+		long nanos;
+		for (index = 0; index < rs.size(); index++) {
+			r = (Routine) rs.get(index);
+			nanos = 0;
+			for (int ip = 0; ip < r.nanos.length; ip++) {
+				nanos += r.nanos[ip];
+			}
+			out.add(
+				pad(r.exec.name, 28)
+					+ lpad(r.total, 12)
+					+ lpad(nanos / 1000, 14));
+		}
+
+		// Hot spots
+		ArrayList spots = new ArrayList();
+		for (index = 0; index < rs.size(); index++) {
+			r = (Routine) rs.get(index);
+			for (int ip = 0; ip < r.count.length; ip++) {
+				if (r.count[ip] > 0) {
+					spots.add(new Spot(r, ip));
+				}
+			}
+		}
+		Collections.sort(spots, new Comparator() {
+			public int compare(Object a, Object b) {
+				Spot sa = (Spot) a;
+				Spot sb = (Spot) b;
+				long na = sa.r.nanos[sa.ip];
+				long nb = sb.r.nanos[sb.ip];
+				if (na == nb) {
+					na = sa.r.count[sa.ip];
+					nb = sb.r.count[sb.ip];
+				}
+				if (na == nb)
+					return 0;
+				return (na > nb) ? -1 : 1;
+			}
+		});
+		out.add("HOT ROUTINE                        IP  LINE OPCODE        COUNT        EST.US");
+		Spot s;
+		for (index = 0;(index < top) && (index < spots.size()); index++) {
+			s = (Spot) spots.get(index);
+			out.add(
+				pad(s.r.exec.name, 28)
+					+ lpad(s.ip, 8)
+					+ lpad(s.r.exec.line(s.ip), 6)
+					+ " "
+					+ pad(VMInstruction.name(((VMInstruction) s.r.exec.core.get(s.ip)).instruction), 8)
+					+ lpad(s.r.count[s.ip], 10)
+					+ lpad(s.r.nanos[s.ip] / 1000, 14));
+		}
+
+		targets(out, "CALL", calls);
+		targets(out, "METHOD", methods);
+		return out;
+	}
+
+	/**
+	 *  The report as one string.
+	 *
+	 *  @return the report
+	 */
+	public String toString() {
+		ArrayList lines = report(TOP_DEFAULT);
+		StringBuffer result = new StringBuffer();
+		for (int index = 0; index < lines.size(); index++) {
+			result.append(lines.get(index));
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	// --- PRIVATE METHODS ---------------------------------------------------	
+
+	/**
+	 *  Find the counters for an executable.  A new executable by the 
+	 *  same name replaces the old counters, unless it is the same size.
+	 */
+	private Routine routine(VMExecutable exec) {
+		if (exec == lastExec) {
+			return lastRoutine;
+		}
+		Routine r = (Routine) routines.get(exec.name);
+		if ((r == null) || (r.count.length != exec.core.size())) {
+			r = new Routine(exec);
+			routines.put(exec.name, r);
+		} else {
+			r.exec = exec;
+		}
+		lastExec = exec;
+		lastRoutine = r;
+		return r;
+	}
+
+	/**
+	 *  Count a target.
+	 */
+	private void target(Hashtable table, String name, long nanos) {
+		if (name == null) {
+			return;
+		}
+		Target t = (Target) table.get(name);
+		if (t == null) {
+			t = new Target(name);
+			table.put(name, t);
+		}
+		t.count++;
+		t.nanos += nanos;
+	}
+
+	/**
+	 *  Report targets, the most time first.
+	 */
+	private void targets(ArrayList out, String title, Hashtable table) {
+		ArrayList ts = values(table);
+		if (ts.size() == 0) {
+			return;
+		}
+		Collections.sort(ts, new Comparator() {
+			public int compare(Object a, Object b) {
+				long na = ((Target) a).nanos;
+				long nb = ((Target) b).nanos;
+				if (na == nb)
+					return 0;
+				return (na > nb) ? -1 : 1;
+			}
+		});
+		out.add(pad(title, 28) + "       COUNT      TOTAL.US        AVG.US");
+		Target t;
+		for (int index = 0; index < ts.size(); index++) {
+			t = (Target) ts.get(index);
+			out.add(
+				pad(t.name, 28)
+					+ lpad(t.count, 12)
+					+ lpad(t.nanos / 1000, 14)
+					+ lpad((t.nanos / t.count) / 1000, 14));
+		}
+	}
+
+	/**
+	 *  Copy the values out of a table, so it can be looked at while the VM keeps going.
+	 */
+	private ArrayList values(Hashtable table) {
+		ArrayList result = new ArrayList();
+		synchronized (table) {
+			Enumeration e = table.elements();
+			while (e.hasMoreElements()) {
+				result.add(e.nextElement());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *  Pad on the right.
+	 */
+	private String pad(String s, int width) {
+		StringBuffer result = new StringBuffer(s);
+		while (result.length() < width) {
+			result.append(' ');
+		}
+		return result.toString();
+	}
+
+	/**
+	 *  Pad a number on the left.
+	 */
+	private String lpad(long n, int width) {
+		StringBuffer result = new StringBuffer(Long.toString(n));
+		while (result.length() < width) {
+			result.insert(0, ' ');
+		}
+		return result.toString();
+	}
+
+}
@@ -22,10 +22,14 @@ package autohit.vm;
 
 import autohit.call.Call;
 import autohit.call.CallException;
+import autohit.call.CallRegistry;
 import autohit.call.Call_METHOD;
 import autohit.common.AutohitErrorCodes;
+import autohit.common.AutohitProperties;
 import autohit.common.Constants;
+import autohit.common.Utils;
 import autohit.creator.SimLanguage;
+import autohit.vm.i.VMIArg;
 import autohit.vm.i.VMIAssert;
 import autohit.vm.i.VMICall;
 import autohit.vm.i.VMIClear;
@@ -41,12 +45,11 @@ import autohit.vm.i.VMIMerge;
 import autohit.vm.i.VMIMethod;
 import autohit.vm.i.VMINew;
 import autohit.vm.i.VMINop;
-import autohit.vm.i.VMIRScope;
 import autohit.vm.i.VMIReduce;
-import autohit.vm.i.VMIScope;
 import autohit.vm.i.VMIStore;
 import autohit.vm.i.VMISubr;
 import autohit.vm.i.VMInstruction;
+import autohit.vm.process.EvalTemplate;
 import autohit.vm.process.StringProcessors;
 
 /**
@@ -64,6 +67,29 @@ import autohit.vm.process.StringProcessors;
  * will be incremented and decremented as we enter and leave routines.  This helps up
  * keep an exception from unravelling the entire VM.
  * <p>
+ * If the loader linked the executable (see SimLinker), each instruction is run
+ * through its pre-linked handler.  Otherwise the VM falls back to switching on
+ * the instruction token.  Both paths share the same instruction helpers.
+ * <p>
+ * An executable the loader verified (see SimVerifier) has no jump that points
+ * at itself, so it runs without the check for a runaway program.
+ * <p>
+ * Subroutines the loader inlined (see SimInliner) run as part of the caller.
+ * A fault inside one busts just that copy, the same as it would bust the 
+ * subroutine, by unwinding to the copy's exit.
+ * <p>
+ * If a SimProfile is attached, every instruction goes through it instead.
+ * It is attached by setting vm.profile or with profileOn(), and the normal
+ * path only pays for checking that it isn't.
+ * <p>
+ * EXEC forks the target onto a new process from the Kernel.  The new VM stands
+ * on a snapshot of this core, so the fork costs the same however many variables
+ * are in scope.  LEFT gets the new pid, which the JOIN call takes.
+ * <p>
+ * ARG puts LEFT into the argument frame at its position.  A CALL or METHOD
+ * with argument names hands the frame to the core while it runs, so the call
+ * finds its parameters there instead of in a scope of their own.
+ * <p>
  * Currently only the following MATH operations are implemented
  * <pre>
  * +	= plus
@@ -88,17 +114,43 @@ import autohit.vm.process.StringProcessors;
  * <code>EPG - Rewrite - 8May03<br>
  * EPG - Add goto - 16Jul03<br>
  * EPG - Add assert - 5Aug03<br>
- * EPG - Add module shortcut - 9Aug03</code> 
+ * EPG - Add module shortcut - 9Aug03<br>
+ * EPG - Threaded dispatch through linked handlers - 17Oct26<br>
+ * EPG - Variables by symbol slot - 17Oct26<br>
+ * EPG - Render precompiled eval templates - 17Oct26<br>
+ * EPG - GOTO uses precomputed scope delta - 17Oct26<br>
+ * EPG - Integer registers for MATH and IF - 17Oct26<br>
+ * EPG - Parameterized debug - 17Oct26<br>
+ * EPG - Instruction profiler - 17Oct26<br>
+ * EPG - Inlined subroutines - 17Oct26<br>
+ * EPG - Stackless DONE and instruction errors - 17Oct26<br>
+ * EPG - EXEC forks a VM - 17Oct26<br>
+ * EPG - No runaway check for verified executables - 17Oct26<br>
+ * EPG - Calls by registry factory - 17Oct26<br>
+ * EPG - METHOD call sites - 17Oct26<br>
+ * EPG - Argument frames for CALL and METHOD - 17Oct26<br>
+ * EPG - Profile inlined copies as their routine - 17Oct26</code> 
  * 
  */
 public class SimVM extends VM {
 
+	/**
+	 *  METHOD is a CALL underneath.  This is its factory.
+	 */
+	private final static CallRegistry.Factory METHOD_CALL =
+		CallRegistry.find("METHOD");
+
+	/**
+	 *  Initial size of the argument frame.
+	 */
+	private final static int ARGS_INITIAL = 8;
+
 	/**
 	 *  The current executable.
 	 *
 	 *  @see autohit.vm.VMExecutable
 	 */
-	private VMExecutable mySim;
+	VMExecutable mySim;
 
 	/**
 	 *  Subroutine depth.
@@ -120,6 +172,22 @@ public class SimVM extends VM {
 	 */
 	private VMInstruction ci;
 
+	/**
+	 *  Argument values for the next CALL or METHOD, by position.  ARG
+	 *  fills it and the call empties it.
+	 */
+	private Object[] args = new Object[ARGS_INITIAL];
+
+	/**
+	 *  Working buffer for eval templates.  Reused for every eval.
+	 */
+	private StringBuffer evalBuffer = new StringBuffer();
+
+	/**
+	 *  The profiler, if it is on.  Other threads turn it on and off.
+	 */
+	private volatile SimProfile profile;
+
 	/**
 	 *  Default Constructor.  Don't do anything!
 	 */
@@ -161,6 +229,48 @@ public class SimVM extends VM {
 
 		// last instruction set to soemthing impossible
 		lastIP = -99999;
+
+		// Profile from the start?
+		if ((process != null)
+			&& (process.getSystemContext() != null)
+			&& Utils.testGetPropertyTruth(
+				AutohitProperties.VM_PROFILE,
+				process.getSystemContext().getPropertiesSet())) {
+			profileOn();
+		}
+	}
+
+	/**
+	 *  Turn on the profiler.  If it is already on, it keeps counting.
+	 *  This may be called by any thread.
+	 *
+	 *  @return the profile
+	 */
+	public synchronized SimProfile profileOn() {
+		if (profile == null) {
+			profile = new SimProfile();
+		}
+		return profile;
+	}
+
+	/**
+	 *  Turn off the profiler.  This may be called by any thread.
+	 *
+	 *  @return what it counted, or null if it wasn't on
+	 */
+	public synchronized SimProfile profileOff() {
+		SimProfile result = profile;
+		profile = null;
+		return result;
+	}
+
+	/**
+	 *  Get the profile.
+	 *
+	 *  @return the profile, or null if the profiler is off
+	 */
+	public SimProfile getProfile() {
+		return profile;
 	}
 
 	/**
@@ -169,9 +279,10 @@ public class SimVM extends VM {
 	 *  start() method is called.  From there, the owning Object/Thread should 
 	 *  call this method for each successive instruction to execute.
 	 *  <p>
-	 *  This method will throw a VMException(VMException.DONE) if there are
+	 *  This method will throw VMSignal.DONE if there are
 	 *  no more instructions that can be executed.  (The ip is past the
-	 *  end of the exec Vector). 
+	 *  end of the exec Vector).  Errors an instruction reports and the VM
+	 *  steps past are VMSignals too, so they don't pay for a stack trace.
 	 *  <p>
 	 *  @throws VMException
 	 *  @see autohit.vm.VMException
@@ -199,8 +310,11 @@ public class SimVM extends VM {
 						VMException.CODE_VM_PANIC);
 				}
 
-				if (scratch instanceof String) {
+				if (scratch instanceof VMSymbol) {
 					// local variable.  Remove it.
+					core.remove((VMSymbol) scratch);
+				} else if (scratch instanceof String) {
+					// local variable by name.  Remove it.
 					core.remove((String) scratch);
 				}
 
@@ -218,7 +332,7 @@ public class SimVM extends VM {
 
 				if (scratch instanceof VMINop) {
 					// found that NOP at the bottom of the stack.  Must be done.
-					throw new VMException(VMException.CODE_VM_DONE);
+					throw VMSignal.DONE;
 				}
 
 			} // end while
@@ -228,201 +342,33 @@ public class SimVM extends VM {
 
 			// check for a runaway program that just keeps executing the
 			// same dead command.  This is what happens when a GOTO
-			// points at itself.  :^)
-			if (ip == lastIP) {
-				ip++; // kick it
-				myLog.error(
-					"VMSim:"
-						+ mySim.name
-						+ " Detected a runaway program that is looping on the same instruction.   IP kicked by one, but the VM is probibly unstable.",
-					AutohitErrorCodes.CODE_VM_INSTRUCTION_ABORT);
-				return;
-			} else {
-				lastIP = ip;
+			// points at itself.  :^)  The verifier already ruled that out
+			// for a verified executable.
+			if (!mySim.verified) {
+				if (ip == lastIP) {
+					ip++; // kick it
+					myLog.error(
+						"VMSim:"
+							+ mySim.name
+							+ " Detected a runaway program that is looping on the same instruction.   IP kicked by one, but the VM is probibly unstable.",
+						AutohitErrorCodes.CODE_VM_INSTRUCTION_ABORT);
+					return;
+				} else {
+					lastIP = ip;
+				}
 			}
 
-			ci = (VMInstruction) mySim.core.get(ip);
-			// NOTES:  Each instruction is responsible for advancing the
-			// ip.
-			//DEBUG
-			//myLog.debug("SIMVM: get token at ip=" + ip + " is=" + ci.instruction);
-
-			switch (ci.instruction) {
-
-				case VMInstruction.CALL :
-					// i.call(target)	  : call TARGET, target put result in LEFT, store LEFT in result.
-					handleCall((VMICall) ci);
-					ip++;
-					break;
-
-				case VMInstruction.METHOD :
-					// i.method(n,m)	  : call MATHOD, target put result in LEFT, store LEFT in result.
-					handleMethod((VMIMethod) ci);
-					ip++;
-					break;
-
-				case VMInstruction.CLEAR :
-					// i.clear(buffer) : clear a buffer
-					if (core.exists(((VMIClear) ci).t)) {
-						core.replace(((VMIClear) ci).t, new StringBuffer());
-					} else {
-						// It's a brand new buffer
-						core.store(((VMIClear) ci).t, new StringBuffer());
-					}
-					ip++;
-					break;
-
-				case VMInstruction.EVAL :
-					// * i.eval(literal)	  : evaluate and store in LEFT(literal)
-					handleEval((VMIEval) ci);
-					ip++;
-					break;
-
-				case VMInstruction.EXEC :
-					// i.exec(class)	  : exec TARGET, target put result in LEFT, store LEFT in result.
-					handleExec((VMIExec) ci);
-					ip++;
-					break;
-
-				case VMInstruction.FAULT :
-					// i.fault  	  : push the IP out of bounds.  this will bust us
-					// out of this routine.
-					ip = mySim.core.size() + 1;
-					break;
-
-				case VMInstruction.FETCH :
-					// i.fetch(variable) : load LEFT from storage specified
-					// may not be a buffer
-					// TODO SimVM currently only supports String and StringBuffer for passbyreference
-					if (core.exists(((VMIFetch) ci).v)) {
-						scratch = core.fetch(((VMIFetch) ci).v);
-						if ((scratch instanceof String)
-							|| (scratch instanceof StringBuffer)) {
-							left = scratch;
-
-						} else {
-							//	Blech!  Something bad in this object
-							throw new VMException(
-								"ERROR in FETCH: Fetched object is not a String or StringBuffer.  This may mean bad things later.  name="
-									+ ((VMIFetch) ci).v,
-								AutohitErrorCodes.CODE_VM_INSTRUCTION_WARNING);
-						}
-
-					} else {
-						// The variable doesn't exist.  Forgive it if the next command is an assert
-						// TODO Terrible hack to look ahead for asserts on fetch fail
-						boolean faultme = true;
-						try {
-							if (mySim.core.get(ip + 1) instanceof VMIAssert) {
-								faultme = false;
-								left = null;
-							}
-						} catch (Exception ecccc) {
-						}
-						// FAULT.
-						if (faultme)
-							throw new VMException(
-								"FETCH failed: Variable does not exist.  name="
-									+ ((VMIFetch) ci).v,
-								AutohitErrorCodes
-									.CODE_VM_VARIABLE_NOT_DEFINED_FAULT);
-					}
-					ip++;
-					break;
-
-				case VMInstruction.IF :
-					handleIf((VMIIf) ci);
-					break;
-
-				case VMInstruction.ASSERT :
-					handleAssert((VMIAssert) ci);
-					break;
-
-				case VMInstruction.JUMP :
-					// literal jump
-					ip = ((VMIJump) ci).t;
-					break;
-
-				case VMInstruction.GOTO :
-					// literal jump
-					handleGoto((VMIGoto) ci);
-					break;
-
-				case VMInstruction.LOAD :
-					// i.load(literal)   : load literal into LEFT
-					left = ((VMILoad) ci).l;
-					ip++;
-					break;
-
-				case VMInstruction.MATH :
-					// i.math(oper)  	  : execute operation from RIGHT(literal) to LEFT(literal)
-					handleMath((VMIMath) ci);
-					ip++;
-					break;
-
-				case VMInstruction.MERGE :
-					// i.merge(buffer)   : merge LEFT(literal) with named buffer
-					handleMerge((VMIMerge) ci);
-					ip++;
-					break;
-
-				case VMInstruction.NEW :
-					// i.new(variable)   : push LEFT(literal) on stack and mirror to storage
-					core.store(((VMINew) ci).v, left);
-					ip++;
-					break;
-
-				case VMInstruction.NOP :
-					// Just burn the cycle
-					ip++;
-					break;
-
-				case VMInstruction.REDUCE :
-					// i.reduce(buffer)  : reduce a buffer and put in LEFT(literal)
-					handleReduce((VMIReduce) ci);
-					ip++;
-					break;
-
-				case VMInstruction.RIGHT :
-					// move LEFT(literal) to RIGHT(literal)
-					right = left;
-					ip++;
-					break;
-
-				case VMInstruction.RSCOPE :
-					// pop the stack to the next i.scope.  remove all encounted vars
-					core.discardScopeFrame();
-					ip++;
-					break;
-
-				case VMInstruction.SCOPE :
-					// push to stack as a marker
-					core.markScope();
-					ip++;
-					break;
-
-				case VMInstruction.STORE :
-					// i.store(variable) : update in scope variable.  if does not exist, do a i.new
-					if (core.exists(((VMIStore) ci).v)) {
-						core.replace(((VMIStore) ci).v, left);
-					} else {
-						core.store(((VMIStore) ci).v, left);
-					}
-					ip++;
-					break;
-
-				case VMInstruction.SUBR :
-					// 	i.subr(target)	  : fork to ROUTINE, store LEFT in result.
-					entry_subr((VMISubr) ci);
-					break;
-
-				case VMInstruction.MASK :
-				default :
-					throw new VMException(
-						"Unsupported instruction encounted by autohit.SimVM.  nToken=["
-							+ ci.instruction
-							+ "]",
-						AutohitErrorCodes.CODE_VM_INVALID_INSTRUCTION_FAULT);
+			SimProfile p = profile;
+			if (p != null) {
+				profiled(p);
+			} else if (mySim.linked != null) {
+				// Threaded.  One virtual call, no casts.
+				SimHandler h = mySim.linked[ip];
+				ci = h.i;
+				h.exec(this);
+			} else {
+				ci = (VMInstruction) mySim.core.get(ip);
+				dispatch();
 			}
 
 		} catch (VMException e) {
@@ -434,7 +380,24 @@ public class SimVM extends VM {
 				faults++;
 
 				// BUST THIS ROUTINE
-				if (subDepth > 0) {
+				SimInliner.Site site = null;
+				if ((mySim.sites != null) && (ip >= 0) && (ip < mySim.sites.length)) {
+					site = mySim.sites[ip];
+				}
+				if (site != null) {
+					// we are in an inlined subroutine.  Bomb out of the copy.
+					myLog.error(
+						"VMSim:Routine "
+							+ site.name
+							+ " (inlined) FAULT at ip="
+							+ ip
+							+ ".  Message="
+							+ e.getMessage(),
+						e.numeric);
+					faults++;
+					leaveInline(site);
+
+				} else if (subDepth > 0) {
 					// we are in a subroutine.  Bomb out of it.  Find the stack bottom or 
 					// the bottom of the subroutine stackframe
 					try {
@@ -513,16 +476,348 @@ public class SimVM extends VM {
 		}
 	}
 
+	/**
+	 *  Run the current instruction, telling the profiler about it.  It is
+	 *  charged to the routine it started in, even if it leaves it.  An
+	 *  instruction in an inlined copy is charged to the routine it was
+	 *  copied from, at its place there, so hot spots line up with the
+	 *  routine's source.
+	 *  @throws Exception anything the instruction throws.
+	 */
+	private void profiled(SimProfile p) throws Exception {
+
+		VMExecutable at = mySim;
+		int atIP = ip;
+		if ((mySim.sites != null) && (ip < mySim.sites.length)) {
+			SimInliner.Site site = mySim.sites[ip];
+			if (site != null) {
+				at = site.callee;
+				atIP = ip - (site.exit - site.callee.core.size());
+			}
+		}
+		SimHandler h = null;
+		if (mySim.linked != null) {
+			h = mySim.linked[ip];
+			ci = h.i;
+		} else {
+			ci = (VMInstruction) mySim.core.get(ip);
+		}
+
+		long start = p.enter(at, atIP, ci.instruction);
+		try {
+			if (h != null) {
+				h.exec(this);
+			} else {
+				dispatch();
+			}
+		} finally {
+			p.exit(at, atIP, ci.instruction, start);
+		}
+	}
+
+	/**
+	 *  Run the current instruction through the switch.  This is only used
+	 *  for executables that were not linked.  Each instruction is responsible
+	 *  for advancing the ip.
+	 *  @throws Exception anything the instruction throws.
+	 */
+	private void dispatch() throws Exception {
+
+		switch (ci.instruction) {
+
+			case VMInstruction.CALL :
+				// i.call(target)	  : call TARGET, target put result in LEFT, store LEFT in result.
+				handleCall((VMICall) ci);
+				ip++;
+				break;
+
+			case VMInstruction.METHOD :
+				// i.method(n,m)	  : call MATHOD, target put result in LEFT, store LEFT in result.
+				handleMethod((VMIMethod) ci);
+				ip++;
+				break;
+
+			case VMInstruction.ARG :
+				// i.arg(position)	  : put LEFT in the argument frame
+				handleArg((VMIArg) ci);
+				ip++;
+				break;
+
+			case VMInstruction.CLEAR :
+				// i.clear(buffer) : clear a buffer
+				handleClear(VMSymbol.intern(((VMIClear) ci).t));
+				ip++;
+				break;
+
+			case VMInstruction.EVAL :
+				// * i.eval(literal)	  : evaluate and store in LEFT(literal)
+				handleEval((VMIEval) ci);
+				ip++;
+				break;
+
+			case VMInstruction.EXEC :
+				// i.exec(class)	  : exec TARGET, target put result in LEFT, store LEFT in result.
+				handleExec((VMIExec) ci);
+				ip++;
+				break;
+
+			case VMInstruction.FAULT :
+				// i.fault  	  : push the IP out of bounds.  this will bust us
+				// out of this routine.
+				ip = mySim.core.size() + 1;
+				break;
+
+			case VMInstruction.FETCH :
+				// i.fetch(variable) : load LEFT from storage specified
+				handleFetch(VMSymbol.intern(((VMIFetch) ci).v));
+				ip++;
+				break;
+
+			case VMInstruction.IF :
+				handleIf((VMIIf) ci);
+				break;
+
+			case VMInstruction.ASSERT :
+				handleAssert((VMIAssert) ci);
+				break;
+
+			case VMInstruction.JUMP :
+				// literal jump
+				ip = ((VMIJump) ci).t;
+				break;
+
+			case VMInstruction.GOTO :
+				// literal jump
+				handleGoto((VMIGoto) ci);
+				break;
+
+			case VMInstruction.LOAD :
+				// i.load(literal)   : load literal into LEFT
+				left = ((VMILoad) ci).l;
+				ip++;
+				break;
+
+			case VMInstruction.MATH :
+				// i.math(oper)  	  : execute operation from RIGHT(literal) to LEFT(literal)
+				handleMath((VMIMath) ci);
+				ip++;
+				break;
+
+			case VMInstruction.MERGE :
+				// i.merge(buffer)   : merge LEFT(literal) with named buffer
+				handleMerge(VMSymbol.intern(((VMIMerge) ci).b));
+				ip++;
+				break;
+
+			case VMInstruction.NEW :
+				// i.new(variable)   : push LEFT(literal) on stack and mirror to storage
+				core.store(VMSymbol.intern(((VMINew) ci).v), left);
+				ip++;
+				break;
+
+			case VMInstruction.NOP :
+				// Just burn the cycle
+				ip++;
+				break;
+
+			case VMInstruction.REDUCE :
+				// i.reduce(buffer)  : reduce a buffer and put in LEFT(literal)
+				handleReduce(VMSymbol.intern(((VMIReduce) ci).b));
+				ip++;
+				break;
+
+			case VMInstruction.RIGHT :
+				// move LEFT(literal) to RIGHT(literal)
+				right = left;
+				ip++;
+				break;
+
+			case VMInstruction.RSCOPE :
+				// pop the stack to the next i.scope.  remove all encounted vars
+				core.discardScopeFrame();
+				ip++;
+				break;
+
+			case VMInstruction.SCOPE :
+				// push to stack as a marker
+				core.markScope();
+				ip++;
+				break;
+
+			case VMInstruction.STORE :
+				// i.store(variable) : update in scope variable.  if does not exist, do a i.new
+				handleStore(VMSymbol.intern(((VMIStore) ci).v));
+				ip++;
+				break;
+
+			case VMInstruction.SUBR :
+				// 	i.subr(target)	  : fork to ROUTINE, store LEFT in result.
+				entry_subr((VMISubr) ci);
+				break;
+
+			case VMInstruction.MASK :
+			default :
+				throw new VMException(
+					"Unsupported instruction encounted by autohit.SimVM.  nToken=["
+						+ ci.instruction
+						+ "]",
+					AutohitErrorCodes.CODE_VM_INVALID_INSTRUCTION_FAULT);
+		}
+	}
+
+	/* 
+	 * Handle CLEAR instruction
+	 * i.clear(buffer) : clear a buffer
+	 */
+	void handleClear(VMSymbol sym) throws VMException {
+		if (core.exists(sym)) {
+			core.replace(sym, new StringBuffer());
+		} else {
+			// It's a brand new buffer
+			core.store(sym, new StringBuffer());
+		}
+	}
+
+	/* 
+	 * Handle FETCH instruction
+	 * i.fetch(variable) : load LEFT from storage specified
+	 * may not be a buffer
+	 * TODO SimVM currently only supports String and StringBuffer for passbyreference
+	 */
+	void handleFetch(VMSymbol sym) throws VMException {
+		if (core.exists(sym)) {
+			scratch = core.value(sym);
+			if ((scratch instanceof String)
+				|| (scratch instanceof VMInt)
+				|| (scratch instanceof StringBuffer)) {
+				left = scratch;
+
+			} else {
+				//	Blech!  Something bad in this object
+				throw new VMSignal(
+					"ERROR in FETCH: Fetched object is not a String or StringBuffer.  This may mean bad things later.  name="
+						+ sym.name,
+					AutohitErrorCodes.CODE_VM_INSTRUCTION_WARNING);
+			}
+
+		} else {
+			// The variable doesn't exist.  Forgive it if the next command is an assert
+			// TODO Terrible hack to look ahead for asserts on fetch fail
+			boolean forgive = false;
+			try {
+				forgive = (mySim.core.get(ip + 1) instanceof VMIAssert);
+			} catch (Exception ecccc) {
+			}
+			fetchMissing(sym, forgive);
+		}
+	}
+
+	/* 
+	 * FETCH of a variable that doesn't exist.  The verified FETCH handler
+	 * already knows if the next command is an assert.
+	 */
+	void fetchMissing(VMSymbol sym, boolean forgive) throws VMException {
+		if (forgive) {
+			left = null;
+		} else {
+			// FAULT.
+			throw new VMException(
+				"FETCH failed: Variable does not exist.  name=" + sym.name,
+				AutohitErrorCodes.CODE_VM_VARIABLE_NOT_DEFINED_FAULT);
+		}
+	}
+
+	/* 
+	 * Handle STORE instruction
+	 * i.store(variable) : update in scope variable.  if does not exist, do a i.new
+	 */
+	void handleStore(VMSymbol sym) throws VMException {
+		if (core.exists(sym)) {
+			core.replace(sym, left);
+		} else {
+			core.store(sym, left);
+		}
+	}
+
+	/* 
+	 * Handle ARG instruction
+	 * i.arg(position)	  : put LEFT in the argument frame at position.
+	 */
+	void handleArg(VMIArg instr) {
+		int p = instr.p;
+		if (p >= args.length) {
+			growArgs(p + 1);
+		}
+		args[p] = left;
+	}
+
+	/* 
+	 * Make the argument frame hold at least size values.
+	 */
+	private void growArgs(int size) {
+		Object[] bigger = new Object[size + ARGS_INITIAL];
+		System.arraycopy(args, 0, bigger, 0, args.length);
+		args = bigger;
+	}
+
+	/* 
+	 * Put up the argument frame for a call, if it has one.
+	 */
+	private void enterArgs(String[] names) {
+		if (names != null) {
+			if (names.length > args.length) {
+				growArgs(names.length);
+			}
+			core.enterArgs(names, args);
+		}
+	}
+
+	/* 
+	 * Take down the argument frame and let go of the values.
+	 */
+	private void leaveArgs(String[] names) {
+		if (names != null) {
+			core.leaveArgs();
+			for (int index = 0; index < names.length; index++) {
+				args[index] = null;
+			}
+		}
+	}
+
 	/* 
 	 * Handle CALL instruction
 	 * i.call(target)	  : call TARGET, target put result in LEFT, store LEFT in result.
 	 */
-	private void handleCall(VMICall instr) throws Exception {
+	void handleCall(VMICall instr) throws Exception {
+		handleCall(instr, null, instr.a);
+	}
+
+	/* 
+	 * Handle CALL instruction with the call's factory, if it was bound, and
+	 * its argument names, if it has a frame.
+	 */
+	void handleCall(VMICall instr, CallRegistry.Factory f, String[] names) throws Exception {
 
+		enterArgs(names);
 		try {
 
-			Call c = loader.get(instr.t, core, myLog);
-			left = c.call();
+			Call c;
+			if (f == null) {
+				c = loader.get(instr.t, core, myLog);
+			} else {
+				c = loader.get(f, core, myLog);
+			}
+			SimProfile p = profile;
+			if (p == null) {
+				left = c.call();
+			} else {
+				long start = System.nanoTime();
+				try {
+					left = c.call();
+				} finally {
+					p.call(instr.t, System.nanoTime() - start);
+				}
+			}
 
 		} catch (CallException e) {
 			if (myLog.debugState())
@@ -540,6 +835,8 @@ public class SimVM extends VM {
 					+ e.getMessage(),
 				VMException.CODE_VM_CALL_FAULT,
 				e);
+		} finally {
+			leaveArgs(names);
 		}
 	}
 
@@ -548,13 +845,41 @@ public class SimVM extends VM {
 	 * using CALL_METHOD.
 	 * i.method()	  : call Module/method, target put result in LEFT, store LEFT in result.
 	 */
-	private void handleMethod(VMIMethod instr) throws Exception {
+	void handleMethod(VMIMethod instr) throws Exception {
+		handleMethod(instr, null, instr.a);
+	}
 
+	/* 
+	 * Handle METHOD instruction through its call site, if it was linked, and
+	 * with its argument names, if it has a frame.
+	 */
+	void handleMethod(VMIMethod instr, Call_METHOD.Site site, String[] names) throws Exception {
+
+		enterArgs(names);
 		try {
 
 			// We know it is a method
-			Call_METHOD c = (Call_METHOD) loader.get("METHOD", core, myLog);
-			left = c.do_call((String) left, instr.m);
+			Call_METHOD c = (Call_METHOD) loader.get(METHOD_CALL, core, myLog);
+			SimProfile p = profile;
+			if (p == null) {
+				if (site == null) {
+					left = c.do_call((String) VMInt.external(left), instr.m);
+				} else {
+					left = c.do_call((String) VMInt.external(left), site);
+				}
+			} else {
+				String module = (String) VMInt.external(left);
+				long start = System.nanoTime();
+				try {
+					if (site == null) {
+						left = c.do_call(module, instr.m);
+					} else {
+						left = c.do_call(module, site);
+					}
+				} finally {
+					p.method(module + "." + instr.m, System.nanoTime() - start);
+				}
+			}
 
 		} catch (CallException e) {
 			if (myLog.debugState())
@@ -572,25 +897,57 @@ public class SimVM extends VM {
 					+ e.getMessage(),
 				VMException.CODE_VM_CALL_FAULT,
 				e);
+		} finally {
+			leaveArgs(names);
 		}
 	}
 
 	/* 
 	 * Handle EXEC instruction
-	 * i.exec(class)	  : exec TARGET, target put result in LEFT, store LEFT in result.
+	 * i.exec(target)	  : run TARGET in a new SimVM on its own process, put its pid in LEFT.
+	 * The new VM sees a snapshot of this core, inputs and all, and shares our
+	 * response channel.  It doesn't wait.  Use the JOIN call with the pid for that.
 	 */
-	private void handleExec(VMIExec instr) throws VMException {
+	void handleExec(VMIExec instr) throws VMException {
 
+		VMProcess pcb = null;
+		boolean forked = false;
 		try {
 
-			// TODO implement exec
+			// Make sure it is there before we fork anything
+			loader.load(instr.c);
 
+			pcb = loader.sc.getKernel().get();
+			if (pcb == null) {
+				throw new VMException(
+					"EXEC failed: No process available to run " + instr.c,
+					AutohitErrorCodes.CODE_VM_EXEC_FAULT);
+			}
+
+			SimVM child = new SimVM();
+			child.init(rinjector, instr.c);
+			child.setParentCore(core);
+			if (!pcb.execute(child)) {
+				throw new VMException(
+					"EXEC failed: Process would not take the VM for " + instr.c,
+					AutohitErrorCodes.CODE_VM_EXEC_FAULT);
+			}
+			forked = true;
+			left = Integer.toString(pcb.getPID());
+			myLog.debug("SIMVM: EXEC {} pid={}", instr.c, left);
+
+		} catch (VMException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new VMException(
 				" Execution fork Subsystem fault.  Unable to complete EXEC. error="
 					+ e.getMessage(),
 				AutohitErrorCodes.CODE_VM_EXEC_FAULT,
 				e);
+		} finally {
+			// Don't leave an empty process lying around
+			if ((pcb != null) && (!forked))
+				pcb.kill();
 		}
 	}
 
@@ -598,7 +955,7 @@ public class SimVM extends VM {
 	 * Handle GOTO instruction
 	 * i.goto(target) : scope sensitive jump.  includes a nasty ass hack to bust any scope frame.
 	 */
-	private void handleGoto(VMIGoto instr) throws VMException {
+	void handleGoto(VMIGoto instr) throws VMException {
 
 		// decide which way we jump
 		int delta = instr.t - ip;
@@ -612,53 +969,21 @@ public class SimVM extends VM {
 			// points at the next instruction.  silly but valid.
 			ip++;
 
-		} else if (delta < 0) {
-
-			// jumping UP.  Look for any SCOPES and bust their frames
-			Object tci;
-			int drscopes = 0;
-			int dscopes = 0;
-			int dbalance = 0;
-			for (int i = ip; i > instr.t; i--) {
-				tci = mySim.core.get(i);
-				if (tci instanceof VMIScope) {
-					dscopes++;
-				} else if (tci instanceof VMIRScope) {
-					drscopes++;
-				}
-			}
-			dbalance = dscopes - drscopes;
-			while (dbalance > 0) {
-				core.discardScopeFrame();
-				dbalance--;
-			}
-
-			ip = instr.t;
-
 		} else {
 
-			// jumping DOWN.  Look for any RSCOPES and bust their frames	
-			Object tci;
-			int drscopes = 0;
-			int dscopes = 0;
-			int dbalance = 0;
-			for (int i = ip; i < instr.t; i++) {
-				tci = mySim.core.get(i);
-				if (tci instanceof VMIScope) {
-					dscopes++;
-				} else if (tci instanceof VMIRScope) {
-					drscopes++;
-				}
+			// Bust the scope frames we jump out of.  How many is worked
+			// out once, usually by the linker.
+			if (!instr.resolved) {
+				instr.resolve(mySim.core, ip);
 			}
-			dbalance = drscopes - dscopes;
+			int dbalance = instr.d;
 			while (dbalance > 0) {
 				core.discardScopeFrame();
 				dbalance--;
 			}
 
 			ip = instr.t;
-
-		} // end if down
+		}
 	}
 
 	/* 
@@ -682,9 +1007,9 @@ public class SimVM extends VM {
 	 *		i.rscope					// do 14
 	 *		if (result exist) i.store(result)       // do 15
 	 */
-	private void entry_subr(VMISubr instr) throws VMException {
+	void entry_subr(VMISubr instr) throws VMException {
 
-		myLog.debug("SIMVM: Enter subr.  t=" + instr.t);
+		myLog.debug("SIMVM: Enter subr.  t={}", instr.t);
 
 		VMExecutable loadedSim = null;
 
@@ -728,6 +1053,7 @@ public class SimVM extends VM {
 			mySim = loadedSim;
 			subDepth++;
 			ip = 0;
+			lastIP = -99999; // a new routine.  nothing has run in it yet.
 
 		} catch (Exception e) {
 			throw new VMException(
@@ -738,6 +1064,27 @@ public class SimVM extends VM {
 		}
 	}
 
+	/*
+	 * Leave an inlined subroutine from wherever it is.  This is the GOTO
+	 * its return would have taken: discard the scopes it has open and go to
+	 * the exit.
+	 */
+	private void leaveInline(SimInliner.Site site) {
+		try {
+			VMIGoto leave = new VMIGoto();
+			leave.t = site.exit;
+			leave.resolve(mySim.core, ip);
+			int dbalance = leave.d;
+			while (dbalance > 0) {
+				core.discardScopeFrame();
+				dbalance--;
+			}
+		} catch (Exception ex) {
+			// don't care - the exit will do what it can
+		}
+		ip = site.exit;
+	}
+
 	/*
 	 * Handle the subroutine exit, steps 10 through 11
 	 * EXIT
@@ -784,11 +1131,16 @@ public class SimVM extends VM {
 	 * Handle eval Instruction
 	 * i.eval(literal)	  : evaluate and store in LEFT(literal)
 	 */
-	private void handleEval(VMIEval instr) throws VMException {
+	void handleEval(VMIEval instr) throws VMException {
 
 		try {
 
-			left = StringProcessors.evalString2Core(instr.e, core);
+			EvalTemplate template = instr.t;
+			if (template != null) {
+				left = template.render(core, evalBuffer);
+			} else {
+				left = StringProcessors.evalString2Core(instr.e, core);
+			}
 
 		} catch (Exception e) {
 			left = Constants.EMPTY_LEFT;
@@ -807,33 +1159,37 @@ public class SimVM extends VM {
 	/**
 	 * Handle Math Instruction<code>
 	 * If either left or right fail a parse, the values will be compared
-	 * as strings.
+	 * as strings.  A VMInt needs no parse, and the result is left as one.
 	 * i.math(oper)  	  : execute operation from RIGHT(literal)</code>
 	 */
-	private void handleMath(VMIMath instr) throws VMException {
+	void handleMath(VMIMath instr) throws VMException {
 
 		int res = 0;
 		int l = 0;
 		int r = 0;
 		boolean donumbers = true;
 
-		myLog.debug(
-			"MATH start: left="
-				+ left.toString()
-				+ "  right="
-				+ right.toString());
+		myLog.debug("MATH start: left={}  right={}", left, right);
 
 		try {
 
-			try {
-				l = Integer.parseInt(left.toString());
-			} catch (NumberFormatException e) {
-				donumbers = false;
+			if (left instanceof VMInt) {
+				l = ((VMInt) left).value;
+			} else {
+				try {
+					l = Integer.parseInt(left.toString());
+				} catch (NumberFormatException e) {
+					donumbers = false;
+				}
 			}
-			try {
-				r = Integer.parseInt(right.toString());
-			} catch (NumberFormatException e) {
-				donumbers = false;
+			if (right instanceof VMInt) {
+				r = ((VMInt) right).value;
+			} else {
+				try {
+					r = Integer.parseInt(right.toString());
+				} catch (NumberFormatException e) {
+					donumbers = false;
+				}
 			}
 
 			if (donumbers) {
@@ -852,7 +1208,7 @@ public class SimVM extends VM {
 					} catch (ArithmeticException e) {
 						dumpei(instr);
 						res = 0;
-						throw new VMException(
+						throw new VMSignal(
 							"DIVIDE BY ZERO.  Math operation aborted; result = 0.  Operation="
 								+ instr.o,
 							AutohitErrorCodes.CODE_PROGRAM_DIVIDEBYZERO,
@@ -867,20 +1223,20 @@ public class SimVM extends VM {
 
 				} else {
 					dumpei(instr);
-					throw new VMException(
+					throw new VMSignal(
 						"Unrecognized math operations.  Math operation aborted; result = 0.  Operation="
 							+ instr.o,
 						AutohitErrorCodes.CODE_PROGRAM_ERROR);
 
 				}
 
-			} else if (right instanceof String) {
+			} else if ((right instanceof String) || (right instanceof VMInt)) {
 				// treat like a string compare.  Compares two strings lexicographically.
 				// "0" means the strings are identical
-				res = ((String) right).compareTo(left.toString());
+				res = right.toString().compareTo(left.toString());
 
 			} else {
-				throw new VMException(
+				throw new VMSignal(
 					"Math error.  Left and/or Right expressions inappropriate objects for a math operation.",
 					VMException.CODE_VM_INSTRUCTION_ERROR);
 			}
@@ -896,20 +1252,20 @@ public class SimVM extends VM {
 		}
 
 		// store result
-		left = Integer.toString(res);
+		left = VMInt.valueOf(res);
 
-		myLog.debug("MATH done: left=" + left);
+		myLog.debug("MATH done: left={}", left);
 	}
 
 	/**
 	 * Handle merge instruction<p><code>
 	 * i.merge(buffer)   : merge LEFT(literal) with named buffer</code>
 	 */
-	private void handleMerge(VMIMerge instr) throws VMException {
+	void handleMerge(VMSymbol sym) throws VMException {
 
 		try {
 
-			Object tb = core.fetch(instr.b);
+			Object tb = core.fetch(sym);
 
 			if (tb != null) {
 
@@ -918,21 +1274,23 @@ public class SimVM extends VM {
 					((StringBuffer) tb).append(left);
 
 				} else {
-					throw new VMException(
+					throw new VMSignal(
 						"VMSim: Merge not possible.  ["
-							+ instr.b
+							+ sym.name
 							+ "] is not a buffer.  Aborting instruction, but not execution.",
 						AutohitErrorCodes.CODE_PROGRAM_ERROR);
 				}
 
 			} else {
-				throw new VMException(
+				throw new VMSignal(
 					"VMSim: Merge not possible.  ["
-						+ instr.b
+						+ sym.name
 						+ "] does not exist.  Aborting instruction, but not execution.",
 					AutohitErrorCodes.CODE_PROGRAM_ERROR);
 			}
 
+		} catch (VMException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new VMException(
 				"VMSim: Merge fault.  Unable to complete MERGE.  error="
@@ -952,28 +1310,33 @@ public class SimVM extends VM {
 	 *		not : if LEFT(literal) is 0, jump to literal</code>
 	 * TODO This using a non-zero as a default in IF resolution may be scary
 	 */
-	private void handleIf(VMIIf instr) throws VMException {
+	void handleIf(VMIIf instr) throws VMException {
 
 		// Prepare Left.  Default value is not zero	
 		int leftval = SimLanguage.NOT_ZERO;
 		String scrubleft;
 
-		if (left instanceof String) {
-			scrubleft = (String) left;
+		if (left instanceof VMInt) {
+			leftval = ((VMInt) left).value;
 
-		} else if (left instanceof StringBuffer) {
-			scrubleft = ((StringBuffer) left).toString();
 		} else {
-			ip = ((VMIIf) ci).t;
-			throw new VMException(
-				"Left expression inappropriate type for IF operation.  Assume FALSE.",
-				VMException.CODE_VM_INSTRUCTION_ERROR);
-		}
+			if (left instanceof String) {
+				scrubleft = (String) left;
 
-		try {
-			leftval = Integer.parseInt(scrubleft);
-		} catch (Exception e) {
-		} // Dont care
+			} else if (left instanceof StringBuffer) {
+				scrubleft = ((StringBuffer) left).toString();
+			} else {
+				ip = ((VMIIf) ci).t;
+				throw new VMSignal(
+					"Left expression inappropriate type for IF operation.  Assume FALSE.",
+					VMException.CODE_VM_INSTRUCTION_ERROR);
+			}
+
+			try {
+				leftval = Integer.parseInt(scrubleft);
+			} catch (Exception e) {
+			} // Dont care
+		}
 
 		switch (instr.operFlag) {
 
@@ -1026,7 +1389,7 @@ public class SimVM extends VM {
 	 *		eq  : default.   if LEFT(literal) is empty, null, or void, then jump to literal
 	 *		not : if LEFT(literal) is NOT empty, null, or void, jump to literal</code>
 	 */
-	private void handleAssert(VMIAssert instr) throws VMException {
+	void handleAssert(VMIAssert instr) throws VMException {
 
 		// See if it is empty
 		boolean isempty = false;
@@ -1075,11 +1438,11 @@ public class SimVM extends VM {
 	 * Handle merge instruction
 	 * i.reduce(buffer)  : reduce a buffer and put in LEFT(literal)
 	 */
-	private void handleReduce(VMIReduce instr) throws VMException {
+	void handleReduce(VMSymbol sym) throws VMException {
 
 		try {
 
-			Object tb = core.fetch(instr.b);
+			Object tb = core.fetch(sym);
 
 			if (tb != null) {
 
@@ -1088,21 +1451,23 @@ public class SimVM extends VM {
 					left = tb.toString();
 
 				} else {
-					throw new VMException(
+					throw new VMSignal(
 						"VMSim: Reduce not possible.  ["
-							+ instr.b
+							+ sym.name
 							+ "] is not a buffer.  Aborting instruction, but not execution.",
 						AutohitErrorCodes.CODE_PROGRAM_ERROR);
 				}
 
 			} else {
-				throw new VMException(
+				throw new VMSignal(
 					"Reduce not possible.  ["
-						+ instr.b
+						+ sym.name
 						+ "] does not exist.  Aborting instruction, but not execution.",
 					AutohitErrorCodes.CODE_PROGRAM_ERROR);
 			}
 
+		} catch (VMException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new VMException(
 				"Reduce fault.  Unable to complete REDUCE.  error="
@@ -0,0 +1,344 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.util.HashSet;
+import java.util.Iterator;
+
+import autohit.common.AutohitErrorCodes;
+import autohit.vm.i.VMIArg;
+import autohit.vm.i.VMIAssert;
+import autohit.vm.i.VMIClear;
+import autohit.vm.i.VMIGoto;
+import autohit.vm.i.VMIIf;
+import autohit.vm.i.VMIJump;
+import autohit.vm.i.VMIMerge;
+import autohit.vm.i.VMINew;
+import autohit.vm.i.VMIReduce;
+import autohit.vm.i.VMIStore;
+import autohit.vm.i.VMISubr;
+import autohit.vm.i.VMInstruction;
+
+/**
+ * Checks an executable once, when the loader hands it out, for the things
+ * the SimVM would otherwise watch for on every instruction.  An executable
+ * passes if:
+ * <p>
+ * - every IF, ASSERT, JUMP and GOTO lands inside the routine, or just past
+ *   its end, and none of them lands on itself.<br>
+ * - scopes balance.  Every way into an instruction gets there with the same
+ *   number of open scopes, no RSCOPE closes a scope that isn't open, and the
+ *   routine ends with none open.<br>
+ * - no name is used both as a buffer (CLEAR, MERGE, REDUCE) and as a
+ *   variable (NEW, STORE).<br>
+ * - every SUBR names a routine that will load.<br>
+ * - no ARG has a negative position.<br>
+ * - every opcode is one the SimVM runs.
+ * <p>
+ * Only instructions that can be reached from the first one are looked at.
+ * <p>
+ * A passing executable is marked verified and SimLinker gives it the fast
+ * handlers.  Since nothing in it can jump to itself, the SimVM doesn't look
+ * for a runaway program while it runs.  An executable that fails runs as it
+ * always did.
+ *
+ * @see autohit.vm.SimLinker
+ * @see autohit.vm.VMLoader
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Check ARG - 17Oct26</code> 
+ * 
+ */
+public class SimVerifier {
+
+	/**
+	 *  Verify an executable, unless it has been already.  If it passes, it
+	 *  is marked verified and linked to the fast handlers.
+	 *  @param exec the executable
+	 *  @param routines where to find the routines it SUBRs
+	 *  @throws VMException if it fails.  Only the first problem is reported.
+	 *  Once an executable has failed, it fails again without being checked.
+	 */
+	public static void verify(VMExecutable exec, SimInliner.Routines routines)
+		throws VMException {
+
+		synchronized (exec) {
+			if (exec.verified) {
+				return;
+			}
+			if (exec.checked) {
+				throw new VMException(
+					"Verifier: [" + exec.name + "] failed before.",
+					AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT);
+			}
+			exec.checked = true;
+			check(exec, routines);
+			SimLinker.verified(exec);
+		}
+	}
+
+	/**
+	 *  Check an executable.  It isn't changed, except that any unresolved
+	 *  GOTO gets resolved.
+	 *  @param exec the executable
+	 *  @param routines where to find the routines it SUBRs, or null to not
+	 *  check SUBR targets
+	 *  @throws VMException for the first problem found
+	 */
+	public static void check(VMExecutable exec, SimInliner.Routines routines)
+		throws VMException {
+
+		int size = exec.core.size();
+
+		// Open scopes on the way into each instruction.  -1 until reached.
+		// Slot size is the end of the routine.
+		int[] depth = new int[size + 1];
+		for (int index = 0; index <= size; index++) {
+			depth[index] = -1;
+		}
+		int[] work = new int[size + 1];
+		int pending = 0;
+
+		HashSet buffers = new HashSet();
+		HashSet variables = new HashSet();
+		HashSet subrs = new HashSet();
+
+		depth[0] = 0;
+		work[pending++] = 0;
+		int at;
+		int d;
+		int t;
+		VMInstruction ci;
+		while (pending > 0) {
+			at = work[--pending];
+			d = depth[at];
+
+			if (at == size) {
+				if (d != 0) {
+					throw fail(exec, at, "Routine ends with " + d + " scopes open.");
+				}
+				continue;
+			}
+
+			ci = (VMInstruction) exec.core.get(at);
+			switch (ci.instruction) {
+
+				case VMInstruction.SCOPE :
+					pending = flow(exec, depth, work, pending, at, at + 1, d + 1);
+					break;
+
+				case VMInstruction.RSCOPE :
+					if (d == 0) {
+						throw fail(exec, at, "RSCOPE without an open scope.");
+					}
+					pending = flow(exec, depth, work, pending, at, at + 1, d - 1);
+					break;
+
+				case VMInstruction.JUMP :
+					t = target(exec, at, ((VMIJump) ci).t);
+					pending = flow(exec, depth, work, pending, at, t, d);
+					break;
+
+				case VMInstruction.GOTO :
+					VMIGoto g = (VMIGoto) ci;
+					t = target(exec, at, g.t);
+					if (!g.resolved) {
+						g.resolve(exec.core, at);
+					}
+					if (g.d > d) {
+						throw fail(exec, at, "GOTO leaves more scopes than are open.");
+					}
+					pending = flow(exec, depth, work, pending, at, t, d - g.d);
+					break;
+
+				case VMInstruction.IF :
+					t = target(exec, at, ((VMIIf) ci).t);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					pending = flow(exec, depth, work, pending, at, t, d);
+					break;
+
+				case VMInstruction.ASSERT :
+					t = target(exec, at, ((VMIAssert) ci).t);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					pending = flow(exec, depth, work, pending, at, t, d);
+					break;
+
+				case VMInstruction.FAULT :
+					// busts out of the routine.  goes nowhere.
+					break;
+
+				case VMInstruction.CLEAR :
+					buffers.add(((VMIClear) ci).t);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.MERGE :
+					buffers.add(((VMIMerge) ci).b);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.REDUCE :
+					buffers.add(((VMIReduce) ci).b);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.NEW :
+					variables.add(((VMINew) ci).v);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.STORE :
+					variables.add(((VMIStore) ci).v);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.SUBR :
+					subrs.add(((VMISubr) ci).t);
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.ARG :
+					if (((VMIArg) ci).p < 0) {
+						throw fail(exec, at, "ARG to a negative position.");
+					}
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				case VMInstruction.CALL :
+				case VMInstruction.METHOD :
+				case VMInstruction.EVAL :
+				case VMInstruction.EXEC :
+				case VMInstruction.FETCH :
+				case VMInstruction.LOAD :
+				case VMInstruction.MATH :
+				case VMInstruction.NOP :
+				case VMInstruction.RIGHT :
+					pending = flow(exec, depth, work, pending, at, at + 1, d);
+					break;
+
+				default :
+					throw fail(
+						exec,
+						at,
+						"Opcode " + ci.instruction + " is not supported by the SimVM.");
+			}
+		}
+
+		// Buffers and variables
+		buffers.retainAll(variables);
+		if (!buffers.isEmpty()) {
+			throw fail(
+				exec,
+				-1,
+				"Used as both a buffer and a variable: " + buffers);
+		}
+
+		// SUBR targets
+		if (routines != null) {
+			String name = null;
+			try {
+				for (Iterator i = subrs.iterator(); i.hasNext();) {
+					name = (String) i.next();
+					routines.routine(name);
+				}
+			} catch (Exception e) {
+				throw new VMException(
+					"Verifier: ["
+						+ exec.name
+						+ "] SUBR target ["
+						+ name
+						+ "] will not load.  error="
+						+ e.getMessage(),
+					AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT,
+					e);
+			}
+		}
+	}
+
+	// --- PRIVATE METHODS ---------------------------------------------------	
+
+	/**
+	 *  Check a jump target.
+	 */
+	private static int target(VMExecutable exec, int at, int t)
+		throws VMException {
+		if ((t < 0) || (t > exec.core.size())) {
+			throw fail(exec, at, "Target " + t + " is outside the routine.");
+		}
+		if (t == at) {
+			throw fail(exec, at, "Target is itself.");
+		}
+		return t;
+	}
+
+	/**
+	 *  Arrive at an instruction with d scopes open.  The first arrival sets
+	 *  the depth and queues it.  Later ones have to agree.
+	 *  @return the new number of pending instructions
+	 */
+	private static int flow(
+		VMExecutable exec,
+		int[] depth,
+		int[] work,
+		int pending,
+		int from,
+		int to,
+		int d)
+		throws VMException {
+		if (depth[to] < 0) {
+			depth[to] = d;
+			work[pending++] = to;
+		} else if (depth[to] != d) {
+			throw fail(
+				exec,
+				from,
+				"Reaches "
+					+ to
+					+ " with "
+					+ d
+					+ " scopes open, but it is also reached with "
+					+ depth[to]
+					+ ".");
+		}
+		return pending;
+	}
+
+	/**
+	 *  The failure.
+	 */
+	private static VMException fail(VMExecutable exec, int at, String why) {
+		StringBuffer m = new StringBuffer("Verifier: [");
+		m.append(exec.name);
+		m.append("]");
+		if (at >= 0) {
+			m.append(" ip=");
+			m.append(at);
+		}
+		m.append(".  ");
+		m.append(why);
+		return new VMException(
+			m.toString(),
+			AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT);
+	}
+}
@@ -20,8 +20,8 @@
  */
 package autohit.vm;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
 
 import org.omg.CORBA.Any;
 
@@ -65,7 +65,9 @@ import autohit.common.channels.Injector;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Rewrite - 8May03</code>
+ * <code>EPG - Rewrite - 8May03<br>
+ * EPG - Layer the parent core instead of copying it - 17Oct26<br>
+ * EPG - Completion waiters - 17Oct26</code>
  * 
  */
 public abstract class VM {
@@ -182,6 +184,16 @@ public abstract class VM {
 	 */
 	private VMCore parentCore;
 
+	/**
+	 *  Set once the VM has been finalized.  Guarded by waiters.
+	 */
+	private boolean finished;
+
+	/**
+	 *  Runnables to run when the VM is finalized.
+	 */
+	private ArrayList waiters = new ArrayList();
+
 	
 	/**
 	 * Default Constructor. 
@@ -196,8 +208,8 @@ public abstract class VM {
 	}
 
 	/**
-	 * This will set a parent core.  The storage variables from the parent will be copied to 
-	 * this VM while attaching.
+	 * This will set a parent core.  The storage variables from the parent will be seen by 
+	 * this VM through a snapshot taken while attaching.
 	 * <p>
 	 */
 	public void setParentCore(VMCore pc) {	
@@ -230,21 +242,12 @@ public abstract class VM {
 		// Now initialize it.
 		core = loader.create();
 		
-		// Parent?  If so, copy the storage
+		// Parent?  If so, stand on a snapshot of its storage.  It carries
+		// the properties the parent started with.
 		if (parentCore!=null) {
 			
 			try {
-				
-				// We need to copy this core into the new core to catch all
-				// properties
-				Iterator varList = parentCore.getStorageNameSet().iterator();
-				String ikey;
-				Object item;
-				while (varList.hasNext()) {
-					ikey = (String)varList.next();
-					item = parentCore.fetch(ikey);
-					core.store(ikey,item);
-				}
+				core.inherit(parentCore.snapshot());
 				
 			} catch (Exception cce) {
 				throw new VMException(
@@ -450,18 +453,71 @@ public abstract class VM {
 	 * @param target target program in universe namespace
 	 */
 	
+	/**
+	 * Run something when this VM is finished, meaning its process has
+	 * finalized it.  It runs on whatever thread finalizes the VM, so keep
+	 * it short and don't block.
+	 * @param r the runnable
+	 * @return true if it will be run, false if the VM is already finished
+	 * and the caller should just carry on
+	 */
+	public boolean whenFinished(Runnable r) {
+		synchronized (waiters) {
+			if (finished)
+				return false;
+			waiters.add(r);
+			return true;
+		}
+	}
+
+	/**
+	 * Block until this VM is finished.  Don't call this from a pooled
+	 * carrier.  Use whenFinished() there.
+	 * @throws InterruptedException
+	 */
+	public void join() throws InterruptedException {
+		synchronized (waiters) {
+			while (!finished)
+				waiters.wait();
+		}
+	}
+
+	/**
+	 * See if this VM is finished.
+	 * @return true if it is
+	 */
+	public boolean isFinished() {
+		synchronized (waiters) {
+			return finished;
+		}
+	}
+
 	/**
 	 * finalizer
-	 * It will kill the logs last.
+	 * It will kill the logs last.  Anyone waiting on the VM is let go,
+	 * even if something in here blows up.
 	 */
 	protected void finalize() throws Throwable {
 		if (finalizedvm == true) return;
-		super.finalize();
-		this.destruct();
+		try {
+			super.finalize();
+			this.destruct();
 		
-		// kill the drain.  This is a horrible hack.
-		process.getSystemContext().getLogManager().discardDrainWriter(sname);
-		finalizedvm = true;
+			// kill the drain.  This is a horrible hack.
+			process.getSystemContext().getLogManager().discardDrainWriter(sname);
+			finalizedvm = true;
+		} finally {
+			Object[] run;
+			synchronized (waiters) {
+				finished = true;
+				run = waiters.toArray();
+				waiters.clear();
+				waiters.notifyAll();
+			}
+			for (int index = 0; index < run.length; index++) {
+				((Runnable) run[index]).run();
+			}
+		}
 	}
 	private boolean finalizedvm = false;
 
@@ -0,0 +1,630 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import autohit.common.AutohitErrorCodes;
+import autohit.common.NVPair;
+import autohit.vm.i.VMIArg;
+import autohit.vm.i.VMIAssert;
+import autohit.vm.i.VMICall;
+import autohit.vm.i.VMIClear;
+import autohit.vm.i.VMIEval;
+import autohit.vm.i.VMIExec;
+import autohit.vm.i.VMIFault;
+import autohit.vm.i.VMIFetch;
+import autohit.vm.i.VMIGoto;
+import autohit.vm.i.VMIIf;
+import autohit.vm.i.VMIJump;
+import autohit.vm.i.VMILoad;
+import autohit.vm.i.VMIMask;
+import autohit.vm.i.VMIMath;
+import autohit.vm.i.VMIMerge;
+import autohit.vm.i.VMIMethod;
+import autohit.vm.i.VMINew;
+import autohit.vm.i.VMINop;
+import autohit.vm.i.VMIRScope;
+import autohit.vm.i.VMIReduce;
+import autohit.vm.i.VMIRight;
+import autohit.vm.i.VMIScope;
+import autohit.vm.i.VMIStore;
+import autohit.vm.i.VMISubr;
+import autohit.vm.i.VMInstruction;
+import autohit.vm.process.EvalTemplate;
+
+/**
+ * Compact binary format for compiled sims.  This replaces Java serialization
+ * of the VMExecutable in the universe cache.  All numbers are big-endian ints.
+ * <pre>
+ *  MAGIC 'AHXB'
+ *  VERSION
+ *  constant pool:  count, then (byte length, UTF-8 bytes) per string
+ *  header:         name, uid, type, note, major, minor,
+ *                  output name, output value, symbol count, symbols...
+ *  code:           count, then (opcode, source line, operand offset) per
+ *                  instruction.  Every record is the same width.
+ *  operand table:  count, then the operands.  Each instruction's operands
+ *                  start at its offset; how many there are depends on the
+ *                  opcode.
+ * </pre>
+ * Strings are stored as constant pool indexes, with NO_STRING for null.
+ * Anything that is not a string is stored as an int.  A symbol count of -1
+ * means the executable has no symbol table.
+ * <p>
+ * The format is versioned.  A reader will not touch a version it does not
+ * know; compile the sim again.  Bump VERSION whenever an instruction gains a
+ * field and give the new field a sensible value when reading an older
+ * version.
+ * <p>
+ * Version 2 gives CALL and METHOD their argument names, as a count (or -1
+ * for none) and then the names, and adds ARG.
+ *
+ * @see autohit.vm.VMExecutableWrapper
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Version 2 for argument frames - 17Oct26</code> 
+ * 
+ */
+public class VMBinary {
+
+	/**
+	 * 'AHXB'
+	 */
+	public final static int MAGIC = 0x41485842;
+
+	/**
+	 * Current format version.
+	 */
+	public final static int VERSION = 2;
+
+	/**
+	 * Oldest format version that can still be read.
+	 */
+	public final static int OLDEST_VERSION = 1;
+
+	/**
+	 * Pool index for a null string.
+	 */
+	public final static int NO_STRING = -1;
+
+	/**
+	 * Objects at least this big are memory-mapped rather than read.
+	 */
+	public final static long MAP_THRESHOLD = 256 * 1024;
+
+	// --- READ --------------------------------------------------------------
+
+	/**
+	 * Read a whole object into a buffer.  A file is read with one bulk read,
+	 * or mapped if it is big.  The stream is closed.
+	 * @param is the stream
+	 * @return a buffer from position 0 to the end of the object
+	 * @throws Exception on any I/O problem
+	 */
+	public static ByteBuffer readAll(InputStream is) throws Exception {
+		try {
+			if (is instanceof FileInputStream) {
+				FileChannel fc = ((FileInputStream) is).getChannel();
+				long size = fc.size() - fc.position();
+				if ((size >= MAP_THRESHOLD) && (size <= Integer.MAX_VALUE)) {
+					return fc.map(FileChannel.MapMode.READ_ONLY, fc.position(), size);
+				}
+				ByteBuffer b = ByteBuffer.allocate((int) size);
+				while (b.hasRemaining() && (fc.read(b) >= 0)) {
+				}
+				b.flip();
+				return b;
+			}
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int got = is.read(chunk);
+			while (got >= 0) {
+				bytes.write(chunk, 0, got);
+				got = is.read(chunk);
+			}
+			return ByteBuffer.wrap(bytes.toByteArray());
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Is this buffer in the binary format?  It does not move the buffer.
+	 * @param b the buffer
+	 * @return true if it starts with the magic number
+	 */
+	public static boolean isBinary(ByteBuffer b) {
+		return (b.remaining() >= 8) && (b.getInt(b.position()) == MAGIC);
+	}
+
+	/**
+	 * Read an executable.
+	 * @param b the buffer, positioned at the magic number
+	 * @return the executable.  It is not linked.
+	 * @throws VMException if the format is bad or a version we don't know
+	 */
+	public static VMExecutable read(ByteBuffer b) throws VMException {
+
+		try {
+			if (b.getInt() != MAGIC) {
+				throw new VMException(
+					"Not a compiled sim.",
+					AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT);
+			}
+			int version = b.getInt();
+			if ((version < OLDEST_VERSION) || (version > VERSION)) {
+				throw new VMException(
+					"Compiled sim is format version " + version + ", but only " + OLDEST_VERSION + " to " + VERSION + " are supported.  Recompile it.",
+					AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT);
+			}
+
+			// Constant pool
+			String[] pool = new String[b.getInt()];
+			byte[] scratch = new byte[256];
+			int length;
+			for (int index = 0; index < pool.length; index++) {
+				length = b.getInt();
+				if (length > scratch.length) {
+					scratch = new byte[length];
+				}
+				b.get(scratch, 0, length);
+				pool[index] = new String(scratch, 0, length, "UTF-8");
+			}
+
+			// Header
+			VMExecutable exec = new VMExecutable();
+			exec.name = string(pool, b.getInt());
+			exec.uid = string(pool, b.getInt());
+			exec.type = string(pool, b.getInt());
+			exec.note = string(pool, b.getInt());
+			exec.major = b.getInt();
+			exec.minor = b.getInt();
+			String oname = string(pool, b.getInt());
+			String ovalue = string(pool, b.getInt());
+			if ((oname != null) || (ovalue != null)) {
+				exec.output = new NVPair();
+				exec.output.name = oname;
+				exec.output.value = ovalue;
+			}
+			int count = b.getInt();
+			if (count >= 0) {
+				exec.symbols = new String[count];
+				for (int index = 0; index < count; index++) {
+					exec.symbols[index] = string(pool, b.getInt());
+				}
+			}
+
+			// Code.  Records first, then the operand table they point into.
+			count = b.getInt();
+			int[] records = new int[count * 3];
+			b.asIntBuffer().get(records);
+			b.position(b.position() + (records.length * 4));
+			int[] ops = new int[b.getInt()];
+			b.asIntBuffer().get(ops);
+			b.position(b.position() + (ops.length * 4));
+
+			exec.core = new ArrayList(count);
+			VMInstruction ci;
+			for (int index = 0; index < count; index++) {
+				ci = instruction(records[index * 3], ops, records[(index * 3) + 2], pool, version);
+				ci.sourceline = records[(index * 3) + 1];
+				exec.core.add(ci);
+			}
+			return exec;
+
+		} catch (VMException ve) {
+			throw ve;
+		} catch (Exception e) {
+			throw new VMException(
+				"Compiled sim is damaged.  " + e.toString(),
+				AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT,
+				e);
+		}
+	}
+
+	/**
+	 * Build one instruction from its operands.
+	 */
+	private static VMInstruction instruction(int opcode, int[] ops, int at, String[] pool, int version)
+		throws VMException {
+
+		switch (opcode) {
+			case VMInstruction.NOP :
+				return new VMINop();
+			case VMInstruction.EVAL :
+				VMIEval eval = new VMIEval();
+				eval.e = string(pool, ops[at]);
+				eval.t = template(ops, at + 1, pool);
+				return eval;
+			case VMInstruction.STORE :
+				VMIStore store = new VMIStore();
+				store.v = string(pool, ops[at]);
+				store.s = ops[at + 1];
+				return store;
+			case VMInstruction.NEW :
+				VMINew nu = new VMINew();
+				nu.v = string(pool, ops[at]);
+				nu.s = ops[at + 1];
+				return nu;
+			case VMInstruction.SCOPE :
+				return new VMIScope();
+			case VMInstruction.RSCOPE :
+				return new VMIRScope();
+			case VMInstruction.REDUCE :
+				VMIReduce reduce = new VMIReduce();
+				reduce.b = string(pool, ops[at]);
+				reduce.s = ops[at + 1];
+				return reduce;
+			case VMInstruction.MASK :
+				VMIMask mask = new VMIMask();
+				mask.t = string(pool, ops[at]);
+				return mask;
+			case VMInstruction.MERGE :
+				VMIMerge merge = new VMIMerge();
+				merge.b = string(pool, ops[at]);
+				merge.s = ops[at + 1];
+				return merge;
+			case VMInstruction.RIGHT :
+				return new VMIRight();
+			case VMInstruction.MATH :
+				VMIMath math = new VMIMath();
+				math.o = string(pool, ops[at]);
+				return math;
+			case VMInstruction.LOAD :
+				VMILoad load = new VMILoad();
+				load.l = string(pool, ops[at]);
+				return load;
+			case VMInstruction.CLEAR :
+				VMIClear clear = new VMIClear();
+				clear.t = string(pool, ops[at]);
+				clear.s = ops[at + 1];
+				return clear;
+			case VMInstruction.FAULT :
+				return new VMIFault();
+			case VMInstruction.FETCH :
+				VMIFetch fetch = new VMIFetch();
+				fetch.v = string(pool, ops[at]);
+				fetch.s = ops[at + 1];
+				return fetch;
+			case VMInstruction.IF :
+				VMIIf ifi = new VMIIf();
+				ifi.t = ops[at];
+				ifi.operFlag = ops[at + 1];
+				return ifi;
+			case VMInstruction.CALL :
+				VMICall call = new VMICall();
+				call.t = string(pool, ops[at]);
+				if (version >= 2) {
+					call.a = names(ops, at + 1, pool);
+				}
+				return call;
+			case VMInstruction.EXEC :
+				VMIExec exec = new VMIExec();
+				exec.c = string(pool, ops[at]);
+				return exec;
+			case VMInstruction.SUBR :
+				VMISubr subr = new VMISubr();
+				subr.t = string(pool, ops[at]);
+				return subr;
+			case VMInstruction.JUMP :
+				VMIJump jump = new VMIJump();
+				jump.t = ops[at];
+				return jump;
+			case VMInstruction.GOTO :
+				VMIGoto go = new VMIGoto();
+				go.t = ops[at];
+				return go;
+			case VMInstruction.ASSERT :
+				VMIAssert assrt = new VMIAssert();
+				assrt.t = ops[at];
+				assrt.operFlag = ops[at + 1];
+				return assrt;
+			case VMInstruction.METHOD :
+				VMIMethod method = new VMIMethod();
+				method.m = string(pool, ops[at]);
+				if (version >= 2) {
+					method.a = names(ops, at + 1, pool);
+				}
+				return method;
+			case VMInstruction.ARG :
+				VMIArg arg = new VMIArg();
+				arg.p = ops[at];
+				return arg;
+			default :
+				throw new VMException(
+					"Compiled sim has an unknown opcode " + opcode,
+					AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT);
+		}
+	}
+
+	/**
+	 * Eval template operands: reference count (or -1 for none), the text
+	 * segments, then name, slot and buffer flag per reference.
+	 */
+	private static EvalTemplate template(int[] ops, int at, String[] pool) {
+		int refs = ops[at++];
+		if (refs < 0) {
+			return null;
+		}
+		EvalTemplate t = new EvalTemplate();
+		t.text = new String[refs + 1];
+		for (int index = 0; index <= refs; index++) {
+			t.text[index] = string(pool, ops[at++]);
+		}
+		t.names = new String[refs];
+		t.slots = new int[refs];
+		t.buffer = new boolean[refs];
+		for (int index = 0; index < refs; index++) {
+			t.names[index] = string(pool, ops[at++]);
+			t.slots[index] = ops[at++];
+			t.buffer[index] = (ops[at++] != 0);
+		}
+		return t;
+	}
+
+	/**
+	 * Argument name operands: count (or -1 for none), then the names.
+	 */
+	private static String[] names(int[] ops, int at, String[] pool) {
+		int count = ops[at++];
+		if (count < 0) {
+			return null;
+		}
+		String[] names = new String[count];
+		for (int index = 0; index < count; index++) {
+			names[index] = string(pool, ops[at++]);
+		}
+		return names;
+	}
+
+	private static String string(String[] pool, int index) {
+		return (index == NO_STRING) ? null : pool[index];
+	}
+
+	// --- WRITE -------------------------------------------------------------
+
+	/**
+	 * Write an executable.  The stream is flushed but not closed.
+	 * @param exec the executable
+	 * @param os where it goes
+	 * @throws Exception on any I/O problem, or a VMException for an
+	 *         instruction the format doesn't know.
+	 */
+	public static void write(VMExecutable exec, OutputStream os) throws Exception {
+
+		Builder w = new Builder();
+
+		// Header strings go into the pool first
+		int[] header = new int[8];
+		header[0] = w.string(exec.name);
+		header[1] = w.string(exec.uid);
+		header[2] = w.string(exec.type);
+		header[3] = w.string(exec.note);
+		header[4] = exec.major;
+		header[5] = exec.minor;
+		header[6] = w.string((exec.output == null) ? null : exec.output.name);
+		header[7] = w.string((exec.output == null) ? null : exec.output.value);
+		int[] symbols = null;
+		if (exec.symbols != null) {
+			symbols = new int[exec.symbols.length];
+			for (int index = 0; index < symbols.length; index++) {
+				symbols[index] = w.string(exec.symbols[index]);
+			}
+		}
+
+		int count = exec.core.size();
+		int[] records = new int[count * 3];
+		VMInstruction ci;
+		for (int index = 0; index < count; index++) {
+			ci = (VMInstruction) exec.core.get(index);
+			records[index * 3] = ci.instruction;
+			records[(index * 3) + 1] = ci.sourceline;
+			records[(index * 3) + 2] = w.ops;
+			w.operands(ci);
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(w.pool.size());
+		byte[] utf;
+		for (int index = 0; index < w.pool.size(); index++) {
+			utf = ((String) w.pool.get(index)).getBytes("UTF-8");
+			out.writeInt(utf.length);
+			out.write(utf);
+		}
+		for (int index = 0; index < header.length; index++) {
+			out.writeInt(header[index]);
+		}
+		if (symbols == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(symbols.length);
+			for (int index = 0; index < symbols.length; index++) {
+				out.writeInt(symbols[index]);
+			}
+		}
+		out.writeInt(count);
+		for (int index = 0; index < records.length; index++) {
+			out.writeInt(records[index]);
+		}
+		out.writeInt(w.ops);
+		for (int index = 0; index < w.ops; index++) {
+			out.writeInt(w.table[index]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Builds the constant pool and operand table.
+	 */
+	private static class Builder {
+
+		ArrayList pool = new ArrayList();
+		HashMap poolIndex = new HashMap();
+		int[] table = new int[256];
+		int ops;
+
+		int string(String s) {
+			if (s == null) {
+				return NO_STRING;
+			}
+			Integer index = (Integer) poolIndex.get(s);
+			if (index == null) {
+				index = new Integer(pool.size());
+				pool.add(s);
+				poolIndex.put(s, index);
+			}
+			return index.intValue();
+		}
+
+		void op(int value) {
+			if (ops == table.length) {
+				int[] bigger = new int[table.length * 2];
+				System.arraycopy(table, 0, bigger, 0, ops);
+				table = bigger;
+			}
+			table[ops++] = value;
+		}
+
+		void names(String[] names) {
+			if (names == null) {
+				op(-1);
+				return;
+			}
+			op(names.length);
+			for (int index = 0; index < names.length; index++) {
+				op(string(names[index]));
+			}
+		}
+
+		void operands(VMInstruction ci) throws VMException {
+
+			switch (ci.instruction) {
+				case VMInstruction.NOP :
+				case VMInstruction.SCOPE :
+				case VMInstruction.RSCOPE :
+				case VMInstruction.RIGHT :
+				case VMInstruction.FAULT :
+					break;
+				case VMInstruction.EVAL :
+					VMIEval eval = (VMIEval) ci;
+					op(string(eval.e));
+					if (eval.t == null) {
+						op(-1);
+					} else {
+						op(eval.t.names.length);
+						for (int index = 0; index < eval.t.text.length; index++) {
+							op(string(eval.t.text[index]));
+						}
+						for (int index = 0; index < eval.t.names.length; index++) {
+							op(string(eval.t.names[index]));
+							op(eval.t.slots[index]);
+							op(eval.t.buffer[index] ? 1 : 0);
+						}
+					}
+					break;
+				case VMInstruction.STORE :
+					op(string(((VMIStore) ci).v));
+					op(((VMIStore) ci).s);
+					break;
+				case VMInstruction.NEW :
+					op(string(((VMINew) ci).v));
+					op(((VMINew) ci).s);
+					break;
+				case VMInstruction.REDUCE :
+					op(string(((VMIReduce) ci).b));
+					op(((VMIReduce) ci).s);
+					break;
+				case VMInstruction.MASK :
+					op(string(((VMIMask) ci).t));
+					break;
+				case VMInstruction.MERGE :
+					op(string(((VMIMerge) ci).b));
+					op(((VMIMerge) ci).s);
+					break;
+				case VMInstruction.MATH :
+					op(string(((VMIMath) ci).o));
+					break;
+				case VMInstruction.LOAD :
+					op(string(((VMILoad) ci).l));
+					break;
+				case VMInstruction.CLEAR :
+					op(string(((VMIClear) ci).t));
+					op(((VMIClear) ci).s);
+					break;
+				case VMInstruction.FETCH :
+					op(string(((VMIFetch) ci).v));
+					op(((VMIFetch) ci).s);
+					break;
+				case VMInstruction.IF :
+					op(((VMIIf) ci).t);
+					op(((VMIIf) ci).operFlag);
+					break;
+				case VMInstruction.CALL :
+					op(string(((VMICall) ci).t));
+					names(((VMICall) ci).a);
+					break;
+				case VMInstruction.EXEC :
+					op(string(((VMIExec) ci).c));
+					break;
+				case VMInstruction.SUBR :
+					op(string(((VMISubr) ci).t));
+					break;
+				case VMInstruction.JUMP :
+					op(((VMIJump) ci).t);
+					break;
+				case VMInstruction.GOTO :
+					op(((VMIGoto) ci).t);
+					break;
+				case VMInstruction.ASSERT :
+					op(((VMIAssert) ci).t);
+					op(((VMIAssert) ci).operFlag);
+					break;
+				case VMInstruction.METHOD :
+					op(string(((VMIMethod) ci).m));
+					names(((VMIMethod) ci).a);
+					break;
+				case VMInstruction.ARG :
+					op(((VMIArg) ci).p);
+					break;
+				default :
+					throw new VMException(
+						"Can't write unknown opcode " + ci.instruction,
+						AutohitErrorCodes.CODE_VM_EXEC_FORMAT_FAULT);
+			}
+		}
+	}
+}
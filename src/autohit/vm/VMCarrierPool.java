@@ -0,0 +1,165 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import autohit.common.AutohitProperties;
+import autohit.common.Utils;
+import autohit.server.SystemContext;
+
+/**
+ * The carrier pool for pooled processes.  There is one per JVM.  A fixed
+ * number of daemon carrier threads take runnable processes off a queue and
+ * run one quantum of each.  A single timer thread puts sleeping processes
+ * back on the queue when they are due.
+ * <p>
+ * The pool is sized by the vm.carriers property the first time a pooled
+ * process is initialized.  If it isn't set, there are VM_CARRIERS_PER_CPU
+ * carriers per processor.
+ *
+ * @see autohit.vm.VMProcessPooled
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public class VMCarrierPool {
+
+	/**
+	 * The pool.
+	 */
+	private static VMCarrierPool pool;
+
+	/**
+	 * Carriers.
+	 */
+	private ThreadPoolExecutor carriers;
+
+	/**
+	 * Wake up timer.
+	 */
+	private ScheduledThreadPoolExecutor timer;
+
+	/**
+	 * Number of carriers.
+	 */
+	private int size;
+
+	/**
+	 * Daemon thread maker.
+	 */
+	private static class CarrierFactory implements ThreadFactory {
+		private String prefix;
+		private int count;
+		CarrierFactory(String p) {
+			prefix = p;
+			count = 0;
+		}
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count++);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 *  Get the pool.  Make it if this is the first time.
+	 *  @param sc system context for the configuration.  It can be null.
+	 *  @return the pool
+	 */
+	public static synchronized VMCarrierPool get(SystemContext sc) {
+		if (pool == null) {
+			int size =
+				Runtime.getRuntime().availableProcessors()
+					* AutohitProperties.VM_CARRIERS_PER_CPU;
+			try {
+				size =
+					Utils.testGetPropertyInt(
+						AutohitProperties.VM_CARRIERS,
+						sc.getPropertiesSet(),
+						size);
+			} catch (Exception e) {
+				// no properties.  keep the default.
+			}
+			pool = new VMCarrierPool(size);
+		}
+		return pool;
+	}
+
+	/**
+	 *  Constructor.
+	 *  @param number number of carrier threads
+	 */
+	private VMCarrierPool(int number) {
+		if (number < 1)
+			number = 1;
+		size = number;
+		carriers =
+			new ThreadPoolExecutor(
+				size,
+				size,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue(),
+				new CarrierFactory("vmcarrier-"));
+		timer = new ScheduledThreadPoolExecutor(1, new CarrierFactory("vmtimer-"));
+	}
+
+	/**
+	 *  Queue a process to run a quantum.
+	 *  @param p the process
+	 */
+	void submit(Runnable p) {
+		carriers.execute(p);
+	}
+
+	/**
+	 *  Queue a process to run a quantum, after a while.
+	 *  @param p the process
+	 *  @param millis how long to wait
+	 */
+	void later(Runnable p, long millis) {
+		timer.schedule(p, millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 *  Number of carrier threads.
+	 *  @return the number
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *  Number of processes waiting for a carrier.
+	 *  @return the number
+	 */
+	public int waiting() {
+		return carriers.getQueue().size();
+	}
+}
@@ -20,11 +20,19 @@
  */
 package autohit.vm;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
+import autohit.call.Call;
+import autohit.call.CallRegistry;
 import autohit.vm.i.VMIScope;
 
 /**
@@ -60,7 +68,8 @@ import autohit.vm.i.VMIScope;
  * pairs.  It is subject to scope rules.  Within the reference of
  * a single scope, there is only one valid instance of a new
  * instance is created, it will supercede the previous.  The storage
- * system uses Stacks on Hashmaps to maintain scope rules.  When
+ * system keeps an array slot per interned variable name (VMSymbol), with a
+ * shadow stack per slot to maintain scope rules.  When
  * the scope is discarded, it will take all instances 
  * with it.  Of course, any instances  created in the prior scope(s)
  * will still be there.  This is NOT syncronized and threadsafe.<br>
@@ -75,6 +84,29 @@ import autohit.vm.i.VMIScope;
  * <p>
  * You should not access the scope stack directly.
  * <p>
+ * While a CALL or METHOD runs, the SimVM may hand the core an argument
+ * frame: the names the call was given and their values, by position.
+ * exists(String) and fetch(String) look in the frame before storage, so a
+ * call that reads its parameters by name finds them there without a
+ * storage lookup or a scope of its own.
+ * <p>
+ * A core may sit on top of a base Layer.  A Layer is a frozen picture of
+ * another core's storage (or of a set of properties), and anything this
+ * core doesn't hold itself is looked up in it.  Writes always land in this
+ * core.  The first snapshot() hands the core's arrays to the Layer and the
+ * core starts over with small ones, copying a slot back out of the Layer
+ * only when it changes that slot.  Later snapshots are small overlays of
+ * just the slots that changed since, folded back into one Layer when
+ * there get to be too many of them.  So a child process costs about the
+ * same no matter how many variables its parent holds, and a core only
+ * allocates as far as the highest slot it actually touches.
+ * <p>
+ * Only names a program was compiled with have a VMSymbol.  A name that turns
+ * up at run time and that no loaded program knows, such as one a script
+ * makes out of data, is kept by name in the core itself and goes away with
+ * it.  A Layer carries those as a plain name to value map, and so do the
+ * invoker properties.
+ * <p>
  * @see #set(String name, Object o)
  * @see #read(String name)
  * @see #test(String name)
@@ -94,24 +126,134 @@ import autohit.vm.i.VMIScope;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Rewrite - 5Mayt03 
+ * <code>EPG - Rewrite - 5Mayt03<br>
+ * EPG - Slot indexed storage - 17Oct26<br>
+ * EPG - Integer values stay VMInt until fetched - 17Oct26<br>
+ * EPG - Copy-on-write base layers - 17Oct26<br>
+ * EPG - Calls kept by registry id - 17Oct26<br>
+ * EPG - Persist stamp - 17Oct26<br>
+ * EPG - Argument frames - 17Oct26<br>
+ * EPG - METHOD site bindings - 17Oct26<br>
+ * EPG - Start small, copy slots out of a snapshot one at a time - 17Oct26<br>
+ * EPG - Run-time names kept by the core, not interned - 17Oct26</code>
  * 
  */
 public class VMCore implements Serializable {
 
 	final static long serialVersionUID = 1;
+
+	/**
+	 * Spare slots to allocate, so a core doesn't grow the first time a
+	 * program stores a name nobody has used yet.
+	 */
+	private final static int SLOT_HEADROOM = 16;
+
+	/**
+	 * Most slots a snapshot overlay will hold before they are folded back
+	 * into a single Layer.
+	 */
+	private final static int OVERLAY_MAX = 64;
+
+	/**
+	 * Initial depth of a slot shadow stack.
+	 */
+	private final static int SHADOW_INITIAL = 4;
+
+	/**
+	 * Scope mark.  They are all the same, so we only need one.
+	 */
+	private final static VMIScope SCOPE_MARK = new VMIScope();
+
+	/**
+	 * Empty METHOD site bindings.  Shared until a core needs its own.
+	 */
+	private final static Object[] NO_METHODS = new Object[0];
+
+	/**
+	 * What a run-time name lookup gives back when the name isn't there.
+	 */
+	private final static Object NONE = new Object();
 	
 	/**
-	 * Storage space.  It is subject to scope rules.  If more than one
-	 * item is stored in the same name, it is converted to a stack bucket
-	 * and items are stacked.<p>
+	 * Storage space.  It is subject to scope rules.  Storage is indexed by
+	 * VMSymbol slot.  values holds the instance that is in scope for each slot.
+	 * depth counts how many instances are stacked in each slot; zero means
+	 * the variable does not exist.  When more than one instance is stored in
+	 * the same name, the older ones go on that slot's shadow stack.  None of
+	 * this is synchronized.<p>
 	 * @see #store(String name, Object o) 
 	 * @see #remove(String name)
 	 * @see #exists(String name)
 	 * @see #fetch(String name)
 	 * @see #replace(String name, Object o)
+	 * @see autohit.vm.VMSymbol
+	 */
+	protected Object[] values;
+	protected int[] depth;
+	protected Object[][] shadow;
+
+	/**
+	 * Variables from the base that were removed from this core.  Null
+	 * until the first time that happens.
+	 */
+	protected boolean[] hidden;
+
+	/**
+	 * The base layer, or null if this core stands alone.
+	 */
+	protected Layer base;
+
+	/**
+	 * This core's own storage as of its first snapshot(), or null if it
+	 * hasn't taken one.  The arrays went into the Layer, so the core starts
+	 * over with small ones and copies a slot back out of frozen the first
+	 * time it changes it.  Once there is a frozen, it is also the base.
+	 */
+	protected Layer frozen;
+
+	/**
+	 * Slots this core has taken back from frozen.  For these values, depth
+	 * and hidden say everything and frozen is skipped.
+	 */
+	protected boolean[] owned;
+
+	/**
+	 * Slots changed since frozen was made, each listed once.
+	 */
+	protected int[] changed;
+	protected int changedCount;
+	protected boolean[] dirty;
+
+	/**
+	 * The last snapshot handed out, or null if something changed since.
+	 */
+	protected Layer last;
+
+	/**
+	 * Variables stored by a name that has no VMSymbol.  Maps the name to an
+	 * ArrayList of instances, with the one in scope last.  Null until the
+	 * first one.
 	 */
-	protected HashMap storage;
+	protected HashMap named;
+
+	/**
+	 * Names from namedBase that were removed from this core.  Null until the
+	 * first time that happens.
+	 */
+	protected HashSet namedHidden;
+
+	/**
+	 * Run-time names from the base, as name to value, or null if there are
+	 * none.  It won't change.
+	 */
+	protected Map namedBase;
+
+	/**
+	 * What a snapshot shows of the run-time names, good while namedStale is
+	 * false.
+	 */
+	protected Map namedView;
+	protected boolean namedStale;
 
 	/**
 	 * Persistant storage space.  It is NOT subject to scope rules.  There cannot
@@ -123,6 +265,12 @@ public class VMCore implements Serializable {
 	 */
 	protected HashMap persists;
 
+	/**
+	 * Changes every time something is persisted or freed.  Something that
+	 * remembers what get() gave it is still good if this hasn't changed.
+	 */
+	public int persistStamp;
+
 	/**
 	 *  Scope stack.
 	 *
@@ -150,9 +298,26 @@ public class VMCore implements Serializable {
 	public Hashtable environment;
 
 	/**
-	 *  Call cache.
+	 *  Argument frame.  The names and values passed to the CALL or METHOD
+	 *  that is running, by position.  Null the rest of the time.
+	 *  @see #enterArgs(String[] names, Object[] values)
 	 */
-	public HashMap callcache;
+	protected transient String[] argNames;
+	protected transient Object[] argValues;
+
+	/**
+	 *  Call cache.  This core's instance of each call, by CallRegistry id.
+	 *  The loader grows it if a call is registered after the core was made.
+	 *  @see autohit.call.CallRegistry
+	 */
+	public Call[] calls;
+
+	/**
+	 *  METHOD site bindings.  What Call_METHOD found for each call site this
+	 *  core has run, by site index.  It starts empty and Call_METHOD grows it.
+	 *  @see autohit.call.Call_METHOD
+	 */
+	public transient Object[] methods;
 
 	/**
 	 *  Default constructor.  Use this if you want a private environment.
@@ -175,9 +340,25 @@ public class VMCore implements Serializable {
 	 *  Private initializer
 	 */
 	private void init() {
-		storage = new HashMap();
+		values = new Object[SLOT_HEADROOM];
+		depth = new int[SLOT_HEADROOM];
+		shadow = new Object[SLOT_HEADROOM][];
+		hidden = null;
+		base = null;
+		frozen = null;
+		owned = null;
+		changed = null;
+		changedCount = 0;
+		dirty = null;
+		last = null;
+		named = null;
+		namedHidden = null;
+		namedBase = null;
+		namedView = null;
+		namedStale = true;
 		persists = new HashMap();
-		callcache = new HashMap();
+		calls = new Call[CallRegistry.size()];
+		methods = NO_METHODS;
 		scope = new Stack();
 		scDirty = false;
 	}
@@ -238,30 +419,15 @@ public class VMCore implements Serializable {
 	 * @see autohit.vm.VMException
 	 */
 	public void store(String name, Object o) throws VMException {
-		Object thang;
-		scope.push(name);
 		try {
-			// Is there something there already?
-			if (storage.containsKey(name)) {
-				// yes - is there more than one in a stack?
-				thang = storage.get(name);
-				if (thang instanceof Stack) {
-					// no.  Add it to the stack
-					 ((Stack) thang).push(o);
-
-				} else {
-					// Create a stack and add them both
-					Stack thangs = new Stack();
-					thangs.push(thang);
-					thangs.push(o);
-					storage.put(name, thangs);
-				}
-
+			VMSymbol sym = VMSymbol.find(name);
+			if (sym != null) {
+				this.store(sym, o);
 			} else {
-				// no.  just toss it on
-				storage.put(name, o);
+				this.storeNamed(name, o);
 			}
-
+		} catch (VMException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new VMException(
 				"Core failed to store " + name + ".  " + e.getMessage(),
@@ -270,6 +436,39 @@ public class VMCore implements Serializable {
 		}
 	}
 
+	/**
+	 * Store an item by symbol.  It is subject to scope rules.  It will
+	 * overload a prior instance with the same name, but not overwrite it. 
+	 *
+	 * @param sym the variable symbol
+	 * @param o the object
+	 * @throws VMException
+	 * @see autohit.vm.VMException
+	 */
+	public void store(VMSymbol sym, Object o) throws VMException {
+		int slot = sym.slot;
+		touch(slot);
+		scope.push(sym);
+
+		int d = depth[slot];
+		if (d > 0) {
+			// Something there already.  Shadow it.
+			Object[] sh = shadow[slot];
+			if (sh == null) {
+				sh = new Object[SHADOW_INITIAL];
+				shadow[slot] = sh;
+			} else if (d > sh.length) {
+				Object[] bigger = new Object[sh.length * 2];
+				System.arraycopy(sh, 0, bigger, 0, sh.length);
+				sh = bigger;
+				shadow[slot] = sh;
+			}
+			sh[d - 1] = values[slot];
+		}
+		values[slot] = o;
+		depth[slot] = d + 1;
+	}
+
 	/**
 	 * Removes an object from a store.  No real reasion to use this.
 	 * It will throw an exception only if something realy bad happened.
@@ -280,45 +479,49 @@ public class VMCore implements Serializable {
 	 * @see autohit.vm.VMException
 	 */
 	public void remove(String name) throws VMException {
+		VMSymbol sym = VMSymbol.find(name);
+		if (sym != null) {
+			this.remove(sym);
+		} else if (this.hasNamed()) {
+			this.removeNamed(name);
+		}
+	}
 
-		Object thang;
-
-		try {
-			// Is it even in the store?
-			if (storage.containsKey(name)) {
-
-				thang = storage.get(name);
-				// is it a stack or a solo item
-				if (thang instanceof Stack) {
-
-					// Is there one or two items in the stack?
-					if (((Stack) thang).size() > 2) {
-						// there is a bunch.  pop the one
-						 ((Stack) thang).pop();
-
-					} else {
-						// there are only two.  discard the stack and keep the 
-						// last item
-						 ((Stack) thang).pop();
-						thang = ((Stack) thang).pop();
-						storage.put(name, thang);
-					}
-
-				} else {
-					// Solo item - toss it
-					storage.remove(name);
-				}
+	/**
+	 * Removes an object from a store by symbol.  The prior instance, if any,
+	 * comes back into scope.  If the only instance is in the base, it is
+	 * hidden from this core.  This will not remove the item from the scope
+	 * stack!
+	 *
+	 * @param sym the variable symbol
+	 * @throws VMException
+	 * @see autohit.vm.VMException
+	 */
+	public void remove(VMSymbol sym) throws VMException {
+		int slot = sym.slot;
+		if (frozen != null)
+			touch(slot);
+		if ((slot >= values.length) || (depth[slot] == 0)) {
+			Layer l = under(slot);
+			if (l == null) {
+				if (this.hasNamed())
+					this.removeNamed(sym.name);
+			} else if (l != Layer.GONE) {
+				hide(slot);
 			}
+			return;
+		}
 
-		} catch (Exception e) {
-			throw new VMException(
-				"VM: Core failed on remove for "
-					+ name
-					+ ".  "
-					+ e.getMessage(),
-				VMException.CODE_VM_CORE_GENERAL_FAULT,
-				e);
+		int d = depth[slot] - 1;
+		if (d > 0) {
+			// Bring back the shadowed one
+			Object[] sh = shadow[slot];
+			values[slot] = sh[d - 1];
+			sh[d - 1] = null;
+		} else {
+			values[slot] = null;
 		}
+		depth[slot] = d;
 	}
 
 	/**
@@ -329,22 +532,28 @@ public class VMCore implements Serializable {
 	 * @see autohit.vm.VMException
 	 */
 	public boolean exists(String name) throws VMException {
+		if ((argNames != null) && (this.arg(name) >= 0))
+			return true;
+		VMSymbol sym = VMSymbol.find(name);
+		if (sym != null)
+			return this.exists(sym);
+		return this.hasNamed() && (this.findNamed(name) != NONE);
+	}
 
-		try {
-			if (storage.containsKey(name)) {
-				return true;
-			}
-
-		} catch (Exception e) {
-			throw new VMException(
-				"VM: Core failed storage check for "
-					+ name
-					+ ".  "
-					+ e.getMessage(),
-				VMException.CODE_VM_CORE_GENERAL_FAULT,
-				e);
-		}
-		return false;
+	/**
+	 * Check for an object in storage by symbol. 
+	 *
+	 * @param sym the variable symbol
+	 * @return true if it exists
+	 */
+	public boolean exists(VMSymbol sym) {
+		int slot = sym.slot;
+		if ((slot < values.length) && (depth[slot] > 0))
+			return true;
+		Layer l = under(slot);
+		if (l != null)
+			return l != Layer.GONE;
+		return this.hasNamed() && (this.findNamed(sym.name) != NONE);
 	}
 
 	/**
@@ -356,34 +565,110 @@ public class VMCore implements Serializable {
 	 * @see autohit.vm.VMException
 	 */
 	public Object fetch(String name) throws VMException {
+		if (argNames != null) {
+			int p = this.arg(name);
+			if (p >= 0)
+				return VMInt.external(argValues[p]);
+		}
+		VMSymbol sym = VMSymbol.find(name);
+		if (sym != null)
+			return this.fetch(sym);
+		if (!this.hasNamed())
+			return null;
+		Object o = this.findNamed(name);
+		if (o == NONE)
+			return null;
+		if (o instanceof VMInt)
+			return o.toString();
+		return o;
+	}
 
-		Object thang;
+	/**
+	 * Fetch an object reference in storage by symbol.  A VMInt the SimVM
+	 * stored comes back as its String, so nobody outside the VM ever sees
+	 * one.
+	 *
+	 * @param sym the variable symbol
+	 * @return the object or null if it can't be found
+	 * @see autohit.vm.VMInt
+	 */
+	public Object fetch(VMSymbol sym) {
+		Object o = this.value(sym);
+		if (o instanceof VMInt)
+			return o.toString();
+		return o;
+	}
 
-		try {
-			// is it even there?
-			if (storage.containsKey(name)) {
+	/**
+	 * Fetch exactly what is in storage, VMInt and all.  Only the SimVM
+	 * should use this.
+	 *
+	 * @param sym the variable symbol
+	 * @return the object or null if it can't be found
+	 */
+	public Object value(VMSymbol sym) {
+		int slot = sym.slot;
+		Object o = null;
+		if (slot < values.length) {
+			o = values[slot];
+			if ((o != null) || (depth[slot] > 0))
+				return o;
+		}
+		Layer l = under(slot);
+		if (l != null) {
+			if (l == Layer.GONE)
+				return null;
+			return l.value(slot);
+		}
+		if (!this.hasNamed())
+			return null;
+		o = this.findNamed(sym.name);
+		if (o == NONE)
+			return null;
+		return o;
+	}
 
-				thang = storage.get(name);
+	/**
+	 * Put up an argument frame.  Names and values go by position; values
+	 * may be longer than names.  The core keeps the arrays, so don't
+	 * change them until leaveArgs().
+	 *
+	 * @param names argument names
+	 * @param values argument values
+	 */
+	public void enterArgs(String[] names, Object[] values) {
+		argNames = names;
+		argValues = values;
+	}
 
-				// a stack or naked?
-				if (thang instanceof Stack) {
-					return ((Stack) thang).peek();
-				} else {
-					return thang;
-				}
-			}
+	/**
+	 * Take down the argument frame.
+	 */
+	public void leaveArgs() {
+		argNames = null;
+		argValues = null;
+	}
 
-		} catch (Exception e) {
-			throw new VMException(
-				"VM: Core failed to fetch " + name + ".  " + e.getMessage(),
-				VMException.CODE_VM_CORE_FAILED_RETRIEVAL_FAULT,
-				e);
+	/**
+	 * Find an argument in the frame.
+	 *
+	 * @param name argument name
+	 * @return its position, or -1 if it isn't there or there is no frame
+	 */
+	public int arg(String name) {
+		String[] names = argNames;
+		if (names != null) {
+			for (int index = 0; index < names.length; index++) {
+				if (names[index].equals(name))
+					return index;
+			}
 		}
-		return null;
+		return -1;
 	}
 
 	/**
-	 * Get a Set of variables in scope in storage. 
+	 * Get a Set of variables in scope in storage, and any arguments in the
+	 * frame.  It is a copy, so changing the storage will not change the Set.
 	 *
 	 * @return A Set of Strings that are the variable names.
 	 * @throws VMException
@@ -391,10 +676,44 @@ public class VMCore implements Serializable {
 	 */
 	public Set getStorageNameSet() throws VMException {
 
-		Set keySet;
+		Set keySet = new HashSet();
 
 		try {
-			keySet = storage.keySet();
+			VMSymbol sym;
+			Layer l;
+			int top = values.length;
+			for (l = base; l != null; l = l.below) {
+				if (l.limit() > top)
+					top = l.limit();
+			}
+			for (int slot = 0; slot < top; slot++) {
+				if ((slot < values.length) && (depth[slot] > 0)) {
+					l = null;
+				} else {
+					l = under(slot);
+					if ((l == null) || (l == Layer.GONE))
+						continue;
+				}
+				sym = VMSymbol.get(slot);
+				if (sym != null)
+					keySet.add(sym.name);
+			}
+			if (this.hasNamed()) {
+				Map view = this.namedView();
+				if (view != null) {
+					String name;
+					for (Iterator i = view.keySet().iterator(); i.hasNext();) {
+						name = (String) i.next();
+						if (this.exists(name))
+							keySet.add(name);
+					}
+				}
+			}
+			if (argNames != null) {
+				for (int index = 0; index < argNames.length; index++) {
+					keySet.add(argNames[index]);
+				}
+			}
 
 		} catch (Exception e) {
 			throw new VMException(
@@ -415,37 +734,529 @@ public class VMCore implements Serializable {
 	 * @see autohit.vm.VMException
 	 */
 	public void replace(String name, Object o) throws VMException {
+		VMSymbol sym = VMSymbol.find(name);
+		if (sym != null) {
+			this.replace(sym, o);
+		} else if (!this.hasNamed() || !this.replaceNamed(name, o)) {
+			throw new VMException(
+				"Object doesnt exist in core storage: " + name,
+				VMException.CODE_VM_CORE_DOESNT_EXIST_FAULT);
+		}
+	}
 
-		Object thang;
+	/**
+	 * Replace an object in storage by symbol.  Obviously it will replace the
+	 * nearest in scope.  If the object doesn't exist, it will throw an exception.
+	 * If it only exists in the base, the new value goes into this core at
+	 * the bottom of the scope stack, where a copied variable would have been.
+	 *
+	 * @param sym the variable symbol
+	 * @param o object reference
+	 * @throws VMException
+	 * @see autohit.vm.VMException
+	 */
+	public void replace(VMSymbol sym, Object o) throws VMException {
+		int slot = sym.slot;
+		if (!this.exists(sym)) {
+			throw new VMException(
+				"Object doesnt exist in core storage: " + sym.name,
+				VMException.CODE_VM_CORE_DOESNT_EXIST_FAULT);
+		}
+		if (((slot >= values.length) || (depth[slot] == 0)) && (under(slot) == null)) {
+			// Only there by name
+			this.replaceNamed(sym.name, o);
+			return;
+		}
+		touch(slot);
+		if (depth[slot] == 0)
+			depth[slot] = 1;
+		values[slot] = o;
+	}
 
-		// Is there something there already?
-		if (storage.containsKey(name)) {
+	/**
+	 * Grow the storage so it covers a slot.
+	 * @param slot the slot that has to fit
+	 */
+	private void grow(int slot) {
+		int size = values.length * 2;
+		if (size <= slot)
+			size = slot + SLOT_HEADROOM;
+
+		Object[] nvalues = new Object[size];
+		System.arraycopy(values, 0, nvalues, 0, values.length);
+		int[] ndepth = new int[size];
+		System.arraycopy(depth, 0, ndepth, 0, depth.length);
+		Object[][] nshadow = new Object[size][];
+		System.arraycopy(shadow, 0, nshadow, 0, shadow.length);
+		if (hidden != null) {
+			boolean[] nhidden = new boolean[size];
+			System.arraycopy(hidden, 0, nhidden, 0, hidden.length);
+			hidden = nhidden;
+		}
+		if (owned != null) {
+			boolean[] nowned = new boolean[size];
+			System.arraycopy(owned, 0, nowned, 0, owned.length);
+			owned = nowned;
+			boolean[] ndirty = new boolean[size];
+			System.arraycopy(dirty, 0, ndirty, 0, dirty.length);
+			dirty = ndirty;
+		}
 
-			try {
-				// yes - is there more than one in a stack?
-				thang = storage.get(name);
-				if (thang instanceof Stack) {
-					// yes.  pop the top and push the replacement
-					 ((Stack) thang).pop();
-					((Stack) thang).push(o);
+		values = nvalues;
+		depth = ndepth;
+		shadow = nshadow;
+	}
 
-				} else {
-					// replace it
-					storage.put(name, o);
+	/**
+	 * Get a slot ready to change.  Make room for it, and if it is still in
+	 * frozen, copy it back into this core first.
+	 * @param slot the slot
+	 */
+	private void touch(int slot) {
+		if (slot >= values.length)
+			grow(slot);
+		if (frozen == null)
+			return;
+		last = null;
+		if (!owned[slot]) {
+			owned[slot] = true;
+			Layer f = frozen;
+			if (slot < f.depth.length) {
+				if (f.depth[slot] > 0) {
+					values[slot] = f.values[slot];
+					depth[slot] = f.depth[slot];
+					if (f.shadow[slot] != null)
+						shadow[slot] = (Object[]) f.shadow[slot].clone();
 				}
-			} catch (Exception e) {
-				throw new VMException(
-					"Core failed to replace " + name + ".  " + e.getMessage(),
-					VMException.CODE_VM_CORE_FAILED_STORE_FAULT);
+				if ((f.hidden != null) && (slot < f.hidden.length) && f.hidden[slot]) {
+					if (hidden == null)
+						hidden = new boolean[values.length];
+					hidden[slot] = true;
+				}
+			}
+		}
+		if (!dirty[slot]) {
+			dirty[slot] = true;
+			if (changedCount == changed.length) {
+				int[] nchanged = new int[changedCount * 2];
+				System.arraycopy(changed, 0, nchanged, 0, changedCount);
+				changed = nchanged;
 			}
+			changed[changedCount++] = slot;
+		}
+	}
+
+	/**
+	 * Hide a base variable from this core.
+	 * @param slot the slot
+	 */
+	private void hide(int slot) {
+		touch(slot);
+		if (hidden == null)
+			hidden = new boolean[values.length];
+		hidden[slot] = true;
+	}
+
+	/**
+	 * Find the base layer that holds a slot this core doesn't.
+	 * @param slot the slot
+	 * @return the layer, Layer.GONE if it was removed, or null if it isn't there
+	 */
+	private Layer under(int slot) {
+		if ((hidden != null) && (slot < hidden.length) && hidden[slot])
+			return Layer.GONE;
+		Layer l = base;
+		if ((owned != null) && (slot < owned.length) && owned[slot])
+			l = frozen.below;
+		if (l == null)
+			return null;
+		return l.find(slot);
+	}
+
+	// -- LAYERS
 
+	/**
+	 * Freeze the storage that is in scope, along with the base under it,
+	 * into a Layer that another core can stand on.  Whatever this core does
+	 * afterwards won't show in the Layer.  The first time, the arrays
+	 * themselves go into the Layer.  After that, only the slots changed
+	 * since then are copied, and if nothing changed the last Layer is
+	 * handed out again.
+	 *
+	 * @return the layer
+	 */
+	public Layer snapshot() {
+		if (last != null)
+			return last;
+		if (frozen == null) {
+			frozen = new Layer(values, depth, hidden, shadow, base, this.namedView());
+			base = frozen;
+			values = new Object[SLOT_HEADROOM];
+			depth = new int[SLOT_HEADROOM];
+			shadow = new Object[SLOT_HEADROOM][];
+			hidden = null;
+			owned = new boolean[SLOT_HEADROOM];
+			dirty = new boolean[SLOT_HEADROOM];
+			changed = new int[SLOT_HEADROOM];
+			changedCount = 0;
+			last = frozen;
+		} else if (changedCount > OVERLAY_MAX) {
+			fold();
+			last = frozen;
 		} else {
-			// no.  just toss it on
-			throw new VMException(
-				"Object doesnt exist in core storage: " + name,
-				VMException.CODE_VM_CORE_DOESNT_EXIST_FAULT);
+			last = overlay();
+		}
+		return last;
+	}
+
+	/**
+	 * Make an overlay of the slots changed since frozen, on top of it.
+	 * @return the layer
+	 */
+	private Layer overlay() {
+		int[] slots = new int[changedCount];
+		System.arraycopy(changed, 0, slots, 0, changedCount);
+		Arrays.sort(slots);
+		Object[] lvalues = new Object[slots.length];
+		int[] ldepth = new int[slots.length];
+		boolean[] lhidden = new boolean[slots.length];
+		int slot;
+		for (int index = 0; index < slots.length; index++) {
+			slot = slots[index];
+			if (depth[slot] > 0) {
+				lvalues[index] = values[slot];
+				ldepth[index] = 1;
+			}
+			lhidden[index] = (hidden != null) && hidden[slot];
+		}
+		return new Layer(slots, lvalues, ldepth, lhidden, frozen, this.namedView());
+	}
+
+	/**
+	 * Fold the slots changed since frozen into a new frozen.  Owned slots
+	 * only need what is in scope, since this core never copies them out
+	 * again.
+	 */
+	private void fold() {
+		Layer f = frozen;
+		int size = f.depth.length;
+		int slot;
+		for (int index = 0; index < changedCount; index++) {
+			if (changed[index] >= size)
+				size = changed[index] + 1;
+		}
+		Object[] lvalues = new Object[size];
+		System.arraycopy(f.values, 0, lvalues, 0, f.values.length);
+		int[] ldepth = new int[size];
+		System.arraycopy(f.depth, 0, ldepth, 0, f.depth.length);
+		Object[][] lshadow = new Object[size][];
+		System.arraycopy(f.shadow, 0, lshadow, 0, f.shadow.length);
+		boolean[] lhidden = new boolean[size];
+		if (f.hidden != null)
+			System.arraycopy(f.hidden, 0, lhidden, 0, f.hidden.length);
+
+		for (int index = 0; index < changedCount; index++) {
+			slot = changed[index];
+			dirty[slot] = false;
+			lshadow[slot] = null;
+			if (depth[slot] > 0) {
+				lvalues[slot] = values[slot];
+				ldepth[slot] = 1;
+			} else {
+				lvalues[slot] = null;
+				ldepth[slot] = 0;
+			}
+			lhidden[slot] = (hidden != null) && hidden[slot];
+		}
+		changedCount = 0;
+		frozen = new Layer(lvalues, ldepth, lhidden, lshadow, f.below, this.namedView());
+		base = frozen;
+	}
+
+	/**
+	 * Stand this core on a base layer.  Do it before anything is stored.
+	 * Anything already in the core shadows the base.
+	 *
+	 * @param layer the base or null for none
+	 */
+	public void inherit(Layer layer) {
+		base = layer;
+		namedBase = (layer == null) ? null : layer.named;
+		namedStale = true;
+	}
+
+	/**
+	 * Make a base layer out of name/value pairs, such as the invoker
+	 * properties.  Entries with a name that isn't a String are skipped.  The
+	 * names are kept as names, so they don't take up symbols.
+	 *
+	 * @param pairs the names and values
+	 * @return the layer
+	 */
+	public static Layer layer(Map pairs) {
+		HashMap lnamed = new HashMap();
+		Map.Entry entry;
+		for (Iterator i = pairs.entrySet().iterator(); i.hasNext();) {
+			entry = (Map.Entry) i.next();
+			if (entry.getKey() instanceof String) {
+				lnamed.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return new Layer(NO_METHODS, new int[0], null, null, null, Collections.unmodifiableMap(lnamed));
+	}
+
+	// -- RUN-TIME NAMES
+
+	/**
+	 * @return true if this core or its base has anything stored by name
+	 */
+	private boolean hasNamed() {
+		return (named != null) || (namedBase != null);
+	}
+
+	/**
+	 * Look up a run-time name.
+	 * @param name the name
+	 * @return the value or NONE if it isn't there
+	 */
+	private Object findNamed(String name) {
+		if (named != null) {
+			ArrayList stack = (ArrayList) named.get(name);
+			if (stack != null)
+				return stack.get(stack.size() - 1);
+		}
+		if ((namedBase != null)
+			&& ((namedHidden == null) || !namedHidden.contains(name))
+			&& namedBase.containsKey(name))
+			return namedBase.get(name);
+		return NONE;
+	}
+
+	/**
+	 * Store by a name that has no symbol.  Same scope rules as store().
+	 * @param name the name
+	 * @param o the object
+	 */
+	private void storeNamed(String name, Object o) {
+		if (named == null)
+			named = new HashMap();
+		ArrayList stack = (ArrayList) named.get(name);
+		if (stack == null) {
+			stack = new ArrayList(2);
+			named.put(name, stack);
+		}
+		stack.add(o);
+		scope.push(name);
+		namedChanged();
+	}
+
+	/**
+	 * Remove by a name that has no symbol.  Same rules as remove().
+	 * @param name the name
+	 */
+	private void removeNamed(String name) {
+		if (named != null) {
+			ArrayList stack = (ArrayList) named.get(name);
+			if (stack != null) {
+				stack.remove(stack.size() - 1);
+				if (stack.size() == 0)
+					named.remove(name);
+				namedChanged();
+				return;
+			}
 		}
+		if ((namedBase != null) && namedBase.containsKey(name)) {
+			if (namedHidden == null)
+				namedHidden = new HashSet();
+			if (namedHidden.add(name))
+				namedChanged();
+		}
+	}
 
+	/**
+	 * Replace by a name that has no symbol.  Same rules as replace().
+	 * @param name the name
+	 * @param o the object
+	 * @return false if it isn't there
+	 */
+	private boolean replaceNamed(String name, Object o) {
+		ArrayList stack = (named == null) ? null : (ArrayList) named.get(name);
+		if (stack != null) {
+			stack.set(stack.size() - 1, o);
+		} else if (this.findNamed(name) != NONE) {
+			if (named == null)
+				named = new HashMap();
+			stack = new ArrayList(2);
+			stack.add(o);
+			named.put(name, stack);
+		} else {
+			return false;
+		}
+		namedChanged();
+		return true;
+	}
+
+	/**
+	 * Something stored by name changed, so the next snapshot is new.
+	 */
+	private void namedChanged() {
+		namedStale = true;
+		last = null;
+	}
+
+	/**
+	 * The run-time names as a snapshot shows them: the base's, less the
+	 * ones removed here, plus the ones in scope here.  It is only copied
+	 * when something here changed.
+	 * @return name to value, or null if there are none
+	 */
+	private Map namedView() {
+		if (namedStale) {
+			if (((named == null) || named.isEmpty()) && ((namedHidden == null) || namedHidden.isEmpty())) {
+				namedView = namedBase;
+			} else {
+				HashMap view = (namedBase == null) ? new HashMap() : new HashMap(namedBase);
+				if (namedHidden != null)
+					view.keySet().removeAll(namedHidden);
+				if (named != null) {
+					Map.Entry entry;
+					ArrayList stack;
+					for (Iterator i = named.entrySet().iterator(); i.hasNext();) {
+						entry = (Map.Entry) i.next();
+						stack = (ArrayList) entry.getValue();
+						view.put(entry.getKey(), stack.get(stack.size() - 1));
+					}
+				}
+				namedView = Collections.unmodifiableMap(view);
+			}
+			namedStale = false;
+		}
+		return namedView;
+	}
+
+	/**
+	 * A frozen picture of core storage.  Only the instance that was in
+	 * scope for each slot is visible.  Nobody writes into the arrays once
+	 * a Layer has them, so any number of cores on any number of threads
+	 * can read through it.  A Layer is either indexed by slot, or it is an
+	 * overlay that holds a few sorted slots on top of one that is.
+	 */
+	public static final class Layer implements Serializable {
+
+		final static long serialVersionUID = 1;
+
+		/**
+		 * What find() gives back for a slot that was removed.
+		 */
+		final static Layer GONE = new Layer(NO_METHODS, new int[0], null, null, null, null);
+
+		final Object[] values;
+		final int[] depth;
+		final boolean[] hidden;
+
+		/**
+		 * Values stored by a name with no symbol, by name, or null.  It is
+		 * the whole picture, base and all, so only the top layer's counts.
+		 */
+		final Map named;
+
+		/**
+		 * The shadow stacks of the core that froze this layer, so it can
+		 * copy a slot back out.  Nobody else looks at them.
+		 */
+		final Object[][] shadow;
+
+		/**
+		 * The slots an overlay holds, in order, or null if the layer is
+		 * indexed by slot.
+		 */
+		final int[] slots;
+
+		/**
+		 * The layer under this one, or null.
+		 */
+		final Layer below;
+
+		/**
+		 * Where an overlay carries on for a slot its core doesn't hold.  That
+		 * skips the core's own frozen storage under it.
+		 */
+		final Layer skip;
+
+		Layer(Object[] values, int[] depth, boolean[] hidden, Object[][] shadow, Layer below, Map named) {
+			this.values = values;
+			this.named = named;
+			this.depth = depth;
+			this.hidden = hidden;
+			this.shadow = shadow;
+			this.slots = null;
+			this.below = below;
+			this.skip = below;
+		}
+
+		Layer(int[] slots, Object[] values, int[] depth, boolean[] hidden, Layer below, Map named) {
+			this.values = values;
+			this.named = named;
+			this.depth = depth;
+			this.hidden = hidden;
+			this.shadow = null;
+			this.slots = slots;
+			this.below = below;
+			this.skip = below.below;
+		}
+
+		/**
+		 * Get the value this layer holds for a slot.  Only good for a layer
+		 * that find() returned for the slot.
+		 * @param slot the slot
+		 * @return the value
+		 */
+		Object value(int slot) {
+			if (slots == null)
+				return values[slot];
+			return values[Arrays.binarySearch(slots, slot)];
+		}
+
+		/**
+		 * @return one past the highest slot this layer could hold
+		 */
+		int limit() {
+			if (slots == null)
+				return depth.length;
+			if (slots.length == 0)
+				return 0;
+			return slots[slots.length - 1] + 1;
+		}
+
+		/**
+		 * Find the layer that holds a slot, starting with this one.
+		 * @param slot the slot
+		 * @return the layer, GONE if it was removed, or null if nobody has it
+		 */
+		Layer find(int slot) {
+			Layer l = this;
+			int at;
+			do {
+				if (l.slots != null) {
+					at = Arrays.binarySearch(l.slots, slot);
+					if (at >= 0) {
+						if (l.depth[at] > 0)
+							return l;
+						if (l.hidden[at])
+							return GONE;
+						l = l.skip;
+						continue;
+					}
+				} else if (slot < l.depth.length) {
+					if (l.depth[slot] > 0)
+						return l;
+					if ((l.hidden != null) && (slot < l.hidden.length) && l.hidden[slot])
+						return GONE;
+				}
+				l = l.below;
+			} while (l != null);
+			return null;
+		}
 	}
 
 	// -- PERSIST
@@ -463,6 +1274,7 @@ public class VMCore implements Serializable {
 
 		try {
 			persists.put(name, o);
+			persistStamp++;
 		} catch (Exception e) {
 			throw new VMException(
 				"VM: Core failed to persist " + name + ".  " + e.getMessage(),
@@ -483,6 +1295,7 @@ public class VMCore implements Serializable {
 		try {
 			if (persists.containsKey(name)) {
 				persists.remove(name);
+				persistStamp++;
 			}
 		} catch (Exception e) {
 			throw new VMException(
@@ -544,8 +1357,7 @@ public class VMCore implements Serializable {
 	 *  Marks a scope on the scope stack
 	 */
 	public void markScope() {
-		VMIScope vs = new VMIScope();
-		scope.push(vs);
+		scope.push(SCOPE_MARK);
 	}
 
 	/**
@@ -564,8 +1376,12 @@ public class VMCore implements Serializable {
 			item = scope.pop();
 			while (!(item instanceof VMIScope)) {
 
-				// If we are here, then it's going to be a string name
-				this.remove((String) item);
+				// If we are here, then it's going to be a variable symbol
+				if (item instanceof VMSymbol) {
+					this.remove((VMSymbol) item);
+				} else {
+					this.remove((String) item);
+				}
 				item = scope.pop();
 			}
 
@@ -24,6 +24,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 
 import autohit.common.NVPair;
+import autohit.vm.i.VMInstruction;
 
 /**
  * A VMExecutable is the holding bin for an executable.
@@ -35,7 +36,12 @@ import autohit.common.NVPair;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 16apr03</code> 
+ * <code>EPG - Initial - 16apr03<br>
+ * EPG - Add linked handlers - 17Oct26<br>
+ * EPG - Add symbol table - 17Oct26<br>
+ * EPG - Source line lookup - 17Oct26<br>
+ * EPG - Inlined subroutines - 17Oct26<br>
+ * EPG - Verified flag - 17Oct26</code> 
  * 
  */
 public class VMExecutable implements Serializable {
@@ -98,6 +104,51 @@ public class VMExecutable implements Serializable {
 	 */
 	public NVPair output;
 
+	/**
+	 * Symbol table.  The compiler gives every variable name a slot number,
+	 * which is an index into this array.  Variable instructions carry the slot
+	 * number.  It will be null for executables compiled before there were
+	 * slots; the linker will go by name for those.
+	 *  @serial
+	 */
+	public String[] symbols;
+
+	/**
+	 * Pre-linked handlers for the SimVM, one per instruction in core.  This is
+	 * built by the loader and is never serialized.  If it is null, the VM will
+	 * interpret core directly.
+	 * @see autohit.vm.SimLinker
+	 */
+	public transient SimHandler[] linked;
+
+	/**
+	 * This executable with its small subroutines inlined.  Built by the
+	 * loader and never serialized.
+	 * @see autohit.vm.SimInliner
+	 */
+	public transient SimInliner.Inlined inlined;
+
+	/**
+	 * If this is an inlined executable, the inlined routine each instruction
+	 * was copied from, or null for its own instructions.
+	 * @see autohit.vm.SimInliner
+	 */
+	public transient SimInliner.Site[] sites;
+
+	/**
+	 * Set once the SimVerifier has looked at this executable, whether or not
+	 * it passed.  Never serialized.
+	 * @see autohit.vm.SimVerifier
+	 */
+	public transient boolean checked;
+
+	/**
+	 * Set if this executable passed the SimVerifier.  The SimVM runs it
+	 * without its runaway check.  Never serialized.
+	 * @see autohit.vm.SimVerifier
+	 */
+	public transient boolean verified;
+
 	// --- PUBLIC METHODS ----------------------------------------------------	
 
 	/**
@@ -118,4 +169,19 @@ public class VMExecutable implements Serializable {
 
 		core = new ArrayList();
 	}
+
+	/**
+	 *  Find the source line for an instruction.  The line table is the
+	 *  sourceline each instruction carries; the compiler fills it in with
+	 *  the line of the element that emitted it.
+	 *
+	 *  @param ip the instruction pointer
+	 *  @return the line, or 0 if it isn't known
+	 */
+	public int line(int ip) {
+		if ((core == null) || (ip < 0) || (ip >= core.size())) {
+			return 0;
+		}
+		return ((VMInstruction) core.get(ip)).sourceline;
+	}
 }
@@ -0,0 +1,393 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of loaded and linked executables, shared by all loaders.
+ * <p>
+ * A name is loaded once no matter how many processes ask for it at the same
+ * time.  The first asker loads it and the rest wait for that load, including
+ * its fault if it fails.  Failures are not cached.
+ * <p>
+ * When the cache holds more than its capacity, the least recently used
+ * entries are evicted.  Each entry remembers the stamp its source reported
+ * when it was loaded.  Once every recheck milliseconds a hit asks the source
+ * again, and if the stamp changed the entry is dropped and reloaded.  This is
+ * how a recompile is picked up without flushing anything.
+ * <p>
+ * Every time an entry leaves the cache, for any reason, the generation goes
+ * up.  Anything built from cached executables can compare generations to
+ * know when to check itself again.
+ *
+ * @see autohit.vm.VMLoader
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Generation - 17Oct26</code> 
+ * 
+ */
+public class VMExecutableCache {
+
+	/**
+	 * Where the cache gets executables from.
+	 */
+	public interface Source {
+
+		/**
+		 * Load and link an executable.
+		 * @param name of routine to load
+		 * @return an executable
+		 * @throws VMException unable to load.
+		 */
+		public VMExecutable fetch(String name) throws VMException;
+
+		/**
+		 * Stamp for the stored form of the executable.  It should change
+		 * whenever the executable does.
+		 * @param name of routine
+		 * @return the stamp or 0 if it can't be found
+		 */
+		public long stamp(String name);
+	}
+
+	/**
+	 * Cached entries by name.
+	 */
+	private ConcurrentHashMap table;
+
+	/**
+	 * Use clock for LRU.
+	 */
+	private AtomicLong clock;
+
+	private volatile int capacity;
+	private volatile long recheck;
+
+	/**
+	 * Statistics.
+	 */
+	private AtomicLong hits;
+	private AtomicLong misses;
+	private AtomicLong loadnanos;
+	private AtomicLong evictions;
+	private AtomicLong invalidations;
+
+	/**
+	 * Goes up whenever an entry is dropped.
+	 */
+	private AtomicLong generation;
+
+	/**
+	 * Constructor.
+	 * @param capacity most entries to keep
+	 * @param recheck milliseconds between stamp checks.  0 checks every hit.  Negative never checks.
+	 */
+	public VMExecutableCache(int capacity, long recheck) {
+		table = new ConcurrentHashMap();
+		clock = new AtomicLong();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		loadnanos = new AtomicLong();
+		evictions = new AtomicLong();
+		invalidations = new AtomicLong();
+		generation = new AtomicLong();
+		configure(capacity, recheck);
+	}
+
+	/**
+	 * Change the limits.  A smaller capacity takes effect on the next load.
+	 * @param capacity most entries to keep
+	 * @param recheck milliseconds between stamp checks.  0 checks every hit.  Negative never checks.
+	 */
+	public void configure(int capacity, long recheck) {
+		if (capacity < 1) {
+			capacity = 1;
+		}
+		this.capacity = capacity;
+		this.recheck = recheck;
+	}
+
+	/**
+	 * Get an executable, loading it from the source if it isn't cached or is stale.
+	 * @param name of routine
+	 * @param source where to load it from
+	 * @return an executable
+	 * @throws VMException unable to load.
+	 */
+	public VMExecutable get(String name, Source source) throws VMException {
+
+		Entry e;
+		VMExecutable x;
+		while (true) {
+			e = (Entry) table.get(name);
+			if (e == null) {
+				Entry mine = new Entry();
+				e = (Entry) table.putIfAbsent(name, mine);
+				if (e == null) {
+					misses.incrementAndGet();
+					return fill(name, mine, source);
+				}
+			}
+
+			x = e.await();
+			if (stale(name, e, source)) {
+				if (table.remove(name, e)) {
+					invalidations.incrementAndGet();
+					generation.incrementAndGet();
+				}
+				continue;
+			}
+			e.used = clock.incrementAndGet();
+			hits.incrementAndGet();
+			return x;
+		}
+	}
+
+	/**
+	 * Drop one entry.  A load in flight still finishes for whoever is waiting on it.
+	 * @param name of routine
+	 */
+	public void remove(String name) {
+		table.remove(name);
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Drop everything.
+	 */
+	public void clear() {
+		table.clear();
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * @return the generation.  It changes whenever an entry is dropped.
+	 */
+	public long generation() {
+		return generation.get();
+	}
+
+	/**
+	 * @return entries cached or loading
+	 */
+	public int size() {
+		return table.size();
+	}
+
+	/**
+	 * @return requests answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return requests that had to load
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return total nanoseconds spent loading, failed loads included
+	 */
+	public long getLoadNanos() {
+		return loadnanos.get();
+	}
+
+	/**
+	 * @return entries dropped to stay under capacity
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return entries dropped because the source changed
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Statistics summary.
+	 * @return a one line report
+	 */
+	public String toString() {
+		long m = misses.get();
+		return "size="
+			+ table.size()
+			+ "/"
+			+ capacity
+			+ " hits="
+			+ hits.get()
+			+ " misses="
+			+ m
+			+ " avgload(us)="
+			+ ((m == 0) ? 0 : (loadnanos.get() / m / 1000))
+			+ " evictions="
+			+ evictions.get()
+			+ " invalidations="
+			+ invalidations.get();
+	}
+
+	/**
+	 * Load into an entry this thread owns and wake anyone waiting on it.
+	 */
+	private VMExecutable fill(String name, Entry mine, Source source)
+		throws VMException {
+
+		long start = System.nanoTime();
+		VMExecutable x;
+		try {
+			// Stamp first.  If it changes during the load, the next check catches it.
+			mine.stamp = source.stamp(name);
+			mine.checked = System.currentTimeMillis();
+			x = source.fetch(name);
+
+		} catch (VMException ve) {
+			table.remove(name, mine);
+			mine.fail(ve);
+			throw ve;
+		} catch (RuntimeException re) {
+			VMException ve =
+				new VMException(
+					"Cache(routine): Loading program "
+						+ name
+						+ " caused a fundimental Exception: "
+						+ re.getMessage(),
+					VMException.CODE_VM_GENERAL_FAULT,
+					re);
+			table.remove(name, mine);
+			mine.fail(ve);
+			throw ve;
+		} finally {
+			loadnanos.addAndGet(System.nanoTime() - start);
+		}
+
+		mine.used = clock.incrementAndGet();
+		mine.set(x);
+		evict();
+		return x;
+	}
+
+	/**
+	 * Is the entry out of date?  Only asks the source once per recheck period.
+	 */
+	private boolean stale(String name, Entry e, Source source) {
+		long period = recheck;
+		if (period < 0) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		if ((now - e.checked) < period) {
+			return false;
+		}
+		e.checked = now;
+		return source.stamp(name) != e.stamp;
+	}
+
+	/**
+	 * Evict least recently used entries until under capacity.  Loads are
+	 * rare next to hits, so a scan here is cheaper than ordering every hit.
+	 */
+	private void evict() {
+
+		Map.Entry item;
+		Entry candidate;
+		Object victim;
+		Entry oldest;
+		while (table.size() > capacity) {
+			victim = null;
+			oldest = null;
+			for (Iterator i = table.entrySet().iterator(); i.hasNext();) {
+				item = (Map.Entry) i.next();
+				candidate = (Entry) item.getValue();
+				if (candidate.done && ((oldest == null) || (candidate.used < oldest.used))) {
+					oldest = candidate;
+					victim = item.getKey();
+				}
+			}
+			if (victim == null) {
+				// Nothing finished loading.  Let the loads finish.
+				return;
+			}
+			if (table.remove(victim, oldest)) {
+				evictions.incrementAndGet();
+				generation.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * A cached executable, or a placeholder while it loads.
+	 */
+	private static class Entry {
+
+		volatile boolean done;
+		volatile long used;
+		volatile long stamp;
+		volatile long checked;
+		private VMExecutable exec;
+		private VMException fault;
+
+		synchronized void set(VMExecutable x) {
+			exec = x;
+			done = true;
+			notifyAll();
+		}
+
+		synchronized void fail(VMException ve) {
+			fault = ve;
+			done = true;
+			notifyAll();
+		}
+
+		VMExecutable await() throws VMException {
+			if (!done) {
+				synchronized (this) {
+					while (!done) {
+						try {
+							wait();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+							throw new VMException(
+								"Cache(routine): Interrupted waiting for a load.",
+								VMException.CODE_VM_GENERAL_FAULT,
+								ie);
+						}
+					}
+				}
+			}
+			if (fault != null) {
+				throw fault;
+			}
+			return exec;
+		}
+	}
+}
@@ -20,10 +20,11 @@
  */
 package autohit.vm;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ListIterator;
 
 import autohit.common.Constants;
@@ -37,7 +38,8 @@ import autohit.vm.i.VMInstruction;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 15apr03</code> 
+ * <code>EPG - Initial - 15apr03<br>
+ * EPG - Save in the VMBinary format - 17Oct26</code> 
  * 
  */
 public class VMExecutableWrapper {
@@ -100,25 +102,33 @@ public class VMExecutableWrapper {
 	}
 
 	/**
-	 *  Load a VMExecutable from a stream.  This will deserialize it.
+	 *  Load a VMExecutable from a stream.  The whole object is read at once.
+	 *  It may be in the VMBinary format or, if it was compiled before there
+	 *  was one, a serialized object.
 	 *  @see autohit.vm.VMExecutable
+	 *  @see autohit.vm.VMBinary
 	 *  @throws any exception
 	 */
 	public void load(InputStream is) throws Exception {
-		ObjectInputStream p = new ObjectInputStream(is);
-		exec = (VMExecutable) p.readObject();
-		is.close();
+		ByteBuffer b = VMBinary.readAll(is);
+		if (VMBinary.isBinary(b)) {
+			exec = VMBinary.read(b);
+		} else {
+			byte[] bytes = new byte[b.remaining()];
+			b.get(bytes);
+			ObjectInputStream p = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			exec = (VMExecutable) p.readObject();
+		}
 	}
 
 	/**
-	 *  Save a VMExecutable from a stream.  This will serialize it.
+	 *  Save a VMExecutable to a stream in the VMBinary format.
 	 *  @see autohit.vm.VMExecutable
+	 *  @see autohit.vm.VMBinary
 	 *  @throws any exception
 	 */
 	public void save(OutputStream os) throws Exception {
-		ObjectOutputStream sobj = new ObjectOutputStream(os);
-		sobj.writeObject(exec);
-		sobj.flush();
+		VMBinary.write(exec, os);
 		os.close();
 	}
 
@@ -0,0 +1,168 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.io.Serializable;
+
+/**
+ * An integer in a SimVM register or core slot.  Sims only have strings, but
+ * MATH and IF work on numbers, so a number that came out of MATH (or a
+ * numeric literal) is kept as one of these instead of being formatted and
+ * parsed again on every pass around a loop.
+ * <p>
+ * It must never be seen outside the VM.  VMCore.fetch() turns it back into
+ * a String, so calls, modules and eval only ever see text.  The text is
+ * made the first time somebody asks for it and then kept.  A VMInt always
+ * reads back as the canonical form of its value, which is the same thing
+ * Integer.toString() gave the old string registers.
+ * <p>
+ * Small values are shared, so a counter loop allocates nothing.
+ *
+ * @see autohit.vm.SimVM
+ * @see autohit.vm.VMCore#fetch(VMSymbol)
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public final class VMInt implements Serializable {
+
+	final static long serialVersionUID = 1;
+
+	/**
+	 * Smallest shared value.
+	 */
+	public final static int CACHE_LOW = -128;
+
+	/**
+	 * Largest shared value.
+	 */
+	public final static int CACHE_HIGH = 1023;
+
+	/**
+	 * Shared values.
+	 */
+	private final static VMInt[] cache = new VMInt[CACHE_HIGH - CACHE_LOW + 1];
+
+	static {
+		for (int index = 0; index < cache.length; index++) {
+			cache[index] = new VMInt(index + CACHE_LOW);
+		}
+	}
+
+	/**
+	 * The value.
+	 */
+	public final int value;
+
+	/**
+	 * The text, once somebody has asked for it.
+	 */
+	private transient String text;
+
+	/**
+	 *  Constructor.  Use valueOf().
+	 */
+	private VMInt(int v) {
+		value = v;
+	}
+
+	/**
+	 *  Get a VMInt for a value.
+	 *  @param v the value
+	 *  @return a shared instance for small values, otherwise a new one
+	 */
+	public static VMInt valueOf(int v) {
+		if ((v >= CACHE_LOW) && (v <= CACHE_HIGH)) {
+			return cache[v - CACHE_LOW];
+		}
+		return new VMInt(v);
+	}
+
+	/**
+	 *  Get a VMInt for a literal, but only if the literal is exactly how the
+	 *  value would print.  Things like "007" or "+1" stay strings, so they
+	 *  read back the way they were written.
+	 *  @param literal the literal
+	 *  @return the VMInt or null if the literal isn't a canonical integer
+	 */
+	public static VMInt literal(String literal) {
+		if ((literal == null) || (literal.length() < 1) || (literal.length() > 11)) {
+			return null;
+		}
+		int v;
+		try {
+			v = Integer.parseInt(literal);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		VMInt result = valueOf(v);
+		if (!result.toString().equals(literal)) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 *  Turn a register or slot value into what the rest of the system
+	 *  expects to see.
+	 *  @param o the value
+	 *  @return the text of a VMInt, otherwise o itself
+	 */
+	public static Object external(Object o) {
+		if (o instanceof VMInt) {
+			return o.toString();
+		}
+		return o;
+	}
+
+	/**
+	 *  Get the text.
+	 *  @return the value as a String
+	 */
+	public String toString() {
+		String t = text;
+		if (t == null) {
+			t = Integer.toString(value);
+			text = t;
+		}
+		return t;
+	}
+
+	/**
+	 *  Same value, same VMInt.
+	 *  @param o the other object
+	 *  @return true if it is a VMInt with the same value
+	 */
+	public boolean equals(Object o) {
+		return (o instanceof VMInt) && (((VMInt) o).value == value);
+	}
+
+	/**
+	 *  Hash on the value.
+	 *  @return the value
+	 */
+	public int hashCode() {
+		return value;
+	}
+}
@@ -21,15 +21,16 @@
 package autohit.vm;
 import java.io.InputStream;
 import java.util.Hashtable;
-import java.util.Enumeration;
 
 import org.apache.commons.collections.ExtendedProperties;
 
 import autohit.call.Call;
 import autohit.call.CallException;
+import autohit.call.CallRegistry;
 import autohit.common.AutohitErrorCodes;
 import autohit.common.AutohitLogInjectorWrapper;
 import autohit.common.AutohitProperties;
+import autohit.common.Utils;
 import autohit.server.SystemContext;
 import autohit.universe.Universe;
 import autohit.universe.UniverseException;
@@ -37,18 +38,39 @@ import autohit.universe.UniverseException;
 
 /**
  * Root loader.  Basic caching loader half-singleton.  It shares the routine cache, but the
- * call cache is local.  It does not check to see if anything was updated.  Be
- * sure to call init after instantiation or behavior is undefined!  It isn't
- * entirely threadsafe, but good enough.
+ * call cache is local.  The routine cache is bounded by vm.cache.size and notices
+ * a recompiled routine by its universe object's modification time, checked at
+ * most every vm.cache.recheck milliseconds.  Be sure to call init after
+ * instantiation or behavior is undefined!
+ * <p>
+ * Routines are handed out with subroutines up to vm.inline.size instructions
+ * inlined.  The inlined form is kept with the cached routine and checked again
+ * whenever anything leaves the routine cache, such as a flush after a 
+ * recompile, so no stale copy of a routine outlives it.
+ * <p>
+ * Every routine is run past the SimVerifier, after inlining, the first time it
+ * is handed out.  One that passes runs on the SimVM's fast path.
  * <p>
  * It is also responsible for creating cores, and giving logging and universe access to a VM.
+ * Calls come from the CallRegistry.  Each core keeps its own instance of each call,
+ * by registry id, so a linked CALL gets its call without a name lookup.
+ * Every core stands on one shared layer made from the invoker properties.  The
+ * layer is made again after propertiesChanged() or when the number of properties
+ * changes.
  * <p>
  * A loader is not "valid" until both init() and create() are called.
  * <p>
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Initial - 12may03</code> 
+ * <code>EPG - Initial - 12may03<br>
+ * EPG - Link executables on load - 17Oct26<br>
+ * EPG - Bounded, single-flight routine cache - 17Oct26<br>
+ * EPG - Parameterized debug - 17Oct26<br>
+ * EPG - Inline small subroutines - 17Oct26<br>
+ * EPG - Invoker properties as a shared core layer - 17Oct26<br>
+ * EPG - Verify routines on load - 17Oct26<br>
+ * EPG - Calls from the CallRegistry - 17Oct26</code> 
  * 
  */
 public class VMLoader {
@@ -60,18 +82,38 @@ public class VMLoader {
 	public AutohitLogInjectorWrapper log;
 
 	// routine cache
-	static private Hashtable cache;
+	static private VMExecutableCache cache;
+
+	// where the routine cache loads from
+	private VMExecutableCache.Source source;
+
+	// biggest subroutine to inline
+	static private volatile int inlineSize = AutohitProperties.VM_INLINE_SIZE_DEFAULT;
+
+	// where the inliner finds routines
+	private SimInliner.Routines routines;
 
 	// core factory cache
 	private VMCoreFactory corefactory;
 
+	// invoker properties layer and how many properties it was made from
+	private VMCore.Layer invokerLayer;
+	private int invokerSize;
+
 	/**
 	 * Default Constructor.
 	 */
 	public VMLoader() {
-		if (cache == null)
-			cache = new Hashtable();
+		synchronized (VMLoader.class) {
+			if (cache == null)
+				cache =
+					new VMExecutableCache(
+						AutohitProperties.VM_CACHE_SIZE_DEFAULT,
+						AutohitProperties.VM_CACHE_RECHECK_DEFAULT);
+		}
 		corefactory = new VMCoreFactory();
+		source = new UniverseSource();
+		routines = new CachedRoutines();
 	}
 
 	/**
@@ -81,6 +123,25 @@ public class VMLoader {
 	public void init(SystemContext sctx) {
 		sc = sctx;
 		log = sc.getRootLogger();
+
+		try {
+			cache.configure(
+				Utils.testGetPropertyInt(
+					AutohitProperties.VM_CACHE_SIZE,
+					sc.getPropertiesSet(),
+					AutohitProperties.VM_CACHE_SIZE_DEFAULT),
+				Utils.testGetPropertyInt(
+					AutohitProperties.VM_CACHE_RECHECK,
+					sc.getPropertiesSet(),
+					AutohitProperties.VM_CACHE_RECHECK_DEFAULT));
+			inlineSize =
+				Utils.testGetPropertyInt(
+					AutohitProperties.VM_INLINE_SIZE,
+					sc.getPropertiesSet(),
+					AutohitProperties.VM_INLINE_SIZE_DEFAULT);
+		} catch (Exception e) {
+			// no properties.  keep the defaults.
+		}
 	}
 
 	/**
@@ -91,22 +152,32 @@ public class VMLoader {
 		// create it
 		VMCore core = corefactory.allocate();
 		
-		// mirror all the invoker props
-		Hashtable iprop = sc.getInvokerProperties();
-		String ikey;
-		Object ivalue;
-		for (Enumeration e = iprop.keys(); e.hasMoreElements();) {
+		// stand it on the invoker props
+		core.inherit(invokerLayer());
+		return core;
+	}
 
-			try {
-				ikey = (String)e.nextElement(); 
-				ivalue = iprop.get(ikey);
-				core.store(ikey, ivalue);
-			} catch (Exception ecc) {
-				// ignore and just disqualify that entry
+	/**
+	 * Tell the loader the invoker properties were changed, so new cores
+	 * see the change.
+	 */
+	public synchronized void propertiesChanged() {
+		invokerLayer = null;
+	}
+
+	/**
+	 * Get the invoker properties layer, making it if it is missing or stale.
+	 * @return the layer
+	 */
+	private synchronized VMCore.Layer invokerLayer() {
+		Hashtable iprop = sc.getInvokerProperties();
+		synchronized (iprop) {
+			if ((invokerLayer == null) || (invokerSize != iprop.size())) {
+				invokerLayer = VMCore.layer(iprop);
+				invokerSize = iprop.size();
 			}
 		}
-
-		return core;
+		return invokerLayer;
 	}
 
 	/**
@@ -116,18 +187,94 @@ public class VMLoader {
 	 * 	@throws VMException unable to load.
 	 */
 	public VMExecutable load(String name) throws VMException {
+		VMExecutable x = cache.get(name, source);
+		int limit = inlineSize;
+		if (limit <= 0) {
+			return verify(name, x);
+		}
+		SimInliner.Inlined in = x.inlined;
+		if ((in != null) && (in.generation == cache.generation())) {
+			return in.exec;
+		}
+		return verify(name, inline(name, x, limit));
+	}
 
-		if (cache.containsKey(name)) {
-			// cache hit
-			//log.debug("Loader(routine-basic): cache hit [" + name + "].");
-			return (VMExecutable) cache.get(name);
+	/**
+	 *  Verify a routine the first time it is handed out.  One that fails is
+	 *  still handed out.  It just doesn't get the fast path.
+	 *  @param name of routine
+	 *  @param x the routine
+	 *  @return the routine
+	 */
+	private VMExecutable verify(String name, VMExecutable x) {
+		if (!x.checked) {
+			try {
+				SimVerifier.verify(x, routines);
+			} catch (Exception e) {
+				log.debug(
+					AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE,
+					"Loader(routine-basic): [{}] is not verified.  {}",
+					name,
+					e.getMessage());
+			}
 		}
+		return x;
+	}
+
+	/**
+	 *  Inline a routine, or check that what was inlined before is still good.
+	 *  @param name of routine
+	 *  @param x the routine as cached
+	 *  @param limit biggest subroutine to inline
+	 *  @return the executable to run
+	 */
+	private VMExecutable inline(String name, VMExecutable x, int limit) {
+
+		// Read it first.  If it changes while we work, we just check again.
+		long generation = cache.generation();
+
+		SimInliner.Inlined in = x.inlined;
+		if ((in != null) && in.current(routines)) {
+			in.generation = generation;
+			return in.exec;
+		}
+
+		try {
+			in = SimInliner.inline(name, x, routines, limit);
+		} catch (Exception e) {
+			// Run it as it is.
+			log.error(
+				"Loader(routine-basic): Could not inline ["
+					+ name
+					+ "].  Running it without.  error="
+					+ e.getMessage(),
+				AutohitErrorCodes.CODE_VM_SOFTWARE_DETECTED_FAULT);
+			in = new SimInliner.Inlined(x, new SimInliner.Site[0]);
+		}
+		in.generation = generation;
+		x.inlined = in;
+		log.debug(
+			AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE,
+			"Loader(routine-basic): Inlined {} subroutines into [{}].",
+			new Integer(in.sites.length),
+			name);
+		return in.exec;
+	}
+
+	/**
+	 *  Load a routine from the universe, bypassing the cache.
+	 *  @param name of routine to load
+	 *  @return an executable
+	 * 	@throws VMException unable to load.
+	 */
+	private VMExecutable fetch(String name) throws VMException {
 
 		VMExecutableWrapper wrapper = new VMExecutableWrapper();
 		try {
 			log.debug(
-				"Loader(routine-basic): Loading [" + name + "].",
-				AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE);
+				AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE,
+				"Loader(routine-basic): Loading [{}].",
+				name);
 
 			Universe u = sc.getUniverse();
 			InputStream is =
@@ -163,56 +310,105 @@ public class VMLoader {
 				VMException.CODE_VM_GENERAL_FAULT,
 				e);
 		}
-		cache.put(name, wrapper.exec);
+		// Link it once, here, so every VM that runs it gets threaded code.
+		SimLinker.link(wrapper.exec);
+		log.debug(
+			AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE,
+			"Loader(routine-basic): Loaded [{}].  Cache {}",
+			name,
+			cache);
 		return wrapper.exec;
 	}
 
+	/**
+	 *  Modification stamp of a routine's compiled object.
+	 *  @param name of routine
+	 *  @return the stamp or 0 if it isn't there
+	 */
+	private long stamp(String name) {
+		try {
+			return sc.getUniverse().lastModified(
+				AutohitProperties.literal_UNIVERSE_CACHE
+					+ AutohitProperties.literal_NAME_SEPERATOR
+					+ name);
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+
+	/**
+	 *  Routine cache statistics.
+	 *  @return a one line report
+	 */
+	public String cacheStatistics() {
+		return cache.toString();
+	}
+
 	/**
 	 *  Get a call.  If it isn't in the cache, load it.  There is no thread
 	 *  safety here at all!  However, it shouldn't matter since there is a
 	 *  loader per VM.
 	 *  @param name of routine to load
-	 * 	@param core a VMCore that holds a callcache
+	 * 	@param core a VMCore that holds a call cache
 	 *  @param li log injector to give to the call
 	 *  @return runnable call
 	 * 	@throws VMException unable to load.
 	 */
 	public Call get(String name, VMCore core, AutohitLogInjectorWrapper li) throws VMException {
 
-		if (core.callcache.containsKey(name)) {
-			// cache hit
-			//log.debug(
-			//	"Loader(call-basic): cache hit [" + name + "].",
-			//	AutohitErrorCodes.LOG_INFORMATIONAL_OK);
-			return (Call) core.callcache.get(name);
+		CallRegistry.Factory f = CallRegistry.find(name);
+		if (f == null) {
+			throw new VMException(
+				"Loader(call-basic): CALL does not exist.  error="
+					+ CallRegistry.PREFIX
+					+ name.toUpperCase(),
+				VMException.CODE_VM_GENERAL_FAULT);
+		}
+		return get(f, core, li);
+	}
+
+	/**
+	 *  Get a call by its factory, the way a linked CALL does.  If the core
+	 *  doesn't have one yet, make and load it.  Same thread safety as by name.
+	 *  @param f the call's factory
+	 * 	@param core a VMCore that holds a call cache
+	 *  @param li log injector to give to the call
+	 *  @return runnable call
+	 * 	@throws VMException unable to load.
+	 */
+	public Call get(CallRegistry.Factory f, VMCore core, AutohitLogInjectorWrapper li) throws VMException {
+
+		Call[] calls = core.calls;
+		if (f.id < calls.length) {
+			Call hit = calls[f.id];
+			if (hit != null) {
+				return hit;
+			}
 		}
 
 		Call c = null;
 
 		try {
-			String decoratedName = "autohit.call.Call_" + name.toUpperCase();
-			Class t = Class.forName(decoratedName);
-			c = (Call) t.newInstance();
-			Universe u = sc.getUniverse();
+			c = f.make();
 			c.load(core, sc, li);
 
 			log.debug(
-				"Loader(call-basic): Instantiated a [" + name + "].",
-				AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE);
-
-			core.callcache.put(name, c);
-
-		} catch (ClassNotFoundException ef) {
-			throw new VMException(
-				"Loader(call-basic): CALL does not exist.  error="
-					+ ef.getMessage(),
-				VMException.CODE_VM_GENERAL_FAULT,
-				ef);
+				AutohitErrorCodes.CODE_INFORMATIONAL_OK_VERBOSE,
+				"Loader(call-basic): Instantiated a [{}].",
+				f.name);
+
+			if (f.id >= calls.length) {
+				Call[] grown = new Call[Math.max(f.id + 1, CallRegistry.size())];
+				System.arraycopy(calls, 0, grown, 0, calls.length);
+				calls = grown;
+				core.calls = grown;
+			}
+			calls[f.id] = c;
 
 		} catch (CallException ex) {
 			throw new VMException(
 				"Loader(call-basic): Instantiation error for ["
-					+ name
+					+ f.name
 					+ "].  Not aborting, but state of CALL undefined.  Error="
 					+ ex.getMessage(),
 				VMException.CODE_VM_CALL_FAULT,
@@ -233,11 +429,7 @@ public class VMLoader {
 	 * 	@throws VMException if it locked by something else.
 	 */
 	public void flush() {
-
-		Hashtable holding = cache;
-		synchronized (holding) {
-			cache = new Hashtable();
-		}
+		cache.clear();
 	}
 
 	/**
@@ -245,14 +437,7 @@ public class VMLoader {
 	 * 	@throws VMException if it locked by something else.
 	 */
 	public void flush(String name) {
-
-		Hashtable holding = cache;
-		synchronized (holding) {
-			try {
-				cache.remove(name);
-			} catch (Exception e) { // dont care
-			}
-		}
+		cache.remove(name);
 	}
 	/**
 	 * Gets a property from the SystemContext.  Normally, you should handle
@@ -274,4 +459,28 @@ public class VMLoader {
 		return thang;
 	}
 
+	/**
+	 * The inliner's view of the routine cache.  Routines as compiled, not inlined.
+	 */
+	private class CachedRoutines implements SimInliner.Routines {
+
+		public VMExecutable routine(String name) throws VMException {
+			return cache.get(name, source);
+		}
+	}
+
+	/**
+	 * The routine cache's view of this loader.
+	 */
+	private class UniverseSource implements VMExecutableCache.Source {
+
+		public VMExecutable fetch(String name) throws VMException {
+			return VMLoader.this.fetch(name);
+		}
+
+		public long stamp(String name) {
+			return VMLoader.this.stamp(name);
+		}
+	}
+
 }
\ No newline at end of file
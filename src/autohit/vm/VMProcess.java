@@ -39,10 +39,17 @@ import autohit.server.SystemContext;
  * </pre>
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - New - 24Jul03 </code>
+ * <code>EPG - New - 24Jul03<br>
+ * EPG - VM attribute - 17Oct26<br>
+ * EPG - getState() is now getProcessState(), clear of Thread.getState() - 17Oct26</code>
  */
 public interface VMProcess {
 
+	/**
+	 *  Process attribute name for the running VM, if there is one.
+	 */
+	public static final String ATTRIBUTE_VM = "vm";
+
 	/**
 	 *  Initialize the process controller.  It takes an immutable SystemContext.
 	 *  @param sctx a ready SystemContext.  This will be fed to all controlled processes.
@@ -183,7 +190,7 @@ public interface VMProcess {
 	 *  @return a VM.State_* value.
 	 *  @see autohit.vm.VM    
 	 */
-	public int getState();
+	public int getProcessState();
 
 	/**
 	 *  Get my system context.
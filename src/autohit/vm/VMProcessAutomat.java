@@ -20,7 +20,9 @@
  */
 package autohit.vm;
 
+import autohit.common.AutohitProperties;
 import autohit.common.ProcessMonitor;
+import autohit.common.Utils;
 import autohit.server.SystemContext;
 import autohit.common.Constants;
 
@@ -41,9 +43,18 @@ import autohit.common.Constants;
  *  	- STOP will stop execution of the VM and dump it
  *  	- KILL will stop the execution and let this process die !
  * </pre>
+ * <p>
+ * The VM runs a quantum of instructions between checks for requests.  All
+ * requests raise a single volatile attention flag, so the run loop only has to
+ * look at one thing per instruction.  The quantum comes from the vm.quantum
+ * property and defaults to VM_QUANTUM_DEFAULT.  A quantum of 1 is the old
+ * behavior.
  * 
  * @version 1.0 <i>Version History</i><code>EPG - Rewrite - 15May03<br>
- * EPG - moved context passing to the process, rather than the loader - 23Jul03</code>
+ * EPG - moved context passing to the process, rather than the loader - 23Jul03<br>
+ * EPG - instruction quantum and attention flag - 17Oct26<br>
+ * EPG - VM attribute - 17Oct26<br>
+ * EPG - getState() is now getProcessState(), clear of Thread.getState() - 17Oct26</code>
  */
 public class VMProcessAutomat extends Thread implements VMProcess {
 
@@ -67,6 +78,15 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	private boolean reqKill;
 	private boolean reqState;
 
+	/**
+	 *  Raised by any request.  This is the only thing the run loop checks
+	 *  between instructions in a quantum. */
+	private volatile boolean reqAttention;
+
+	/**
+	 *  Instructions to run between request checks */
+	private int quantum;
+
 	/**
 	 *  My pid */
 	private int pid;
@@ -87,7 +107,9 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 		rVM = null;
 		alive = true;
 		reqKill = false;
+		reqAttention = false;
 		timesRun = 0;
+		quantum = AutohitProperties.VM_QUANTUM_DEFAULT;
 
 		this.setDaemon(true);
 
@@ -110,6 +132,40 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	public void init(SystemContext sctx, int setpid) throws VMException {
 		sc = sctx;
 		pid = setpid;
+
+		try {
+			setQuantum(
+				Utils.testGetPropertyInt(
+					AutohitProperties.VM_QUANTUM,
+					sc.getPropertiesSet(),
+					AutohitProperties.VM_QUANTUM_DEFAULT));
+		} catch (Exception e) {
+			// no properties.  keep the default.
+		}
+	}
+
+	/**
+	 * Set the instruction quantum.  This is the number of instructions the
+	 * VM will run before it checks for requests again.  Anything less than
+	 * 1 is treated as 1.
+	 * 
+	 * @param q
+	 *           instructions per quantum
+	 */
+	public void setQuantum(int q) {
+		if (q < 1)
+			quantum = 1;
+		else
+			quantum = q;
+	}
+
+	/**
+	 * Get the instruction quantum.
+	 * 
+	 * @return instructions per quantum
+	 */
+	public int getQuantum() {
+		return quantum;
 	}
 
 	/**
@@ -137,6 +193,7 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 		reqResume = false;
 		reqStop = false;
 		reqState = false;
+		reqAttention = false;
 
 		// Attach it
 		try {
@@ -185,6 +242,7 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	public boolean vmPause() {
 		if (rVM.getState() == VM.STATE_RUNNING) {
 			reqPause = true;
+			reqAttention = true;
 			vsBlock.red();
 			return true;
 		} else
@@ -203,6 +261,7 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	public boolean vmResume() {
 		if (rVM.getState() == VM.STATE_PAUSED) {
 			reqResume = true;
+			reqAttention = true;
 			vsBlock.green();
 			return true;
 		} else
@@ -222,6 +281,7 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 			return false;
 		else {
 			reqStop = true;
+			reqAttention = true;
 			vsBlock.green();
 			return true;
 		}
@@ -259,6 +319,7 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	 */
 	public synchronized boolean kill() {
 		alive = false;
+		reqAttention = true;
 		vsBlock.green();
 		interrupt();
 		return true;
@@ -288,8 +349,9 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 		if (rVM == null)
 			return VM.STATE_NO_VM;
 		reqState = true;
+		reqAttention = true;
 		vsBlock.rendezous();
-		return this.getState();
+		return this.getProcessState();
 	}
 
 	/**
@@ -300,7 +362,7 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	 * @return a VM.State_* value.
 	 * @see autohit.vm.VM
 	 */
-	public int getState() {
+	public int getProcessState() {
 
 		if (rVM == null)
 			return VM.STATE_NO_VM;
@@ -319,12 +381,15 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 	}
 
 	/**
-	 * Get a registered process attribute. Not implemented at this time.
+	 * Get a registered process attribute.  Only ATTRIBUTE_VM is supported.
 	 * 
-	 * @return an object that matches the name
+	 * @return an object that matches the name, or null
 	 * @see autohit.vm.VM
 	 */
 	public Object processAttribute(String name) {
+		if (ATTRIBUTE_VM.equals(name)) {
+			return rVM;
+		}
 		return null;
 	}
 
@@ -366,46 +431,58 @@ public class VMProcessAutomat extends Thread implements VMProcess {
 
 				do {
 
-					// DIE!
-					if (reqKill == true) {
-						alive = false;
-						break;
-					}
-
-					if (reqStop == true) {
-						reqStop = false;
-						rVM.die();
-						break; // bust out of the loop.
-					}
-
-					if (reqPause == true) {
-						rVM.pause();
-						reqPause = false;
+					// Only look at the requests if someone raised a flag.
+					// Clear it first, so a request that comes in while we
+					// are looking will be seen next time around.
+					if (reqAttention == true) {
+						reqAttention = false;
+
+						// DIE!
+						if ((reqKill == true) || (alive == false)) {
+							alive = false;
+							break;
+						}
+
+						if (reqStop == true) {
+							reqStop = false;
+							rVM.die();
+							break; // bust out of the loop.
+						}
+
+						if (reqPause == true) {
+							rVM.pause();
+							reqPause = false;
+						}
+
+						if (reqResume == true) {
+							rVM.resume();
+							reqResume = false;
+						}
+
+						if (reqState == true) {
+							reqState = false;
+							vsBlock.rendezous();
+							// This might be dangerous, instead of a
+							// semiphore/signal. not sure
+							yield();
+							// We need to make sure the other thread has a chance
+							// to get the status.
+						}
 					}
 
-					if (reqResume == true) {
-						rVM.resume();
-						reqResume = false;
+					// Execute a quantum of instructions.  An exception
+					// kills this VM.  Bail early if anyone wants us.
+					if (rVM.getState() == VM.STATE_RUNNING) {
+						for (int q = quantum; q > 0; q--) {
+							rVM.execute();
+							if (reqAttention == true)
+								break;
+						}
+					} else {
+						// see if anyone is stopping us.
+						vsBlock.stoplight();
 					}
 
-					if (reqState == true) {
-						reqState = false;
-						vsBlock.rendezous();
-						// This might be dangerous, instead of a
-						// semiphore/signal. not sure
-						yield();
-						// We need to make sure the other thread has a chance
-						// to get the status.
-					}
-
-					// see if anyone is stopping us.
-					vsBlock.stoplight();
-
-					// Execute an instruciton. An exception
-					// kills this VM)
-					if (rVM.getState() == VM.STATE_RUNNING)
-						rVM.execute();
-
 				} while (alive);
 
 			} catch (VMException e) {
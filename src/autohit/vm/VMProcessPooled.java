@@ -0,0 +1,631 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import autohit.common.AutohitProperties;
+import autohit.common.Constants;
+import autohit.common.Utils;
+import autohit.server.SystemContext;
+
+/**
+ * A VM process context that doesn't own a thread.  It runs a quantum of
+ * instructions at a time on one of the carrier threads from the
+ * VMCarrierPool, then goes back in the queue.  A paused process is not in the
+ * queue at all, so thousands of them cost nothing but memory.
+ * <p>
+ * A running instruction can ask to give up its carrier for a while by calling
+ * yieldFor() on the current process.  The process finishes the instruction,
+ * then comes off its carrier until the time is up.  Call_WAIT does this, so
+ * a sim that sits in a WAIT doesn't hold a thread.  yieldUntil() does the same
+ * until another VM is finished, which is how Call_JOIN waits for an EXEC
+ * without holding a thread or polling.  Any other blocking call
+ * (HTTP, SMTP) still blocks its carrier; size the pool with vm.carriers.
+ * <p>
+ * Select it by class name, either with Kernel.get(processImpl) or with
+ * the kernel.process.impl property.
+ * <p>
+ * It keeps the same command semantics as VMProcessAutomat.  PAUSE, STOP and
+ * KILL are seen after the current instruction.  verifyState() waits for the
+ * current quantum.  kill() can't interrupt an instruction that is blocked on
+ * its carrier; it will take effect when the instruction returns.
+ * 
+ * @see autohit.vm.VMCarrierPool
+ * @see autohit.vm.VMProcessAutomat
+ * 
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - VM attribute - 17Oct26<br>
+ * EPG - Yield until another VM is finished - 17Oct26<br>
+ * EPG - getState() is now getProcessState(), clear of Thread.getState() - 17Oct26</code>
+ */
+public class VMProcessPooled implements VMProcess, Runnable {
+
+	/**
+	 *  A runnable VM. This will be a fully implemented derived-class of VM. */
+	protected VM rVM;
+
+	/**
+	 *  Running. The VMProcess is still valid */
+	private volatile boolean alive;
+
+	/**
+	 *  Requests */
+	private volatile boolean reqPause;
+	private volatile boolean reqResume;
+	private volatile boolean reqStop;
+
+	/**
+	 *  Raised by any request.  This is the only thing a quantum checks
+	 *  between instructions. */
+	private volatile boolean reqAttention;
+
+	/**
+	 *  Scheduling.  Guarded by this.  scheduled means it is in the carrier
+	 *  queue or on a carrier.  running means it is on a carrier. */
+	private boolean scheduled;
+	private boolean running;
+
+	/**
+	 *  The VM has had start() called */
+	private boolean started;
+
+	/**
+	 *  If not zero, the time the process wants to get its carrier back */
+	private long sleepUntil;
+
+	/**
+	 *  If not null, the VM the process is waiting on */
+	private VM joining;
+
+	/**
+	 *  Instructions to run per quantum */
+	private int quantum;
+
+	/**
+	 *  My pid */
+	private int pid;
+
+	/**
+	 *  System Context */
+	private SystemContext sc;
+
+	/**
+	 *  The carriers */
+	private VMCarrierPool pool;
+
+	/**
+	 *  Puts us back in the queue when a yield is done */
+	private Runnable waker;
+
+	/**
+	 *  The process on this carrier thread, if any */
+	private static ThreadLocal current = new ThreadLocal();
+
+	/**
+	 *  Quantum results */
+	private final static int QUANTUM_AGAIN = 0;
+	private final static int QUANTUM_PARK = 1;
+	private final static int QUANTUM_SLEEP = 2;
+	private final static int QUANTUM_DONE = 3;
+	private final static int QUANTUM_JOIN = 4;
+
+	/**
+	 *  Constructor. */
+	public VMProcessPooled() {
+		rVM = null;
+		alive = true;
+		scheduled = false;
+		running = false;
+		quantum = AutohitProperties.VM_QUANTUM_DEFAULT;
+		waker = new Runnable() {
+			public void run() {
+				schedule();
+			}
+		};
+	}
+
+	/**
+	 * Initialize the process controller. It takes an immutable SystemContext.
+	 * 
+	 * @param sctx
+	 *           a ready SystemContext. This will be fed to all controlled
+	 *           processes.
+	 * @param setpid
+	 *           the pid
+	 * @throws VMException
+	 *            is the process goes bad
+	 */
+	public void init(SystemContext sctx, int setpid) throws VMException {
+		sc = sctx;
+		pid = setpid;
+		pool = VMCarrierPool.get(sctx);
+
+		try {
+			quantum =
+				Utils.testGetPropertyInt(
+					AutohitProperties.VM_QUANTUM,
+					sc.getPropertiesSet(),
+					AutohitProperties.VM_QUANTUM_DEFAULT);
+		} catch (Exception e) {
+			// no properties.  keep the default.
+		}
+		if (quantum < 1)
+			quantum = 1;
+	}
+
+	/**
+	 * There is no thread to start.  The carriers are already running.
+	 */
+	public void start() {
+	}
+
+	/**
+	 * Load and Execute a VM. If a VM is already running, it will return false.
+	 * Otherwise, it will attach it and put it in the carrier queue.
+	 * 
+	 * @param aVM
+	 *           A fully implimented derived-class of VM.
+	 * @return true if successful and execution begun, false if another VM is
+	 *         already running or there is an error.
+	 */
+	public boolean execute(VM aVM) {
+
+		synchronized (this) {
+			if ((rVM != null) || (alive == false))
+				return false;
+			rVM = aVM;
+			reqPause = false;
+			reqResume = false;
+			reqStop = false;
+			reqAttention = false;
+			started = false;
+			sleepUntil = 0;
+		}
+
+		// Attach it
+		try {
+			aVM.attach(this);
+		} catch (Exception e) {
+			synchronized (this) {
+				rVM = null;
+				this.notifyAll();
+			}
+			return false;
+		}
+
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Pause the vm.  It will happen after the current instruction.
+	 * 
+	 * @return true is successful. false if no vm is running or it is already
+	 *         paused.
+	 */
+	public boolean vmPause() {
+		VM v = rVM;
+		if ((v != null) && (v.getState() == VM.STATE_RUNNING)) {
+			reqPause = true;
+			reqAttention = true;
+			schedule();
+			return true;
+		} else
+			return false;
+	}
+
+	/**
+	 * Resume the vm.
+	 * 
+	 * @return true is successful. false if no vm is paused or it is already
+	 *         running.
+	 */
+	public boolean vmResume() {
+		VM v = rVM;
+		if ((v != null) && (v.getState() == VM.STATE_PAUSED)) {
+			reqResume = true;
+			reqAttention = true;
+			schedule();
+			return true;
+		} else
+			return false;
+	}
+
+	/**
+	 * Stop the vm. This will kill it permanently, so be careful.
+	 * 
+	 * @return true is successful. false if no vm is running or paused.
+	 */
+	public boolean vmStop() {
+		if (rVM == null)
+			return false;
+		reqStop = true;
+		reqAttention = true;
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Get's the PID for this process
+	 * 
+	 * @return pid
+	 */
+	public int getPID() {
+		return pid;
+	}
+
+	/**
+	 * Wait for the process to die.  ABSOLUTELY DO NOT CALL THIS FROM A
+	 * carrier.  You'll tie one up for good.
+	 */
+	public void joinIt() {
+		try {
+			synchronized (this) {
+				while ((alive == true) || (rVM != null)) {
+					this.wait();
+				}
+			}
+		} catch (Exception ee) {
+			// Don't care
+		}
+	}
+
+	/**
+	 *  Kill this context.  It is irrevocable.  If you want to request the
+	 *  program to stop, call vmStop();
+	 * 
+	 * @return always returns true.
+	 */
+	public boolean kill() {
+		synchronized (this) {
+			alive = false;
+			reqAttention = true;
+			this.notifyAll();
+		}
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Verify the state of the VM.  It waits until the current quantum is done
+	 * and any posted request has been seen.  Never call this from a carrier.
+	 * 
+	 * @return a VM.State_* value.
+	 */
+	public int verifyState() {
+		try {
+			synchronized (this) {
+				while ((running == true)
+					|| ((scheduled == true) && (reqAttention == true))) {
+					this.wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			// fall through with what we have
+		}
+		return this.getProcessState();
+	}
+
+	/**
+	 * A simple request for state.
+	 * 
+	 * @return a VM.State_* value.
+	 */
+	public int getProcessState() {
+		VM v = rVM;
+		if (v == null)
+			return VM.STATE_NO_VM;
+		else
+			return v.getState();
+	}
+
+	/**
+	 * Get my system context.
+	 * 
+	 * @return a SystemContext
+	 */
+	public SystemContext getSystemContext() {
+		return sc;
+	}
+
+	/**
+	 * Get a registered process attribute.  Only ATTRIBUTE_VM is supported.
+	 * 
+	 * @return an object that matches the name, or null
+	 */
+	public Object processAttribute(String name) {
+		if (ATTRIBUTE_VM.equals(name)) {
+			return rVM;
+		}
+		return null;
+	}
+
+	/**
+	 * Get's root program
+	 * 
+	 * @return string name of the root program
+	 */
+	public String getRootProgram() {
+		String result = Constants.UNKNOWN;
+		VM v = rVM;
+		if (v != null) {
+			result = v.rootProgram;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the pooled process running on this thread.
+	 * 
+	 * @return the process or null if this isn't a carrier running one
+	 */
+	public static VMProcessPooled current() {
+		return (VMProcessPooled) current.get();
+	}
+
+	/**
+	 * Give up the carrier for a while, once the current instruction is done.
+	 * Only call this from the instruction running on this process.
+	 * 
+	 * @param millis
+	 *           how long
+	 * @return true if the process will yield.  If false, the caller should
+	 *         just block.
+	 */
+	public boolean yieldFor(long millis) {
+		if ((current.get() != this) || (millis < 0))
+			return false;
+		sleepUntil = System.currentTimeMillis() + millis;
+		if (sleepUntil == 0)
+			sleepUntil = 1;
+		return true;
+	}
+
+	/**
+	 * Give up the carrier until another VM is finished, once the current
+	 * instruction is done.  Only call this from the instruction running on
+	 * this process.
+	 * 
+	 * @param other
+	 *           the VM to wait for
+	 * @return true if the process will yield.  If false, the caller should
+	 *         just block.
+	 */
+	public boolean yieldUntil(VM other) {
+		if ((current.get() != this) || (other == null))
+			return false;
+		joining = other;
+		return true;
+	}
+
+	/**
+	 * Put it in the carrier queue, unless it is already there or has nothing
+	 * to run.
+	 */
+	private void schedule() {
+		synchronized (this) {
+			if ((scheduled == true) || (rVM == null))
+				return;
+			scheduled = true;
+		}
+		pool.submit(this);
+	}
+
+	/**
+	 *  Run one quantum.  Only a carrier should call this. */
+	public void run() {
+
+		synchronized (this) {
+			running = true;
+		}
+		current.set(this);
+
+		int result = QUANTUM_DONE;
+		try {
+			result = quantum();
+		} finally {
+			current.set(null);
+			synchronized (this) {
+				running = false;
+				scheduled = false;
+				this.notifyAll();
+			}
+		}
+
+		switch (result) {
+			case QUANTUM_AGAIN :
+				schedule();
+				break;
+			case QUANTUM_SLEEP :
+				if (reqAttention == true) {
+					schedule();
+				} else {
+					pool.later(waker, sleepUntil - System.currentTimeMillis());
+				}
+				break;
+			case QUANTUM_JOIN :
+				if (reqAttention == true) {
+					schedule();
+				} else {
+					VM other = joining;
+					if ((other == null) || (!other.whenFinished(waker)))
+						schedule();
+				}
+				break;
+			case QUANTUM_PARK :
+				// Someone may have posted while we were parking
+				if (reqAttention == true)
+					schedule();
+				break;
+			default :
+				break;
+		}
+	}
+
+	/**
+	 *  Run up to a quantum of instructions.
+	 *  @return what to do next
+	 */
+	private int quantum() {
+
+		VM v = rVM;
+		if (v == null)
+			return QUANTUM_DONE;
+
+		try {
+
+			// Always run the first instruction with start
+			if (started == false) {
+				started = true;
+				if (alive == false) {
+					this.finish();
+					return QUANTUM_DONE;
+				}
+				v.start();
+			}
+
+			// Only look at the requests if someone raised a flag.
+			if (reqAttention == true) {
+				reqAttention = false;
+
+				// DIE!
+				if (alive == false) {
+					this.finish();
+					return QUANTUM_DONE;
+				}
+
+				if (reqStop == true) {
+					reqStop = false;
+					v.die();
+					this.finish();
+					return QUANTUM_DONE;
+				}
+
+				if (reqPause == true) {
+					v.pause();
+					reqPause = false;
+				}
+
+				if (reqResume == true) {
+					v.resume();
+					reqResume = false;
+				}
+			}
+
+			if (v.getState() != VM.STATE_RUNNING)
+				return QUANTUM_PARK;
+
+			// Still sleeping?
+			if (sleepUntil != 0) {
+				if (sleepUntil > System.currentTimeMillis())
+					return QUANTUM_SLEEP;
+				sleepUntil = 0;
+			}
+
+			// Still waiting on another VM?
+			if (joining != null) {
+				if (!joining.isFinished())
+					return QUANTUM_JOIN;
+				joining = null;
+			}
+
+			// Execute a quantum of instructions.  Bail early if anyone wants
+			// us or an instruction wants to yield.
+			for (int q = quantum; q > 0; q--) {
+				v.execute();
+				if ((reqAttention == true) || (sleepUntil != 0) || (joining != null))
+					break;
+			}
+			if (sleepUntil != 0)
+				return QUANTUM_SLEEP;
+			if (joining != null)
+				return QUANTUM_JOIN;
+			return QUANTUM_AGAIN;
+
+		} catch (VMException e) {
+
+			// PROCESS various codes.
+			if (e.numeric == VMException.CODE_SERVICE_INTENTIONAL_HALT) {
+				// ORDERED HALT
+				sc.getRootLogger().info("VMProcessPooled: Process pid=" + pid + " ordered to stop.");
+				alive = false;
+
+			} else if (e.numeric == VMException.CODE_VM_DONE) {
+
+				sc.getRootLogger().info("VM: Program " + v.rootProgram + " done in pid=" + pid);
+
+			} else if (e.numeric > VMException.FAULT) {
+				// FAULTED
+				try {
+					sc.getRootLogger().error(
+						"VMProcessPooled: Process pid=" + pid + " died to FAULT.  message=" + e.getMessage(),
+						e.numeric);
+					v.myLog.error("VM: Process pid=" + pid + ".  I'm dying to a fatal fault.  message=" + e.getMessage(), e.numeric);
+				} catch (Exception epas) {
+				} // no chances
+				alive = false;
+			} else {
+				// ERROR. Don't die.
+				v.myLog.error(
+					"VM: Process pid=" + pid + " reported an exception.  Current program died.message=" + e.getMessage(),
+					e.numeric);
+			}
+
+		} catch (Exception e) {
+			sc.getRootLogger().error(
+				"VMProcessPooled: Process pid="
+					+ pid
+					+ " died to unexpected exception.  The system may be unstable.  message="
+					+ e.getMessage(),
+				VMException.CODE_VM_PANIC);
+			v.myLog.error(
+				"VM: Process pid=" + pid + ".  I'm dying to a serious and unexpected exception.  message=" + e.getMessage(),
+				VMException.CODE_VM_PANIC);
+			alive = false;
+		}
+
+		this.finish();
+		return QUANTUM_DONE;
+	}
+
+	/**
+	 *  The VM instance is dead.  Force the finalization here.
+	 */
+	private void finish() {
+		VM v = rVM;
+		try {
+			if (v != null)
+				v.finalize();
+		} catch (Throwable ee) {
+			//dont care
+		}
+		synchronized (this) {
+			rVM = null;
+			started = false;
+			sleepUntil = 0;
+			joining = null;
+			this.notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+/**
+ * A VMException without a stack trace.  The SimVM uses these for things
+ * that are part of running a program rather than something going wrong
+ * with the VM: finishing, and the errors it logs and steps past.  Nobody
+ * looks at the trace for those, and filling it in is most of the cost of
+ * throwing.  Faults still use a plain VMException, so they keep theirs.
+ * <p>
+ * DONE is shared.  Don't change it.
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code> 
+ * 
+ */
+public class VMSignal extends VMException {
+
+	final static long serialVersionUID = 1;
+
+	/**
+	 * The program is done.  Thrown out of execute() when the root routine
+	 * runs off the end.
+	 */
+	public final static VMSignal DONE =
+		new VMSignal("Program done.", CODE_VM_DONE);
+
+	/**
+	 *  Message constructor
+	 * @param message text message for exception
+	 * @param n numeric error
+	 */
+	public VMSignal(String message, int n) {
+		super(message, n);
+	}
+
+	/**
+	 *  Message constructor with cause
+	 * @param message text message for exception
+	 * @param n numeric error
+	 * @param theCause for exception chaining
+	 */
+	public VMSignal(String message, int n, Throwable theCause) {
+		super(message, n, theCause);
+	}
+
+	/**
+	 * Don't fill in the stack trace.
+	 * @return this
+	 */
+	public Throwable fillInStackTrace() {
+		return this;
+	}
+}
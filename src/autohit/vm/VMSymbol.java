@@ -0,0 +1,165 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An interned variable name.  Every variable name a loaded program was
+ * compiled with gets one VMSymbol and a slot number.  Slot numbers are dense
+ * and start at zero, so a VMCore can keep its storage in arrays indexed by
+ * slot instead of a HashMap keyed by name.
+ * <p>
+ * Symbols are JVM-wide and never go away, so only names that come out of
+ * compiled code are interned: the linker's slot table, instruction operands
+ * and eval templates.  A name a program makes up while it runs stays a
+ * String and lives in the VMCore that stored it.  The table is read without
+ * locking; only interning a brand new name takes the lock.  The compiler
+ * assigns its own, per-executable slot numbers; the linker maps those onto
+ * symbols once, when the executable is loaded.
+ * <p>
+ * A symbol is also what a VMCore pushes on its scope stack when a variable is
+ * stored, so scope unwinding doesn't have to look anything up by name.
+ *
+ * @see autohit.vm.VMCore
+ * @see autohit.vm.SimLinker
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26<br>
+ * EPG - Only compiled names, and interning no longer copies the table - 17Oct26</code> 
+ * 
+ */
+public final class VMSymbol implements Serializable {
+
+	final static long serialVersionUID = 1;
+
+	/**
+	 * Variable name.
+	 */
+	public final String name;
+
+	/**
+	 * Slot number.
+	 */
+	public final int slot;
+
+	/**
+	 * Name to symbol.  A symbol only goes in once its slot can be seen.
+	 */
+	private static final ConcurrentHashMap table = new ConcurrentHashMap();
+
+	/**
+	 * Slot to symbol.  It doubles when it fills, and entries past the count
+	 * aren't there yet.
+	 */
+	private static volatile VMSymbol[] slots = new VMSymbol[64];
+
+	/**
+	 * Symbols interned so far.  Written after the slot it covers.
+	 */
+	private static volatile int used = 0;
+
+	/**
+	 *  Constructor.  Only the intern table makes these.
+	 */
+	private VMSymbol(String n, int s) {
+		name = n;
+		slot = s;
+	}
+
+	/**
+	 *  Get the symbol for a name, creating it if this is the first time
+	 *  anyone has asked.
+	 *  @param name the variable name
+	 *  @return the symbol
+	 */
+	public static VMSymbol intern(String name) {
+		VMSymbol sym = (VMSymbol) table.get(name);
+		if (sym == null) {
+			synchronized (VMSymbol.class) {
+				sym = (VMSymbol) table.get(name);
+				if (sym == null) {
+					int next = used;
+					VMSymbol[] current = slots;
+					sym = new VMSymbol(name, next);
+					if (next >= current.length) {
+						VMSymbol[] grown = new VMSymbol[current.length * 2];
+						System.arraycopy(current, 0, grown, 0, next);
+						current = grown;
+					}
+					current[next] = sym;
+					slots = current;
+					used = next + 1;
+					table.put(name, sym);
+				}
+			}
+		}
+		return sym;
+	}
+
+	/**
+	 *  Find the symbol for a name, but do not create it.
+	 *  @param name the variable name
+	 *  @return the symbol or null if the name was never interned
+	 */
+	public static VMSymbol find(String name) {
+		return (VMSymbol) table.get(name);
+	}
+
+	/**
+	 *  Get the symbol for a slot.
+	 *  @param slot the slot number
+	 *  @return the symbol or null if the slot was never assigned
+	 */
+	public static VMSymbol get(int slot) {
+		if ((slot < 0) || (slot >= used))
+			return null;
+		return slots[slot];
+	}
+
+	/**
+	 *  Number of symbols interned so far.  Also the next slot number.
+	 *  @return the count
+	 */
+	public static int count() {
+		return used;
+	}
+
+	/**
+	 *  Slots are only good for this JVM, so a deserialized symbol is
+	 *  interned again by name.
+	 *  @return the interned symbol
+	 */
+	private Object readResolve() {
+		return intern(name);
+	}
+
+	/**
+	 *  Dump the symbol.
+	 *  @return the name and slot
+	 */
+	public String toString() {
+		return name + "@" + slot;
+	}
+}
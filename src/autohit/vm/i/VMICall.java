@@ -28,7 +28,8 @@ package autohit.vm.i;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Rewrite - 9Apr03 
+ * <code>EPG - Rewrite - 9Apr03<br>
+ * EPG - Argument frame - 17Oct26</code>
  * 
  */
 public class VMICall extends VMInstruction {
@@ -40,6 +41,13 @@ public class VMICall extends VMInstruction {
 	 * @serial
 	 */
 	public	String		t;
+
+	/**
+	 * Argument names, by position in the frame that VMIArg fills.  Null
+	 * if the arguments were stored in a scope, like they used to be.
+	 * @serial
+	 */
+	public	String[]	a;
 	
     /**
      *  Default constructor.
@@ -54,7 +62,8 @@ public class VMICall extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-		return "VMICall " + super.toString() + ": --- call=" + t;
+		return "VMICall " + super.toString() + ": --- call=" + t
+			+ ((a == null) ? "" : " args=" + a.length);
     }
     
 } 
@@ -41,6 +41,14 @@ public class VMIClear extends VMInstruction {
 	 * @serial
 	 */
 	public	String		t;
+
+	/**
+	 * Variable slot.  Index into the executable symbol table.  Only good
+	 * if the executable has one.
+	 * @see autohit.vm.VMExecutable#symbols
+	 * @serial
+	 */
+	public	int			s;
 	
     /**
      *  Default constructor.
@@ -55,7 +63,7 @@ public class VMIClear extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-		return "VMIClear " + super.toString() + ": --- target=" + t;
+		return "VMIClear " + super.toString() + ": --- target=" + t + " slot=" + s;
     }
     
 } 
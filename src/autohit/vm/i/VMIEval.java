@@ -20,6 +20,8 @@
  */
 package autohit.vm.i;
 
+import autohit.vm.process.EvalTemplate;
+
 /**
  * A Virtual Machine instruction.  Eval instruction
  *
@@ -28,7 +30,8 @@ package autohit.vm.i;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - Rewrite - 9Apr03 
+ * <code>EPG - Rewrite - 9Apr03<br>
+ * EPG - Precompiled template - 17Oct26</code>
  * 
  */
 public class VMIEval extends VMInstruction {
@@ -40,6 +43,13 @@ public class VMIEval extends VMInstruction {
 	 * @serial
 	 */
 	public	String		e;
+
+	/**
+	 * Precompiled template for e.  null if it could not be compiled, in which
+	 * case e is evaluated the old way.
+	 * @serial
+	 */
+	public	EvalTemplate	t;
 	
     /**
      *  Default constructor.
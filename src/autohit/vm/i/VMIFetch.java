@@ -41,6 +41,14 @@ public class VMIFetch extends VMInstruction {
 	 * @serial
 	 */
 	public	String		v;
+
+	/**
+	 * Variable slot.  Index into the executable symbol table.  Only good
+	 * if the executable has one.
+	 * @see autohit.vm.VMExecutable#symbols
+	 * @serial
+	 */
+	public	int			s;
 	
     /**
      *  Default constructor.
@@ -55,7 +63,7 @@ public class VMIFetch extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-		return "VMIFetch " + super.toString() + ": --- var=" + v;
+		return "VMIFetch " + super.toString() + ": --- var=" + v + " slot=" + s;
     }
     
 } 
@@ -20,9 +20,17 @@
  */
 package autohit.vm.i;
 
+import java.util.List;
+
 /**
  * A Virtual Machine instruction.  GOTO instruction.
  * It will be sensitive to scope frames.
+ * <p>
+ * The number of scope frames a taken jump discards depends only on where
+ * the GOTO sits and where it goes, so it is worked out once by resolve()
+ * and kept in d.  The linker resolves every GOTO; the VM resolves any it
+ * finds unresolved the first time it is taken.  Anything that moves the
+ * instruction or changes its target must resolve it again.
  *
  * @see autohit.vm.i.VMInstruction
  *
@@ -30,7 +38,8 @@ package autohit.vm.i;
  * @version 1.0
  * <i>Version History</i>
  * <code>EPG - Rewrite - 9Apr03<br>
- * EPG - Add goto - 16Jul03</code>
+ * EPG - Add goto - 16Jul03<br>
+ * EPG - Precomputed scope delta - 17Oct26</code>
  * 
  */
 public class VMIGoto extends VMInstruction {
@@ -43,6 +52,17 @@ public class VMIGoto extends VMInstruction {
 	 */
 	public int t;
 
+	/**
+	 * Scope frames to discard when the jump is taken.  Only good when
+	 * resolved is set.  Not serialized; it is rebuilt at link time.
+	 */
+	public transient int d;
+
+	/**
+	 * Set once d has been worked out for the current position and target.
+	 */
+	public transient boolean resolved;
+
 	/**
 	 *  Default constructor.
 	 */
@@ -56,6 +76,47 @@ public class VMIGoto extends VMInstruction {
 	 */
 	public void setT(String tString) {
 		t = Integer.parseInt(tString);
+		resolved = false;
+	}
+
+	/**
+	 * Work out how many scope frames a taken jump discards.  Going up, that
+	 * is every SCOPE between here and the target not matched by an RSCOPE.
+	 * Going down, it is every RSCOPE not matched by a SCOPE.
+	 * @param code the instructions this GOTO lives in
+	 * @param at where this GOTO sits in them
+	 */
+	public void resolve(List code, int at) {
+
+		int dscopes = 0;
+		int drscopes = 0;
+		Object tci;
+		if (t < at) {
+			for (int i = at; i > t; i--) {
+				tci = code.get(i);
+				if (tci instanceof VMIScope) {
+					dscopes++;
+				} else if (tci instanceof VMIRScope) {
+					drscopes++;
+				}
+			}
+			d = dscopes - drscopes;
+		} else {
+			int end = Math.min(t, code.size());
+			for (int i = at; i < end; i++) {
+				tci = code.get(i);
+				if (tci instanceof VMIScope) {
+					dscopes++;
+				} else if (tci instanceof VMIRScope) {
+					drscopes++;
+				}
+			}
+			d = drscopes - dscopes;
+		}
+		if (d < 0) {
+			d = 0;
+		}
+		resolved = true;
 	}
 
 	/**
@@ -64,7 +125,7 @@ public class VMIGoto extends VMInstruction {
 	 *  @return a String containing the dump.
 	 */
 	public String toString() {
-		return "VMIGoto " + super.toString() + ": --- target=" + t;
+		return "VMIGoto " + super.toString() + ": --- target=" + t + " frames=" + (resolved ? Integer.toString(d) : "?");
 	}
 
 }
@@ -28,7 +28,8 @@ package autohit.vm.i;
  * @author Erich P. Gatejen
  * @version 1.0
  * <i>Version History</i>
- * <code>EPG - New - 9Aug03</code>
+ * <code>EPG - New - 9Aug03<br>
+ * EPG - Argument frame - 17Oct26</code>
  * 
  */
 public class VMIMethod extends VMInstruction {
@@ -40,6 +41,13 @@ public class VMIMethod extends VMInstruction {
 	 * @serial
 	 */
 	public	String		m;
+
+	/**
+	 * Argument names, by position in the frame that VMIArg fills.  Null
+	 * if the arguments were stored in a scope, like they used to be.
+	 * @serial
+	 */
+	public	String[]	a;
 	
     /**
      *  Default constructor.
@@ -54,7 +62,8 @@ public class VMIMethod extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-		return "VMIMethod " + super.toString() + ": --- method=" + m;
+		return "VMIMethod " + super.toString() + ": --- method=" + m
+			+ ((a == null) ? "" : " args=" + a.length);
     }
     
 } 
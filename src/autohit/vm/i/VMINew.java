@@ -40,6 +40,14 @@ public class VMINew extends VMInstruction {
 	 * @serial
 	 */
 	public	String		v;
+
+	/**
+	 * Variable slot.  Index into the executable symbol table.  Only good
+	 * if the executable has one.
+	 * @see autohit.vm.VMExecutable#symbols
+	 * @serial
+	 */
+	public	int			s;
 	
     /**
      *  Default constructor.
@@ -54,7 +62,7 @@ public class VMINew extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-		return "VMINew " + super.toString() + ": --- var=" + v;   	
+		return "VMINew " + super.toString() + ": --- var=" + v + " slot=" + s;   	
     }
     
 } 
@@ -40,6 +40,14 @@ public class VMIReduce extends VMInstruction {
 	 * @serial
 	 */
 	public	String		b;
+
+	/**
+	 * Variable slot.  Index into the executable symbol table.  Only good
+	 * if the executable has one.
+	 * @see autohit.vm.VMExecutable#symbols
+	 * @serial
+	 */
+	public	int			s;
 	
     /**
      *  Default constructor.
@@ -54,7 +62,7 @@ public class VMIReduce extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-        return "VMIReduce " + super.toString() + ": --- buffer=" + b;
+        return "VMIReduce " + super.toString() + ": --- buffer=" + b + " slot=" + s;
     }
     
 } 
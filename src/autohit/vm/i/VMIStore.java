@@ -40,6 +40,14 @@ public class VMIStore extends VMInstruction {
 	 * @serial
 	 */
 	public	String		v;
+
+	/**
+	 * Variable slot.  Index into the executable symbol table.  Only good
+	 * if the executable has one.
+	 * @see autohit.vm.VMExecutable#symbols
+	 * @serial
+	 */
+	public	int			s;
 	
     /**
      *  Default constructor.
@@ -54,7 +62,7 @@ public class VMIStore extends VMInstruction {
      *  @return a String containing the dump.
      */
     public String toString() {
-		return "VMIStore " + super.toString() + ": --- var=" + v;
+		return "VMIStore " + super.toString() + ": --- var=" + v + " slot=" + s;
     }
     
 } 
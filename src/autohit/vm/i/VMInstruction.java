@@ -46,7 +46,9 @@ import java.io.Serializable;
  * @version 1.1
  * <i>Version History</i>
  * <code>EPG - Rewrite - 9Apr03<br>
- * EPG - Add goto - 16Jul03</code>
+ * EPG - Add goto - 16Jul03<br>
+ * EPG - Opcode names - 17Oct26<br>
+ * EPG - Add arg - 17Oct26</code>
  */
 public class VMInstruction implements Serializable {
 
@@ -81,7 +83,50 @@ public class VMInstruction implements Serializable {
 	public static final int GOTO = 20;
 	public static final int ASSERT = 21;
 	public static final int METHOD = 22;
+	public static final int ARG = 23;
 			
+	/**
+	 * Opcode names, indexed by numeric token.  For reports.
+	 */
+	public static final String[] NAMES =
+		{
+			"NOP",
+			"EVAL",
+			"STORE",
+			"NEW",
+			"SCOPE",
+			"RSCOPE",
+			"REDUCE",
+			"MASK",
+			"MERGE",
+			"RIGHT",
+			"MATH",
+			"LOAD",
+			"CLEAR",
+			"FAULT",
+			"FETCH",
+			"IF",
+			"CALL",
+			"EXEC",
+			"SUBR",
+			"JUMP",
+			"GOTO",
+			"ASSERT",
+			"METHOD",
+			"ARG" };
+
+	/**
+	 *  Name an opcode.
+	 *  @param opcode the numeric token
+	 *  @return the name, or the number if it isn't one we know
+	 */
+	public static String name(int opcode) {
+		if ((opcode >= 0) && (opcode < NAMES.length)) {
+			return NAMES[opcode];
+		}
+		return Integer.toString(opcode);
+	}
+
 	/**
 	 * instruction
 	 * @serial
@@ -89,8 +134,7 @@ public class VMInstruction implements Serializable {
 	public int instruction;
 
 	/**
-	 * source code line - good for debugging
-	 * TODO sourceline doesn't actually work
+	 * source code line - good for debugging and profiling.  0 if unknown.
 	 * @serial
 	 */
 	public int sourceline;
@@ -0,0 +1,257 @@
+/**
+ * AUTOHIT 2003
+ * Copyright Erich P Gatejen (c) 1989,1997,2003,2004
+ * 
+ * This program is free software; you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation; either version 2 of the License, or (at
+ * your option) any later version.
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ * 
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * Additional license information can be found in the documentation.
+ * @author Erich P Gatejen
+ */
+package autohit.vm.process;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import autohit.common.Constants;
+import autohit.vm.VMCore;
+import autohit.vm.VMException;
+import autohit.vm.VMSymbol;
+
+/**
+ * A precompiled evaluation string.  The compiler parses an eval string once
+ * into literal text segments and the variable and buffer references between
+ * them, so the VM never runs the StringProcessors state machine for it.
+ * <p>
+ * Segment i of the text is followed by reference i.  There is always one more
+ * text segment than references; segments may be empty.  Rendering does a
+ * single slot lookup per reference.
+ * <p>
+ * Strings the template cannot represent--anything that touches a UNIOBJECT,
+ * or a reference that is never closed--do not compile.  Those are left to
+ * StringProcessors.evalString2Core(), which will report the error at run time
+ * just as it always has.
+ *
+ * @see autohit.vm.process.StringProcessors
+ *
+ * @author Erich P. Gatejen
+ * @version 1.0
+ * <i>Version History</i>
+ * <code>EPG - Initial - 17Oct26</code>
+ * 
+ */
+public class EvalTemplate implements Serializable {
+
+	final static long serialVersionUID = 1;
+
+	private final static int STATE_FREE = 0;
+	private final static int STATE_VAR_ONE = 1;
+	private final static int STATE_VAR_IN = 2;
+	private final static int STATE_BUFFER_ONE = 3;
+	private final static int STATE_BUFFER_IN = 4;
+	private final static int STATE_UNIOBJ_ONE = 5;
+
+	/**
+	 * Literal text.  One more entry than there are references.
+	 * @serial
+	 */
+	public String[] text;
+
+	/**
+	 * Reference names.
+	 * @serial
+	 */
+	public String[] names;
+
+	/**
+	 * Compiler slot for each reference.  -1 if not assigned.
+	 * @serial
+	 */
+	public int[] slots;
+
+	/**
+	 * true if the reference is a buffer, false if it is a variable.
+	 * @serial
+	 */
+	public boolean[] buffer;
+
+	/**
+	 * Bound symbols.  Filled in by bind() or on first render.
+	 */
+	private transient volatile VMSymbol[] syms;
+
+	/**
+	 * Compile an eval string.
+	 * @param s the string
+	 * @return the template or null if the string can't be templated
+	 */
+	public static EvalTemplate compile(String s) {
+
+		ArrayList texts = new ArrayList();
+		ArrayList refs = new ArrayList();
+		ArrayList kinds = new ArrayList();
+		StringBuffer lit = new StringBuffer();
+		StringBuffer working = null;
+		char current;
+		int state = STATE_FREE;
+
+		for (int index = 0; index < s.length(); index++) {
+			current = s.charAt(index);
+			switch (state) {
+				case STATE_FREE :
+					if (current == Constants.VARIABLE) {
+						state = STATE_VAR_ONE;
+					} else if (current == Constants.BUFFER) {
+						state = STATE_BUFFER_ONE;
+					} else if (current == Constants.UNIOBJECT) {
+						state = STATE_UNIOBJ_ONE;
+					} else {
+						lit.append(current);
+					}
+					break;
+
+				case STATE_VAR_ONE :
+					if (current == Constants.VARIABLE) {
+						// escaped
+						lit.append(current);
+						state = STATE_FREE;
+					} else {
+						working = new StringBuffer();
+						working.append(current);
+						state = STATE_VAR_IN;
+					}
+					break;
+
+				case STATE_BUFFER_ONE :
+					if (current == Constants.BUFFER) {
+						// escaped
+						lit.append(current);
+						state = STATE_FREE;
+					} else {
+						working = new StringBuffer();
+						working.append(current);
+						state = STATE_BUFFER_IN;
+					}
+					break;
+
+				case STATE_VAR_IN :
+				case STATE_BUFFER_IN :
+					if (current == ((state == STATE_VAR_IN) ? Constants.VARIABLE : Constants.BUFFER)) {
+						texts.add(lit.toString());
+						lit.setLength(0);
+						refs.add(working.toString());
+						kinds.add((state == STATE_BUFFER_IN) ? Boolean.TRUE : Boolean.FALSE);
+						state = STATE_FREE;
+					} else {
+						working.append(current);
+					}
+					break;
+
+				case STATE_UNIOBJ_ONE :
+					if (current == Constants.UNIOBJECT) {
+						lit.append(current);
+						state = STATE_FREE;
+					} else {
+						// UNIOBJECTs are an error in the SimVM.  Let the processor say so.
+						return null;
+					}
+					break;
+			}
+		}
+		if (state != STATE_FREE) {
+			return null;
+		}
+		texts.add(lit.toString());
+
+		EvalTemplate t = new EvalTemplate();
+		t.text = (String[]) texts.toArray(new String[texts.size()]);
+		t.names = (String[]) refs.toArray(new String[refs.size()]);
+		t.slots = new int[t.names.length];
+		t.buffer = new boolean[t.names.length];
+		for (int index = 0; index < t.names.length; index++) {
+			t.slots[index] = -1;
+			t.buffer[index] = ((Boolean) kinds.get(index)).booleanValue();
+		}
+		return t;
+	}
+
+	/**
+	 * Bind the references to symbols, using an executable's slot table where
+	 * the slot matches.
+	 * @param table symbols by compiler slot, or null to go by name
+	 */
+	public void bind(VMSymbol[] table) {
+		VMSymbol[] bound = new VMSymbol[names.length];
+		int slot;
+		for (int index = 0; index < bound.length; index++) {
+			slot = slots[index];
+			if ((table != null)
+				&& (slot >= 0)
+				&& (slot < table.length)
+				&& (table[slot].name.equals(names[index]))) {
+				bound[index] = table[slot];
+			} else {
+				bound[index] = VMSymbol.intern(names[index]);
+			}
+		}
+		syms = bound;
+	}
+
+	/**
+	 * Render the template against a core.  References that do not exist
+	 * render as nothing.
+	 * @param core the core
+	 * @param sb a working buffer.  It will be cleared.
+	 * @return the rendered string
+	 * @throws VMException if a reference holds something that can't be evaluated
+	 */
+	public String render(VMCore core, StringBuffer sb) throws VMException {
+
+		// Nothing to look up
+		if (names.length == 0) {
+			return text[0];
+		}
+		VMSymbol[] bound = syms;
+		if (bound == null) {
+			this.bind(null);
+			bound = syms;
+		}
+
+		Object thingthang;
+		sb.setLength(0);
+		for (int index = 0; index < bound.length; index++) {
+			sb.append(text[index]);
+			thingthang = core.fetch(bound[index]);
+			if (buffer[index]) {
+				if (thingthang instanceof StringBuffer) {
+					sb.append((StringBuffer) thingthang);
+				} else if ((thingthang != null) || core.exists(bound[index])) {
+					throw new VMException(
+						"Not an evaluatable type in buffer..  name=" + names[index],
+						VMException.CODE_VM_PROCESSOR_ERROR);
+				}
+			} else {
+				if (thingthang instanceof String) {
+					sb.append((String) thingthang);
+				} else if ((thingthang != null) || core.exists(bound[index])) {
+					throw new VMException(
+						"Not an evaluatable type in variable.  name=" + names[index],
+						VMException.CODE_VM_PROCESSOR_ERROR);
+				}
+			}
+		}
+		sb.append(text[bound.length]);
+		return sb.toString();
+	}
+
+}
@@ -20,12 +20,23 @@
  */
 package autohit.vm.process;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 import autohit.common.Constants;
 import autohit.vm.VMCore;
@@ -35,7 +46,8 @@ import autohit.vm.VMException;
  * String processing routines.
  * 
  * @author Erich P. Gatejen
- * @version 1.0 <i>Version History </i> <code>EPG - Rewrite - 13Sep03</code>
+ * @version 1.0 <i>Version History </i> <code>EPG - Rewrite - 13Sep03<br>
+ * EPG - Chunked channel scanner for byte streams - 17Oct26</code>
  */
 public class StringProcessors {
 
@@ -47,223 +59,121 @@ public class StringProcessors {
 	private final static int STATE_UNIOBJ_ONE = 5;
 	private final static int STATE_UNIOBJ_IN = 6;
 
+	/**
+	 * Bytes read at a time when scanning a channel.  Also the size of the
+	 * output staging buffer.
+	 */
+	public final static int CHUNK_SIZE = 16 * 1024;
+
+	/**
+	 * Files with at least this many bytes left are memory-mapped.
+	 */
+	public final static long MAP_THRESHOLD = 256 * 1024;
+
 	/**
 	 * Process String (as a byte stream) to Core (as a byte stream). If there is a problem, you'll get a VMException.
-	 * @param s
-	 *            String to eval
+	 * File streams are handed to evalChannels2Core() as their channels, so a
+	 * large universe object is memory-mapped instead of read.  Neither stream
+	 * is closed.
+	 * @param in
+	 *            stream to eval
+	 * @param out
+	 *            where the result goes
 	 * @param core
 	 *            The Core to use
-	 * @return The completed string
 	 * @throws VMException
 	 */
 	public static void evalStreams2Core(InputStream in, OutputStream out, VMCore core)
 			throws Exception {
 
-		StringBuffer working = null;
-		String result = null;
-		String variable;
-		Object thingthang;
-		int state = STATE_FREE;
-
-		BufferedInputStream bin = new BufferedInputStream(in);
-		BufferedOutputStream bout = new BufferedOutputStream(out);
-		int current = bin.read();
-		while (current >= 0) {
-
-			switch (state) {
-
-				case STATE_FREE :
-					switch (current) {
-						case Constants.VARIABLE :
-							state = STATE_VAR_ONE;
-							break;
-						case Constants.UNIOBJECT :
-							state = STATE_UNIOBJ_ONE;
-							break;
-						case Constants.BUFFER :
-							state = STATE_BUFFER_ONE;
-							break;
-						default :
-							bout.write(current);
-							break;
-					}
-					break;
-
-				case STATE_VAR_ONE :
-					switch (current) {
-						case Constants.VARIABLE :
-							// escaped
-							bout.write(Constants.VARIABLE);
-							state = STATE_FREE;
-							break;
-						case Constants.UNIOBJECT :
-						case Constants.BUFFER :
-						default :
-							working = new StringBuffer();
-							working.append((char) current);
-							state = STATE_VAR_IN;
-							break;
-					}
-					break;
-
-				case STATE_VAR_IN :
-					switch (current) {
-						case Constants.VARIABLE :
-							variable = working.toString();
-							if (core.exists(variable)) {
-								thingthang = core.fetch(variable);
-								if (thingthang instanceof String) {
-									bout.write( ((String)(thingthang)).getBytes() );
-								} else {
-									//	Blech! Something bad in this object
-									throw new VMException(
-											"Not an evaluatable type in variable.  name="
-													+ working,
-											VMException.CODE_VM_PROCESSOR_ERROR);
-								}
-							}
-							state = STATE_FREE;
-							break;
-						case Constants.UNIOBJECT :
-						case Constants.BUFFER :
-						default :
-							working.append((char) current);
-							break;
-					}
-					break;
-
-				case STATE_BUFFER_ONE :
-					switch (current) {
-						case Constants.BUFFER :
-							bout.write(Constants.BUFFER);
-							state = STATE_FREE;
-							break;
-						case Constants.VARIABLE :
-						case Constants.UNIOBJECT :
-						default :
-							working = new StringBuffer();
-							working.append((char) current);
-							state = STATE_BUFFER_IN;
-							break;
-					}
-					break;
-
-				case STATE_BUFFER_IN :
-					switch (current) {
-						case Constants.BUFFER :
-							variable = working.toString();
-							if (core.exists(variable)) {
-								thingthang = core.fetch(variable);
-								if (thingthang instanceof StringBuffer) {
-									bout.write( ((StringBuffer)(thingthang)).toString().getBytes() );
-								} else {
-									//	Blech! Something bad in this object
-									throw new VMException(
-											"Not an evaluatable type in buffer..  name="
-													+ working,
-											VMException.CODE_VM_PROCESSOR_ERROR);
-								}
-							}
-							state = STATE_FREE;
-							break;
-						case Constants.UNIOBJECT :
-						case Constants.VARIABLE :
-						default :
-							working.append((char) current);
-							break;
-					}
-					break;
-
-				case STATE_UNIOBJ_ONE :
-					switch (current) {
-						case Constants.UNIOBJECT :
-							bout.write(Constants.UNIOBJECT);
-							state = STATE_FREE;
-							break;
-						case Constants.VARIABLE :
-						case Constants.BUFFER :
-						default :
-							//working.append((char)current);
-							state = STATE_UNIOBJ_IN; // THIS WILL BE AN ERROR
-							break;
-					}
-					break;
+		ReadableByteChannel rin;
+		if (in instanceof FileInputStream) {
+			rin = ((FileInputStream) in).getChannel();
+		} else {
+			rin = Channels.newChannel(in);
+		}
+		WritableByteChannel rout;
+		if (out instanceof FileOutputStream) {
+			rout = ((FileOutputStream) out).getChannel();
+		} else {
+			rout = Channels.newChannel(out);
+		}
+		evalChannels2Core(rin, rout, core);
+		out.flush();
+	}
 
-				case STATE_UNIOBJ_IN :
-					switch (current) {
+	/**
+	 * Process a byte stream to Core and write the result as characters. The
+	 * bytes are decoded with the platform charset, exactly as an
+	 * InputStreamReader over the output of evalStreams2Core() would decode
+	 * them, but nothing is staged in between.  Neither the stream nor the
+	 * writer is closed; the writer is flushed.
+	 * @param in
+	 *            stream to eval
+	 * @param out
+	 *            where the result goes
+	 * @param core
+	 *            The Core to use
+	 * @throws VMException
+	 */
+	public static void evalStream2Writer(InputStream in, Writer out, VMCore core)
+			throws Exception {
 
-						case Constants.UNIOBJECT :
-							throw new VMException(
-									"UNIOBJECT not supported in SimVM",
-									VMException.CODE_VM_PROCESSOR_FAULT);
-						case Constants.VARIABLE :
-						case Constants.BUFFER :
-						default :
-							// IGNORE, SINCE THIS WILL BE AN ERROR.
-							break;
-					}
-					break;
+		ReadableByteChannel rin;
+		if (in instanceof FileInputStream) {
+			rin = ((FileInputStream) in).getChannel();
+		} else {
+			rin = Channels.newChannel(in);
+		}
+		DecodingChannel rout = new DecodingChannel(out);
+		evalChannels2Core(rin, rout, core);
+		rout.finish();
+		out.flush();
+	}
 
-				default :
-					throw new VMException(
-							"evalString2Core hit impossible state.  state="
-									+ state,
-							VMException.CODE_VM_SOFTWARE_DETECTED_FAULT);
+	/**
+	 * Process a byte channel to Core.  The input is scanned a chunk at a time.
+	 * Runs of text with no references are written to the output in bulk
+	 * straight from the input buffer; only the references are looked at byte
+	 * by byte.  A FileChannel with at least MAP_THRESHOLD bytes left is
+	 * memory-mapped and scanned in one pass.
+	 * <p>
+	 * The output is byte for byte what the old byte-at-a-time processor wrote:
+	 * reference names are read as single byte characters and values are
+	 * written in the platform charset.
+	 * @param in
+	 *            channel to eval
+	 * @param out
+	 *            where the result goes
+	 * @param core
+	 *            The Core to use
+	 * @throws VMException
+	 */
+	public static void evalChannels2Core(ReadableByteChannel in, WritableByteChannel out, VMCore core)
+			throws Exception {
 
+		Scanner scanner = new Scanner(out, core);
+
+		// Big file?  Map it.
+		if (in instanceof FileChannel) {
+			FileChannel fin = (FileChannel) in;
+			long start = fin.position();
+			long left = fin.size() - start;
+			if ((left >= MAP_THRESHOLD) && (left <= Integer.MAX_VALUE)) {
+				scanner.scan(fin.map(FileChannel.MapMode.READ_ONLY, start, left));
+				fin.position(start + left);
+				scanner.finish();
+				return;
 			}
-			current = bin.read();
 		}
 
-		//CHECK STATES
-		switch (state) {
-			case STATE_FREE :
-				// HAPPY HAPPY
-				break;
-			case STATE_VAR_ONE :
-			case STATE_VAR_IN :
-				String vmessage;
-				if (working.length() > 30) {
-					vmessage = new String("Unbounded VARIABLE (oversize) '"
-							+ working.toString().substring(30) + "'");
-				} else {
-					vmessage = new String("Unbounded VARIABLE '"
-							+ working.toString() + "'");
-				}
-				throw new VMException(vmessage,
-						VMException.CODE_VM_PROCESSOR_ERROR_UNBOUNDED);
-
-			case STATE_BUFFER_ONE :
-			case STATE_BUFFER_IN :
-				String bmessage;
-				if (working.length() > 30) {
-					bmessage = new String("Unbounded BUFFER (oversize) '"
-							+ working.toString().substring(30) + "'");
-				} else {
-					bmessage = new String("Unbounded BUFFER '"
-							+ working.toString() + "'");
-				}
-				throw new VMException(bmessage,
-						VMException.CODE_VM_PROCESSOR_ERROR_UNBOUNDED);
-
-			case STATE_UNIOBJ_ONE :
-			case STATE_UNIOBJ_IN :
-				String umessage;
-				if (working.length() > 30) {
-					umessage = new String("Unbounded UNIOBJ (oversize) '"
-							+ working.toString().substring(30) + "'");
-				} else {
-					umessage = new String("Unbounded UNIOBJ '"
-							+ working.toString() + "'");
-				}
-				throw new VMException(umessage,
-						VMException.CODE_VM_PROCESSOR_ERROR_UNBOUNDED);
-			default :
-				throw new VMException(
-						"evalString2Core hit impossible state.  state=" + state,
-						VMException.CODE_VM_SOFTWARE_DETECTED_FAULT);
+		ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+		while (in.read(chunk) >= 0) {
+			chunk.flip();
+			scanner.scan(chunk);
+			chunk.clear();
 		}
-		bout.flush();
-		
+		scanner.finish();
 	}
 
 	/**
@@ -618,4 +528,288 @@ public class StringProcessors {
 
 	}
 
+
+	/**
+	 * The chunked scanner behind evalChannels2Core().  It keeps its state
+	 * between chunks, so a reference can straddle two reads.  Small writes
+	 * (substitutions and the tails of runs) are staged; runs at least as big
+	 * as the staging buffer go straight to the channel.
+	 */
+	private static class Scanner {
+
+		private final WritableByteChannel out;
+		private final VMCore core;
+		private final ByteBuffer stage = ByteBuffer.allocate(CHUNK_SIZE);
+		private StringBuffer working;
+		private int state = STATE_FREE;
+
+		Scanner(WritableByteChannel out, VMCore core) {
+			this.out = out;
+			this.core = core;
+		}
+
+		/**
+		 * Scan a buffer from its position to its limit.
+		 */
+		void scan(ByteBuffer in) throws Exception {
+
+			int limit = in.limit();
+			int run = in.position();
+			int current;
+			for (int pos = run; pos < limit; pos++) {
+				current = in.get(pos) & 0xff;
+
+				switch (state) {
+
+					case STATE_FREE :
+						switch (current) {
+							case Constants.VARIABLE :
+								state = STATE_VAR_ONE;
+								break;
+							case Constants.UNIOBJECT :
+								state = STATE_UNIOBJ_ONE;
+								break;
+							case Constants.BUFFER :
+								state = STATE_BUFFER_ONE;
+								break;
+							default :
+								continue;
+						}
+						this.emit(in, run, pos);
+						break;
+
+					case STATE_VAR_ONE :
+					case STATE_BUFFER_ONE :
+					case STATE_UNIOBJ_ONE :
+						if (((state == STATE_VAR_ONE) && (current == Constants.VARIABLE))
+							|| ((state == STATE_BUFFER_ONE) && (current == Constants.BUFFER))
+							|| ((state == STATE_UNIOBJ_ONE) && (current == Constants.UNIOBJECT))) {
+							// escaped.  It starts the next run.
+							state = STATE_FREE;
+							run = pos;
+							continue;
+						}
+						if (state == STATE_UNIOBJ_ONE) {
+							state = STATE_UNIOBJ_IN; // THIS WILL BE AN ERROR
+						} else {
+							working = new StringBuffer();
+							working.append((char) current);
+							state = (state == STATE_VAR_ONE) ? STATE_VAR_IN : STATE_BUFFER_IN;
+						}
+						break;
+
+					case STATE_VAR_IN :
+						if (current == Constants.VARIABLE) {
+							this.substitute(working.toString(), false);
+							state = STATE_FREE;
+						} else {
+							working.append((char) current);
+						}
+						break;
+
+					case STATE_BUFFER_IN :
+						if (current == Constants.BUFFER) {
+							this.substitute(working.toString(), true);
+							state = STATE_FREE;
+						} else {
+							working.append((char) current);
+						}
+						break;
+
+					case STATE_UNIOBJ_IN :
+						if (current == Constants.UNIOBJECT) {
+							throw new VMException(
+									"UNIOBJECT not supported in SimVM",
+									VMException.CODE_VM_PROCESSOR_FAULT);
+						}
+						// IGNORE, SINCE THIS WILL BE AN ERROR.
+						break;
+
+					default :
+						throw new VMException(
+								"evalString2Core hit impossible state.  state="
+										+ state,
+								VMException.CODE_VM_SOFTWARE_DETECTED_FAULT);
+				}
+				run = pos + 1;
+			}
+
+			// Tail of a run
+			if (state == STATE_FREE) {
+				this.emit(in, run, limit);
+			}
+			in.position(limit);
+		}
+
+		/**
+		 * Check the end state and flush.
+		 */
+		void finish() throws Exception {
+
+			switch (state) {
+				case STATE_FREE :
+					// HAPPY HAPPY
+					break;
+				case STATE_VAR_ONE :
+				case STATE_VAR_IN :
+					throw new VMException(unbounded("VARIABLE"),
+							VMException.CODE_VM_PROCESSOR_ERROR_UNBOUNDED);
+				case STATE_BUFFER_ONE :
+				case STATE_BUFFER_IN :
+					throw new VMException(unbounded("BUFFER"),
+							VMException.CODE_VM_PROCESSOR_ERROR_UNBOUNDED);
+				case STATE_UNIOBJ_ONE :
+				case STATE_UNIOBJ_IN :
+					throw new VMException(unbounded("UNIOBJ"),
+							VMException.CODE_VM_PROCESSOR_ERROR_UNBOUNDED);
+				default :
+					throw new VMException(
+							"evalString2Core hit impossible state.  state=" + state,
+							VMException.CODE_VM_SOFTWARE_DETECTED_FAULT);
+			}
+			this.flush();
+		}
+
+		private String unbounded(String what) {
+			if (working == null) {
+				return "Unbounded " + what + " ''";
+			} else if (working.length() > 30) {
+				return "Unbounded " + what + " (oversize) '"
+						+ working.toString().substring(30) + "'";
+			}
+			return "Unbounded " + what + " '" + working.toString() + "'";
+		}
+
+		/**
+		 * Write a reference's value.  Missing references write nothing.
+		 */
+		private void substitute(String variable, boolean isBuffer) throws Exception {
+			if (!core.exists(variable)) {
+				return;
+			}
+			Object thingthang = core.fetch(variable);
+			if (isBuffer) {
+				if (thingthang instanceof StringBuffer) {
+					this.emit(ByteBuffer.wrap(((StringBuffer) (thingthang)).toString().getBytes()));
+				} else {
+					//	Blech! Something bad in this object
+					throw new VMException(
+							"Not an evaluatable type in buffer..  name=" + working,
+							VMException.CODE_VM_PROCESSOR_ERROR);
+				}
+			} else {
+				if (thingthang instanceof String) {
+					this.emit(ByteBuffer.wrap(((String) (thingthang)).getBytes()));
+				} else {
+					//	Blech! Something bad in this object
+					throw new VMException(
+							"Not an evaluatable type in variable.  name=" + working,
+							VMException.CODE_VM_PROCESSOR_ERROR);
+				}
+			}
+		}
+
+		/**
+		 * Write a run of the input, without copying the input buffer.
+		 */
+		private void emit(ByteBuffer in, int from, int to) throws Exception {
+			if (from < to) {
+				ByteBuffer run = in.duplicate();
+				run.limit(to);
+				run.position(from);
+				this.emit(run);
+			}
+		}
+
+		private void emit(ByteBuffer src) throws Exception {
+			if (src.remaining() > stage.remaining()) {
+				this.flush();
+			}
+			if (src.remaining() >= stage.capacity()) {
+				while (src.hasRemaining()) {
+					out.write(src);
+				}
+			} else {
+				stage.put(src);
+			}
+		}
+
+		private void flush() throws Exception {
+			stage.flip();
+			while (stage.hasRemaining()) {
+				out.write(stage);
+			}
+			stage.clear();
+		}
+	}
+
+	/**
+	 * A byte channel that decodes into a Writer with the platform charset.
+	 * Bad input is replaced, the same as an InputStreamReader does.  Bytes of
+	 * a character split across writes are held until the rest arrive.
+	 */
+	private static class DecodingChannel implements WritableByteChannel {
+
+		private final Writer out;
+		private final CharsetDecoder decoder;
+		private final ByteBuffer pending = ByteBuffer.allocate(CHUNK_SIZE);
+		private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+		private boolean open = true;
+
+		DecodingChannel(Writer out) {
+			this.out = out;
+			decoder =
+				Charset.defaultCharset().newDecoder().onMalformedInput(
+					CodingErrorAction.REPLACE).onUnmappableCharacter(
+					CodingErrorAction.REPLACE);
+		}
+
+		public int write(ByteBuffer src) throws IOException {
+			int count = src.remaining();
+			ByteBuffer piece;
+			while (src.hasRemaining()) {
+				piece = src.duplicate();
+				piece.limit(piece.position() + Math.min(piece.remaining(), pending.remaining()));
+				pending.put(piece);
+				src.position(piece.position());
+				pending.flip();
+				this.decode(false);
+				pending.compact();
+			}
+			return count;
+		}
+
+		/**
+		 * Decode what is left and flush the decoder.
+		 */
+		void finish() throws IOException {
+			pending.flip();
+			this.decode(true);
+			while (decoder.flush(chars).isOverflow()) {
+				this.drain();
+			}
+			this.drain();
+		}
+
+		private void decode(boolean last) throws IOException {
+			while (decoder.decode(pending, chars, last).isOverflow()) {
+				this.drain();
+			}
+			this.drain();
+		}
+
+		private void drain() throws IOException {
+			chars.flip();
+			out.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+			chars.clear();
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public void close() {
+			open = false;
+		}
+	}
 }
\ No newline at end of file